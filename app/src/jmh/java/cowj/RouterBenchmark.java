@@ -0,0 +1,78 @@
+package cowj;
+
+import org.openjdk.jmh.annotations.*;
+import spark.Route;
+import spark.RouteImpl;
+import spark.route.HttpMethod;
+import spark.route.Routes;
+import spark.routematch.RouteMatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares route matching of the segment trie against Spark's own linear matching
+ * Run with : gradle jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int routes;
+
+    Routes sparkRoutes;
+
+    Router.SegmentTrie trie;
+
+    String first;
+
+    String last;
+
+    String[] lastSegments;
+
+    @Setup
+    public void setup() {
+        final Route route = (req, resp) -> "";
+        sparkRoutes = Routes.create();
+        trie = new Router.SegmentTrie();
+        for (int i = 0; i < routes; i++) {
+            final String path = "/service" + i + "/users/:id/books/:book";
+            sparkRoutes.add(HttpMethod.get, RouteImpl.create(path, route));
+            trie.route("get", path, route);
+        }
+        trie.compile();
+        first = "/service0/users/42/books/hhgg";
+        last = "/service" + (routes - 1) + "/users/42/books/hhgg";
+        lastSegments = Router.PathPattern.segments(last);
+    }
+
+    @Benchmark
+    public RouteMatch sparkFirst() {
+        return sparkRoutes.find(HttpMethod.get, first, "*/*");
+    }
+
+    @Benchmark
+    public RouteMatch sparkLast() {
+        return sparkRoutes.find(HttpMethod.get, last, "*/*");
+    }
+
+    @Benchmark
+    public Router.Leaf trieFirst() {
+        return trie.find("get", Router.PathPattern.segments(first));
+    }
+
+    @Benchmark
+    public Router.Leaf trieLast() {
+        return trie.find("get", Router.PathPattern.segments(last));
+    }
+
+    @Benchmark
+    public Router.PathPattern.Match trieLastWithParams() {
+        final Router.Leaf leaf = trie.find("get", lastSegments);
+        return leaf.pattern().match(lastSegments);
+    }
+}
@@ -0,0 +1,175 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.types.ZTypes;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per execution accounting of script cost, bytes allocated and CPU time of the executing thread
+ * Measured around every script execution, routes, filters, async tasks and cron jobs alike,
+ * and aggregated per route and engine, i.e. the extension of the script, in the Metrics registry
+ * Uses the com.sun.management.ThreadMXBean counters, two reads before and two after an execution
+ * Virtual threads, and JVMs without the counters, report nothing, those executions are counted as unmeasured
+ * Bytes allocated by a lazy Stream returned from a route are allocated while streaming, not while executing
+ */
+public interface Accounting {
+
+    /**
+     * Logger for the Cowj Accounting
+     */
+    Logger logger = LoggerFactory.getLogger(Accounting.class);
+
+    /**
+     * Key for enabling accounting, in the metrics section, needs metrics to be enabled
+     */
+    String ACCOUNTING = "accounting";
+
+    /**
+     * Bytes allocated by script executions
+     */
+    String ALLOCATED_BYTES = "cowj_script_allocated_bytes_total";
+
+    /**
+     * CPU time of script executions
+     */
+    String CPU_SECONDS = "cowj_script_cpu_seconds";
+
+    /**
+     * Script executions the thread counters could not measure
+     */
+    String UNMEASURED = "cowj_script_unmeasured_total";
+
+    /**
+     * Is accounting on
+     */
+    AtomicBoolean ENABLED_FLAG = new AtomicBoolean(false);
+
+    /**
+     * The thread counters, null when the JVM does not have them
+     */
+    com.sun.management.ThreadMXBean THREADS = threads();
+
+    /**
+     * Gets the thread counters, switching allocation accounting on
+     * @return the ThreadMXBean, null if not supported
+     */
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean mx
+                    && mx.isThreadAllocatedMemorySupported() && mx.isCurrentThreadCpuTimeSupported()) {
+                if (!mx.isThreadAllocatedMemoryEnabled()) mx.setThreadAllocatedMemoryEnabled(true);
+                if (!mx.isThreadCpuTimeEnabled()) mx.setThreadCpuTimeEnabled(true);
+                return mx;
+            }
+        } catch (Throwable t) {
+            logger.warn("Thread allocation and CPU counters are not available : {}", t.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread
+     * @return bytes, -1 if not measurable
+     */
+    static long allocated() {
+        try {
+            return THREADS.getCurrentThreadAllocatedBytes();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * CPU time used so far by the current thread
+     * @return nanos, -1 if not measurable
+     */
+    static long cpu() {
+        try {
+            return THREADS.getCurrentThreadCpuTime();
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Accounts the executions of one script
+     */
+    final class Probe {
+
+        /**
+         * A Probe accounting nothing, used when accounting is off
+         */
+        public static final Probe NONE = new Probe();
+
+        private final Metrics.Counter allocated;
+        private final Metrics.Timer cpu;
+        private final Metrics.Counter unmeasured;
+
+        private Probe() {
+            this.allocated = Metrics.Counter.DISCARD;
+            this.cpu = Metrics.Timer.NONE;
+            this.unmeasured = Metrics.Counter.DISCARD;
+        }
+
+        /**
+         * Creates a Probe
+         * @param route path the script is mapped to
+         * @param engine extension of the script
+         */
+        public Probe(String route, String engine) {
+            this.allocated = Metrics.counter(ALLOCATED_BYTES, "Bytes allocated by script executions", "route", route, "engine", engine);
+            this.cpu = Metrics.histogram(CPU_SECONDS, "CPU time of script executions", "route", route, "engine", engine);
+            this.unmeasured = Metrics.counter(UNMEASURED, "Script executions the thread counters could not measure", "route", route, "engine", engine);
+        }
+
+        /**
+         * Is this accounting anything
+         * @return false for NONE
+         */
+        public boolean active() {
+            return this != NONE;
+        }
+
+        /**
+         * Accounts an execution
+         * @param allocatedBefore bytes allocated by the thread before the execution
+         * @param cpuBefore CPU time of the thread before the execution
+         */
+        public void end(long allocatedBefore, long cpuBefore) {
+            final long allocatedAfter = allocated();
+            final long cpuAfter = cpu();
+            if (allocatedBefore < 0 || cpuBefore < 0 || allocatedAfter < 0 || cpuAfter < 0) {
+                unmeasured.increment();
+                return;
+            }
+            allocated.add(allocatedAfter - allocatedBefore);
+            cpu.record(cpuAfter - cpuBefore);
+        }
+    }
+
+    /**
+     * Gets a Probe for a script
+     * @param route path the script is mapped to
+     * @param engine extension of the script
+     * @return a Probe, Probe.NONE if accounting or metrics are off
+     */
+    static Probe probe(String route, String engine) {
+        if (!ENABLED_FLAG.get() || !Metrics.enabled()) return Probe.NONE;
+        return new Probe(route, engine);
+    }
+
+    /**
+     * Sets up accounting, from the metrics section, call after Metrics.configure()
+     * accounting : true to account allocation and CPU time of script executions, default false
+     * @param config the metrics configuration map
+     */
+    static void configure(Map<String, Object> config) {
+        final boolean enabled = ZTypes.bool(config.getOrDefault(ACCOUNTING, false), false) && THREADS != null;
+        ENABLED_FLAG.set(enabled);
+        if (enabled) logger.info("Accounting of script allocation and CPU time enabled");
+    }
+}
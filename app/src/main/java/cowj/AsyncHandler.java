@@ -12,6 +12,8 @@ import zoomba.lang.core.types.ZTypes;
 
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -150,7 +152,13 @@ public interface AsyncHandler {
 
             final Map<String, String> params = request.params();
 
-            final String body = request.body() != null ? request.body() : "";
+            final String body;
+            try {
+                // honours the upload max, the body is needed in full, as it outlives the request
+                body = Upload.text(request);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
             final QueryParamsMap queryParamsMap = request.queryMap();
             return new AsyncRequest() {
 
@@ -206,7 +214,13 @@ public interface AsyncHandler {
     default Route route(Scriptable scriptable) {
         return (request, response) -> {
             final long startNano = System.nanoTime();
-            AsyncRequest asyncRequest = AsyncRequest.fromRequest(request);
+            final AsyncRequest asyncRequest;
+            try {
+                asyncRequest = AsyncRequest.fromRequest(request);
+            } catch (UncheckedIOException e) {
+                if (Upload.tooLarge(e)) return Spark.halt(Upload.TOO_LARGE_STATUS, "Payload Too Large");
+                throw e;
+            }
             final String retryKey = asyncRequest.uri().substring( ASYNC_ROUTE_PREFIX.length());
             final Bindings bindings = new SimpleBindings();
             bindings.put(REQUEST, asyncRequest);
@@ -228,7 +242,10 @@ public interface AsyncHandler {
      * @return Runnable instance which would be created as the Task
      */
     default Runnable runnable(Scriptable scriptable, String retryKey, Bindings bindings, String uid){
+        // the task continues the trace of whoever created it
+        final Tracing.Span parent = Tracing.current();
         return () -> {
+            final Tracing.Span span = Tracing.start(parent, "async " + retryKey).attribute("task", uid);
             try {
                 final Retry retry = retries().getOrDefault( retryKey, Retry.NOP);
                 bindings.put(RETRY, retry);
@@ -246,6 +263,9 @@ public interface AsyncHandler {
                 }catch (Throwable handlerError){
                     logger.error("Async Task Error Handler itself failed (facepalm) with error : "+ handlerError);
                 }
+                span.error(t);
+            } finally {
+                span.close();
             }
         };
     }
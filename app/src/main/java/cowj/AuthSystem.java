@@ -145,11 +145,25 @@ public interface AuthSystem {
         final String casBinModel = authDefDir + "/" + MODEL_FILE ;
         final Authenticator authenticator = authenticator();
         final Enforcer enforcer = new Enforcer(casBinModel, adapter);
+        final Metrics.Timer authenticateTimer = Metrics.histogram(Metrics.AUTH_SECONDS, "Latency of auth", "stage", "authenticate");
+        final Metrics.Timer authorizeTimer = Metrics.histogram(Metrics.AUTH_SECONDS, "Latency of auth", "stage", "authorize");
         Spark.before("*", ((request, response) -> {
             final String pathInfo = request.uri(); // jetty 12 spark pathInfo comes null, hence uri
             final String verb = request.requestMethod();
-            final String userName = authenticator.authenticate(request);
-            final boolean thouShallPass = enforcer.enforce( userName, pathInfo, verb);
+            final long start = System.nanoTime();
+            final String userName;
+            final boolean thouShallPass;
+            try ( Tracing.Span span = Tracing.start("auth") ){
+                try {
+                    userName = authenticator.authenticate(request);
+                } finally {
+                    authenticateTimer.record( System.nanoTime() - start);
+                }
+                final long enforceStart = System.nanoTime();
+                thouShallPass = enforcer.enforce( userName, pathInfo, verb);
+                authorizeTimer.record( System.nanoTime() - enforceStart);
+                span.attribute("user", userName).attribute("allowed", thouShallPass);
+            }
             if ( !thouShallPass){
                 Spark.halt(403, UN_AUTHORIZED + " : " +  haltMessage());
             }
@@ -307,12 +307,19 @@ public interface Authenticator {
 
             @Override
             public UserInfo userFromToken(String token) throws Exception {
+                final FlightRecorder.TokenVerification event = FlightRecorder.TokenVerification.start();
                 if ( lru.containsKey( token ) ){
                     UserInfo info =  lru.get(token);
+                    event.record(this, true, true);
                     logger.info("Token found in cache => userid: {}, token: {}", info.id(), info.token());
                     return info;
                 }
-                UserInfo userInfo = Authenticator.safeAuthExecute( () -> tryGetUserInfo(token));
+                UserInfo userInfo = null;
+                try {
+                    userInfo = Authenticator.safeAuthExecute( () -> tryGetUserInfo(token));
+                } finally {
+                    event.record(this, false, userInfo != null);
+                }
                 lru.put(userInfo.token(), userInfo);
                 logger.info("Token added in cache => userid: {}, token: {}", userInfo.id(), userInfo.token());
                 return userInfo;
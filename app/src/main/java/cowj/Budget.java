@@ -0,0 +1,412 @@
+package cowj;
+
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.ResourceLimits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Route;
+import spark.Spark;
+import zoomba.lang.core.types.ZNumber;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution budgets for scripted routes
+ * A wall clock timeout per route, global or route specific, and a global statement limit for Graal scripts
+ * A route running over its time gets cancelled - Graal Context gets closed, other engines get interrupted
+ * Graal scripts run on the calling thread, closing the Context stops them right away
+ * JSR-223, ZoomBA and binary scripts run on a worker thread, the caller gets a 504 at the deadline
+ * Interruption is cooperative for these, a script ignoring it can not be cancelled,
+ * it keeps its worker thread till it completes, and whatever it writes to the response after the 504 is lost
+ * Timeouts are answered with 504, statement limit overruns with 503, both are counted per route
+ */
+public interface Budget {
+
+    /**
+     * Logger for the Cowj Budget
+     */
+    Logger logger = LoggerFactory.getLogger(Budget.class);
+
+    /**
+     * Key for the wall clock timeout in ms
+     */
+    String TIMEOUT = "timeout";
+
+    /**
+     * Key for the Graal statement limit per call
+     */
+    String STATEMENTS = "statements";
+
+    /**
+     * Key for the route specific budgets
+     */
+    String ROUTES = "routes";
+
+    /**
+     * HTTP status for a route which ran out of time
+     */
+    int TIMEOUT_STATUS = 504;
+
+    /**
+     * HTTP status for a route which ran out of statements
+     */
+    int LIMIT_STATUS = 503;
+
+    /**
+     * Wall clock timeout for a route
+     * @param route the route path, as in the model
+     * @return timeout in ms, non-positive means no timeout
+     */
+    long timeout(String route);
+
+    /**
+     * Statement limit per call for all Graal scripts
+     * Graal does not allow different statement limits for Contexts sharing an Engine, hence it is global
+     * @return max no of statements, non-positive means no limit
+     */
+    long statements();
+
+    /**
+     * A Budget with no limits at all
+     */
+    Budget NONE = new Budget() {
+        @Override
+        public long timeout(String route) {
+            return 0;
+        }
+
+        @Override
+        public long statements() {
+            return 0;
+        }
+    };
+
+    /**
+     * The Budget in effect
+     */
+    AtomicReference<Budget> BUDGET = new AtomicReference<>(NONE);
+
+    /**
+     * Graal ResourceLimits built from the statement limit, null if there is no limit
+     * The same instance must be used by all Context
+     */
+    AtomicReference<ResourceLimits> GRAAL_LIMITS = new AtomicReference<>();
+
+    /**
+     * Counters of routes which ran out of time
+     * Key - route path
+     */
+    Map<String, LongAdder> TIMEOUTS = new ConcurrentHashMap<>();
+
+    /**
+     * Counters of routes which ran out of statements
+     * Key - route path, or * when not running under a route budget
+     */
+    Map<String, LongAdder> LIMITS = new ConcurrentHashMap<>();
+
+    /**
+     * Watchdog which cancels executions running over time
+     */
+    ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread t = new Thread(r, "cowj-budget-watchdog");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Extensions of the scripts which can be cancelled on the calling thread, by closing their Graal Context
+     */
+    Set<String> CANCELLABLE = Set.of("js", "py3");
+
+    /**
+     * Workers running the budgeted scripts which can not be cancelled, so that the caller does not wait past the deadline
+     */
+    ExecutorService WORKERS = Executors.newCachedThreadPool(
+            Thread.ofPlatform().name("cowj-budget-worker-", 0).daemon(true).factory());
+
+    /**
+     * An execution of a route under a budget
+     * The watchdog may expire it from another thread, any time before it finishes
+     */
+    final class Execution {
+
+        private final String route;
+        private final Thread thread;
+        private boolean done = false;
+        private boolean expired = false;
+        private Runnable cancelHook = null;
+
+        Execution(String route, Thread thread) {
+            this.route = route;
+            this.thread = thread;
+        }
+
+        /**
+         * Route of the execution
+         * @return the route path
+         */
+        public String route() {
+            return route;
+        }
+
+        /**
+         * Has the execution run out of time
+         * @return true if expired
+         */
+        public synchronized boolean expired() {
+            return expired;
+        }
+
+        synchronized boolean expire() {
+            if (done) return false;
+            expired = true;
+            runHook();
+            if (thread != null) thread.interrupt();
+            return true;
+        }
+
+        synchronized void cancelHook(Runnable hook) {
+            cancelHook = hook;
+            // expired before the hook could be set, cancel right away
+            if (expired) runHook();
+        }
+
+        synchronized void finish() {
+            done = true;
+            cancelHook = null;
+        }
+
+        private void runHook() {
+            if (cancelHook == null) return;
+            try {
+                cancelHook.run();
+            } catch (Throwable t) {
+                logger.warn("Budget cancel hook failed for route '{}' : {}", route, t.toString());
+            }
+            cancelHook = null;
+        }
+    }
+
+    /**
+     * The execution running on the current thread, if any
+     */
+    ThreadLocal<Execution> CURRENT = new ThreadLocal<>();
+
+    /**
+     * A registration of a cancel hook, closing it removes the hook
+     */
+    interface Cancellation extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Registers a hook to be run in case the current execution runs out of time
+     * The hook gets run from the watchdog thread, it must be removed before the resource it cancels gets reused
+     * @param hook to cancel the underlying work, e.g. closing a Graal Context
+     * @return a Cancellation, closing it removes the hook
+     */
+    static Cancellation onCancel(Runnable hook) {
+        final Execution execution = CURRENT.get();
+        if (execution == null) return () -> {};
+        execution.cancelHook(hook);
+        return () -> execution.cancelHook(null);
+    }
+
+    /**
+     * Maps an error raised by a script to an overrun status, counting it
+     * @param t the error
+     * @return TIMEOUT_STATUS, LIMIT_STATUS or 0 if the error is not due to budget overrun
+     */
+    static int overrun(Throwable t) {
+        final Execution execution = CURRENT.get();
+        if (execution != null && execution.expired()) {
+            return timedOut(execution);
+        }
+        Throwable cause = t;
+        while (cause != null) {
+            if (cause instanceof PolyglotException pe && pe.isResourceExhausted()) {
+                final String key = execution != null ? execution.route() : "*";
+                LIMITS.computeIfAbsent(key, k -> new LongAdder()).increment();
+                return LIMIT_STATUS;
+            }
+            cause = cause.getCause();
+        }
+        return 0;
+    }
+
+    /**
+     * Counts an execution which ran out of time
+     * @param execution the Execution
+     * @return TIMEOUT_STATUS
+     */
+    static int timedOut(Execution execution) {
+        TIMEOUTS.computeIfAbsent(execution.route(), k -> new LongAdder()).increment();
+        return TIMEOUT_STATUS;
+    }
+
+    /**
+     * Message to be sent back for an overrun
+     * @param status the overrun status
+     * @return message
+     */
+    static String message(int status) {
+        return status == TIMEOUT_STATUS ? "Request ran out of time!" : "Request ran out of budget!";
+    }
+
+    /**
+     * Wraps a Scriptable as spark.Route under the time budget of the route
+     * Graal scripts run on the calling thread, the rest on a worker, see CANCELLABLE
+     * @param path the route path
+     * @param handler the script path, its extension tells the engine
+     * @param scriptable the Scriptable
+     * @return a spark.Route
+     */
+    static Route route(String path, String handler, Scriptable scriptable) {
+        if (CANCELLABLE.contains(Scriptable.extension(handler))) return route(path, scriptable);
+        final long timeout = BUDGET.get().timeout(path);
+        if (timeout <= 0) return scriptable::exec;
+        logger.info("Route '{}' has a time budget of {} ms, running on a worker", path, timeout);
+        return (request, response) -> {
+            final Execution execution = new Execution(path, null);
+            final Tracing.Span span = Tracing.current();
+            final Future<Object> future = WORKERS.submit(() -> {
+                CURRENT.set(execution);
+                Tracing.CURRENT.set(span);
+                try {
+                    return scriptable.exec(request, response);
+                } finally {
+                    execution.finish();
+                    CURRENT.remove();
+                    Tracing.CURRENT.remove();
+                }
+            });
+            try {
+                return future.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (!execution.expire()) {
+                    // finished right at the deadline
+                    return result(future);
+                }
+                // interrupts the worker, the script may or may not stop, the caller does not wait for it
+                future.cancel(true);
+                logger.warn("{} @ {} ran out of time, left running on a worker", request.requestMethod(), request.uri());
+                return Spark.halt(timedOut(execution), message(TIMEOUT_STATUS));
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                throw unwrap(e);
+            }
+        };
+    }
+
+    private static Object result(Future<Object> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof Error error) throw error;
+        // halts come back as they are, so that Spark answers them
+        return cause instanceof Exception ex ? ex : e;
+    }
+
+    /**
+     * Wraps a Scriptable as spark.Route under the time budget of the route, running it on the calling thread
+     * Only a Graal script can be stopped at the deadline, anything else gets interrupted, and answered with a 504 once it completes
+     * @param path the route path
+     * @param scriptable the Scriptable
+     * @return a spark.Route
+     */
+    static Route route(String path, Scriptable scriptable) {
+        final long timeout = BUDGET.get().timeout(path);
+        if (timeout <= 0) return scriptable::exec;
+        logger.info("Route '{}' has a time budget of {} ms", path, timeout);
+        return (request, response) -> {
+            final Execution execution = new Execution(path, Thread.currentThread());
+            CURRENT.set(execution);
+            final ScheduledFuture<?> watch = WATCHDOG.schedule(execution::expire, timeout, TimeUnit.MILLISECONDS);
+            try {
+                final Object result = scriptable.exec(request, response);
+                if (execution.expired()) {
+                    // the script ignored the interruption and completed anyway, the caller waited too long
+                    return Spark.halt(timedOut(execution), message(TIMEOUT_STATUS));
+                }
+                return result;
+            } finally {
+                watch.cancel(false);
+                execution.finish();
+                CURRENT.remove();
+                // the interruption was meant for the script, not for the server thread
+                if (execution.expired()) Thread.interrupted();
+            }
+        };
+    }
+
+    /**
+     * Sets up the budget in effect
+     * @param budget the Budget
+     */
+    static void configure(Budget budget) {
+        BUDGET.set(budget);
+        final long statements = budget.statements();
+        GRAAL_LIMITS.set(statements > 0 ? ResourceLimits.newBuilder().statementLimit(statements, null).build() : null);
+    }
+
+    /**
+     * Creates a Budget from configuration
+     * timeout : global wall clock timeout in ms per route call, default none
+     * statements : global Graal statement limit per call, default none
+     * routes : route_path : [ timeout : ms ]
+     * @param config the configuration map
+     * @return a Budget
+     */
+    static Budget fromConfig(Map<String, Object> config) {
+        if (config.isEmpty()) return NONE;
+        final long timeout = ZNumber.integer(config.getOrDefault(TIMEOUT, 0), 0).longValue();
+        final long statements = ZNumber.integer(config.getOrDefault(STATEMENTS, 0), 0).longValue();
+        final Map<String, Long> routeTimeouts = new HashMap<>();
+        final Map<String, Object> routes = (Map) config.getOrDefault(ROUTES, Collections.emptyMap());
+        routes.forEach((route, c) -> {
+            final Map<String, Object> rc = (Map) c;
+            routeTimeouts.put(route, ZNumber.integer(rc.getOrDefault(TIMEOUT, timeout), timeout).longValue());
+            if (rc.containsKey(STATEMENTS)) {
+                logger.warn("Statement limit is global, ignoring the one for route '{}'", route);
+            }
+        });
+        return new Budget() {
+            @Override
+            public long timeout(String route) {
+                return routeTimeouts.getOrDefault(route, timeout);
+            }
+
+            @Override
+            public long statements() {
+                return statements;
+            }
+        };
+    }
+
+    /**
+     * Counters of budget overruns
+     * @return map with timeouts and limits, each a map of route to count
+     */
+    static Map<String, Map<String, Long>> stats() {
+        final Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        final Map<String, Long> timeouts = new TreeMap<>();
+        TIMEOUTS.forEach((k, v) -> timeouts.put(k, v.sum()));
+        final Map<String, Long> limits = new TreeMap<>();
+        LIMITS.forEach((k, v) -> limits.put(k, v.sum()));
+        stats.put("timeouts", timeouts);
+        stats.put("limits", limits);
+        return stats;
+    }
+}
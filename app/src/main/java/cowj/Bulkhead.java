@@ -0,0 +1,376 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Route;
+import spark.Spark;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulkheads for routes
+ * Routes in a group share a limit of concurrent calls, so a slow downstream on them can not take all the server threads
+ * Callers over the limit wait in a bounded queue for a bounded time, the rest get a 503 right away
+ * An adaptive group moves its limit with the observed latency, as a gradient limiter does :
+ * it shrinks when the latency goes above the long term one, and grows while it stays there
+ */
+public interface Bulkhead {
+
+    /**
+     * Logger for the Cowj Bulkhead
+     */
+    Logger logger = LoggerFactory.getLogger(Bulkhead.class);
+
+    /**
+     * Key for the route paths of a group
+     */
+    String ROUTES = "routes";
+
+    /**
+     * Key for the max concurrent calls of a group, the initial one when adaptive
+     */
+    String LIMIT = "limit";
+
+    /**
+     * Key for the max callers waiting for a slot
+     */
+    String QUEUE = "queue";
+
+    /**
+     * Key for the max time in ms a caller waits for a slot
+     */
+    String WAIT = "wait";
+
+    /**
+     * Key for making the limit adaptive
+     */
+    String ADAPTIVE = "adaptive";
+
+    /**
+     * Key for the min limit, when adaptive
+     */
+    String MIN = "min";
+
+    /**
+     * Key for the max limit, when adaptive
+     */
+    String MAX = "max";
+
+    /**
+     * HTTP status for a rejected call
+     */
+    int REJECT_STATUS = 503;
+
+    /**
+     * Limiter for a route
+     * @param route the route path, as in the model
+     * @return the Limiter of the group of the route, null if the route is not in any
+     */
+    Limiter limiter(String route);
+
+    /**
+     * All the Limiters
+     * @return collection of Limiter
+     */
+    Collection<Limiter> limiters();
+
+    /**
+     * No bulkheads at all
+     */
+    Bulkhead NONE = new Bulkhead() {
+        @Override
+        public Limiter limiter(String route) {
+            return null;
+        }
+
+        @Override
+        public Collection<Limiter> limiters() {
+            return Collections.emptyList();
+        }
+    };
+
+    /**
+     * The Bulkhead in effect
+     */
+    AtomicReference<Bulkhead> BULKHEADS = new AtomicReference<>(NONE);
+
+    /**
+     * Concurrency limit of a group of routes, with a bounded wait queue
+     */
+    final class Limiter {
+
+        /**
+         * Weight of a sample in the short term latency
+         */
+        static final double SHORT_WEIGHT = 0.1;
+
+        /**
+         * Weight of a sample in the long term latency
+         */
+        static final double LONG_WEIGHT = 0.01;
+
+        /**
+         * Latency above the long term one which is still taken as normal
+         */
+        static final double TOLERANCE = 1.5;
+
+        /**
+         * How much of a new limit goes into the limit in effect
+         */
+        static final double SMOOTHING = 0.2;
+
+        private final String name;
+        private final int queue;
+        private final long waitNanos;
+        private final boolean adaptive;
+        private final int min;
+        private final int max;
+
+        private volatile int limit;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+
+        private double limitEstimate;
+        private double shortRtt;
+        private double longRtt;
+
+        Limiter(String name, int limit, int queue, long waitMs, boolean adaptive, int min, int max) {
+            this.name = name;
+            this.limit = limit;
+            this.limitEstimate = limit;
+            this.queue = queue;
+            this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMs);
+            this.adaptive = adaptive;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Name of the group
+         * @return name
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Current limit of concurrent calls
+         * @return limit
+         */
+        public int limit() {
+            return limit;
+        }
+
+        /**
+         * Calls running right now
+         * @return in flight calls
+         */
+        public int inFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * Callers waiting for a slot right now
+         * @return waiting callers
+         */
+        public int waiting() {
+            return waiting.get();
+        }
+
+        /**
+         * Calls rejected so far
+         * @return rejected calls
+         */
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        private boolean tryAcquire() {
+            for (int n = inFlight.get(); n < limit; n = inFlight.get()) {
+                if (inFlight.compareAndSet(n, n + 1)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Takes a slot, waiting in the queue if there is room in it
+         * @return true if a slot was taken, false if the call is rejected
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public boolean acquire() throws InterruptedException {
+            if (tryAcquire()) return true;
+            if (queue <= 0 || waitNanos <= 0) {
+                rejected.increment();
+                return false;
+            }
+            if (waiting.incrementAndGet() > queue) {
+                waiting.decrementAndGet();
+                rejected.increment();
+                return false;
+            }
+            lock.lock();
+            try {
+                long nanos = waitNanos;
+                while (!tryAcquire()) {
+                    if (nanos <= 0) {
+                        rejected.increment();
+                        return false;
+                    }
+                    nanos = available.awaitNanos(nanos);
+                }
+                return true;
+            } finally {
+                waiting.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Gives a slot back
+         * @param rttNanos how long the call took, it moves the limit when adaptive
+         */
+        public void release(long rttNanos) {
+            final int running = inFlight.getAndDecrement();
+            if (adaptive) sample(rttNanos, running);
+            if (waiting.get() > 0) {
+                lock.lock();
+                try {
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Moves the limit by the gradient of the long term latency over the short term one
+         * The limit grows only when the calls actually use it, an idle group keeps its limit
+         * @param rttNanos latency of a call
+         * @param running calls running when it finished, itself included
+         */
+        synchronized void sample(long rttNanos, int running) {
+            final double rtt = Math.max(1, rttNanos);
+            shortRtt = shortRtt == 0 ? rtt : shortRtt * (1 - SHORT_WEIGHT) + rtt * SHORT_WEIGHT;
+            longRtt = longRtt == 0 ? rtt : longRtt * (1 - LONG_WEIGHT) + rtt * LONG_WEIGHT;
+            // a long lasting step down in latency should not be held back by the old long term one
+            if (longRtt > 2 * shortRtt) longRtt = 2 * shortRtt;
+            if (running < limitEstimate / 2) return;
+            final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+            final double headroom = Math.sqrt(limitEstimate);
+            final double next = limitEstimate * gradient + headroom;
+            limitEstimate = Math.max(min, Math.min(max, limitEstimate * (1 - SMOOTHING) + next * SMOOTHING));
+            final int newLimit = (int) limitEstimate;
+            if (newLimit != limit) {
+                logger.debug("Bulkhead '{}' limit {} -> {}", name, limit, newLimit);
+                limit = newLimit;
+            }
+        }
+
+        /**
+         * Stats of the group
+         * @return map of limit, in flight, waiting and rejected
+         */
+        public Map<String, Object> stats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put(LIMIT, limit);
+            stats.put("in_flight", inFlight());
+            stats.put("waiting", waiting());
+            stats.put("rejected", rejected());
+            return stats;
+        }
+    }
+
+    /**
+     * Creates a spark.Route guarded by the bulkhead of the route, if any
+     * @param path the route path, as in the model
+     * @param route the underlying spark.Route
+     * @return a spark.Route
+     */
+    static Route route(String path, Route route) {
+        final Limiter limiter = BULKHEADS.get().limiter(path);
+        if (limiter == null) return route;
+        logger.info("Route '{}' is in bulkhead '{}'", path, limiter.name());
+        return (request, response) -> {
+            if (!limiter.acquire()) {
+                response.header("Retry-After", "1");
+                return Spark.halt(REJECT_STATUS, "Service Unavailable");
+            }
+            final long start = System.nanoTime();
+            try {
+                return route.handle(request, response);
+            } finally {
+                limiter.release(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Sets up the Bulkhead in effect, must be done before routes get created
+     * @param bulkhead the Bulkhead
+     */
+    static void configure(Bulkhead bulkhead) {
+        BULKHEADS.set(bulkhead);
+    }
+
+    /**
+     * Creates a Bulkhead from configuration
+     * group_name : [ routes : [ route paths ], limit : n, queue : n, wait : ms, adaptive : bool, min : n, max : n ]
+     * queue and wait default to 0, min to 1, max to 10 times the limit
+     * @param config the configuration map
+     * @return a Bulkhead
+     */
+    static Bulkhead fromConfig(Map<String, Object> config) {
+        if (config.isEmpty()) return NONE;
+        final Map<String, Limiter> byRoute = new HashMap<>();
+        final List<Limiter> limiters = new ArrayList<>();
+        config.forEach((name, c) -> {
+            final Map<String, Object> gc = (Map) c;
+            final int limit = ZNumber.integer(gc.getOrDefault(LIMIT, 16), 16).intValue();
+            final int queue = ZNumber.integer(gc.getOrDefault(QUEUE, 0), 0).intValue();
+            final long wait = ZNumber.integer(gc.getOrDefault(WAIT, 0), 0).longValue();
+            final boolean adaptive = ZTypes.bool(gc.getOrDefault(ADAPTIVE, false), false);
+            final int min = ZNumber.integer(gc.getOrDefault(MIN, 1), 1).intValue();
+            final int max = ZNumber.integer(gc.getOrDefault(MAX, limit * 10), limit * 10).intValue();
+            final Limiter limiter = new Limiter(name, limit, queue, wait, adaptive, min, max);
+            limiters.add(limiter);
+            final List<?> routes = (List<?>) gc.getOrDefault(ROUTES, Collections.emptyList());
+            routes.forEach(r -> {
+                final Limiter prev = byRoute.put(r.toString(), limiter);
+                if (prev != null) logger.warn("Route '{}' is in bulkheads '{}' and '{}', using '{}'", r, prev.name(), name, name);
+            });
+        });
+        return new Bulkhead() {
+            @Override
+            public Limiter limiter(String route) {
+                return byRoute.get(route);
+            }
+
+            @Override
+            public Collection<Limiter> limiters() {
+                return limiters;
+            }
+        };
+    }
+
+    /**
+     * Stats of all the bulkheads
+     * @return map of group name to its stats
+     */
+    static Map<String, Map<String, Object>> stats() {
+        final Map<String, Map<String, Object>> stats = new TreeMap<>();
+        BULKHEADS.get().limiters().forEach(l -> stats.put(l.name(), l.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,552 @@
+package cowj;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import kotlin.KotlinVersion;
+import kotlin.Pair;
+import kotlin.Unit;
+import kotlin.coroutines.Continuation;
+import kotlin.jvm.JvmClassMappingKt;
+import kotlin.reflect.KClass;
+import kotlin.script.experimental.api.KotlinType;
+import kotlin.script.experimental.api.ResultWithDiagnostics;
+import kotlin.script.experimental.api.ScriptCompilationConfiguration;
+import kotlin.script.experimental.api.ScriptCompilationKt;
+import kotlin.script.experimental.api.ScriptEvaluationConfiguration;
+import kotlin.script.experimental.api.SourceCode;
+import kotlin.script.experimental.host.ScriptingHostConfiguration;
+import kotlin.script.experimental.host.StringScriptSource;
+import kotlin.script.experimental.jvm.CompiledJvmScriptsCache;
+import kotlin.script.experimental.jvm.JvmScriptCachingKt;
+import kotlin.script.experimental.jvm.JvmScriptCompilationKt;
+import kotlin.script.experimental.jvm.JvmScriptEvaluationKt;
+import kotlin.script.experimental.jvm.JvmScriptingHostConfigurationKt;
+import kotlin.script.experimental.jvm.util.JvmClasspathUtilKt;
+import kotlin.script.experimental.jvmhost.BasicJvmScriptingHost;
+import kotlin.script.experimental.jvmhost.CompiledScriptJarsCache;
+import kotlin.script.experimental.jvmhost.JvmScriptCompiler;
+import kotlin.script.templates.standard.ScriptTemplateWithBindings;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.tools.GroovyClass;
+import org.jetbrains.kotlin.scripting.compiler.plugin.impl.ScriptJvmCompilerIsolated;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.types.ZTypes;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Persistent on disk cache of compiled script classes
+ * Keyed by hash of the script content and the engine version, so a stale entry can never be picked up
+ * Later boots, and later compilations in the same process, load the bytecode directly instead of compiling
+ * Groovy classes are stored in a file format of our own, Kotlin scripts in jars written by the Kotlin scripting host
+ * A cache file which can not be read or loaded, for whatever reason, is a miss, the script gets compiled again
+ */
+public interface BytecodeCache {
+
+    /**
+     * Logger for the Cowj BytecodeCache
+     */
+    Logger logger = LoggerFactory.getLogger(BytecodeCache.class);
+
+    /**
+     * Key for the bytecode cache configuration inside the jsr section of the scripting section of the Model
+     */
+    String CACHE = "cache";
+
+    /**
+     * Key to enable or disable the cache
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for the directory where the compiled classes are stored
+     */
+    String DIRECTORY = "dir";
+
+    /**
+     * Default directory, relative to the base directory of the Model
+     */
+    String DEFAULT_DIRECTORY = "_/.cowj-cache";
+
+    /**
+     * Extension of a cache file, one file holds all classes compiled from a script
+     */
+    String EXTENSION = ".gcc";
+
+    /**
+     * Extension of a Kotlin cache file, a jar holding all classes compiled from a script
+     */
+    String KOTLIN_EXTENSION = ".jar";
+
+    /**
+     * Max classes in a cache file, a file claiming more is corrupt
+     */
+    int MAX_CLASSES = 4096;
+
+    /**
+     * Max size of a cache file, a larger file is corrupt
+     */
+    long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The cache directory, empty means the cache is disabled
+     */
+    AtomicReference<String> CACHE_DIRECTORY = new AtomicReference<>("");
+
+    /**
+     * Classes already loaded in this process
+     * Key - hash of the script
+     * Value - the main script class
+     */
+    ScriptCache<Class<?>> groovyClasses = ScriptCache.create("groovy");
+
+    /**
+     * Kotlin script classes already loaded in this process
+     * Key - hash of the script
+     * Value - the script class, KotlinScript.NONE if the scripting host could not compile it
+     */
+    ScriptCache<KotlinScript> kotlinClasses = ScriptCache.create("kotlin");
+
+    /**
+     * Sets up the cache
+     * enabled : default true when this section exists
+     * dir : directory for the cache files, default _/.cowj-cache
+     * @param config the configuration map, empty means disabled
+     * @param model the Model, used to interpret paths in the configuration
+     */
+    static void configure(Map<String, Object> config, Model model) {
+        if (config.isEmpty() || !ZTypes.bool(config.getOrDefault(ENABLED, true), true)) {
+            CACHE_DIRECTORY.set("");
+            return;
+        }
+        final String dir = model.interpretPath(config.getOrDefault(DIRECTORY, DEFAULT_DIRECTORY).toString());
+        try {
+            Files.createDirectories(Paths.get(dir));
+            CACHE_DIRECTORY.set(dir);
+            logger.info("Bytecode cache directory : {}", dir);
+        } catch (IOException e) {
+            CACHE_DIRECTORY.set("");
+            logger.warn("Bytecode cache disabled, directory can not be created '{}' : {}", dir, e.toString());
+        }
+    }
+
+    /**
+     * Is the cache enabled
+     * @return true if enabled, false otherwise
+     */
+    static boolean enabled() {
+        return !CACHE_DIRECTORY.get().isEmpty();
+    }
+
+    /**
+     * Computes the key for a script
+     * @param content content of the script
+     * @param engineVersion version of the engine compiling it
+     * @return hex encoded sha-256 of the content and the engine version
+     */
+    static String key(String content, String engineVersion) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(engineVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw CheckedFunctional.Error.error(e);
+        }
+    }
+
+    /**
+     * A ClassLoader which defines classes from already compiled bytecode
+     * Classes are defined lazily, so the order in which they reference each other does not matter
+     */
+    final class BytecodeLoader extends ClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        /**
+         * Creates a BytecodeLoader
+         * @param parent parent ClassLoader, which can resolve everything the scripts refer to
+         * @param classes map of class name to bytecode
+         */
+        public BytecodeLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] bytes = classes.get(name);
+            if (bytes == null) return super.findClass(name);
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * Writes classes into a cache file, atomically
+     * Format - count, then name, length, bytes for each class, main class comes first
+     * @param file the cache file
+     * @param classes ordered map of class name to bytecode
+     * @throws IOException in case of error
+     */
+    static void write(Path file, Map<String, byte[]> classes) throws IOException {
+        final Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeInt(e.getValue().length);
+                out.write(e.getValue());
+            }
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads classes from a cache file
+     * Every count and length gets validated against what the file holds, nothing is allocated on trust
+     * @param file the cache file
+     * @return ordered map of class name to bytecode, main class comes first
+     * @throws IOException in case of error, or if the file is corrupt
+     */
+    static Map<String, byte[]> read(Path file) throws IOException {
+        final long size = Files.size(file);
+        if (size > MAX_FILE_SIZE) throw new IOException("Cache file too large : " + size);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            final int count = in.readInt();
+            if (count <= 0 || count > MAX_CLASSES) throw new IOException("Invalid class count : " + count);
+            final Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final int length = in.readInt();
+                // available() of a byte array stream is exactly what is left
+                if (length <= 0 || length > in.available()) throw new IOException("Invalid class length : " + length);
+                final byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (classes.put(name, bytes) != null) throw new IOException("Duplicate class : " + name);
+            }
+            if (in.available() != 0) throw new IOException("Trailing bytes : " + in.available());
+            return classes;
+        }
+    }
+
+    /**
+     * Compiles a Groovy script into bytecode
+     * @param loader the GroovyClassLoader to resolve references
+     * @param className name of the main script class
+     * @param content content of the script
+     * @return ordered map of class name to bytecode, main class comes first
+     */
+    static Map<String, byte[]> compileGroovy(GroovyClassLoader loader, String className, String content) {
+        final CompilationUnit unit = new CompilationUnit(CompilerConfiguration.DEFAULT, null, loader);
+        unit.addSource(className + ".groovy", content);
+        unit.compile(Phases.CLASS_GENERATION);
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        final List<GroovyClass> compiled = unit.getClasses();
+        compiled.stream().filter(gc -> gc.getName().equals(className))
+                .forEach(gc -> classes.put(gc.getName(), gc.getBytes()));
+        compiled.forEach(gc -> classes.putIfAbsent(gc.getName(), gc.getBytes()));
+        return classes;
+    }
+
+    /**
+     * Defines classes and loads the main one
+     * All classes get defined upfront, so that corrupt bytecode fails here and not while the script runs
+     * @param parent parent ClassLoader, which can resolve everything the scripts refer to
+     * @param classes ordered map of class name to bytecode, main class comes first
+     * @return the main class
+     * @throws ClassNotFoundException in case a class can not be defined
+     */
+    static Class<?> define(ClassLoader parent, Map<String, byte[]> classes) throws ClassNotFoundException {
+        final BytecodeLoader loader = new BytecodeLoader(parent, classes);
+        Class<?> main = null;
+        for (String name : classes.keySet()) {
+            final Class<?> c = loader.loadClass(name);
+            if (main == null) main = c;
+        }
+        return main;
+    }
+
+    /**
+     * Loads the main class of a script from a cache file
+     * @param file the cache file
+     * @param parent parent ClassLoader, which can resolve everything the scripts refer to
+     * @return the main class, null if the file does not exist or can not be used
+     */
+    static Class<?> fromDisk(Path file, ClassLoader parent) {
+        if (!Files.exists(file)) return null;
+        try {
+            final Class<?> main = define(parent, read(file));
+            logger.debug("Bytecode cache hit : {}", file);
+            return main;
+        } catch (Exception | LinkageError e) {
+            logger.warn("Bytecode cache file unusable, recompiling '{}' : {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Gets the main class for a Groovy script
+     * Looks up the process first, then the disk, and compiles only when both miss
+     * @param engine the Groovy JSR-223 engine
+     * @param content content of the script
+     * @return the main script class
+     * @throws ScriptException in case script does not compile
+     */
+    static Class<?> groovyClass(GroovyScriptEngineImpl engine, String content) throws ScriptException {
+        final String key = key(content, GroovySystem.getVersion());
+        try {
+            return groovyClasses.load(key, k -> {
+                final Path file = Paths.get(CACHE_DIRECTORY.get(), k + EXTENSION);
+                final Class<?> cached = fromDisk(file, engine.getClassLoader());
+                if (cached != null) return cached;
+                final Map<String, byte[]> classes = compileGroovy(engine.getClassLoader(), "Script_" + k, content);
+                try {
+                    write(file, classes);
+                } catch (IOException e) {
+                    logger.warn("Bytecode cache file can not be written '{}' : {}", file, e.toString());
+                }
+                return define(engine.getClassLoader(), classes);
+            });
+        } catch (RuntimeException re) {
+            final Throwable cause = CheckedFunctional.Error.cause(re);
+            if (cause instanceof Exception ex) throw new ScriptException(ex);
+            throw re;
+        }
+    }
+
+    /**
+     * Creates a CompiledScript for a Groovy script, through the cache
+     * @param engine the Groovy JSR-223 engine, the script gets evaluated by it
+     * @param content content of the script
+     * @return a CompiledScript
+     * @throws ScriptException in case script does not compile
+     */
+    static CompiledScript groovy(GroovyScriptEngineImpl engine, String content) throws ScriptException {
+        return new GroovyCompiledScript(engine, groovyClass(engine, content));
+    }
+
+    /**
+     * A compiled Kotlin script class
+     * @param constructor constructor of the script, taking the bindings
+     * @param result field holding the value of the last expression, null if the script ends in a statement
+     */
+    record KotlinScript(Constructor<?> constructor, Field result) {
+
+        /**
+         * A script the scripting host could not compile, the JSR-223 engine gets to compile it and report errors
+         */
+        public static final KotlinScript NONE = new KotlinScript(null, null);
+    }
+
+    /**
+     * A CompiledScript running a cached Kotlin script class, the way the Kotlin JSR-223 engine runs it
+     * The script gets the engine scope bindings as its bindings, and returns the value of its last expression
+     */
+    final class KotlinCompiledScript extends CompiledScript {
+
+        private final ScriptEngine engine;
+
+        private final KotlinScript script;
+
+        /**
+         * Creates a KotlinCompiledScript
+         * @param engine the Kotlin JSR-223 engine, used for the default context only
+         * @param script the script class
+         */
+        public KotlinCompiledScript(ScriptEngine engine, KotlinScript script) {
+            this.engine = engine;
+            this.script = script;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            try {
+                final Object instance = script.constructor().newInstance(context.getBindings(ScriptContext.ENGINE_SCOPE));
+                return script.result() == null ? null : script.result().get(instance);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Exception ex) throw new ScriptException(ex);
+                throw CheckedFunctional.Error.error(e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+    }
+
+    /**
+     * Kotlin scripting host compiling through the jar cache
+     * Kept apart, so that Kotlin scripting classes get loaded only when a Kotlin script gets compiled
+     * Scripts get compiled against ScriptTemplateWithBindings, same as the JSR-223 default script, which it extends
+     */
+    final class KotlinHost {
+
+        private KotlinHost() {}
+
+        /**
+         * Compilation classpath, everything the Cowj classloader sees, as the JSR-223 engine does
+         */
+        private static final List<File> CLASSPATH = JvmClasspathUtilKt.scriptCompilationClasspathFromContext(
+                new String[0], BytecodeCache.class.getClassLoader(), true, false);
+
+        /**
+         * Script classes get loaded as children of the Cowj classloader, so bindings can be cast to Cowj and Spark types
+         */
+        private static final ScriptEvaluationConfiguration EVALUATION = new ScriptEvaluationConfiguration(b -> {
+            b.put(JvmScriptEvaluationKt.getBaseClassLoader(JvmScriptEvaluationKt.getJvm(ScriptEvaluationConfiguration.Companion)),
+                    BytecodeCache.class.getClassLoader());
+            return Unit.INSTANCE;
+        });
+
+        /**
+         * The scripting host, used to run the suspending calls of the scripting API
+         */
+        private static final BasicJvmScriptingHost HOST = new BasicJvmScriptingHost();
+
+        /**
+         * Runs a suspending call of the scripting API to completion
+         * @param call the call, given the continuation
+         * @return result of the call
+         * @param <T> type of the result
+         */
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static <T> ResultWithDiagnostics<T> run(java.util.function.Function<Continuation, Object> call) {
+            return (ResultWithDiagnostics<T>) HOST.runInCoroutineContext(call::apply);
+        }
+
+        /**
+         * Loads the class of a compiled script
+         * @param compiled the compiled script, fresh or read from a jar
+         * @return the script class
+         * @throws ReflectiveOperationException in case the class can not be loaded
+         */
+        private static KotlinScript load(kotlin.script.experimental.api.CompiledScript compiled) throws ReflectiveOperationException {
+            final ResultWithDiagnostics<KClass<?>> r = run(c -> compiled.getClass(EVALUATION, c));
+            if (!(r instanceof ResultWithDiagnostics.Success<KClass<?>> success)) {
+                throw new ClassNotFoundException("Script class can not be loaded : " + r.getReports());
+            }
+            final Class<?> type = JvmClassMappingKt.getJavaClass(success.getValue());
+            // the result field is known only once the class got loaded
+            final Pair<String, KotlinType> result = compiled.getResultField();
+            final Field field = result == null ? null : type.getDeclaredField(result.getFirst());
+            if (field != null) field.setAccessible(true);
+            return new KotlinScript(type.getConstructor(Map.class), field);
+        }
+
+        /**
+         * The jar cache of the scripting host, where any failure to read or load a jar is a miss
+         * @param jars the jar cache
+         */
+        private record JarCache(CompiledScriptJarsCache jars) implements CompiledJvmScriptsCache {
+
+            @Override
+            public kotlin.script.experimental.api.CompiledScript get(SourceCode script, ScriptCompilationConfiguration config) {
+                final File file = jars.getScriptToFile().invoke(script, config);
+                if (file == null || !file.exists()) return null;
+                try {
+                    final kotlin.script.experimental.api.CompiledScript compiled = jars.get(script, config);
+                    if (compiled != null) {
+                        load(compiled);
+                        logger.debug("Bytecode cache hit : {}", file);
+                    }
+                    return compiled;
+                } catch (Exception | LinkageError e) {
+                    logger.warn("Bytecode cache file unusable, recompiling '{}' : {}", file, e.toString());
+                    return null;
+                }
+            }
+
+            @Override
+            public void store(kotlin.script.experimental.api.CompiledScript compiled, SourceCode script, ScriptCompilationConfiguration config) {
+                try {
+                    jars.store(compiled, script, config);
+                } catch (Exception e) {
+                    logger.warn("Bytecode cache file can not be written for '{}' : {}", script.getName(), e.toString());
+                }
+            }
+        }
+
+        /**
+         * Compiles a Kotlin script, through the jar cache
+         * @param file the cache jar of the script
+         * @param content content of the script
+         * @return the script class, NONE if it does not compile
+         * @throws ReflectiveOperationException in case the class can not be loaded
+         */
+        static KotlinScript compile(Path file, String content) throws ReflectiveOperationException {
+            final ScriptingHostConfiguration host = new ScriptingHostConfiguration(
+                    new ScriptingHostConfiguration[]{ JvmScriptingHostConfigurationKt.getDefaultJvmScriptingHostConfiguration() }, b -> {
+                b.put(JvmScriptCachingKt.getCompilationCache(JvmScriptingHostConfigurationKt.getJvm(ScriptingHostConfiguration.Companion)),
+                        new JarCache(new CompiledScriptJarsCache((script, config) -> file.toFile())));
+                return Unit.INSTANCE;
+            });
+            final ScriptCompilationConfiguration config = new ScriptCompilationConfiguration(b -> {
+                b.put(ScriptCompilationKt.getBaseClass(ScriptCompilationConfiguration.Companion),
+                        new KotlinType(JvmClassMappingKt.getKotlinClass(ScriptTemplateWithBindings.class)));
+                b.put(ScriptCompilationKt.getHostConfiguration(ScriptCompilationConfiguration.Companion), host);
+                JvmScriptCompilationKt.updateClasspath(b, CLASSPATH);
+                return Unit.INSTANCE;
+            });
+            final JvmScriptCompiler compiler = new JvmScriptCompiler(host, new ScriptJvmCompilerIsolated(host));
+            final SourceCode source = new StringScriptSource(content, file.getFileName().toString().replace(KOTLIN_EXTENSION, ".kts"));
+            final ResultWithDiagnostics<kotlin.script.experimental.api.CompiledScript> r = run(c -> compiler.invoke(source, config, c));
+            if (r instanceof ResultWithDiagnostics.Success<kotlin.script.experimental.api.CompiledScript> success) {
+                return load(success.getValue());
+            }
+            logger.warn("Kotlin script not cached, it does not compile with the scripting host : {}", r.getReports());
+            return KotlinScript.NONE;
+        }
+    }
+
+    /**
+     * Creates a CompiledScript for a Kotlin script, through the cache
+     * Looks up the process first, then the disk, and compiles only when both miss
+     * A script the scripting host can not compile, say it uses JSR-223 only members, gets compiled by the engine, uncached
+     * @param engine the Kotlin JSR-223 engine
+     * @param content content of the script
+     * @return a CompiledScript
+     * @throws ScriptException in case script does not compile
+     */
+    static CompiledScript kotlin(ScriptEngine engine, String content) throws ScriptException {
+        final String key = key(content, KotlinVersion.CURRENT.toString());
+        final KotlinScript script;
+        try {
+            script = kotlinClasses.load(key, k -> KotlinHost.compile(Paths.get(CACHE_DIRECTORY.get(), k + KOTLIN_EXTENSION), content));
+        } catch (RuntimeException re) {
+            final Throwable cause = CheckedFunctional.Error.cause(re);
+            if (cause instanceof Exception ex) throw new ScriptException(ex);
+            throw re;
+        }
+        if (script == KotlinScript.NONE) return ((Compilable) engine).compile(content);
+        return new KotlinCompiledScript(engine, script);
+    }
+}
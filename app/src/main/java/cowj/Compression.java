@@ -0,0 +1,527 @@
+package cowj;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+import spark.Spark;
+import spark.staticfiles.MimeType;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response compression
+ * Route responses get gzip encoded after the route and all filters ran, when the client accepts gzip,
+ * the content type is compressible and the body is large enough
+ * Streamed route results never reach the filter, they get gzip encoded while being written, by the same rules
+ * Static files get compressed once, at boot, the precompressed variants are served as is
+ */
+public interface Compression {
+
+    /**
+     * Logger for the Cowj Compression
+     */
+    Logger logger = LoggerFactory.getLogger(Compression.class);
+
+    /**
+     * Key for enabling compression
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for the min size of a body in bytes, smaller ones are not worth compressing
+     */
+    String MIN_SIZE = "min_size";
+
+    /**
+     * Key for the list of compressible MIME types, type/* matches all the subtypes
+     */
+    String MIME = "mime";
+
+    /**
+     * Key for precompressing the static folder at boot
+     */
+    String STATIC = "static";
+
+    /**
+     * Key for the max bytes the precompressed static variants can hold
+     */
+    String CACHE = "cache";
+
+    /**
+     * Gzip encoding
+     */
+    String GZIP = "gzip";
+
+    /**
+     * Accept-Encoding header
+     */
+    String ACCEPT_ENCODING = "Accept-Encoding";
+
+    /**
+     * Content-Encoding header
+     */
+    String CONTENT_ENCODING = "Content-Encoding";
+
+    /**
+     * Vary header
+     */
+    String VARY = "Vary";
+
+    /**
+     * Vary: Accept-Encoding
+     */
+    HttpField VARY_ACCEPT_ENCODING = new HttpField(HttpHeader.VARY, ACCEPT_ENCODING);
+
+    /**
+     * Default compressible MIME types
+     */
+    List<String> DEFAULT_MIME = List.of("text/*", "application/json", "application/javascript",
+            "application/xml", "image/svg+xml");
+
+    /**
+     * Is compression enabled
+     * @return true if enabled
+     */
+    boolean enabled();
+
+    /**
+     * Min size of a body in bytes to get compressed
+     * @return min size
+     */
+    int minSize();
+
+    /**
+     * Compressible MIME types, type/* matches all the subtypes
+     * @return list of MIME types
+     */
+    List<String> mimeTypes();
+
+    /**
+     * Precompressed variants of the static folder
+     * @return Precompressed, or null if static files are not precompressed
+     */
+    Precompressed precompressed();
+
+    /**
+     * Is a content type compressible
+     * @param contentType content type, parameters like charset are ignored
+     * @return true if compressible
+     */
+    default boolean compressible(String contentType) {
+        if (contentType == null) return false;
+        final int semi = contentType.indexOf(';');
+        final String type = (semi < 0 ? contentType : contentType.substring(0, semi)).trim().toLowerCase(Locale.ROOT);
+        for (String m : mimeTypes()) {
+            if (m.endsWith("/*") ? type.startsWith(m.substring(0, m.length() - 1)) : type.equals(m)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Does a client accept gzip
+     * @param acceptEncoding value of the Accept-Encoding header
+     * @return true if gzip or * is accepted with non zero quality
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String coding : acceptEncoding.split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!GZIP.equals(name) && !"*".equals(name)) continue;
+            for (int i = 1; i < parts.length; i++) {
+                final String p = parts[i].trim();
+                if (!p.startsWith("q=")) continue;
+                final Number q = ZNumber.number(p.substring(2).trim());
+                if (q != null && q.doubleValue() <= 0.0) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Creates the afterAfter filter which marks responses for gzip encoding
+     * Spark gzips the body while writing it out, once Content-Encoding is gzip
+     * @return a spark.Filter
+     */
+    default Filter filter() {
+        return (request, response) -> {
+            final HttpServletResponse raw = response.raw();
+            if (raw.isCommitted() || raw.getHeader(CONTENT_ENCODING) != null) return;
+            final int status = raw.getStatus();
+            if (status == 204 || status == 304 || status < 200) return;
+            final String body = response.body();
+            if (body == null || body.length() < minSize()) return;
+            // spark defaults to text/html when nothing is set
+            final String type = response.type() == null ? "text/html" : response.type();
+            if (!compressible(type)) return;
+            vary(raw);
+            if (!acceptsGzip(request.headers(ACCEPT_ENCODING))) return;
+            response.header(CONTENT_ENCODING, GZIP);
+        };
+    }
+
+    /**
+     * Adds Accept-Encoding to the Vary header, unless it is already there, keeping whatever else it holds
+     * @param response the servlet response
+     */
+    static void vary(HttpServletResponse response) {
+        for (String value : response.getHeaders(VARY)) {
+            for (String name : value.split(",")) {
+                final String n = name.trim();
+                if (n.equalsIgnoreCase(ACCEPT_ENCODING) || n.equals("*")) return;
+            }
+        }
+        response.addHeader(VARY, ACCEPT_ENCODING);
+    }
+
+    /**
+     * Adds Accept-Encoding to the Vary header of a Jetty response, unless it is already there
+     * @param headers the response headers
+     */
+    static void vary(HttpFields.Mutable headers) {
+        headers.ensureField(VARY_ACCEPT_ENCODING);
+    }
+
+    /**
+     * Gets the OutputStream a streamed body gets written to, bypassing the afterAfter filter
+     * It is gzip encoded, the same as the filter would do, if the Compression attached compresses the content type
+     * and the client accepts gzip, it flushes through, so streaming stays streaming
+     * The content type must be set before, call finish() when done
+     * @param request the servlet request, null if not known, then nothing gets compressed
+     * @param response the servlet response
+     * @param length length of the body in bytes, -1 if not known upfront, then min size does not apply
+     * @return the OutputStream to write the body to
+     * @throws IOException in case the response OutputStream can not be had
+     */
+    static OutputStream outputStream(HttpServletRequest request, HttpServletResponse response, long length) throws IOException {
+        final OutputStream out = response.getOutputStream();
+        final Compression compression = ATTACHED.get();
+        if (!compression.enabled() || request == null || response.getHeader(CONTENT_ENCODING) != null) return out;
+        if (length >= 0 && length < compression.minSize()) return out;
+        if (!compression.compressible(response.getContentType())) return out;
+        vary(response);
+        if (!acceptsGzip(request.getHeader(ACCEPT_ENCODING))) return out;
+        response.setHeader(CONTENT_ENCODING, GZIP);
+        return new GZIPOutputStream(out, 8192, true);
+    }
+
+    /**
+     * Finishes a streamed body, writing the gzip trailer if it got compressed, and flushes it out
+     * The response gets committed, so Spark does not write a body after
+     * @param out what outputStream() returned
+     * @throws IOException in case writing fails
+     */
+    static void finish(OutputStream out) throws IOException {
+        if (out instanceof GZIPOutputStream gz) gz.finish();
+        out.flush();
+    }
+
+    /**
+     * Makes Spark compress responses, must be called after all other afterAfter filters are mapped
+     */
+    default void attach() {
+        ATTACHED.set(this);
+        if (!enabled()) return;
+        Spark.afterAfter(filter());
+        logger.info("Compression : gzip, min size {}, types {}", minSize(), mimeTypes());
+    }
+
+    /**
+     * Decorates the Jetty Handler Spark creates, to serve precompressed static files before Spark does
+     * @return a handler decorator, or null if there is nothing to decorate
+     */
+    default UnaryOperator<Handler> handler() {
+        final Precompressed precompressed = precompressed();
+        if (!enabled() || precompressed == null) return null;
+        return precompressed::wrap;
+    }
+
+    /**
+     * A precompressed variant of a static file
+     * @param source the static file
+     * @param lastModified last modified time of the static file when it got compressed
+     * @param contentType content type of the static file
+     * @param gzip gzip encoded bytes
+     */
+    record Variant(File source, long lastModified, String contentType, byte[] gzip) {
+
+        /**
+         * Is the static file unchanged since it got compressed
+         * @return true if still fresh
+         */
+        public boolean fresh() {
+            return source.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * Precompressed variants of the static folder, keyed by the request path
+     */
+    final class Precompressed {
+
+        private final Map<String, Variant> variants = new ConcurrentHashMap<>();
+
+        private final AtomicLong hits = new AtomicLong();
+
+        /**
+         * Size of all the compressed variants in bytes
+         */
+        public final long size;
+
+        private Precompressed(Map<String, Variant> variants) {
+            this.variants.putAll(variants);
+            this.size = variants.values().stream().mapToLong(v -> v.gzip.length).sum();
+        }
+
+        /**
+         * Gets the precompressed variant for a request path
+         * @param path request path
+         * @return Variant or null
+         */
+        public Variant variant(String path) {
+            final String key = path.endsWith("/") ? path + "index.html" : path;
+            final Variant v = variants.get(key);
+            if (v == null) return null;
+            if (v.fresh()) return v;
+            // the file changed, Spark serves it from now on
+            variants.remove(key);
+            return null;
+        }
+
+        /**
+         * Number of requests served from the precompressed variants
+         * @return hits
+         */
+        public long hits() {
+            return hits.get();
+        }
+
+        /**
+         * Number of precompressed variants
+         * @return count
+         */
+        public int count() {
+            return variants.size();
+        }
+
+        /**
+         * Serves a precompressed variant, if there is one and the client accepts gzip
+         * @param request the Jetty request
+         * @param response the Jetty response
+         * @param callback completed once the variant got written
+         * @return true if served, false if Spark should handle the request
+         */
+        public boolean serve(Request request, Response response, Callback callback) {
+            final String method = request.getMethod();
+            if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method)) return false;
+            final Variant v = variant(Router.PathPattern.decode(request.getHttpURI().getCanonicalPath()));
+            if (v == null) return false;
+            final HttpFields.Mutable headers = response.getHeaders();
+            vary(headers);
+            if (!acceptsGzip(request.getHeaders().get(HttpHeader.ACCEPT_ENCODING))) return false;
+            response.setStatus(HttpStatus.OK_200);
+            headers.put(HttpHeader.CONTENT_TYPE, v.contentType());
+            headers.put(HttpHeader.CONTENT_ENCODING, GZIP);
+            headers.put(HttpHeader.CONTENT_LENGTH, v.gzip().length);
+            hits.incrementAndGet();
+            if (HttpMethod.GET.is(method)) {
+                response.write(true, ByteBuffer.wrap(v.gzip()), callback);
+            } else {
+                callback.succeeded();
+            }
+            return true;
+        }
+
+        /**
+         * Wraps a Jetty Handler, so that precompressed variants get served before it
+         * @param handler the Jetty Handler Spark created
+         * @return wrapped handler
+         */
+        public Handler wrap(Handler handler) {
+            return new Handler.Wrapper(handler) {
+                @Override
+                public boolean handle(Request request, Response response, Callback callback) throws Exception {
+                    return serve(request, response, callback) || super.handle(request, response, callback);
+                }
+            };
+        }
+
+        /**
+         * Gzip encodes bytes, with the best compression, as it happens only once
+         * @param data bytes
+         * @return gzip encoded bytes
+         * @throws IOException never really
+         */
+        static byte[] gzip(byte[] data) throws IOException {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+            try (GZIPOutputStream gz = new GZIPOutputStream(bos) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                gz.write(data);
+            }
+            return bos.toByteArray();
+        }
+
+        /**
+         * Compresses the static folder
+         * Files which are too small, not compressible, or do not get smaller are left to Spark
+         * @param root the static folder
+         * @param compression to decide what is compressible
+         * @param maxBytes max bytes all the variants can hold together
+         * @return Precompressed
+         */
+        public static Precompressed build(Path root, Compression compression, long maxBytes) {
+            final Map<String, Variant> variants = new HashMap<>();
+            if (!Files.isDirectory(root)) return new Precompressed(variants);
+            long total = 0;
+            try (Stream<Path> files = Files.walk(root)) {
+                final Iterator<Path> it = files.filter(Files::isRegularFile).iterator();
+                while (it.hasNext()) {
+                    final Path p = it.next();
+                    final String key = "/" + root.relativize(p).toString().replace(File.separatorChar, '/');
+                    final String type = MimeType.fromPathInfo(key);
+                    final long length = Files.size(p);
+                    if (length < compression.minSize() || !compression.compressible(type)) continue;
+                    final File source = p.toFile();
+                    final long lastModified = source.lastModified();
+                    final byte[] gz = gzip(Files.readAllBytes(p));
+                    if (gz.length >= length) continue;
+                    if (total + gz.length > maxBytes) {
+                        logger.warn("Compression : static cache full at {} bytes, skipping {}", total, key);
+                        continue;
+                    }
+                    total += gz.length;
+                    variants.put(key, new Variant(source, lastModified, type, gz));
+                }
+            } catch (IOException e) {
+                logger.error("Compression : failed precompressing static folder {}", root, e);
+            }
+            final Precompressed precompressed = new Precompressed(variants);
+            logger.info("Compression : precompressed {} static files, {} bytes", precompressed.count(), precompressed.size);
+            return precompressed;
+        }
+    }
+
+    /**
+     * No compression, as it always was
+     */
+    Compression NONE = new Compression() {
+        @Override
+        public boolean enabled() {
+            return false;
+        }
+
+        @Override
+        public int minSize() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public List<String> mimeTypes() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Precompressed precompressed() {
+            return null;
+        }
+    };
+
+    /**
+     * The Compression attached, streamed bodies get compressed as it says
+     */
+    AtomicReference<Compression> ATTACHED = new AtomicReference<>(NONE);
+
+    /**
+     * Creates Compression from configuration
+     * enabled : true to compress, default true when the section is present
+     * min_size : min bytes of a body to get compressed, default 1024
+     * mime : list of compressible MIME types, default text/*, json, javascript, xml, svg
+     * static : precompress the static folder at boot, default true
+     * cache : max bytes of the precompressed static variants, default 64 MB
+     * @param config the configuration map
+     * @param model the Model, to locate the static folder
+     * @return Compression, NONE if not enabled
+     */
+    static Compression fromConfig(Map<String, Object> config, Model model) {
+        if (config.isEmpty() || !ZTypes.bool(config.getOrDefault(ENABLED, true), true)) return NONE;
+        final int minSize = ZNumber.integer(config.getOrDefault(MIN_SIZE, 1024), 1024).intValue();
+        final List<String> mime = ((List<?>) config.getOrDefault(MIME, DEFAULT_MIME)).stream()
+                .map(o -> o.toString().trim().toLowerCase(Locale.ROOT)).toList();
+        final Compression compression = new Compression() {
+            @Override
+            public boolean enabled() {
+                return true;
+            }
+
+            @Override
+            public int minSize() {
+                return minSize;
+            }
+
+            @Override
+            public List<String> mimeTypes() {
+                return mime;
+            }
+
+            @Override
+            public Precompressed precompressed() {
+                return null;
+            }
+        };
+        if (!ZTypes.bool(config.getOrDefault(STATIC, true), true)) return compression;
+        final long maxBytes = ZNumber.integer(config.getOrDefault(CACHE, 64 * 1024 * 1024), 64 * 1024 * 1024).longValue();
+        final Precompressed precompressed = Precompressed.build(Path.of(model.staticPath()), compression, maxBytes);
+        return new Compression() {
+            @Override
+            public boolean enabled() {
+                return true;
+            }
+
+            @Override
+            public int minSize() {
+                return minSize;
+            }
+
+            @Override
+            public List<String> mimeTypes() {
+                return mime;
+            }
+
+            @Override
+            public Precompressed precompressed() {
+                return precompressed;
+            }
+        };
+    }
+}
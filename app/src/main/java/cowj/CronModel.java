@@ -78,6 +78,7 @@ public interface CronModel {
                 final String jobName = jobDetail.getKey().getName();
                 Scriptable scriptable = Scriptable.UNIVERSAL.create("cron:" + jobName, scriptFile);
                 logger.info("Starting job '{}' ==> {}", jobName, scriptFile);
+                final long start = System.nanoTime();
                 try {
                     Bindings b = new SimpleBindings();
                     b.put(JOB_EXEC_CONTEXT, context);
@@ -86,7 +87,10 @@ public interface CronModel {
                     logger.info("Completed job '{}' ==> {}", jobName, scriptFile);
                 } catch (Throwable t) {
                     logger.error("Error in job '{}' ==> {} : {}", jobName, scriptFile, t.toString());
+                    Metrics.counter(Metrics.CRON_ERRORS, "Cron jobs failing", "job", jobName).increment();
                     throw new JobExecutionException(t);
+                } finally {
+                    Metrics.histogram(Metrics.CRON_SECONDS, "Latency of cron jobs", "job", jobName).record(System.nanoTime() - start);
                 }
             }
         }
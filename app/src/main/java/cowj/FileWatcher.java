@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -42,7 +43,7 @@ interface FileWatcher extends Consumer<String>, Predicate<String> {
     /**
      * Registry for  FileWatcher
      */
-    List<FileWatcher> FILE_WATCHERS = new ArrayList<>( List.of(FILE_MODIFICATION_LOGGER) );
+    List<FileWatcher> FILE_WATCHERS = new CopyOnWriteArrayList<>( List.of(FILE_MODIFICATION_LOGGER) );
 
     /**
      * Starts watching and emitting File Modification events for a directory, recursively
@@ -120,4 +121,43 @@ interface FileWatcher extends Consumer<String>, Predicate<String> {
         final FileWatcher fileWatcher = ofCache(cache,load);
         FILE_WATCHERS.add(fileWatcher);
     }
+
+    /**
+     * Creates a FileWatcher which can reload resource in a ScriptCache
+     * The reload is atomic, readers never see the resource missing
+     * @param cache a ScriptCache containing the cached resources, keyed against file path
+     * @param load a loader function which can recreate resource from a file path
+     * @return a FileWatcher which reloads resources
+     * @param <T> type of the resource
+     */
+    static <T> FileWatcher ofCache(ScriptCache<T> cache, ScriptCache.Loader<T> load){
+        Objects.requireNonNull(cache);
+        Objects.requireNonNull(load);
+        return new FileWatcher() {
+            @Override
+            public boolean test(String s) {
+                return cache.containsKey(s);
+            }
+
+            @Override
+            public void accept(String s) {
+                try {
+                    cache.reload(s, load);
+                    logger.info("File was reloaded : " + s);
+                } catch ( Throwable error){
+                    logger.error("File Loading Error for file '{}' : {}", s, error.toString());
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a FileWatcher which can reload resource in a ScriptCache & register it
+     * @param cache a ScriptCache containing the cached resources, keyed against file path
+     * @param load a loader function which can recreate resource from a file path
+     * @param <T> type of the resource
+     */
+    static <T> void ofCacheAndRegister( ScriptCache<T> cache, ScriptCache.Loader<T> load ){
+        FILE_WATCHERS.add(ofCache(cache,load));
+    }
 }
\ No newline at end of file
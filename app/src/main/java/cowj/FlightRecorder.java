@@ -0,0 +1,452 @@
+package cowj;
+
+import jdk.jfr.*;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * JDK Flight Recorder events for the work Cowj does itself
+ * Script compile and exec, schema validation, token verification, JDBC queries and storage I/O
+ * The events are disabled by default, the cowj.jfc profile shipped in the manual enables them :
+ * java -XX:StartFlightRecording:settings=default,settings=cowj.jfc,filename=cowj.jfr ...
+ * With no recording asking for them, begin() and shouldCommit() are all they cost, and the JIT folds those away
+ * Usage is always the same, start() before the work, record(...) after it, fields only get filled in when committed
+ */
+public interface FlightRecorder {
+
+    /**
+     * Category of all Cowj events
+     */
+    String CATEGORY = "Cowj";
+
+    /**
+     * Loading and compiling a script, for any engine
+     */
+    @Name("cowj.ScriptCompile")
+    @Label("Script Compile")
+    @Category({CATEGORY, "Script"})
+    @Description("Loading and compiling a script")
+    @Enabled(false)
+    @StackTrace(false)
+    final class ScriptCompile extends Event {
+
+        @Label("Engine")
+        String engine;
+
+        @Label("Script")
+        String script;
+
+        @Label("Success")
+        boolean success;
+
+        /**
+         * Creates and begins the event
+         * @return a ScriptCompile
+         */
+        public static ScriptCompile start() {
+            final ScriptCompile e = new ScriptCompile();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param engine extension of the script
+         * @param script path of the script
+         * @param success did it compile
+         */
+        public void record(String engine, String script, boolean success) {
+            end();
+            if (!shouldCommit()) return;
+            this.engine = engine;
+            this.script = script;
+            this.success = success;
+            commit();
+        }
+    }
+
+    /**
+     * Executing a script for a route, a filter, an async task or a cron job
+     */
+    @Name("cowj.ScriptExec")
+    @Label("Script Exec")
+    @Category({CATEGORY, "Script"})
+    @Description("Executing a script")
+    @Enabled(false)
+    @StackTrace(false)
+    final class ScriptExec extends Event {
+
+        @Label("Route")
+        String route;
+
+        @Label("Engine")
+        String engine;
+
+        @Label("Script")
+        String script;
+
+        @Label("Success")
+        boolean success;
+
+        /**
+         * Creates and begins the event
+         * @return a ScriptExec
+         */
+        public static ScriptExec start() {
+            final ScriptExec e = new ScriptExec();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param route path the script is mapped to
+         * @param engine extension of the script
+         * @param script path of the script
+         * @param success did it run without throwing
+         */
+        public void record(String route, String engine, String script, boolean success) {
+            end();
+            if (!shouldCommit()) return;
+            this.route = route;
+            this.engine = engine;
+            this.script = script;
+            this.success = success;
+            commit();
+        }
+    }
+
+    /**
+     * Validating a JSON body against a schema
+     */
+    @Name("cowj.SchemaValidation")
+    @Label("Schema Validation")
+    @Category({CATEGORY, "Schema"})
+    @Description("Parsing and validating JSON against a schema")
+    @Enabled(false)
+    @StackTrace(false)
+    final class SchemaValidation extends Event {
+
+        @Label("Schema")
+        String schema;
+
+        @Label("Size")
+        @Description("Length of the JSON text, in chars")
+        long size;
+
+        @Label("Valid")
+        boolean valid;
+
+        /**
+         * Creates and begins the event
+         * @return a SchemaValidation
+         */
+        public static SchemaValidation start() {
+            final SchemaValidation e = new SchemaValidation();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param schema path of the schema
+         * @param size length of the JSON text
+         * @param valid did it validate
+         */
+        public void record(String schema, long size, boolean valid) {
+            end();
+            if (!shouldCommit()) return;
+            this.schema = schema;
+            this.size = size;
+            this.valid = valid;
+            commit();
+        }
+    }
+
+    /**
+     * Verifying a token into a user, from the cache or not
+     */
+    @Name("cowj.TokenVerification")
+    @Label("Token Verification")
+    @Category({CATEGORY, "Auth"})
+    @Description("Getting the user from a token")
+    @Enabled(false)
+    @StackTrace(false)
+    final class TokenVerification extends Event {
+
+        @Label("Authenticator")
+        String authenticator;
+
+        @Label("Cache Hit")
+        boolean cacheHit;
+
+        @Label("Success")
+        boolean success;
+
+        /**
+         * Creates and begins the event
+         * @return a TokenVerification
+         */
+        public static TokenVerification start() {
+            final TokenVerification e = new TokenVerification();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param authenticator the authenticator, its class name gets recorded
+         * @param cacheHit was the user found in the cache
+         * @param success was a user found
+         */
+        public void record(Object authenticator, boolean cacheHit, boolean success) {
+            end();
+            if (!shouldCommit()) return;
+            this.authenticator = authenticator.getClass().getName();
+            this.cacheHit = cacheHit;
+            this.success = success;
+            commit();
+        }
+    }
+
+    /**
+     * A JDBC query, the query template gets recorded, not the arguments
+     */
+    @Name("cowj.JdbcQuery")
+    @Label("JDBC Query")
+    @Category({CATEGORY, "Data Source"})
+    @Description("A select or an update over JDBC")
+    @Enabled(false)
+    @StackTrace(false)
+    final class JdbcQuery extends Event {
+
+        @Label("Kind")
+        String kind;
+
+        @Label("Query")
+        String query;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Success")
+        boolean success;
+
+        /**
+         * Creates and begins the event
+         * @return a JdbcQuery
+         */
+        public static JdbcQuery start() {
+            final JdbcQuery e = new JdbcQuery();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param kind select or update
+         * @param query the query, before formatting the arguments in
+         * @param rows rows selected or updated, -1 on failure
+         * @param success did it run
+         */
+        public void record(String kind, String query, long rows, boolean success) {
+            end();
+            if (!shouldCommit()) return;
+            this.kind = kind;
+            this.query = query;
+            this.rows = rows;
+            this.success = success;
+            commit();
+        }
+    }
+
+    /**
+     * Reading or writing a file of a storage
+     */
+    @Name("cowj.StorageIO")
+    @Label("Storage I/O")
+    @Category({CATEGORY, "Data Source"})
+    @Description("Reading or writing a file of a storage")
+    @Enabled(false)
+    @StackTrace(false)
+    final class StorageIO extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Storage")
+        String storage;
+
+        @Label("Bucket")
+        String bucket;
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @Description("Bytes read or written, chars for text reads, -1 if unknown or missing")
+        @DataAmount
+        long size;
+
+        /**
+         * Creates and begins the event
+         * @return a StorageIO
+         */
+        public static StorageIO start() {
+            final StorageIO e = new StorageIO();
+            e.begin();
+            return e;
+        }
+
+        /**
+         * Ends and commits the event, if a recording wants it
+         * @param operation read or write
+         * @param storage the storage, its class name gets recorded
+         * @param bucket the bucket
+         * @param path the file
+         * @param size bytes read or written
+         */
+        public void record(String operation, Object storage, String bucket, String path, long size) {
+            end();
+            if (!shouldCommit()) return;
+            this.operation = operation;
+            this.storage = storage.getClass().getName();
+            this.bucket = bucket;
+            this.path = path;
+            this.size = size;
+            commit();
+        }
+    }
+
+    /**
+     * Listing the files under a prefix of a storage
+     * Listings are lazy, the event spans from the listing to the close of the Stream and counts the entries consumed
+     * A Stream which never gets closed never gets recorded, Cowj closes the ones returned from routes
+     */
+    @Name("cowj.StorageList")
+    @Label("Storage List")
+    @Category({CATEGORY, "Data Source"})
+    @Description("Listing the files under a prefix of a storage")
+    @Enabled(false)
+    @StackTrace(false)
+    final class StorageList extends Event {
+
+        @Label("Storage")
+        String storage;
+
+        @Label("Bucket")
+        String bucket;
+
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Entries")
+        long entries;
+
+        /**
+         * Lists, counting the entries, recording once the listing is consumed, or the Stream gets closed, whichever is first
+         * Consumers need not close the Stream, a short circuited one which is never closed does not get recorded
+         * Nothing gets added to the Stream unless a recording wants the event
+         * @param storage the storage, its class name gets recorded
+         * @param bucket the bucket
+         * @param prefix the prefix
+         * @param stream the listing
+         * @param <T> type of the entries
+         * @return the listing
+         */
+        public static <T> Stream<T> of(Object storage, String bucket, String prefix, Stream<T> stream) {
+            final StorageList e = new StorageList();
+            if (!e.isEnabled()) return stream;
+            e.begin();
+            e.storage = storage.getClass().getName();
+            e.bucket = bucket;
+            e.prefix = prefix;
+            final LongAdder entries = new LongAdder();
+            final AtomicBoolean recorded = new AtomicBoolean();
+            final Runnable record = () -> {
+                if (!recorded.compareAndSet(false, true)) return;
+                e.entries = entries.sum();
+                e.end();
+                if (e.shouldCommit()) e.commit();
+            };
+            final Counting<T> counting = new Counting<>(stream.spliterator(), entries, new AtomicInteger(1), record);
+            return StreamSupport.stream(counting, stream.isParallel()).onClose(stream::close).onClose(record);
+        }
+
+        /**
+         * Counts what the listing hands out, runs done once it and all its splits are exhausted
+         * Never reports a size, so that count() and the like have to go through the entries
+         * @param <T> type of the entries
+         */
+        private static final class Counting<T> implements Spliterator<T> {
+
+            private final Spliterator<T> source;
+            private final LongAdder entries;
+            private final AtomicInteger open;
+            private final Runnable done;
+            private boolean finished = false;
+
+            private Counting(Spliterator<T> source, LongAdder entries, AtomicInteger open, Runnable done) {
+                this.source = source;
+                this.entries = entries;
+                this.open = open;
+                this.done = done;
+            }
+
+            private void finish() {
+                if (finished) return;
+                finished = true;
+                if (open.decrementAndGet() == 0) done.run();
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                final boolean advanced = source.tryAdvance(x -> {
+                    entries.increment();
+                    action.accept(x);
+                });
+                if (!advanced) finish();
+                return advanced;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super T> action) {
+                source.forEachRemaining(x -> {
+                    entries.increment();
+                    action.accept(x);
+                });
+                finish();
+            }
+
+            @Override
+            public Spliterator<T> trySplit() {
+                final Spliterator<T> split = source.trySplit();
+                if (split == null) return null;
+                open.incrementAndGet();
+                return new Counting<>(split, entries, open, done);
+            }
+
+            @Override
+            public long estimateSize() {
+                return source.estimateSize();
+            }
+
+            @Override
+            public int characteristics() {
+                return source.characteristics() & ~(SIZED | SUBSIZED);
+            }
+
+            @Override
+            public Comparator<? super T> getComparator() {
+                return source.getComparator();
+            }
+        }
+    }
+}
@@ -1,18 +1,31 @@
 package cowj;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.ResourceLimits;
 import org.graalvm.polyglot.Source;
 import org.graalvm.polyglot.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import zoomba.lang.core.types.ZTypes;
 
 import javax.script.*;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Graal Polyglot Scripting Abstraction for Cowj
@@ -45,22 +58,319 @@ public interface GraalPolyglot extends Scriptable{
 
     /**
      * Given every script runs within its own Context
-     * This gets the Cached Context or new Context
+     * This creates a new Context
      * @return gets a Context
      */
     default Context context(){
-        return contextBuilder().engine( threadedEngine.get() ).build() ;
+        final Context.Builder builder = contextBuilder().engine( engine() );
+        final ResourceLimits limits = Budget.GRAAL_LIMITS.get();
+        if ( limits != null ){
+            builder.resourceLimits( limits );
+        }
+        final Context ctx = builder.build() ;
+        // constant bindings go in only once per Context
+        final Value langBindings = ctx.getBindings( source().getLanguage() );
+        baseBindings().forEach(langBindings::putMember);
+        return ctx;
+    }
+
+    /**
+     * The constant, process wide part of the bindings for the script
+     * These are injected once into every Context when the Context is created
+     * @return a read only map of constant bindings
+     */
+    default Map<String,Object> baseBindings(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Pool of pre-initialised Context for the script
+     * Default is no pooling, every call creates a new Context and closes it after
+     * @return a ResourcePool of Context
+     */
+    default ResourcePool<Context> contextPool(){
+        return ResourcePool.ephemeral( this::context, ctx -> ctx.close(true) );
+    }
+
+    /**
+     * Closes the pooled Context of the script, once it is not going to be run anymore
+     * Idle ones get closed now, the ones in use get closed as they come back
+     */
+    default void close(){
+        contextPool().close();
     }
 
     @Override
     default Object exec(Bindings bindings) throws Exception {
         final Source src = source();
         final String lang = src.getLanguage() ;
-        final Context ctx = context() ;
-        final Value langBindings = ctx.getBindings(lang);
-        bindings.forEach(langBindings::putMember);
-        final Value res = ctx.eval(src);
-        return res.as(Object.class);
+        final ResourcePool<Context> pool = contextPool();
+        final Context ctx = pool.borrow() ;
+        final Value langBindings ;
+        try {
+            langBindings = ctx.getBindings(lang);
+        } catch (Throwable t){
+            pool.invalidate(ctx);
+            throw t;
+        }
+        boolean reusable = true ;
+        // in case the route runs out of time, the Context gets closed from the watchdog
+        final Budget.Cancellation cancellation = Budget.onCancel( () -> ctx.close(true) );
+        try {
+            bindings.forEach(langBindings::putMember);
+            // statement limit is per call, not per lifetime of the Context
+            if ( Budget.GRAAL_LIMITS.get() != null ){
+                ctx.resetLimits();
+            }
+            final Value res = ctx.eval(src);
+            // written straight to the response while the Context is still ours
+            if ( stream(res, bindings.get(REQUEST), bindings.get(RESPONSE)) ) return "" ;
+            // the context goes back to the pool, nothing can refer to it after
+            return toHost(res);
+        } catch (PolyglotException pe){
+            reusable = !( pe.isCancelled() || pe.isExit() || pe.isInternalError() || pe.isResourceExhausted() );
+            throw pe;
+        } catch (Throwable t){
+            reusable = false ;
+            throw t;
+        } finally {
+            // after this the watchdog can not touch the Context anymore
+            cancellation.close();
+            // reset the bindings so that the next borrower does not see them
+            reusable = reusable && EitherMonad.run( () -> {
+                resetBindings(langBindings, bindings.keySet());
+                resetScope(ctx);
+            }).isSuccessful();
+            if ( reusable ){
+                pool.release(ctx);
+            } else {
+                pool.invalidate(ctx);
+            }
+        }
+    }
+
+    /**
+     * Removes the per call bindings from the language bindings
+     * In case a per call binding had shadowed a constant one, the constant one is restored
+     * @param langBindings the language bindings of the Context
+     * @param keys names of the per call bindings
+     */
+    default void resetBindings(Value langBindings, Set<String> keys){
+        final Map<String,Object> base = baseBindings();
+        for ( String key : keys ){
+            if ( base.containsKey(key) ){
+                langBindings.putMember(key, base.get(key));
+            } else {
+                langBindings.removeMember(key);
+            }
+        }
+    }
+
+    /**
+     * Removes what a run left in the global scope of the Context, before the Context gets reused
+     * Default does nothing, the global scope outlives the call
+     * @param ctx the Context the script ran in
+     */
+    default void resetScope(Context ctx){}
+
+    /**
+     * Converts a Polyglot Value into detached host objects
+     * Unlike Value.as(Object.class) the result does not keep any reference to the Context,
+     * which goes back to the pool, or gets closed, right after the call
+     * Dates and times become java.time objects, functions and other executables become null,
+     * anything else which is not a primitive, an array, a hash or a plain object becomes its toString()
+     * @param value a Polyglot Value
+     * @return a host object, String, Boolean, Number, java.time object, List, Map or null
+     */
+    static Object toHost(Value value){
+        if ( value == null || value.isNull() ) return null;
+        if ( value.isHostObject() ) return value.asHostObject();
+        if ( value.isString() ) return value.asString();
+        if ( value.isBoolean() ) return value.asBoolean();
+        if ( value.isNumber() ){
+            if ( value.fitsInInt() ) return value.asInt();
+            if ( value.fitsInLong() ) return value.asLong();
+            return value.asDouble();
+        }
+        if ( value.isInstant() ) return value.asInstant();
+        if ( value.isDate() && value.isTime() ) return LocalDateTime.of( value.asDate(), value.asTime() );
+        if ( value.isDate() ) return value.asDate();
+        if ( value.isTime() ) return value.asTime();
+        if ( value.isDuration() ) return value.asDuration();
+        if ( value.canExecute() || value.canInstantiate() ) return null;
+        if ( value.hasArrayElements() ){
+            final long size = value.getArraySize();
+            final List<Object> list = new ArrayList<>((int)size);
+            for ( long i = 0; i < size; i++ ){
+                list.add( toHost( value.getArrayElement(i)));
+            }
+            return list;
+        }
+        if ( value.hasHashEntries() ){
+            final Map<Object,Object> map = new LinkedHashMap<>();
+            final Value it = value.getHashEntriesIterator();
+            while ( it.hasIteratorNextElement() ){
+                final Value entry = it.getIteratorNextElement();
+                map.put( toHost(entry.getArrayElement(0)), toHost(entry.getArrayElement(1)));
+            }
+            return map;
+        }
+        if ( value.hasMembers() && !value.canExecute() && !value.canInstantiate() ){
+            final Map<String,Object> map = new LinkedHashMap<>();
+            for ( String key : value.getMemberKeys() ){
+                final Value member = value.getMember(key);
+                if ( member == null || member.canExecute() ) continue;
+                map.put(key, toHost(member));
+            }
+            return map;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Key for enabling streaming of route results straight to the response
+     */
+    String STREAM = "stream" ;
+
+    /**
+     * Max nesting of a result written as JSON, deeper ones are taken as cyclic
+     */
+    int MAX_JSON_DEPTH = 512 ;
+
+    /**
+     * Size of the chunks a binary buffer gets copied in
+     */
+    int BUFFER_CHUNK = 8192 ;
+
+    /**
+     * Writes the result of a route straight to the response OutputStream, if streaming is enabled
+     * Strings get written as is, byte arrays and ArrayBuffers as bytes, arrays and plain objects as JSON
+     * Nothing else gets streamed, numbers, booleans, null and other host objects are returned as usual
+     * A streamed result bypasses the response body, after filters and output schema verification do not see it
+     * It gets gzip encoded while being written, if the Compression attached says so
+     * @param value the result of the script
+     * @param request the spark.Request for the call, anything else means nothing gets compressed
+     * @param response the spark.Response for the call, anything else means not a route
+     * @return true if the result was written, false if it has to be returned as usual
+     * @throws IOException in case writing fails
+     */
+    static boolean stream(Value value, Object request, Object response) throws IOException {
+        if ( !(response instanceof Response sparkResponse) ) return false;
+        if ( !ZTypes.bool( POLYGLOT_CONFIG.getOrDefault( STREAM, false), false) ) return false;
+        final HttpServletResponse raw = sparkResponse.raw();
+        if ( raw == null || raw.isCommitted() || raw.getHeader("Content-Encoding") != null ) return false;
+        if ( value == null || value.isNull() ) return false;
+        final String contentType;
+        if ( value.isString() ){
+            contentType = "text/html; charset=utf-8" ;
+        } else if ( value.hasBufferElements() || ( value.isHostObject() && value.asHostObject() instanceof byte[] ) ){
+            contentType = "application/octet-stream" ;
+        } else if ( isJson(value) ){
+            contentType = TypeSystem.RESP_CONTENT_TYPE ;
+        } else {
+            return false;
+        }
+        if ( raw.getContentType() == null ){
+            raw.setContentType(contentType);
+        }
+        final byte[] bytes = value.isString() ? value.asString().getBytes(StandardCharsets.UTF_8) :
+                value.isHostObject() && value.asHostObject() instanceof byte[] b ? b : null ;
+        final long bodySize = bytes != null ? bytes.length : value.hasBufferElements() ? value.getBufferSize() : -1 ;
+        final HttpServletRequest rawRequest = request instanceof Request sparkRequest ? sparkRequest.raw() : null ;
+        final OutputStream out = Compression.outputStream( rawRequest, raw, bodySize );
+        try {
+            if ( bytes != null ){
+                out.write( bytes );
+            } else if ( value.hasBufferElements() ){
+                final long size = value.getBufferSize();
+                final byte[] chunk = new byte[ (int) Math.min( BUFFER_CHUNK, size ) ];
+                for ( long offset = 0; offset < size; offset += chunk.length ){
+                    final int length = (int) Math.min( chunk.length, size - offset );
+                    value.readBuffer( offset, chunk, 0, length );
+                    out.write( chunk, 0, length );
+                }
+            } else {
+                try ( JsonGenerator gen = TypeSystem.OBJECT_MAPPER.getFactory().createGenerator(out) ){
+                    gen.disable( JsonGenerator.Feature.AUTO_CLOSE_TARGET );
+                    writeJson( value, gen, 0 );
+                }
+            }
+            Compression.finish( out );
+        } catch ( Throwable t ){
+            // whatever is still buffered must not go out as a broken body, nor the error as gzip
+            if ( !raw.isCommitted() ){
+                raw.resetBuffer();
+                raw.setHeader( Compression.CONTENT_ENCODING, null );
+            }
+            throw t;
+        }
+        return true;
+    }
+
+    /**
+     * Can a Polyglot Value be written as a JSON array or object
+     * @param value a Polyglot Value
+     * @return true if it is an array, a hash or a plain object
+     */
+    static boolean isJson(Value value){
+        if ( value.isHostObject() || value.isString() || value.isNumber() || value.isBoolean() ) return false;
+        return value.hasArrayElements() || value.hasHashEntries() ||
+                ( value.hasMembers() && !value.canExecute() && !value.canInstantiate() );
+    }
+
+    /**
+     * Writes a Polyglot Value as JSON, without converting it into host objects first
+     * Members which are functions get skipped, as JSON.stringify does
+     * @param value a Polyglot Value
+     * @param gen the JsonGenerator to write into
+     * @param depth current nesting
+     * @throws IOException in case writing fails
+     */
+    static void writeJson(Value value, JsonGenerator gen, int depth) throws IOException {
+        if ( depth > MAX_JSON_DEPTH ) throw new IllegalStateException("Result is too deep to be written as JSON, is it cyclic?");
+        if ( value == null || value.isNull() ){
+            gen.writeNull();
+        } else if ( value.isString() ){
+            gen.writeString( value.asString() );
+        } else if ( value.isBoolean() ){
+            gen.writeBoolean( value.asBoolean() );
+        } else if ( value.isNumber() ){
+            if ( value.fitsInLong() ) {
+                gen.writeNumber( value.asLong() );
+            } else {
+                gen.writeNumber( value.asDouble() );
+            }
+        } else if ( value.isHostObject() ){
+            gen.writeObject( value.asHostObject() );
+        } else if ( value.hasArrayElements() ){
+            final long size = value.getArraySize();
+            gen.writeStartArray();
+            for ( long i = 0; i < size; i++ ){
+                writeJson( value.getArrayElement(i), gen, depth + 1 );
+            }
+            gen.writeEndArray();
+        } else if ( value.hasHashEntries() ){
+            gen.writeStartObject();
+            final Value it = value.getHashEntriesIterator();
+            while ( it.hasIteratorNextElement() ){
+                final Value entry = it.getIteratorNextElement();
+                final Value key = entry.getArrayElement(0);
+                gen.writeFieldName( key.isString() ? key.asString() : key.toString() );
+                writeJson( entry.getArrayElement(1), gen, depth + 1 );
+            }
+            gen.writeEndObject();
+        } else if ( value.hasMembers() && !value.canExecute() && !value.canInstantiate() ){
+            gen.writeStartObject();
+            for ( String key : value.getMemberKeys() ){
+                final Value member = value.getMember(key);
+                if ( member == null || member.canExecute() ) continue;
+                gen.writeFieldName( key );
+                writeJson( member, gen, depth + 1 );
+            }
+            gen.writeEndObject();
+        } else {
+            gen.writeString( value.toString() );
+        }
     }
 
     /**
@@ -84,17 +394,39 @@ public interface GraalPolyglot extends Scriptable{
     }
 
     /**
-     * Build a JavaScript GraalPolyglot
-     * Per request a new context gets created
-     * @param content of this character content
-     * @param filePath using this as name - the file path of the content
+     * Name of the global function which resets the JavaScript global scope, see SCOPE_GUARD
+     */
+    String RESET_SCOPE = "__cowj_reset_scope__" ;
+
+    /**
+     * Evaluated once per JavaScript Context, right after it is created
+     * Remembers the globals the Context starts with, base bindings included, and defines RESET_SCOPE,
+     * which deletes every global added after, or sets it to undefined if it can not be deleted
+     */
+    Source SCOPE_GUARD = Source.create( "js",
+            "Object.defineProperty(globalThis, '" + RESET_SCOPE + "', { value : (function(keep){" +
+            " return function(){ for (const k of Object.getOwnPropertyNames(globalThis)) {" +
+            " if (keep.has(k)) continue; if (!delete globalThis[k]) globalThis[k] = undefined; } };" +
+            " })(new Set(Object.getOwnPropertyNames(globalThis).concat('" + RESET_SCOPE + "'))) })" );
+
+    /**
+     * Build a GraalPolyglot which borrows Context from a pool
+     * The pool is configured via the POOL key of the POLYGLOT_CONFIG, with no pooling, every call gets a new Context
+     * @param source the Source of the script
+     * @param builder the Context.Builder to be used to create Context
+     * @param perThread if true, every platform thread keeps a Context of its own, else the pool is as configured
+     * @param freshScope if true, the JavaScript global scope is reset after every run, see SCOPE_GUARD
      * @return a GraalPolyglot
-     * @throws IOException in case source building fails
      */
-    static GraalPolyglot js( CharSequence content, String filePath) throws IOException {
-        final Source source = Source.newBuilder( "js", content, filePath ).build();
+    static GraalPolyglot pooled( Source source, Context.Builder builder, boolean perThread, boolean freshScope){
         return new GraalPolyglot() {
-            final Context.Builder builder = javaScriptWithCommonJSPath();
+
+            final Map<String,Object> base = Scriptable.baseBindings( source.getName() );
+
+            final ResourcePool<Context> pool = perThread ?
+                    ResourcePool.perThread( this::context, ctx -> ctx.close(true) ) :
+                    ResourcePool.fromConfig( poolConfig(), this::context, ctx -> ctx.close(true) );
+
             @Override
             public Source source() {
                 return source;
@@ -103,9 +435,59 @@ public interface GraalPolyglot extends Scriptable{
             public Context.Builder contextBuilder() {
                 return builder;
             }
+            @Override
+            public Context context() {
+                final Context ctx = GraalPolyglot.super.context();
+                if ( freshScope ){
+                    ctx.eval( SCOPE_GUARD );
+                }
+                return ctx;
+            }
+            @Override
+            public void resetScope(Context ctx) {
+                if ( freshScope ){
+                    ctx.getBindings( "js" ).getMember( RESET_SCOPE ).executeVoid();
+                }
+            }
+            @Override
+            public ResourcePool<Context> contextPool() {
+                return pool;
+            }
+            @Override
+            public Map<String, Object> baseBindings() {
+                return base;
+            }
         };
     }
 
+    /**
+     * Wraps a JavaScript in a block so that every run gets a fresh scope, for pooled Context
+     * Top level let, const and class go into the scope of the block, the completion value is still the result,
+     * and the Source is parsed only once, lines keep their numbers
+     * The var and function it declares still land in the global scope, these get removed by RESET_SCOPE after the run
+     * A "use strict" directive has no effect inside a block, and a #! line is not supported
+     * @param content the script
+     * @return the wrapped script
+     */
+    static String freshScope( CharSequence content) {
+        return "{" + content + "\n}" ;
+    }
+
+    /**
+     * Build a JavaScript GraalPolyglot
+     * Contexts are borrowed from a pool per request, if pooling is enabled, each run then gets a fresh scope
+     * @param content of this character content
+     * @param filePath using this as name - the file path of the content
+     * @return a GraalPolyglot
+     * @throws IOException in case source building fails
+     */
+    static GraalPolyglot js( CharSequence content, String filePath) throws IOException {
+        final boolean pooling = pooling();
+        final CharSequence code = pooling ? freshScope(content) : content ;
+        final Source source = Source.newBuilder( "js", code, filePath ).cached(true).build();
+        return pooled( source, javaScriptWithCommonJSPath(), false, pooling);
+    }
+
     /**
      * Gets a Python3 Context along with  site packages or not and enables it
      * @return a Context Builder
@@ -126,49 +508,186 @@ public interface GraalPolyglot extends Scriptable{
 
     /**
      * Build a Python GraalPolyglot
-     * Per thread a new Context is created
+     * Contexts are borrowed from a pool per request, if pooling is enabled, so it works with virtual threads too
+     * Else every platform thread keeps a Context of its own, virtual threads get a new one per call
+     * A reused Context keeps the module globals of earlier runs, scripts must assign what they read
+     * @see <a href="https://stackoverflow.com/questions/63451148/graalvm-polyglot-thread-issue-in-java-spring-boot-application"></a>
+     * @see <a href="https://github.com/oracle/graalpython/issues/564"></a>
      * @param content of this character content
      * @param filePath using this as name - the file path of the content
      * @return a GraalPolyglot
      * @throws IOException in case source building fails
      */
     static GraalPolyglot python( CharSequence content, String filePath) throws IOException {
-        final Source source = Source.newBuilder( "python", content, filePath ).build();
-        return new GraalPolyglot() {
-
-            final Context.Builder builder = python();
-            /**
-             * ThreadLocal Graal Python Context
-             * This improves the speed by at least 40% as we have tested it - still a far cry from Jython
-             * @see <a href="https://stackoverflow.com/questions/63451148/graalvm-polyglot-thread-issue-in-java-spring-boot-application"></a>
-             * @see <a href="https://github.com/oracle/graalpython/issues/564"></a>
-             */
-            final ThreadLocal<Context> threadedPythonContext = ThreadLocal.withInitial(() -> builder.engine( threadedEngine.get() ).build());
-
-            @Override
-            public Source source() {
-                return source;
-            }
-            @Override
-            public Context context() {
-                return threadedPythonContext.get();
-            }
-        };
+        final Source source = Source.newBuilder( "python", content, filePath ).cached(true).build();
+        return pooled( source, python(), !pooling(), false);
     }
 
     /**
-     * ThreadLocal Engine
+     * ThreadLocal Engine, used when the shared Engine is not enabled
      *
      * @see <a href="https://stackoverflow.com/questions/63451148/graalvm-polyglot-thread-issue-in-java-spring-boot-application"></a>
      * @see <a href="https://stackoverflow.com/questions/55893836/is-it-possible-to-store-and-load-precompiled-js-to-org-graalvm-polyglot-context"></a>
      */
     ThreadLocal<Engine> threadedEngine = ThreadLocal.withInitial(Engine::create);
 
+    /**
+     * Process wide Engine shared by every GraalPolyglot, when enabled
+     * Sharing the Engine shares parsed Source and compiled code between all Context across all threads
+     * @see <a href="https://www.graalvm.org/latest/reference-manual/embed-languages/#code-caching-across-multiple-contexts"></a>
+     */
+    AtomicReference<Engine> sharedEngine = new AtomicReference<>();
+
+    /**
+     * Gets the Engine to be used to create Context for the current thread
+     * @return the shared Engine if enabled, else the ThreadLocal Engine
+     */
+    static Engine engine(){
+        final Engine shared = sharedEngine.get();
+        return shared != null ? shared : threadedEngine.get();
+    }
+
+    /**
+     * Key for the Engine configuration
+     */
+    String ENGINE = "engine" ;
+
+    /**
+     * Key for enabling the process wide shared Engine
+     */
+    String SHARED_ENGINE = "shared" ;
+
+    /**
+     * Key for the directory which stores the persistent compilation cache of the shared Engine
+     */
+    String ENGINE_CACHE = "cache" ;
+
+    /**
+     * Name of the cache image file inside the compilation cache directory
+     */
+    String ENGINE_CACHE_FILE = "cowj-engine.img" ;
+
+    /**
+     * Creates the process wide Engine
+     * In case a cache directory is given, tries to load the compilation cache from it
+     * and stores the cache back there when the process exits
+     * Persistent cache is not available in every Graal distribution, in that case we fallback to no cache
+     * @param cacheDir directory for the persistent compilation cache, null or empty means no cache
+     * @return an Engine
+     */
+    static Engine createSharedEngine(String cacheDir){
+        if ( cacheDir == null || cacheDir.isEmpty() ) return Engine.create();
+        final Path cacheFile = Paths.get( cacheDir, ENGINE_CACHE_FILE).toAbsolutePath();
+        EitherMonad<Engine> em = EitherMonad.call( () -> {
+            Files.createDirectories(cacheFile.getParent());
+            Engine.Builder builder = Engine.newBuilder()
+                    .allowExperimentalOptions(true)
+                    .option("engine.CacheStore", cacheFile.toString());
+            if ( Files.exists(cacheFile) ){
+                builder.option("engine.CacheLoad", cacheFile.toString());
+            }
+            return builder.build();
+        });
+        if ( em.inError() ){
+            logger.warn("Polyglot persistent compilation cache is not supported, running without : {}", em.error().toString());
+            return Engine.create();
+        }
+        final Engine engine = em.value();
+        // cache gets stored when the engine closes
+        Runtime.getRuntime().addShutdownHook( new Thread( () -> EitherMonad.run(engine::close) ));
+        logger.info("Polyglot persistent compilation cache : {}", cacheFile);
+        return engine;
+    }
+
+
+    /**
+     * Stops sharing the process wide Engine, if it is being shared
+     * Scripts get dropped from the cache, closing their pooled Context, so they get created again on the ThreadLocal Engine
+     * Then the Engine gets closed, unless a Context of it is still executing, then that happens when the process exits
+     */
+    static void resetSharedEngine(){
+        final Engine engine = sharedEngine.getAndSet(null);
+        if ( engine == null ) return;
+        polyglotsMap.clear();
+        final EitherMonad<EitherMonad.Nothing> em = EitherMonad.run(engine::close);
+        if ( em.inError() ){
+            logger.warn("Polyglot shared Engine still in use, it gets closed at exit : {}", em.error().toString());
+        } else {
+            logger.info("Polyglot shared Engine disabled and closed");
+        }
+    }
 
     /**
      * A map of path to GraalPolyglot map for each script sources
+     * A GraalPolyglot evicted, reloaded or removed gets its pooled Context closed
      */
-    Map<String, GraalPolyglot> polyglotsMap = new HashMap<>();
+    ScriptCache<GraalPolyglot> polyglotsMap = ScriptCache.create("graal", (path, polyglot) -> polyglot.close());
+
+    /**
+     * Key for the Graal Polyglot configuration inside the scripting section of the Model
+     */
+    String GRAAL = "graal" ;
+
+    /**
+     * Key for the Context pool configuration
+     * @see ResourcePool#fromConfig(Map, java.util.concurrent.Callable, java.util.function.Consumer)
+     */
+    String POOL = "pool" ;
+
+    /**
+     * Configuration for the Graal Polyglot system
+     * Gets populated from the "graal" section of the "scripting" section of the Model
+     */
+    Map<String,Object> POLYGLOT_CONFIG = new ConcurrentHashMap<>();
+
+    /**
+     * Sets up the configuration for all GraalPolyglot created after this call
+     * Paths are taken relative to the current directory
+     * @param config the configuration map
+     */
+    static void configure(Map<String,Object> config){
+        configure(config, () -> ".");
+    }
+
+    /**
+     * Sets up the configuration for all GraalPolyglot created after this call
+     * @param config the configuration map
+     * @param model the Model, used to interpret paths in the configuration
+     */
+    static void configure(Map<String,Object> config, Model model){
+        POLYGLOT_CONFIG.clear();
+        POLYGLOT_CONFIG.putAll(config);
+        logger.info("Polyglot configuration : {}", POLYGLOT_CONFIG );
+        final Map<String,Object> engineConfig = (Map)POLYGLOT_CONFIG.getOrDefault( ENGINE, Collections.emptyMap());
+        if ( !ZTypes.bool( engineConfig.getOrDefault( SHARED_ENGINE, false), false) ){
+            resetSharedEngine();
+            return;
+        }
+        final String cacheDir = engineConfig.containsKey( ENGINE_CACHE ) ?
+                model.interpretPath( engineConfig.get( ENGINE_CACHE ).toString() ) : "" ;
+        // once created, it lives till sharing gets turned off, re-configuration keeps it
+        final Engine engine = sharedEngine.updateAndGet( e -> e != null ? e : createSharedEngine(cacheDir) );
+        logger.info("Polyglot shared Engine enabled : {}", engine.getImplementationName() );
+    }
+
+    /**
+     * Gets the Context pool configuration
+     * Unlike other pools, Context pooling is off unless enabled, a pooled Context keeps its global scope
+     * @return pool configuration map
+     */
+    static Map<String,Object> poolConfig(){
+        final Map<String,Object> config = new HashMap<>( (Map)POLYGLOT_CONFIG.getOrDefault( POOL, Collections.emptyMap()));
+        config.put( ResourcePool.ENABLED, ZTypes.bool( config.getOrDefault( ResourcePool.ENABLED, false), false));
+        return config;
+    }
+
+    /**
+     * Is Context pooling enabled
+     * @return true if Context get reused across calls
+     */
+    static boolean pooling(){
+        return (boolean) poolConfig().get( ResourcePool.ENABLED );
+    }
 
     /**
      * Loads a polyglot Scriptable from various params thread safe
@@ -178,10 +697,24 @@ public interface GraalPolyglot extends Scriptable{
      * @throws IOException in case script can not be loaded/found
      */
     static GraalPolyglot loadPolyglot(String directive, String path) throws IOException {
+        try {
+            return polyglotsMap.load(path, p -> createPolyglot(directive, p));
+        } catch (RuntimeException re) {
+            if (CheckedFunctional.Error.cause(re) instanceof IOException io) throw io;
+            throw re;
+        }
+    }
 
-        GraalPolyglot polyglot =  polyglotsMap.get(path);
-        if (  polyglot != null ) return polyglot;
-
+    /**
+     * Creates a polyglot Scriptable from various params, without caching it
+     * @param directive a directive
+     * @param path path to the script
+     * @return a GraalPolyglot
+     * @throws IOException in case script can not be loaded/found
+     */
+    static GraalPolyglot createPolyglot(String directive, String path) throws IOException {
+        final GraalPolyglot polyglot;
+        final FlightRecorder.ScriptCompile event = FlightRecorder.ScriptCompile.start();
         // this now becomes a hack ... expression will be used with "2 + 2 //.js"
         final String content = INLINE.equals(directive) ? path : new String(Files.readAllBytes(Paths.get(path)));
         final String extension = Scriptable.extension(path);
@@ -194,9 +727,8 @@ public interface GraalPolyglot extends Scriptable{
         else { // find if we support or not
             throw new UnsupportedOperationException("Graal Language not identified by extension : " + extension );
         }
+        event.record(extension, path, true);
         logger.info("Polyglot Engine Language : {} ==> {}", path, extension );
-        // put it up
-        polyglotsMap.put(path,polyglot);
         return polyglot;
     }
 }
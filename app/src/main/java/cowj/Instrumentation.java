@@ -0,0 +1,346 @@
+package cowj;
+
+import cowj.plugins.CurlWrapper;
+import cowj.plugins.JDBCWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.io.ZWeb;
+import zoomba.lang.core.types.ZTypes;
+
+import java.lang.reflect.*;
+import java.sql.Connection;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+
+/**
+ * Instrumentation of data sources, every call a script makes on them is counted, timed and traced, per method
+ * Calls, errors, latency and calls in flight go into the Metrics registry, each call gets a Tracing span
+ * An EitherMonad in error counts as an error, as a thrown one does
+ * CurlWrapper and JDBCWrapper get hand written delegates, the rest of the interface based plugins get a dynamic Proxy
+ * A data source whose class has public methods outside its interfaces is left alone, a Proxy would hide those
+ */
+public interface Instrumentation {
+
+    /**
+     * Logger for the Cowj Instrumentation
+     */
+    Logger logger = LoggerFactory.getLogger(Instrumentation.class);
+
+    /**
+     * Key for instrumenting all data sources, in the instrumentation section
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for instrumenting a single data source, or not, in its own configuration
+     */
+    String INSTRUMENT = "instrument";
+
+    /**
+     * Latency of data source calls
+     */
+    String DS_SECONDS = "cowj_ds_seconds";
+
+    /**
+     * Data source calls
+     */
+    String DS_CALLS = "cowj_ds_calls_total";
+
+    /**
+     * Data source calls failing
+     */
+    String DS_ERRORS = "cowj_ds_errors_total";
+
+    /**
+     * Data source calls in flight
+     */
+    String DS_IN_FLIGHT = "cowj_ds_in_flight";
+
+    /**
+     * Are all data sources instrumented by default
+     */
+    AtomicBoolean ENABLED_FLAG = new AtomicBoolean(false);
+
+    /**
+     * Instruments of a method of a data source
+     */
+    final class Probe {
+
+        private final String span;
+        private final Metrics.Timer latency;
+        private final Metrics.Counter calls;
+        private final Metrics.Counter errors;
+        private final Metrics.Gauge inFlight;
+
+        /**
+         * Creates a Probe
+         * @param ds name of the data source
+         * @param method name of the method
+         */
+        public Probe(String ds, String method) {
+            this.span = "ds " + ds + "." + method;
+            this.latency = Metrics.histogram(DS_SECONDS, "Latency of data source calls", "ds", ds, "method", method);
+            this.calls = Metrics.counter(DS_CALLS, "Data source calls", "ds", ds, "method", method);
+            this.errors = Metrics.counter(DS_ERRORS, "Data source calls failing", "ds", ds, "method", method);
+            this.inFlight = Metrics.gauge(DS_IN_FLIGHT, "Data source calls in flight", "ds", ds, "method", method);
+        }
+
+        /**
+         * Starts a call
+         * @return the Call
+         */
+        public Call begin() {
+            calls.increment();
+            inFlight.increment();
+            return new Call(this, Tracing.start(span), System.nanoTime());
+        }
+    }
+
+    /**
+     * A call in progress
+     * @param probe the Probe of the method
+     * @param span the Tracing span of the call
+     * @param start when it started, in nanos
+     */
+    record Call(Probe probe, Tracing.Span span, long start) {
+
+        /**
+         * Checks a result, an EitherMonad in error counts as a failure
+         * @param result what the call returned
+         * @param <T> type of the result
+         * @return the result
+         */
+        public <T> T result(T result) {
+            if (result instanceof EitherMonad<?> em && em.inError()) failed(em.error());
+            return result;
+        }
+
+        /**
+         * Marks the call as failed
+         * @param error what went wrong
+         */
+        public void failed(Object error) {
+            probe.errors.increment();
+            span.error(error);
+        }
+
+        /**
+         * Ends the call
+         */
+        public void end() {
+            probe.latency.record(System.nanoTime() - start);
+            probe.inFlight.decrement();
+            span.close();
+        }
+    }
+
+    /**
+     * Delegate for the CurlWrapper, sendAsync(), proxy() and route() reach send() through it
+     */
+    final class Curl implements CurlWrapper {
+
+        private final CurlWrapper target;
+        private final Probe send;
+
+        Curl(String name, CurlWrapper target) {
+            this.target = target;
+            this.send = new Probe(name, "send");
+        }
+
+        @Override
+        public EitherMonad<ZWeb.ZWebCom> send(String verb, String path, Map<String, String> headers, Map<String, String> params, String body) {
+            final Call c = send.begin();
+            try {
+                return c.result(target.send(verb, path, headers, params, body));
+            } catch (RuntimeException | Error t) {
+                c.failed(t);
+                throw t;
+            } finally {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * Delegate for the JDBCWrapper, the queries are instrumented, the connection plumbing is passed through
+     */
+    final class Jdbc implements JDBCWrapper {
+
+        private final JDBCWrapper target;
+        private final Probe select;
+        private final Probe update;
+
+        Jdbc(String name, JDBCWrapper target) {
+            this.target = target;
+            this.select = new Probe(name, "select");
+            this.update = new Probe(name, "update");
+        }
+
+        @Override
+        public EitherMonad<Connection> connection() {
+            return target.connection();
+        }
+
+        @Override
+        public EitherMonad<Connection> create() {
+            return target.create();
+        }
+
+        @Override
+        public boolean isValid() {
+            return target.isValid();
+        }
+
+        @Override
+        public long timeout() {
+            return target.timeout();
+        }
+
+        @Override
+        public String staleCheckQuery() {
+            return target.staleCheckQuery();
+        }
+
+        @Override
+        public boolean noCrashOnBoot() {
+            return target.noCrashOnBoot();
+        }
+
+        @Override
+        public EitherMonad<List<Map<String, Object>>> select(String query, Object args) {
+            final Call c = select.begin();
+            try {
+                return c.result(target.select(query, args));
+            } catch (RuntimeException | Error t) {
+                c.failed(t);
+                throw t;
+            } finally {
+                c.end();
+            }
+        }
+
+        @Override
+        public EitherMonad<Integer> update(String query, Object args) {
+            final Call c = update.begin();
+            try {
+                return c.result(target.update(query, args));
+            } catch (RuntimeException | Error t) {
+                c.failed(t);
+                throw t;
+            } finally {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * InvocationHandler of the dynamic Proxy, a Probe per method, created on first call
+     * @param name name of the data source
+     * @param target the data source
+     * @param probes Probes by method
+     */
+    record Handler(String name, Object target, Map<Method, Probe> probes) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> "instrumented:" + name + ":" + target;
+                    default -> method.invoke(target, args);
+                };
+            }
+            final Probe probe = probes.computeIfAbsent(method, m -> new Probe(name, m.getName()));
+            final Call c = probe.begin();
+            try {
+                return c.result(method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                c.failed(e.getCause());
+                throw e.getCause();
+            } finally {
+                c.end();
+            }
+        }
+    }
+
+    /**
+     * Hand written delegates, by the interface they stand for
+     */
+    Map<Class<?>, BiFunction<String, Object, Object>> DELEGATES = Map.of(
+            CurlWrapper.class, (name, ds) -> new Curl(name, (CurlWrapper) ds),
+            JDBCWrapper.class, (name, ds) -> new Jdbc(name, (JDBCWrapper) ds));
+
+    /**
+     * Public interfaces of a class, and of its super classes
+     * @param clazz the class
+     * @return the interfaces
+     */
+    static Set<Class<?>> interfaces(Class<?> clazz) {
+        final Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Class<?> i : c.getInterfaces()) {
+                if (Modifier.isPublic(i.getModifiers())) interfaces.add(i);
+            }
+        }
+        return interfaces;
+    }
+
+    /**
+     * Can a Proxy over the interfaces stand for the object, i.e. are all its public methods in them
+     * Methods are matched on name and no of parameters, generic interfaces get implemented with narrower types
+     * @param clazz class of the object
+     * @param interfaces its interfaces
+     * @return true if nothing would get hidden
+     */
+    static boolean covered(Class<?> clazz, Set<Class<?>> interfaces) {
+        final Set<String> declared = new HashSet<>();
+        interfaces.forEach(i -> Arrays.stream(i.getMethods()).forEach(m -> declared.add(m.getName() + "/" + m.getParameterCount())));
+        return Arrays.stream(clazz.getMethods())
+                .filter(m -> m.getDeclaringClass() != Object.class && !Modifier.isStatic(m.getModifiers()))
+                .allMatch(m -> declared.contains(m.getName() + "/" + m.getParameterCount()));
+    }
+
+    /**
+     * Instruments a data source, if asked for
+     * @param name name of the data source
+     * @param config its configuration, instrument : true or false overrides the default
+     * @param ds the data source
+     * @return the instrumented data source, or the same one
+     */
+    static Object wrap(String name, Map<String, Object> config, Object ds) {
+        final boolean instrument = ZTypes.bool(config.getOrDefault(INSTRUMENT, ENABLED_FLAG.get()), false);
+        if (!instrument || ds == null) return ds;
+        for (Map.Entry<Class<?>, BiFunction<String, Object, Object>> e : DELEGATES.entrySet()) {
+            if (e.getKey().isInstance(ds)) {
+                logger.info("DS '{}' instrumented with a {} delegate", name, e.getKey().getSimpleName());
+                return e.getValue().apply(name, ds);
+            }
+        }
+        final Set<Class<?>> interfaces = interfaces(ds.getClass());
+        if (interfaces.isEmpty() || !covered(ds.getClass(), interfaces)) {
+            logger.warn("DS '{}' of type {} can not be instrumented, it has public methods outside its interfaces", name, ds.getClass().getName());
+            return ds;
+        }
+        try {
+            final Object proxy = Proxy.newProxyInstance(ds.getClass().getClassLoader(), interfaces.toArray(new Class<?>[0]),
+                    new Handler(name, ds, new ConcurrentHashMap<>()));
+            logger.info("DS '{}' instrumented with a proxy over {}", name, interfaces.stream().map(Class::getSimpleName).toList());
+            return proxy;
+        } catch (IllegalArgumentException ex) {
+            logger.warn("DS '{}' can not be instrumented : {}", name, ex.toString());
+            return ds;
+        }
+    }
+
+    /**
+     * Sets up the default
+     * enabled : true to instrument all data sources, default false, a data source can say otherwise with instrument
+     * @param config the configuration map
+     */
+    static void configure(Map<String, Object> config) {
+        ENABLED_FLAG.set(ZTypes.bool(config.getOrDefault(ENABLED, false), false));
+    }
+}
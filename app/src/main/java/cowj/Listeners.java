@@ -0,0 +1,353 @@
+package cowj;
+
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.AbstractHTTP2ServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+import spark.embeddedserver.jetty.JettyServerFactory;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Listeners of the embedded Jetty, from the server section of the Model
+ * HTTP/1.1 on the model port, optionally with HTTP/2 cleartext - h2c - on the same port
+ * Optionally a TLS port, with HTTP/2 - h2 - negotiated via ALPN, falling back to HTTP/1.1
+ * When nothing is configured, Spark creates its own HTTP/1.1 listener, as it always did
+ */
+public interface Listeners {
+
+    /**
+     * Logger for the Cowj Listeners
+     */
+    Logger logger = LoggerFactory.getLogger(Listeners.class);
+
+    /**
+     * Key for the interface to bind to
+     */
+    String HOST = "host";
+
+    /**
+     * Key for enabling HTTP/2 cleartext next to HTTP/1.1 on the model port
+     */
+    String H2C = "h2c";
+
+    /**
+     * Key for the TLS listener configuration
+     */
+    String TLS = "tls";
+
+    /**
+     * Key for the port of the TLS listener
+     */
+    String PORT = "port";
+
+    /**
+     * Key for the key store of the TLS listener
+     */
+    String KEY_STORE = "keystore";
+
+    /**
+     * Key for the key store password of the TLS listener
+     */
+    String PASSWORD = "password";
+
+    /**
+     * Key for enabling HTTP/2 on the TLS listener
+     */
+    String H2 = "h2";
+
+    /**
+     * Key for the HTTP/2 configuration
+     */
+    String HTTP2 = "http2";
+
+    /**
+     * Key for the max no of concurrent streams per HTTP/2 connection
+     */
+    String MAX_STREAMS = "streams";
+
+    /**
+     * Key for the initial flow control window of a stream, in bytes
+     */
+    String STREAM_WINDOW = "stream_window";
+
+    /**
+     * Key for the initial flow control window of a connection, in bytes
+     */
+    String SESSION_WINDOW = "session_window";
+
+    /**
+     * Key for honouring the X-Forwarded and Forwarded headers, as Spark does
+     */
+    String FORWARDED = "forwarded";
+
+    /**
+     * The interface to bind to
+     * @return host
+     */
+    String host();
+
+    /**
+     * Is HTTP/2 cleartext enabled on the model port
+     * @return true if enabled
+     */
+    boolean h2c();
+
+    /**
+     * Configuration of the TLS listener
+     * [ port : port, keystore : path, password : password, h2 : true|false ]
+     * @return configuration, empty if there is no TLS listener
+     */
+    Map<String, Object> tls();
+
+    /**
+     * HTTP/2 configuration, common for h2c and h2
+     * [ streams : max concurrent streams, stream_window : bytes, session_window : bytes ]
+     * @return configuration
+     */
+    Map<String, Object> http2();
+
+    /**
+     * Are the X-Forwarded and Forwarded headers honoured
+     * @return true if they are
+     */
+    boolean forwarded();
+
+    /**
+     * Configuration of the HTTP connections
+     * @param secure true for the TLS listener
+     * @return an HttpConfiguration
+     */
+    default HttpConfiguration httpConfiguration(boolean secure) {
+        final HttpConfiguration config = new HttpConfiguration();
+        config.setSecureScheme("https");
+        if (forwarded()) config.addCustomizer(new ForwardedRequestCustomizer());
+        if (secure) config.addCustomizer(new SecureRequestCustomizer());
+        return config;
+    }
+
+    /**
+     * Applies the HTTP/2 configuration to an HTTP/2 connection factory
+     * @param factory h2 or h2c factory
+     * @param <F> type of the factory
+     * @return the factory
+     */
+    default <F extends AbstractHTTP2ServerConnectionFactory> F http2(F factory) {
+        final Map<String, Object> config = http2();
+        if (config.containsKey(MAX_STREAMS)) {
+            factory.setMaxConcurrentStreams(ZNumber.integer(config.get(MAX_STREAMS), 128).intValue());
+        }
+        if (config.containsKey(STREAM_WINDOW)) {
+            factory.setInitialStreamRecvWindow(ZNumber.integer(config.get(STREAM_WINDOW), 524288).intValue());
+        }
+        if (config.containsKey(SESSION_WINDOW)) {
+            factory.setInitialSessionRecvWindow(ZNumber.integer(config.get(SESSION_WINDOW), 1048576).intValue());
+        }
+        return factory;
+    }
+
+    /**
+     * Creates the connectors for a Jetty Server
+     * @param server the Jetty Server
+     * @param port the model port, for the HTTP/1.1 and h2c listener
+     * @return list of connectors
+     */
+    default List<ServerConnector> connectors(Server server, int port) {
+        final List<ServerConnector> connectors = new ArrayList<>();
+        final HttpConnectionFactory http11 = new HttpConnectionFactory(httpConfiguration(false));
+        final ServerConnector plain = h2c() ?
+                new ServerConnector(server, http11, http2(new HTTP2CServerConnectionFactory(httpConfiguration(false)))) :
+                new ServerConnector(server, http11);
+        plain.setHost(host());
+        plain.setPort(port);
+        connectors.add(plain);
+        final Map<String, Object> tls = tls();
+        if (tls.isEmpty()) return connectors;
+
+        final String keyStore = tls.getOrDefault(KEY_STORE, "").toString();
+        if (keyStore.isEmpty()) throw new IllegalArgumentException("tls listener needs a keystore");
+        final SslContextFactory.Server ssl = new SslContextFactory.Server();
+        ssl.setKeyStorePath(keyStore);
+        ssl.setKeyStorePassword(tls.getOrDefault(PASSWORD, "").toString());
+        final HttpConnectionFactory https11 = new HttpConnectionFactory(httpConfiguration(true));
+        final ServerConnector secure;
+        if (ZTypes.bool(tls.getOrDefault(H2, true), true)) {
+            // h2 only allows strong ciphers, order them so that those get picked first
+            ssl.setCipherComparator(HTTP2Cipher.COMPARATOR);
+            ssl.setUseCipherSuitesOrder(true);
+            final HTTP2ServerConnectionFactory h2 = http2(new HTTP2ServerConnectionFactory(httpConfiguration(true)));
+            final ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+            alpn.setDefaultProtocol(https11.getProtocol());
+            secure = new ServerConnector(server, new SslConnectionFactory(ssl, alpn.getProtocol()), alpn, h2, https11);
+        } else {
+            secure = new ServerConnector(server, new SslConnectionFactory(ssl, https11.getProtocol()), https11);
+        }
+        secure.setHost(host());
+        secure.setPort(ZNumber.integer(tls.getOrDefault(PORT, 8443), 8443).intValue());
+        connectors.add(secure);
+        return connectors;
+    }
+
+    /**
+     * Creates the Jetty Server factory for Spark
+     * Spark keeps the connectors of the Server it gets from the factory, instead of creating its own
+     * @param port the model port
+     * @param virtual true to run requests on virtual threads
+     * @param handler decorator for the Jetty Handler Spark sets on the Server, null for none
+     * @return a JettyServerFactory
+     */
+    default JettyServerFactory serverFactory(int port, boolean virtual, UnaryOperator<Handler> handler) {
+        return new JettyServerFactory() {
+            @Override
+            public Server create(int maxThreads, int minThreads, int threadTimeoutMillis) {
+                // same defaults as Spark
+                final QueuedThreadPool pool = maxThreads > 0 ?
+                        new QueuedThreadPool(maxThreads, minThreads > 0 ? minThreads : 8,
+                                threadTimeoutMillis > 0 ? threadTimeoutMillis : 60000) :
+                        new QueuedThreadPool();
+                if (virtual) pool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+                return create(pool);
+            }
+
+            @Override
+            public Server create(ThreadPool threadPool) {
+                // Spark sets its handler only after the Server is created, that is where it gets decorated
+                final Server server = new Server(threadPool != null ? threadPool : new QueuedThreadPool()) {
+                    @Override
+                    public void setHandler(Handler h) {
+                        super.setHandler(handler == null ? h : handler.apply(h));
+                    }
+                };
+                connectors(server, port).forEach(server::addConnector);
+                logger.info("Listeners : {}", List.of(server.getConnectors()));
+                return server;
+            }
+        };
+    }
+
+    /**
+     * Makes Spark use these listeners, must be called before any route gets mapped
+     * @param port the model port
+     * @param virtual true to run requests on virtual threads
+     * @param handler decorator for the Jetty Handler Spark sets on the Server, null for none
+     */
+    default void install(int port, boolean virtual, UnaryOperator<Handler> handler) {
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory(serverFactory(port, virtual, handler)));
+    }
+
+    /**
+     * Makes Spark use these listeners, must be called before any route gets mapped
+     * @param port the model port
+     * @param virtual true to run requests on virtual threads
+     */
+    default void install(int port, boolean virtual) {
+        install(port, virtual, null);
+    }
+
+    /**
+     * Listeners as Spark creates them, nothing gets installed unless there is a handler decorator
+     */
+    Listeners SPARK = new Listeners() {
+        @Override
+        public String host() {
+            return "0.0.0.0";
+        }
+
+        @Override
+        public boolean h2c() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> tls() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, Object> http2() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public boolean forwarded() {
+            return true;
+        }
+
+        @Override
+        public List<ServerConnector> connectors(Server server, int port) {
+            // Spark creates its own listener when the Server has none
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void install(int port, boolean virtual, UnaryOperator<Handler> handler) {
+            if (handler == null) return;
+            Listeners.super.install(port, virtual, handler);
+        }
+    };
+
+    /**
+     * Creates Listeners from configuration
+     * host : interface to bind to, default 0.0.0.0
+     * h2c : HTTP/2 cleartext next to HTTP/1.1 on the model port, default false
+     * tls : [ port : 8443, keystore : path, password : password, h2 : true ]
+     * http2 : [ streams : n, stream_window : bytes, session_window : bytes ]
+     * forwarded : honour forwarded headers, default true
+     * @param config the configuration map
+     * @param model the Model, used to interpret paths in the configuration
+     * @return Listeners, SPARK if there is neither h2c nor tls
+     */
+    static Listeners fromConfig(Map<String, Object> config, Model model) {
+        final boolean h2c = ZTypes.bool(config.getOrDefault(H2C, false), false);
+        final Map<String, Object> tlsConfig = (Map) config.getOrDefault(TLS, Collections.emptyMap());
+        if (!h2c && tlsConfig.isEmpty()) return SPARK;
+        final Map<String, Object> tls = new HashMap<>(tlsConfig);
+        if (tls.containsKey(KEY_STORE)) tls.put(KEY_STORE, model.interpretPath(tls.get(KEY_STORE).toString()));
+        final String host = config.getOrDefault(HOST, "0.0.0.0").toString();
+        final Map<String, Object> http2 = (Map) config.getOrDefault(HTTP2, Collections.emptyMap());
+        final boolean forwarded = ZTypes.bool(config.getOrDefault(FORWARDED, true), true);
+        return new Listeners() {
+            @Override
+            public String host() {
+                return host;
+            }
+
+            @Override
+            public boolean h2c() {
+                return h2c;
+            }
+
+            @Override
+            public Map<String, Object> tls() {
+                return tls;
+            }
+
+            @Override
+            public Map<String, Object> http2() {
+                return http2;
+            }
+
+            @Override
+            public boolean forwarded() {
+                return forwarded;
+            }
+        };
+    }
+}
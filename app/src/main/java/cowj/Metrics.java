@@ -0,0 +1,566 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+import spark.HaltException;
+import spark.Route;
+import zoomba.lang.core.types.ZTypes;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics registry, with counters and latency histograms, exposed in the Prometheus text format
+ * Histograms keep counts in log linear buckets, as HdrHistogram does, 4 per power of 2, so about 25% precision,
+ * recording is an index computation and an atomic increment, no locks, no allocation
+ * They are exported with one bucket per power of 2 of nanos, from 4 micro seconds to 68 seconds
+ * Nothing gets timed, and nothing gets wrapped, unless metrics are enabled
+ */
+public interface Metrics {
+
+    /**
+     * Logger for the Cowj Metrics
+     */
+    Logger logger = LoggerFactory.getLogger(Metrics.class);
+
+    /**
+     * Key for enabling metrics
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for the path of the metrics endpoint
+     */
+    String PATH = "path";
+
+    /**
+     * Default path of the metrics endpoint
+     */
+    String DEFAULT_PATH = "/_/metrics";
+
+    /**
+     * Content type of the Prometheus text format
+     */
+    String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Latency of routes
+     */
+    String ROUTE_SECONDS = "cowj_route_seconds";
+
+    /**
+     * Routes failing with an error, or a 5xx halt
+     */
+    String ROUTE_ERRORS = "cowj_route_errors_total";
+
+    /**
+     * Latency of filters
+     */
+    String FILTER_SECONDS = "cowj_filter_seconds";
+
+    /**
+     * Latency of schema validations
+     */
+    String SCHEMA_SECONDS = "cowj_schema_seconds";
+
+    /**
+     * Latency of authentication and authorization
+     */
+    String AUTH_SECONDS = "cowj_auth_seconds";
+
+    /**
+     * Latency of async tasks, per attempt
+     */
+    String ASYNC_SECONDS = "cowj_async_task_seconds";
+
+    /**
+     * Async task attempts failing
+     */
+    String ASYNC_ERRORS = "cowj_async_task_errors_total";
+
+    /**
+     * Latency of cron jobs
+     */
+    String CRON_SECONDS = "cowj_cron_seconds";
+
+    /**
+     * Cron jobs failing
+     */
+    String CRON_ERRORS = "cowj_cron_errors_total";
+
+    /**
+     * Are metrics enabled
+     */
+    AtomicBoolean ENABLED_FLAG = new AtomicBoolean(false);
+
+    /**
+     * Path of the metrics endpoint
+     */
+    AtomicReference<String> ENDPOINT = new AtomicReference<>(DEFAULT_PATH);
+
+    /**
+     * All metric families, by name
+     */
+    Map<String, Family> REGISTRY = new ConcurrentHashMap<>();
+
+    /**
+     * Something recording a latency
+     */
+    @FunctionalInterface
+    interface Timer {
+
+        /**
+         * Records a latency
+         * @param nanos latency in nanos
+         */
+        void record(long nanos);
+
+        /**
+         * A Timer recording nothing, used when metrics are disabled
+         */
+        Timer NONE = nanos -> {};
+    }
+
+    /**
+     * A series of a family, with its own labels
+     */
+    interface Series {
+
+        /**
+         * Writes the series in the Prometheus text format
+         * @param sb where to write
+         * @param name the family name
+         * @param labels the rendered labels, can be empty
+         */
+        void write(StringBuilder sb, String name, String labels);
+    }
+
+    /**
+     * A monotonic counter
+     */
+    final class Counter implements Series {
+
+        /**
+         * A Counter which is not registered anywhere, used when metrics are disabled
+         */
+        public static final Counter DISCARD = new Counter();
+
+        private final LongAdder count = new LongAdder();
+
+        /**
+         * Adds one
+         */
+        public void increment() {
+            count.increment();
+        }
+
+        /**
+         * Adds some
+         * @param n how many
+         */
+        public void add(long n) {
+            count.add(n);
+        }
+
+        /**
+         * Current count
+         * @return count
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            sb.append(name);
+            if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+            sb.append(' ').append(count()).append('\n');
+        }
+    }
+
+    /**
+     * A value going up and down, e.g. calls in flight
+     */
+    final class Gauge implements Series {
+
+        /**
+         * A Gauge which is not registered anywhere, used when metrics are disabled
+         */
+        public static final Gauge DISCARD = new Gauge();
+
+        private final LongAdder value = new LongAdder();
+
+        /**
+         * Adds one
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Takes one away
+         */
+        public void decrement() {
+            value.decrement();
+        }
+
+        /**
+         * Current value
+         * @return value
+         */
+        public long value() {
+            return value.sum();
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            sb.append(name);
+            if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+            sb.append(' ').append(value()).append('\n');
+        }
+    }
+
+    /**
+     * Latency histogram over log linear buckets of nanos
+     * Bucket 0 holds everything below 1 micro second, then every power of 2 is split in 4,
+     * the last bucket holds everything above 2^41 nanos, about 36 minutes
+     */
+    final class Histogram implements Timer, Series {
+
+        /**
+         * Smallest power of 2 with buckets of its own
+         */
+        static final int MIN_EXPONENT = 10;
+
+        /**
+         * Largest power of 2 with buckets of its own
+         */
+        static final int MAX_EXPONENT = 40;
+
+        /**
+         * Buckets per power of 2, as a shift
+         */
+        static final int SUB_BITS = 2;
+
+        /**
+         * Buckets per power of 2
+         */
+        static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+        /**
+         * Total no of buckets
+         */
+        static final int SIZE = 2 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+        /**
+         * Powers of 2 of nanos exported as Prometheus buckets
+         */
+        static final int[] EXPORTED = {12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 36};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(SIZE);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+
+        /**
+         * Bucket of a latency
+         * @param nanos the latency
+         * @return index of the bucket
+         */
+        static int index(long nanos) {
+            if (nanos < (1L << MIN_EXPONENT)) return 0;
+            final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            if (exponent > MAX_EXPONENT) return SIZE - 1;
+            final int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+        }
+
+        /**
+         * Upper bound of a bucket, exclusive
+         * @param index of the bucket
+         * @return nanos, Long.MAX_VALUE for the last bucket
+         */
+        static long upper(int index) {
+            if (index == 0) return 1L << MIN_EXPONENT;
+            if (index >= SIZE - 1) return Long.MAX_VALUE;
+            final int exponent = MIN_EXPONENT + (index - 1) / SUB_BUCKETS;
+            final int sub = (index - 1) % SUB_BUCKETS;
+            return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS);
+        }
+
+        @Override
+        public void record(long nanos) {
+            final long v = Math.max(0, nanos);
+            buckets.incrementAndGet(index(v));
+            count.increment();
+            sum.add(v);
+        }
+
+        /**
+         * No of latencies recorded
+         * @return count
+         */
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Sum of the latencies recorded
+         * @return nanos
+         */
+        public long sum() {
+            return sum.sum();
+        }
+
+        /**
+         * Estimates a quantile, as the upper bound of the bucket it falls into
+         * @param q the quantile, between 0 and 1
+         * @return nanos, 0 when nothing is recorded
+         */
+        public long quantile(double q) {
+            final long[] counts = snapshot();
+            long total = 0;
+            for (long c : counts) total += c;
+            if (total == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return upper(i);
+            }
+            return upper(SIZE - 1);
+        }
+
+        private long[] snapshot() {
+            final long[] counts = new long[SIZE];
+            for (int i = 0; i < SIZE; i++) counts[i] = buckets.get(i);
+            return counts;
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            final long[] counts = snapshot();
+            final String prefix = labels.isEmpty() ? "" : labels + ",";
+            long total = 0;
+            int i = 0;
+            for (int exponent : EXPORTED) {
+                final long bound = 1L << exponent;
+                // buckets are aligned on powers of 2, so this adds whole buckets only
+                while (i < SIZE && upper(i) <= bound) total += counts[i++];
+                sb.append(name).append("_bucket{").append(prefix).append("le=\"")
+                        .append(bound / 1e9).append("\"} ").append(total).append('\n');
+            }
+            while (i < SIZE) total += counts[i++];
+            sb.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(total).append('\n');
+            final String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+            sb.append(name).append("_sum").append(braced).append(' ').append(sum() / 1e9).append('\n');
+            sb.append(name).append("_count").append(braced).append(' ').append(total).append('\n');
+        }
+    }
+
+    /**
+     * A metric family, all series of a name, one per set of labels
+     * @param name metric name
+     * @param help help text
+     * @param type counter or histogram
+     * @param series series by rendered labels
+     */
+    record Family(String name, String help, String type, Map<String, Series> series) {
+
+        /**
+         * Writes the family in the Prometheus text format
+         * @param sb where to write
+         */
+        void write(StringBuilder sb) {
+            sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            new TreeMap<>(series).forEach((labels, s) -> s.write(sb, name, labels));
+        }
+    }
+
+    /**
+     * Are metrics enabled
+     * @return true if enabled
+     */
+    static boolean enabled() {
+        return ENABLED_FLAG.get();
+    }
+
+    /**
+     * Renders labels, escaped as the Prometheus text format wants
+     * @param labels label names and values, one after another
+     * @return the labels, without braces
+     */
+    static String labels(String... labels) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"");
+            final String v = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < v.length(); j++) {
+                final char c = v.charAt(j);
+                switch (c) {
+                    case '\\' -> sb.append("\\\\");
+                    case '"' -> sb.append("\\\"");
+                    case '\n' -> sb.append("\\n");
+                    default -> sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.toString();
+    }
+
+    private static Series series(String name, String help, String type, String[] labels, java.util.function.Supplier<Series> creator) {
+        final Family family = REGISTRY.computeIfAbsent(name, n -> new Family(n, help, type, new ConcurrentHashMap<>()));
+        if (!family.type().equals(type)) {
+            throw new IllegalArgumentException("Metric '" + name + "' is a " + family.type() + " not a " + type);
+        }
+        return family.series().computeIfAbsent(labels(labels), l -> creator.get());
+    }
+
+    /**
+     * Gets or creates a histogram
+     * @param name metric name
+     * @param help help text
+     * @param labels label names and values, one after another
+     * @return the Histogram, Timer.NONE if metrics are disabled
+     */
+    static Timer histogram(String name, String help, String... labels) {
+        if (!enabled()) return Timer.NONE;
+        return (Timer) series(name, help, "histogram", labels, Histogram::new);
+    }
+
+    /**
+     * Gets or creates a counter
+     * @param name metric name
+     * @param help help text
+     * @param labels label names and values, one after another
+     * @return the Counter, Counter.DISCARD if metrics are disabled
+     */
+    static Counter counter(String name, String help, String... labels) {
+        if (!enabled()) return Counter.DISCARD;
+        return (Counter) series(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * Gets or creates a gauge
+     * @param name metric name
+     * @param help help text
+     * @param labels label names and values, one after another
+     * @return the Gauge, Gauge.DISCARD if metrics are disabled
+     */
+    static Gauge gauge(String name, String help, String... labels) {
+        if (!enabled()) return Gauge.DISCARD;
+        return (Gauge) series(name, help, "gauge", labels, Gauge::new);
+    }
+
+    /**
+     * Creates a spark.Route timing another one
+     * @param path the route path, as in the model
+     * @param kind route, async or proxy
+     * @param route the underlying spark.Route
+     * @return a spark.Route, the same one if metrics are disabled
+     */
+    static Route route(String path, String kind, Route route) {
+        if (!enabled()) return route;
+        final Timer timer = histogram(ROUTE_SECONDS, "Latency of routes", "route", path, "kind", kind);
+        final Counter errors = counter(ROUTE_ERRORS, "Routes failing with an error or a 5xx", "route", path, "kind", kind);
+        return (request, response) -> {
+            final long start = System.nanoTime();
+            try {
+                return route.handle(request, response);
+            } catch (HaltException he) {
+                if (he.statusCode() >= 500) errors.increment();
+                throw he;
+            } catch (Throwable t) {
+                errors.increment();
+                throw t;
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Creates a spark.Filter timing another one
+     * @param type before, after or finally
+     * @param path the filter path, as in the model
+     * @param filter the underlying spark.Filter
+     * @return a spark.Filter, the same one if metrics are disabled
+     */
+    static Filter filter(String type, String path, Filter filter) {
+        if (!enabled()) return filter;
+        final Timer timer = histogram(FILTER_SECONDS, "Latency of filters", "filter", path, "type", type);
+        return (request, response) -> {
+            final long start = System.nanoTime();
+            try {
+                filter.handle(request, response);
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * Creates a Scriptable timing another one, for async tasks
+     * @param path the async route path, as in the model
+     * @param scriptable the underlying Scriptable
+     * @return a Scriptable, the same one if metrics are disabled
+     */
+    static Scriptable task(String path, Scriptable scriptable) {
+        if (!enabled()) return scriptable;
+        final Timer timer = histogram(ASYNC_SECONDS, "Latency of async tasks, per attempt", "route", path);
+        final Counter errors = counter(ASYNC_ERRORS, "Async task attempts failing", "route", path);
+        return bindings -> {
+            final long start = System.nanoTime();
+            try {
+                return scriptable.exec(bindings);
+            } catch (Throwable t) {
+                errors.increment();
+                throw t;
+            } finally {
+                timer.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /**
+     * The spark.Route serving all metrics in the Prometheus text format
+     * @return a spark.Route
+     */
+    static Route endpoint() {
+        return (request, response) -> {
+            response.type(CONTENT_TYPE);
+            return scrape();
+        };
+    }
+
+    /**
+     * All metrics in the Prometheus text format
+     * @return the text
+     */
+    static String scrape() {
+        final StringBuilder sb = new StringBuilder(4096);
+        new TreeMap<>(REGISTRY).values().forEach(f -> f.write(sb));
+        return sb.toString();
+    }
+
+    /**
+     * Sets up metrics, must be done before anything timed gets created
+     * enabled : true to enable, default false
+     * path : path of the endpoint, default /_/metrics
+     * @param config the configuration map
+     */
+    static void configure(Map<String, Object> config) {
+        final boolean enabled = ZTypes.bool(config.getOrDefault(ENABLED, false), false);
+        ENABLED_FLAG.set(enabled);
+        ENDPOINT.set(config.getOrDefault(PATH, DEFAULT_PATH).toString());
+        REGISTRY.clear();
+        if (enabled) logger.info("Metrics enabled, served at '{}'", ENDPOINT.get());
+    }
+}
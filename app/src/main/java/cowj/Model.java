@@ -7,6 +7,7 @@ import zoomba.lang.core.types.ZTypes;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.Function;
@@ -233,6 +234,167 @@ public interface Model {
         return Collections.emptyMap();
     }
 
+    /**
+     * All the scripts the model refers to - routes, filters, web sockets and cron jobs
+     * Key - verb::route for routes, for the rest a unique prefix takes place of the verb
+     * @return a map of key to the full path of the script
+     */
+    default Map<String,String> scripts(){
+        final Map<String, String> scripts = new LinkedHashMap<>();
+        routes().forEach((verb, routes) ->
+                routes.forEach((path, script) -> scripts.put(verb + "::" + path, interpretPath(script))));
+        filters().forEach((type, filters) ->
+                filters.forEach((path, script) -> scripts.put("filter:" + type + "::" + path, interpretPath(script))));
+        sockets().forEach((path, script) -> scripts.put("ws::" + path, interpretPath(script)));
+        cron().forEach((name, config) -> {
+            final Object exec = config.get(CronModel.Task.EXEC);
+            if (exec != null) scripts.put("cron::" + name, interpretPath(exec.toString()));
+        });
+        return scripts;
+    }
+
+    /**
+     * Scripting engines configuration
+     * graal : [ pool : [ prop_name : prop_value ] ]
+     * @return a map of the scripting engines configuration
+     */
+    default Map<String, Object> scripting(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Warm up configuration, run before the server accepts any request
+     * [ threads : n, iterations : n, samples : dir, verbs : [ get ] ]
+     * @return a map of the warm up configuration
+     */
+    default Map<String, Object> warmup(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Execution budgets for routes
+     * [ timeout : ms, statements : n, routes : [ route_path : [ timeout : ms ] ] ]
+     * @return a map of the budget configuration
+     */
+    default Map<String, Object> budgets(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Shared memory namespaces
+     * [ namespaces : [ name : [ mode : heap|direct|mapped, size : bytes, slot : bytes, file : path ] ] ]
+     * @return a map of the shared memory configuration
+     */
+    default Map<String, Object> shared(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Router configuration
+     * [ enabled : true to compile routes and filters into a segment trie ]
+     * @return a map of the router configuration
+     */
+    default Map<String, Object> router(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Listener configuration for the server, h2c, tls and h2
+     * @see Listeners
+     * @return a Map of listener configuration
+     */
+    default Map<String, Object> server(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Response compression configuration
+     * @see Compression
+     * @return a Map of compression configuration
+     */
+    default Map<String, Object> compression(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Static files cache configuration
+     * @see StaticCache
+     * @return a Map of static files cache configuration
+     */
+    default Map<String, Object> staticCache(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Upload intake configuration
+     * [ memory : bytes held in memory on spill, dir : folder to spill into, max : max bytes of a body ]
+     * @see Upload
+     * @return a Map of upload configuration
+     */
+    default Map<String, Object> uploads(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Bulkheads for routes and proxies
+     * [ group_name : [ routes : [ paths ], limit : n, queue : n, wait : ms, adaptive : bool, min : n, max : n ] ]
+     * @see Bulkhead
+     * @return a Map of bulkhead groups
+     */
+    default Map<String, Object> bulkheads(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Rate limits for routes
+     * [ path : [ key : route|user|ip|header:name, rate : n, per : ms, burst : n, keys : n ] ]
+     * @see RateLimit
+     * @return a Map of route path to its rate limit
+     */
+    default Map<String, Object> rateLimits(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Metrics registry and its endpoint
+     * [ enabled : bool, path : endpoint path ]
+     * @see Metrics
+     * @return a Map of metrics configuration
+     */
+    default Map<String, Object> metrics(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Tracing of requests and its exporter
+     * [ enabled : bool, sample : fraction, file : path, max_bytes : n, max_files : n, batch : n, flush : ms, queue : n, exporter : package.Class::FIELD ]
+     * @see Tracing
+     * @return a Map of tracing configuration
+     */
+    default Map<String, Object> tracing(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Instrumentation of data sources
+     * [ enabled : bool ], a data source can override it with instrument : bool in its own configuration
+     * @see Instrumentation
+     * @return a Map of instrumentation configuration
+     */
+    default Map<String, Object> instrumentation(){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * On demand sampling profiler
+     * [ enabled : bool, path : String, max_seconds : int, dir : String ]
+     * @see Profiler
+     * @return a Map of profiler configuration
+     */
+    default Map<String, Object> profiler(){
+        return Collections.emptyMap();
+    }
+
     /**
      * Name for the key for port
      */
@@ -295,6 +457,81 @@ public interface Model {
      */
     String CRON_JOBS = "cron" ;
 
+    /**
+     * Name for the key for scripting engines configuration
+     */
+    String SCRIPTING = "scripting" ;
+
+    /**
+     * Name for the key for warm up configuration
+     */
+    String WARMUP = "warmup" ;
+
+    /**
+     * Name for the key for execution budgets configuration
+     */
+    String BUDGETS = "budgets" ;
+
+    /**
+     * Name for the key for shared memory configuration
+     */
+    String SHARED = "shared" ;
+
+    /**
+     * Name for the key for router configuration
+     */
+    String ROUTER = "router" ;
+
+    /**
+     * Name for the key for server listeners
+     */
+    String SERVER = "server" ;
+
+    /**
+     * Name for the key for response compression
+     */
+    String COMPRESSION = "compression" ;
+
+    /**
+     * Name for the key for static files cache
+     */
+    String STATIC_CACHE = "static_cache" ;
+
+    /**
+     * Name for the key for upload intake
+     */
+    String UPLOADS = "uploads" ;
+
+    /**
+     * Name for the key for bulkheads
+     */
+    String BULKHEADS = "bulkheads" ;
+
+    /**
+     * Name for the key for rate limits
+     */
+    String RATE_LIMITS = "rate_limits" ;
+
+    /**
+     * Name for the key for metrics
+     */
+    String METRICS = "metrics" ;
+
+    /**
+     * Name for the key for tracing
+     */
+    String TRACING = "tracing" ;
+
+    /**
+     * Name for the key for data source instrumentation
+     */
+    String INSTRUMENTATION = "instrumentation" ;
+
+    /**
+     * Name for the key for the sampling profiler
+     */
+    String PROFILER = "profiler" ;
+
     /**
      * Constant schema configuration location
      */
@@ -382,6 +619,81 @@ public interface Model {
             public Map<String, Map<String, Object>> dataSources() {
                 return (Map) map.getOrDefault( DATA_SOURCES, Model.super.dataSources());
             }
+
+            @Override
+            public Map<String, Object> scripting() {
+                return (Map) map.getOrDefault( SCRIPTING, Model.super.scripting());
+            }
+
+            @Override
+            public Map<String, Object> warmup() {
+                return (Map) map.getOrDefault( WARMUP, Model.super.warmup());
+            }
+
+            @Override
+            public Map<String, Object> budgets() {
+                return (Map) map.getOrDefault( BUDGETS, Model.super.budgets());
+            }
+
+            @Override
+            public Map<String, Object> shared() {
+                return (Map) map.getOrDefault( SHARED, Model.super.shared());
+            }
+
+            @Override
+            public Map<String, Object> router() {
+                return (Map) map.getOrDefault( ROUTER, Model.super.router());
+            }
+
+            @Override
+            public Map<String, Object> server() {
+                return (Map) map.getOrDefault( SERVER, Model.super.server());
+            }
+
+            @Override
+            public Map<String, Object> compression() {
+                return (Map) map.getOrDefault( COMPRESSION, Model.super.compression());
+            }
+
+            @Override
+            public Map<String, Object> staticCache() {
+                return (Map) map.getOrDefault( STATIC_CACHE, Model.super.staticCache());
+            }
+
+            @Override
+            public Map<String, Object> uploads() {
+                return (Map) map.getOrDefault( UPLOADS, Model.super.uploads());
+            }
+
+            @Override
+            public Map<String, Object> bulkheads() {
+                return (Map) map.getOrDefault( BULKHEADS, Model.super.bulkheads());
+            }
+
+            @Override
+            public Map<String, Object> rateLimits() {
+                return (Map) map.getOrDefault( RATE_LIMITS, Model.super.rateLimits());
+            }
+
+            @Override
+            public Map<String, Object> metrics() {
+                return (Map) map.getOrDefault( METRICS, Model.super.metrics());
+            }
+
+            @Override
+            public Map<String, Object> tracing() {
+                return (Map) map.getOrDefault( TRACING, Model.super.tracing());
+            }
+
+            @Override
+            public Map<String, Object> instrumentation() {
+                return (Map) map.getOrDefault( INSTRUMENTATION, Model.super.instrumentation());
+            }
+
+            @Override
+            public Map<String, Object> profiler() {
+                return (Map) map.getOrDefault( PROFILER, Model.super.profiler());
+            }
         };
     }
 
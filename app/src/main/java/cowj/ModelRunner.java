@@ -9,7 +9,6 @@ import zoomba.lang.core.types.ZNumber;
 import zoomba.lang.core.types.ZTypes;
 
 import java.util.*;
-import java.util.function.BiConsumer;
 
 import static spark.Spark.*;
 
@@ -60,18 +59,9 @@ public interface ModelRunner extends Runnable {
 
     @Override
     default void run() {
-        final Map<String, BiConsumer<String, Route>> routeLoaderMap = new HashMap<>();
-        routeLoaderMap.put("get", Spark::get);
-        routeLoaderMap.put("put", Spark::put);
-        routeLoaderMap.put("post", Spark::post);
-        routeLoaderMap.put("delete", Spark::delete);
-        routeLoaderMap.put("head", Spark::head);
-        routeLoaderMap.put("connect", Spark::connect);
-        routeLoaderMap.put("options", Spark::options);
-        routeLoaderMap.put("trace", Spark::trace);
-        routeLoaderMap.put("patch", Spark::patch);
-
         final Model m = model();
+        // either Spark matches routes, or they get compiled into a trie
+        final Router router = Router.fromConfig( m.router() );
         // bind port
         port(m.port());
         // set threading
@@ -86,6 +76,14 @@ public interface ModelRunner extends Runnable {
         int timeout = ZNumber.integer(tAct.getOrDefault("timeout", 30000), 30000).intValue();
         logger.info("threading: min {}, max {}, timeout(ms) {}", min, max, timeout);
         threadPool(max, min, timeout);
+        // response compression, static files get precompressed right here
+        final Compression compression = Compression.fromConfig( m.compression(), m);
+        // static files cache, indexed right here, it serves the precompressed variants too
+        final StaticCache staticCache = StaticCache.fromConfig( m.staticCache(), m, compression.precompressed());
+        // h2c, tls and h2 listeners, if any, cached static files get served before Spark sees the request
+        Listeners.fromConfig( m.server(), m).install( m.port(),
+                useVirtualThread && AsyncHandler.HAS_VIRTUAL_THREAD_SUPPORT,
+                StaticCache.handler( staticCache, compression.handler()) );
         // Set Async IO
         Map<String, Object> asyncConfig = m.async();
         AsyncHandler.fromConfig(asyncConfig, m);
@@ -101,6 +99,30 @@ public interface ModelRunner extends Runnable {
         logger.info("Library Directory : " +libDir);
         // Setup modular scripting
         ModuleManager.UNIVERSAL.modulePath(libDir);
+        // Setup scripting engines
+        final Map<String, Object> scripting = m.scripting();
+        GraalPolyglot.configure( (Map) scripting.getOrDefault( GraalPolyglot.GRAAL, Collections.emptyMap()), m);
+        Scriptable.configureJsr( (Map) scripting.getOrDefault( Scriptable.JSR_SCRIPTING, Collections.emptyMap()), m);
+        // only the JSR-223 engines the model uses get loaded, in background, while the rest boots
+        Scriptable.loadEngines( m.scripts().values() );
+        ScriptCache.configure( (Map) scripting.getOrDefault( ScriptCache.CACHES_CONFIG, Collections.emptyMap()));
+        // execution budgets, must be in place before any Graal Context or route gets created
+        Budget.configure( Budget.fromConfig( m.budgets() ));
+        // bulkheads, same, before any route gets created
+        Bulkhead.configure( Bulkhead.fromConfig( m.bulkheads() ));
+        // metrics, before anything timed gets created
+        Metrics.configure( m.metrics() );
+        Accounting.configure( m.metrics() );
+        // tracing, same
+        Tracing.configure( m.tracing(), m);
+        // data source instrumentation, feeds both
+        Instrumentation.configure( m.instrumentation() );
+        // on demand profiler, its endpoint gets registered after auth
+        Profiler.configure( m.profiler(), m);
+        // shared memory namespaces, before any script can touch _shared
+        SharedMemory.configure( m.shared(), m);
+        // limits for streaming request bodies in
+        Upload.configure( m.uploads(), m);
 
         // load type system ... other folks may depend on this
         TypeSystem typeSystem = TypeSystem.fromFile( m.schemaPath());
@@ -125,12 +147,15 @@ public interface ModelRunner extends Runnable {
             try{
                 DataSource dataSource = dsCreator.create(dsName, dsConfig, model());
                 logger.info("DS '{}' created!", dataSource.name());
-                DataSource.registerDataSource(dsName, dataSource.proxy());
+                DataSource.registerDataSource(dsName, Instrumentation.wrap(dsName, dsConfig, dataSource.proxy()));
             }catch (Throwable t){
                 final String message = String.format("DS '%s' failed to create!", dsName);
                 logger.error(message, t);
             }
         }
+        // compile and warm up scripts, before any route gets mapped, mapping the first route opens the port
+        Warmup.fromConfig( m.warmup(), m).run( m, creator );
+
         // now everything is done, run cron...
         CronModel cronModel = CronModel.fromConfig(m, m.cron());
         CronModel.schedule(cronModel);
@@ -147,16 +172,22 @@ public interface ModelRunner extends Runnable {
 
         Set<String> myRoutes = new HashSet<>();
 
+        if ( Metrics.enabled() ){
+            final String metricsPath = Metrics.ENDPOINT.get();
+            checkUniqueRoute( "get", metricsPath, myRoutes);
+            router.route("get", metricsPath, Metrics.endpoint());
+            logger.info("metrics route: get -> {}", metricsPath);
+        }
+
         logger.info("Routes mapping are as follows...");
         Map<String, Map<String, String>> paths = m.routes();
         for (String verb : paths.keySet()) {
             Map<String, String> verbRoutes = paths.getOrDefault(verb, Collections.emptyMap());
-            BiConsumer<String, Route> bic = routeLoaderMap.get(verb);
             for (Map.Entry<String, String> r : verbRoutes.entrySet()) {
                 checkUniqueRoute( verb, r.getKey(), myRoutes);
                 String scriptPath = m.interpretPath(r.getValue());
                 Route route = creator.createRoute(r.getKey(), scriptPath);
-                bic.accept(r.getKey(), route);
+                router.route(verb, r.getKey(), route);
                 logger.info("scriptable route: {} -> {} -> {}", verb, r.getKey(), scriptPath);
             }
         }
@@ -165,7 +196,6 @@ public interface ModelRunner extends Runnable {
         Map<String, Map<String, String>> proxies = m.proxies();
         for (String verb : proxies.keySet()) {
             Map<String, String> verbProxies = proxies.getOrDefault(verb, Collections.emptyMap());
-            BiConsumer<String, Route> bic = routeLoaderMap.get(verb);
             for (Map.Entry<String, String> r : verbProxies.entrySet()) {
                 checkUniqueRoute( verb, r.getKey(), myRoutes);
                 String proxyPath = r.getValue();
@@ -177,38 +207,55 @@ public interface ModelRunner extends Runnable {
                     continue;
                 }
                 final String destPath = proxyPath.replace(curlKey + "/", "");
-                Route route = cw.route(verb, r.getKey(), destPath);
-                bic.accept(r.getKey(), route);
+                Route route = Metrics.route(r.getKey(), "proxy", Tracing.route(r.getKey(), Bulkhead.route(r.getKey(), cw.route(verb, r.getKey(), destPath))));
+                router.route(verb, r.getKey(), route);
                 logger.info("proxy route: {} -> {} -> {}", verb, r.getKey(), r.getValue());
             }
         }
 
+        // the request span starts before any other filter
+        Tracing.attachStart();
         // load auth...
         AuthSystem authSystem = AuthSystem.fromFile(m.auth(), m );
         authSystem.attach();
+        // the profiler endpoint exists only behind auth
+        if ( Profiler.enabled() ){
+            final String profilerPath = Profiler.ENDPOINT.get();
+            if ( authSystem.disabled() ){
+                logger.error("profiler route: not registered, auth is disabled");
+            } else {
+                checkUniqueRoute( "get", profilerPath, myRoutes);
+                router.route("get", profilerPath, Profiler.endpoint());
+                logger.info("profiler route: get -> {}", profilerPath);
+            }
+        }
+        // rate limits, right after auth, so the user id is known to them
+        RateLimit rateLimit = RateLimit.fromConfig( m.rateLimits());
+        RateLimit.configure( rateLimit );
+        rateLimit.attach();
         // Attach input before any before filter
         typeSystem.attachInput();
         // load filters
         logger.info("Filters mapping are as follows...");
         Map<String, Map<String, String>> filters = m.filters();
-        final Map<String, BiConsumer<String, Filter>> filterMap = new HashMap<>();
-        filterMap.put("before", Spark::before);
-        filterMap.put("after", Spark::after);
-        filterMap.put("finally", Spark::afterAfter);
-
         for (String filterType : filters.keySet()) {
             Map<String, String> filterRoutes = filters.getOrDefault(filterType, Collections.emptyMap());
-            BiConsumer<String, Filter> bic = filterMap.get(filterType);
             for (Map.Entry<String, String> r : filterRoutes.entrySet()) {
                 String scriptPath = m.interpretPath(r.getValue());
-                Filter filter = creator.createFilter(r.getKey(), scriptPath);
-                bic.accept(r.getKey(), filter);
+                Filter filter = Metrics.filter(filterType, r.getKey(), Tracing.filter(filterType, r.getKey(), creator.createFilter(r.getKey(), scriptPath)));
+                router.filter(filterType, r.getKey(), filter);
                 logger.info("{} -> {} -> {}", filterType, r.getKey(), scriptPath);
             }
         }
+        // the trie gets compiled and mapped only now, when all routes and filters are known
+        router.attach();
         FileWatcher.startWatchDog( baseDir );
         // Attach TypeSystem output schema verification after any after filter
         typeSystem.attachOutput();
+        // compression decides on the final body and content type, so it goes last
+        compression.attach();
+        // and the request span ends after all of them
+        Tracing.attachEnd();
         // now if type system has typed storage, replace all storages via typed storage mechanism
         TypedStorage.attach(typeSystem);
         try {
@@ -236,6 +283,8 @@ public interface ModelRunner extends Runnable {
         CronModel.stop();
         AsyncHandler.stop();
         JvmRAMA.RAMAConsumerJob.stop();
+        SharedMemory.flush();
+        Tracing.stop();
     }
 
     /**
@@ -0,0 +1,325 @@
+package cowj;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Route;
+import spark.Spark;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * On demand, in process, sampling profiler, for where attaching a profiler by hand is not possible
+ * A get on the endpoint samples the stacks of all platform threads for some seconds and
+ * returns them folded, in the collapsed stack format flame graph tools read, one "frame;frame;... count" per line
+ * Threads executing a script get their stacks rooted at [route ...];[script ...] frames, so flame graphs split per route
+ * Optionally a JFR recording, with the Cowj events, runs alongside and gets dumped to a file
+ * Nothing runs and nothing is tagged unless a profile is being taken, scripts pay a single flag read otherwise
+ * The endpoint is registered only when auth is enabled, the policy should allow it for admins only
+ */
+public interface Profiler {
+
+    /**
+     * Logger for the Cowj Profiler
+     */
+    Logger logger = LoggerFactory.getLogger(Profiler.class);
+
+    /**
+     * Key for enabling the profiler endpoint
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for the path of the endpoint
+     */
+    String PATH = "path";
+
+    /**
+     * Default path of the endpoint
+     */
+    String DEFAULT_PATH = "/_/profile";
+
+    /**
+     * Key for the longest profile allowed, in seconds
+     */
+    String MAX_SECONDS = "max_seconds";
+
+    /**
+     * Key for the directory JFR recordings get dumped into
+     */
+    String DIR = "dir";
+
+    /**
+     * Query parameter, how long to profile, in seconds, default 10
+     */
+    String SECONDS = "seconds";
+
+    /**
+     * Query parameter, samples per second, default 100, at most 1000
+     */
+    String HZ = "hz";
+
+    /**
+     * Query parameter, cpu samples only runnable threads, wall all of them, default cpu
+     */
+    String MODE = "mode";
+
+    /**
+     * Query parameter, true to also dump a JFR recording of the same period
+     */
+    String JFR = "jfr";
+
+    /**
+     * Response header carrying the path of the JFR recording
+     */
+    String JFR_HEADER = "X-Cowj-Jfr";
+
+    /**
+     * Status when a profile is already being taken
+     */
+    int BUSY_STATUS = 409;
+
+    /**
+     * Default samples per second
+     */
+    int DEFAULT_HZ = 100;
+
+    /**
+     * Max samples per second
+     */
+    int MAX_HZ = 1000;
+
+    /**
+     * Is the endpoint enabled
+     */
+    AtomicBoolean ENABLED_FLAG = new AtomicBoolean(false);
+
+    /**
+     * Is a profile being taken, scripts tag their threads only then
+     */
+    AtomicBoolean ACTIVE = new AtomicBoolean(false);
+
+    /**
+     * Path of the endpoint
+     */
+    AtomicReference<String> ENDPOINT = new AtomicReference<>(DEFAULT_PATH);
+
+    /**
+     * Longest profile allowed, in seconds
+     */
+    AtomicInteger MAX = new AtomicInteger(60);
+
+    /**
+     * Directory JFR recordings get dumped into
+     */
+    AtomicReference<Path> JFR_DIR = new AtomicReference<>(Path.of("logs"));
+
+    /**
+     * Route and script being executed, by thread, only while a profile is being taken
+     */
+    Map<Thread, String> TAGS = new ConcurrentHashMap<>();
+
+    /**
+     * A thread tagged with a script execution
+     * @param thread the thread
+     * @param previous tag of the execution it is nested in, if any
+     */
+    record Tag(Thread thread, String previous) {}
+
+    /**
+     * Tags the current thread, if a profile is being taken
+     * @param route path the script is mapped to
+     * @param script path of the script
+     * @return a Tag to exit with, null if no profile is being taken
+     */
+    static Tag enter(String route, String script) {
+        if (!ACTIVE.get()) return null;
+        final Thread t = Thread.currentThread();
+        final String tag = "[route " + route.replace(';', ',') + "];[script " + script.replace(';', ',') + "]";
+        return new Tag(t, TAGS.put(t, tag));
+    }
+
+    /**
+     * Untags the current thread
+     * @param tag what enter() returned
+     */
+    static void exit(Tag tag) {
+        if (tag == null) return;
+        if (tag.previous() == null || !ACTIVE.get()) {
+            TAGS.remove(tag.thread());
+        } else {
+            TAGS.put(tag.thread(), tag.previous());
+        }
+    }
+
+    /**
+     * Folds a stack into a collapsed stack line, root first, without the count
+     * @param tag tag of the thread, null if none
+     * @param stack the stack, top first, as Java gives it
+     * @return the frames, separated by ;
+     */
+    static String fold(String tag, StackTraceElement[] stack) {
+        final StringBuilder sb = new StringBuilder(stack.length * 48);
+        if (tag != null) sb.append(tag);
+        for (int i = stack.length - 1; i >= 0; i--) {
+            if (!sb.isEmpty()) sb.append(';');
+            sb.append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Samples the stacks of all platform threads but the current one
+     * @param millis for how long
+     * @param hz samples per second
+     * @param cpu true to sample only runnable threads
+     * @return count of samples by folded stack
+     */
+    static Map<String, Long> sample(long millis, int hz, boolean cpu) {
+        final Map<String, Long> folded = new HashMap<>();
+        final Thread self = Thread.currentThread();
+        final long period = TimeUnit.SECONDS.toNanos(1) / hz;
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long next = System.nanoTime();
+        while (next < end) {
+            for (Map.Entry<Thread, StackTraceElement[]> e : Thread.getAllStackTraces().entrySet()) {
+                final Thread t = e.getKey();
+                final StackTraceElement[] stack = e.getValue();
+                if (t == self || stack.length == 0) continue;
+                if (cpu && t.getState() != Thread.State.RUNNABLE) continue;
+                folded.merge(fold(TAGS.get(t), stack), 1L, Long::sum);
+            }
+            next += period;
+            final long sleep = next - System.nanoTime();
+            if (sleep <= 0) continue;
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Collapsed stack format of folded stacks
+     * @param folded count of samples by folded stack
+     * @return one "frames count" line per stack, sorted by stack
+     */
+    static String collapsed(Map<String, Long> folded) {
+        final StringBuilder sb = new StringBuilder();
+        new TreeMap<>(folded).forEach((stack, count) -> sb.append(stack).append(' ').append(count).append('\n'));
+        return sb.toString();
+    }
+
+    /**
+     * Starts a JFR recording with the JDK profile settings, plus all the Cowj events
+     * @return the Recording, started
+     * @throws Exception if JFR is not available
+     */
+    @SuppressWarnings("unchecked")
+    static Recording recording() throws Exception {
+        final Recording recording = new Recording(Configuration.getConfiguration("profile"));
+        recording.setName("cowj-profile");
+        for (Class<?> c : FlightRecorder.class.getDeclaredClasses()) {
+            if (Event.class.isAssignableFrom(c)) recording.enable((Class<? extends Event>) c).withoutThreshold();
+        }
+        recording.start();
+        return recording;
+    }
+
+    /**
+     * Takes a profile, one at a time
+     * @param millis for how long
+     * @param hz samples per second
+     * @param cpu true to sample only runnable threads
+     * @param jfr dump a JFR recording of the same period into this file, null for none
+     * @return count of samples by folded stack, null if a profile is already being taken
+     * @throws Exception if the JFR recording could not be taken
+     */
+    static Map<String, Long> profile(long millis, int hz, boolean cpu, Path jfr) throws Exception {
+        if (!ACTIVE.compareAndSet(false, true)) return null;
+        try {
+            if (jfr == null) return sample(millis, hz, cpu);
+            try (Recording recording = recording()) {
+                final Map<String, Long> folded = sample(millis, hz, cpu);
+                recording.stop();
+                Files.createDirectories(jfr.toAbsolutePath().getParent());
+                recording.dump(jfr);
+                return folded;
+            }
+        } finally {
+            ACTIVE.set(false);
+            TAGS.clear();
+        }
+    }
+
+    /**
+     * The spark.Route taking a profile, with the query parameters seconds, hz, mode and jfr
+     * @return a spark.Route
+     */
+    static Route endpoint() {
+        return (request, response) -> {
+            final int seconds = Math.max(1, Math.min(MAX.get(), param(request, SECONDS, 10)));
+            final int hz = Math.max(1, Math.min(MAX_HZ, param(request, HZ, DEFAULT_HZ)));
+            final boolean cpu = !"wall".equalsIgnoreCase(request.queryParams(MODE));
+            final Path jfr = ZTypes.bool(request.queryParams(JFR), false) ?
+                    JFR_DIR.get().resolve("cowj-" + System.currentTimeMillis() + ".jfr") : null;
+            logger.info("Profiling for {} s at {} Hz, mode {}, jfr {}", seconds, hz, cpu ? "cpu" : "wall", jfr);
+            final Map<String, Long> folded = profile(TimeUnit.SECONDS.toMillis(seconds), hz, cpu, jfr);
+            if (folded == null) return Spark.halt(BUSY_STATUS, "A profile is already being taken");
+            if (jfr != null) response.header(JFR_HEADER, jfr.toString());
+            response.type("text/plain; charset=utf-8");
+            return collapsed(folded);
+        };
+    }
+
+    /**
+     * Gets an int query parameter
+     * @param request the request
+     * @param name name of the parameter
+     * @param def default value
+     * @return the value, or the default
+     */
+    private static int param(Request request, String name, int def) {
+        final String v = request.queryParams(name);
+        return v == null ? def : ZNumber.integer(v, def).intValue();
+    }
+
+    /**
+     * Is the endpoint enabled
+     * @return true if it is
+     */
+    static boolean enabled() {
+        return ENABLED_FLAG.get();
+    }
+
+    /**
+     * Sets up the profiler
+     * enabled : true to register the endpoint, default false, it needs auth to be enabled
+     * path : path of the endpoint, default /_/profile
+     * max_seconds : longest profile allowed, default 60
+     * dir : directory JFR recordings get dumped into, default logs
+     * @param config the configuration map
+     * @param model the model, to resolve the directory
+     */
+    static void configure(Map<String, Object> config, Model model) {
+        ENABLED_FLAG.set(ZTypes.bool(config.getOrDefault(ENABLED, false), false));
+        ENDPOINT.set(config.getOrDefault(PATH, DEFAULT_PATH).toString());
+        MAX.set(ZNumber.integer(config.getOrDefault(MAX_SECONDS, 60), 60).intValue());
+        JFR_DIR.set(Path.of(model.interpretPath(config.getOrDefault(DIR, "logs").toString())));
+    }
+}
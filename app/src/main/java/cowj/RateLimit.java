@@ -0,0 +1,330 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+import spark.Request;
+import spark.Spark;
+import zoomba.lang.core.types.ZNumber;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local rate limits for routes, keyed on the route, the user, the client ip or a header
+ * Every key gets a token bucket, kept as a single theoretical arrival time, as GCRA does,
+ * so taking a token is one CAS on an AtomicLong, no locks, no timer refilling buckets
+ * Calls over the limit get a 429 with Retry-After
+ * Limits are local to the instance, a fleet of n instances lets in n times the rate
+ */
+public interface RateLimit {
+
+    /**
+     * Logger for the Cowj RateLimit
+     */
+    Logger logger = LoggerFactory.getLogger(RateLimit.class);
+
+    /**
+     * Key for what the buckets are keyed on : route, user, ip or header:name
+     */
+    String KEY = "key";
+
+    /**
+     * Key for the no of calls allowed per period
+     */
+    String RATE = "rate";
+
+    /**
+     * Key for the period in ms
+     */
+    String PER = "per";
+
+    /**
+     * Key for the max calls allowed at once, on a full bucket
+     */
+    String BURST = "burst";
+
+    /**
+     * Key for the max no of keys tracked, idle ones get dropped beyond it, the most idle ones evicted,
+     * and new keys rejected till a sweep makes room
+     */
+    String KEYS = "keys";
+
+    /**
+     * One bucket for all the callers of the route
+     */
+    String ROUTE = "route";
+
+    /**
+     * A bucket per user, the Authenticator.USER_ID attribute, the client ip if there is none
+     */
+    String USER = "user";
+
+    /**
+     * A bucket per client ip
+     */
+    String IP = "ip";
+
+    /**
+     * A bucket per value of a header, e.g. header:X-API-KEY, the client ip if there is none
+     */
+    String HEADER_PREFIX = "header:";
+
+    /**
+     * HTTP status for a rejected call
+     */
+    int REJECT_STATUS = 429;
+
+    /**
+     * All the Rules
+     * @return collection of Rule
+     */
+    Collection<Rule> rules();
+
+    /**
+     * No rate limits at all
+     */
+    RateLimit NONE = Collections::emptyList;
+
+    /**
+     * The RateLimit in effect
+     */
+    AtomicReference<RateLimit> RATE_LIMITS = new AtomicReference<>(NONE);
+
+    /**
+     * Rate limit of a route path, with a token bucket per key
+     */
+    final class Rule {
+
+        private final String path;
+        private final String key;
+        private final String header;
+        private final long interval;
+        private final long burstWindow;
+        private final int maxKeys;
+        private final int lowKeys;
+        private final long sweepInterval;
+
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        // when the next sweep is due, MIN_VALUE till the first one
+        private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder evicted = new LongAdder();
+
+        Rule(String path, String key, long rate, long perMs, long burst, int maxKeys) {
+            this.path = path;
+            this.key = key;
+            this.header = key.startsWith(HEADER_PREFIX) ? key.substring(HEADER_PREFIX.length()) : null;
+            // time between two tokens, and how far ahead of now a full bucket lets the arrival time go
+            this.interval = Math.max(1, TimeUnit.MILLISECONDS.toNanos(perMs) / rate);
+            this.burstWindow = interval * burst;
+            this.maxKeys = maxKeys;
+            // a sweep evicts down to this, so that the next few new keys do not need one
+            this.lowKeys = maxKeys - Math.max(1, maxKeys / 10);
+            // a bucket is full again at most burstWindow after its last call, sweeping more often finds little
+            this.sweepInterval = Math.max(burstWindow, TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * Route path of the rule, as in Spark
+         * @return path
+         */
+        public String path() {
+            return path;
+        }
+
+        /**
+         * Calls allowed so far
+         * @return allowed calls
+         */
+        public long allowed() {
+            return allowed.sum();
+        }
+
+        /**
+         * Calls rejected so far
+         * @return rejected calls
+         */
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * Keys tracked right now
+         * @return no of buckets
+         */
+        public int keys() {
+            return buckets.size();
+        }
+
+        /**
+         * Keys evicted so far, while their buckets were not yet full
+         * @return evicted keys
+         */
+        public long evicted() {
+            return evicted.sum();
+        }
+
+        /**
+         * Key of the bucket for a request
+         * @param request the spark.Request
+         * @return the key
+         */
+        String key(Request request) {
+            if (ROUTE.equals(key)) return path;
+            Object k = null;
+            if (USER.equals(key)) {
+                k = request.attribute(Authenticator.USER_ID);
+            } else if (header != null) {
+                k = request.headers(header);
+            }
+            return k != null ? k.toString() : request.ip();
+        }
+
+        /**
+         * Takes a token from the bucket of a key
+         * A new key, with max keys tracked and no sweep due, gets rejected till the next sweep
+         * The cap can be overshot by the no of callers adding keys at the same time, not more
+         * @param k the key
+         * @param now current time in nanos
+         * @return 0 if a token was taken, else nanos till the next one
+         */
+        long acquire(String k, long now) {
+            AtomicLong tat = buckets.get(k);
+            if (tat == null) {
+                if (buckets.size() >= maxKeys) {
+                    sweep(now);
+                    if (buckets.size() >= maxKeys) {
+                        rejected.increment();
+                        return Math.max(interval, nextSweep.get() - now);
+                    }
+                }
+                tat = buckets.computeIfAbsent(k, x -> new AtomicLong(Long.MIN_VALUE));
+            }
+            while (true) {
+                final long t = tat.get();
+                final long next = Math.max(t, now) + interval;
+                final long ahead = next - now - burstWindow;
+                if (ahead > 0) {
+                    rejected.increment();
+                    return ahead;
+                }
+                if (tat.compareAndSet(t, next)) {
+                    allowed.increment();
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Drops the keys whose buckets are full again, those are the same as not tracked
+         * If that is not enough, evicts the most idle ones, their buckets are the closest to full
+         * Runs at most once per sweep interval, by one caller, the others go on without
+         * @param now current time in nanos
+         */
+        void sweep(long now) {
+            final long due = nextSweep.get();
+            if (due != Long.MIN_VALUE && now - due < 0) return;
+            if (!nextSweep.compareAndSet(due, now + sweepInterval)) return;
+            buckets.values().removeIf(tat -> tat.get() <= now);
+            final int excess = buckets.size() - lowKeys;
+            if (excess <= 0) return;
+            final List<String> idle = buckets.entrySet().stream()
+                    .sorted(Comparator.comparingLong(e -> e.getValue().get()))
+                    .limit(excess).map(Map.Entry::getKey).toList();
+            idle.forEach(buckets::remove);
+            evicted.add(idle.size());
+            logger.warn("RateLimit '{}' tracks {} active keys, above the max of {}, evicted {}", path,
+                    buckets.size() + idle.size(), maxKeys, idle.size());
+        }
+
+        /**
+         * Creates the spark.Filter enforcing the rule
+         * @return a spark.Filter
+         */
+        public Filter filter() {
+            return (request, response) -> {
+                final long wait = acquire(key(request), System.nanoTime());
+                if (wait == 0) return;
+                final long seconds = Math.max(1, (wait + 999_999_999L) / 1_000_000_000L);
+                response.header("Retry-After", String.valueOf(seconds));
+                Spark.halt(REJECT_STATUS, "Too Many Requests");
+            };
+        }
+
+        /**
+         * Stats of the rule
+         * @return map of key, keys, evicted, allowed and rejected
+         */
+        public Map<String, Object> stats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put(KEY, key);
+            stats.put(KEYS, keys());
+            stats.put("evicted", evicted());
+            stats.put("allowed", allowed());
+            stats.put("rejected", rejected());
+            return stats;
+        }
+    }
+
+    /**
+     * Attaches the rules as before filters, after the auth one, so the user id is known
+     */
+    default void attach() {
+        rules().forEach(r -> {
+            Spark.before(r.path(), r.filter());
+            logger.info("RateLimit on '{}'", r.path());
+        });
+    }
+
+    /**
+     * Sets up the RateLimit in effect
+     * @param rateLimit the RateLimit
+     */
+    static void configure(RateLimit rateLimit) {
+        RATE_LIMITS.set(rateLimit);
+    }
+
+    /**
+     * Creates a RateLimit from configuration
+     * path : [ key : route|user|ip|header:name, rate : n, per : ms, burst : n, keys : n ]
+     * key defaults to route, per to 1000, burst to the rate, keys to 100000
+     * @param config the configuration map
+     * @return a RateLimit
+     */
+    static RateLimit fromConfig(Map<String, Object> config) {
+        if (config.isEmpty()) return NONE;
+        final List<Rule> rules = new ArrayList<>();
+        config.forEach((path, c) -> {
+            final Map<String, Object> rc = (Map) c;
+            final String key = rc.getOrDefault(KEY, ROUTE).toString();
+            if (!ROUTE.equals(key) && !USER.equals(key) && !IP.equals(key) && !key.startsWith(HEADER_PREFIX)) {
+                throw new IllegalArgumentException("RateLimit '" + path + "' has unknown key : " + key);
+            }
+            final long rate = ZNumber.integer(rc.getOrDefault(RATE, 0), 0).longValue();
+            if (rate <= 0) {
+                throw new IllegalArgumentException("RateLimit '" + path + "' needs a positive rate");
+            }
+            final long per = ZNumber.integer(rc.getOrDefault(PER, 1000), 1000).longValue();
+            final long burst = ZNumber.integer(rc.getOrDefault(BURST, rate), rate).longValue();
+            final int keys = ZNumber.integer(rc.getOrDefault(KEYS, 100000), 100000).intValue();
+            rules.add(new Rule(path, key, rate, per, Math.max(1, burst), keys));
+        });
+        return () -> rules;
+    }
+
+    /**
+     * Stats of all the rate limits
+     * @return map of route path to its stats
+     */
+    static Map<String, Map<String, Object>> stats() {
+        final Map<String, Map<String, Object>> stats = new TreeMap<>();
+        RATE_LIMITS.get().rules().forEach(r -> stats.put(r.path(), r.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,473 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * A bounded pool of expensive to create resources
+ * Resources are borrowed by a caller, used exclusively, and then released back
+ * Idle resources are evicted lazily, whenever the pool gets touched
+ * @param <T> type of the resource
+ */
+public interface ResourcePool<T> {
+
+    /**
+     * Logger for the Cowj ResourcePool
+     */
+    Logger logger = LoggerFactory.getLogger(ResourcePool.class);
+
+    /**
+     * Borrows a resource from the pool, creating one if required
+     * Waits at most borrowTimeout() ms for a resource to be available
+     * @return a resource for exclusive use by the caller
+     * @throws Exception TimeoutException if no resource became available in time, or creation error
+     */
+    T borrow() throws Exception;
+
+    /**
+     * Releases a borrowed resource back to the pool
+     * @param resource which was borrowed via borrow()
+     */
+    void release(T resource);
+
+    /**
+     * Discards a borrowed resource which is no longer usable
+     * The resource gets destroyed and never comes back to the pool
+     * @param resource which was borrowed via borrow()
+     */
+    void invalidate(T resource);
+
+    /**
+     * Maximum no of resources this pool can create at any point
+     * @return max size of the pool
+     */
+    int maxSize();
+
+    /**
+     * No of resources currently borrowed
+     * @return no of resources in use
+     */
+    int active();
+
+    /**
+     * No of resources currently sitting idle inside the pool
+     * @return no of idle resources
+     */
+    int idle();
+
+    /**
+     * Destroys all idle resources
+     * Resources which are borrowed gets destroyed when they are released
+     */
+    void close();
+
+    /**
+     * Borrows a resource, applies the function and releases it back
+     * In case of error the resource gets invalidated, as it may be left in an unknown state
+     * @param function to be applied on the resource
+     * @return result of the function
+     * @param <R> type of the result
+     * @throws Exception in case of error in borrowing or in the function
+     */
+    default <R> R apply(CheckedFunctional.Function<T, R, ? extends Exception> function) throws Exception {
+        final T resource = borrow();
+        try {
+            final R r = function.applyThrows(resource);
+            release(resource);
+            return r;
+        } catch (Throwable t) {
+            invalidate(resource);
+            throw t;
+        }
+    }
+
+    /**
+     * Key for the max size of the pool
+     */
+    String MAX_SIZE = "max";
+
+    /**
+     * Key for the no of resources to be pre-created when the pool gets created
+     */
+    String MIN_SIZE = "min";
+
+    /**
+     * Key for the idle time in ms after which an idle resource gets evicted
+     */
+    String IDLE_TIMEOUT = "idle";
+
+    /**
+     * Key for the time in ms to wait while borrowing
+     */
+    String BORROW_TIMEOUT = "timeout";
+
+    /**
+     * Key to enable or disable pooling
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Default max size of the pool
+     */
+    int DEFAULT_MAX_SIZE = 64;
+
+    /**
+     * Default idle time in ms, 5 minutes
+     */
+    long DEFAULT_IDLE_TIMEOUT = 300000L;
+
+    /**
+     * Default borrow timeout in ms
+     */
+    long DEFAULT_BORROW_TIMEOUT = 30000L;
+
+    /**
+     * An idle resource, along with when it became idle
+     * @param resource the resource
+     * @param since epoch time in ms when it was released
+     * @param <T> type of the resource
+     */
+    record Idle<T>(T resource, long since) {}
+
+    /**
+     * Creates a bounded ResourcePool
+     * @param maxSize maximum no of resources that can be created
+     * @param idleTimeout time in ms after which idle resources are evicted
+     * @param borrowTimeout time in ms to wait for a resource while borrowing
+     * @param creator creates a new resource
+     * @param destroyer destroys a resource, after eviction or invalidation
+     * @return a ResourcePool
+     * @param <T> type of the resource
+     */
+    static <T> ResourcePool<T> bounded(int maxSize, long idleTimeout, long borrowTimeout,
+                                       Callable<T> creator, Consumer<T> destroyer) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Pool max size must be positive : " + maxSize);
+        return new ResourcePool<T>() {
+
+            final Semaphore permits = new Semaphore(maxSize, true);
+
+            // most recently released are at the head, the oldest ones are at the tail
+            final Deque<Idle<T>> idleResources = new ConcurrentLinkedDeque<>();
+
+            final AtomicInteger active = new AtomicInteger();
+
+            volatile boolean closed = false;
+
+            void destroy(T resource) {
+                try {
+                    destroyer.accept(resource);
+                } catch (Throwable t) {
+                    logger.warn("Error destroying pooled resource : {}", t.toString());
+                }
+            }
+
+            void evictIdle() {
+                final long threshold = System.currentTimeMillis() - idleTimeout;
+                Idle<T> oldest;
+                while ((oldest = idleResources.peekLast()) != null && oldest.since() < threshold) {
+                    // only the one who removes it, destroys it
+                    if (idleResources.removeLastOccurrence(oldest)) {
+                        destroy(oldest.resource());
+                    }
+                }
+            }
+
+            @Override
+            public T borrow() throws Exception {
+                if (!permits.tryAcquire(borrowTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException(String.format("No resource available in pool after %d ms", borrowTimeout));
+                }
+                try {
+                    evictIdle();
+                    final Idle<T> idle = idleResources.pollFirst();
+                    final T resource = idle != null ? idle.resource() : creator.call();
+                    active.incrementAndGet();
+                    return resource;
+                } catch (Throwable t) {
+                    permits.release();
+                    throw t;
+                }
+            }
+
+            @Override
+            public void release(T resource) {
+                active.decrementAndGet();
+                if (closed) {
+                    permits.release();
+                    destroy(resource);
+                    return;
+                }
+                idleResources.offerFirst(new Idle<>(resource, System.currentTimeMillis()));
+                permits.release();
+                // closed in between, what got in after the drain gets drained now
+                if (closed) {
+                    close();
+                } else {
+                    evictIdle();
+                }
+            }
+
+            @Override
+            public void invalidate(T resource) {
+                active.decrementAndGet();
+                permits.release();
+                destroy(resource);
+            }
+
+            @Override
+            public int maxSize() {
+                return maxSize;
+            }
+
+            @Override
+            public int active() {
+                return active.get();
+            }
+
+            @Override
+            public int idle() {
+                return idleResources.size();
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+                Idle<T> idle;
+                while ((idle = idleResources.pollFirst()) != null) {
+                    destroy(idle.resource());
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a pass through ResourcePool, which does not pool at all
+     * Every borrow creates a new resource and every release destroys it
+     * @param creator creates a new resource
+     * @param destroyer destroys a resource
+     * @return a ResourcePool
+     * @param <T> type of the resource
+     */
+    static <T> ResourcePool<T> ephemeral(Callable<T> creator, Consumer<T> destroyer) {
+        return new ResourcePool<T>() {
+
+            final AtomicInteger active = new AtomicInteger();
+
+            @Override
+            public T borrow() throws Exception {
+                final T resource = creator.call();
+                active.incrementAndGet();
+                return resource;
+            }
+
+            @Override
+            public void release(T resource) {
+                invalidate(resource);
+            }
+
+            @Override
+            public void invalidate(T resource) {
+                active.decrementAndGet();
+                destroyer.accept(resource);
+            }
+
+            @Override
+            public int maxSize() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public int active() {
+                return active.get();
+            }
+
+            @Override
+            public int idle() {
+                return 0;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    /**
+     * Creates a ResourcePool which keeps one resource per platform thread, across borrows
+     * A nested borrow on a thread whose resource is in use, and any borrow on a virtual thread,
+     * gets a resource of its own, destroyed on release
+     * Resources of threads which ended get destroyed when the next thread creates one, the rest on close
+     * @param creator creates a new resource
+     * @param destroyer destroys a resource
+     * @return a ResourcePool
+     * @param <T> type of the resource
+     */
+    static <T> ResourcePool<T> perThread(Callable<T> creator, Consumer<T> destroyer) {
+        // the thread keeping a resource, and whether it is borrowed
+        record Kept(Thread owner, boolean inUse) {}
+
+        return new ResourcePool<T>() {
+
+            final ResourcePool<T> ephemeral = ephemeral(creator, destroyer);
+
+            final ThreadLocal<T> kept = new ThreadLocal<>();
+
+            // identity, a resource need not have a sane equals, guarded by itself
+            final Map<T, Kept> resources = Collections.synchronizedMap(new IdentityHashMap<>());
+
+            volatile boolean closed = false;
+
+            @Override
+            public T borrow() throws Exception {
+                final Thread thread = Thread.currentThread();
+                if (closed || thread.isVirtual()) return ephemeral.borrow();
+                final T resource = kept.get();
+                if (resource != null) {
+                    synchronized (resources) {
+                        final Kept k = resources.get(resource);
+                        if (k != null && !k.inUse()) {
+                            resources.put(resource, new Kept(thread, true));
+                            return resource;
+                        }
+                    }
+                    return ephemeral.borrow();
+                }
+                sweep();
+                final T created = creator.call();
+                kept.set(created);
+                resources.put(created, new Kept(thread, true));
+                return created;
+            }
+
+            /**
+             * Destroys the idle resources of threads which ended
+             */
+            void sweep() {
+                final List<T> dead = new ArrayList<>();
+                synchronized (resources) {
+                    resources.entrySet().removeIf(e -> {
+                        final boolean gone = !e.getValue().inUse() && !e.getValue().owner().isAlive();
+                        if (gone) dead.add(e.getKey());
+                        return gone;
+                    });
+                }
+                dead.forEach(destroyer);
+            }
+
+            @Override
+            public void release(T resource) {
+                if (resource != kept.get()) {
+                    ephemeral.release(resource);
+                    return;
+                }
+                resources.computeIfPresent(resource, (r, k) -> new Kept(k.owner(), false));
+                if (closed) invalidate(resource);
+            }
+
+            @Override
+            public void invalidate(T resource) {
+                if (resource != kept.get()) {
+                    ephemeral.invalidate(resource);
+                    return;
+                }
+                kept.remove();
+                // close might have destroyed it already
+                if (resources.remove(resource) != null) destroyer.accept(resource);
+            }
+
+            @Override
+            public int maxSize() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public int active() {
+                synchronized (resources) {
+                    return (int) resources.values().stream().filter(Kept::inUse).count() + ephemeral.active();
+                }
+            }
+
+            @Override
+            public int idle() {
+                synchronized (resources) {
+                    return (int) resources.values().stream().filter(k -> !k.inUse()).count();
+                }
+            }
+
+            @Override
+            public void close() {
+                closed = true;
+                final List<T> idle = new ArrayList<>();
+                synchronized (resources) {
+                    resources.entrySet().removeIf(e -> {
+                        if (e.getValue().inUse()) return false;
+                        idle.add(e.getKey());
+                        return true;
+                    });
+                }
+                // the ones in use get destroyed as they come back
+                idle.forEach(destroyer);
+            }
+        };
+    }
+
+    /**
+     * Pre-creates resources in the pool, so that first borrowers do not pay the creation cost
+     * @param pool the ResourcePool
+     * @param count no of resources to be created
+     * @return the same ResourcePool
+     * @param <T> type of the resource
+     */
+    static <T> ResourcePool<T> prefill(ResourcePool<T> pool, int count) {
+        final List<T> resources = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(count, pool.maxSize()); i++) {
+                resources.add(pool.borrow());
+            }
+        } catch (Throwable t) {
+            logger.warn("Pool could not be pre-filled : {}", t.toString());
+        }
+        resources.forEach(pool::release);
+        return pool;
+    }
+
+    /**
+     * Creates a ResourcePool from configuration
+     * enabled : if false, creates an ephemeral pool, default true
+     * min : no of resources to be pre-created, default 0
+     * max : max size of the pool
+     * idle : idle timeout in ms
+     * timeout : borrow timeout in ms
+     * @param config configuration map
+     * @param creator creates a new resource
+     * @param destroyer destroys a resource
+     * @return a ResourcePool
+     * @param <T> type of the resource
+     */
+    static <T> ResourcePool<T> fromConfig(Map<String, Object> config, Callable<T> creator, Consumer<T> destroyer) {
+        final boolean enabled = ZTypes.bool(config.getOrDefault(ENABLED, true), true);
+        if (!enabled) {
+            return ephemeral(creator, destroyer);
+        }
+        final int maxSize = ZNumber.integer(config.getOrDefault(MAX_SIZE, DEFAULT_MAX_SIZE), DEFAULT_MAX_SIZE).intValue();
+        final long idleTimeout = ZNumber.integer(config.getOrDefault(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT), DEFAULT_IDLE_TIMEOUT).longValue();
+        final long borrowTimeout = ZNumber.integer(config.getOrDefault(BORROW_TIMEOUT, DEFAULT_BORROW_TIMEOUT), DEFAULT_BORROW_TIMEOUT).longValue();
+        final int minSize = ZNumber.integer(config.getOrDefault(MIN_SIZE, 0), 0).intValue();
+        return prefill(bounded(maxSize, idleTimeout, borrowTimeout, creator, destroyer), minSize);
+    }
+}
@@ -0,0 +1,718 @@
+package cowj;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.*;
+import zoomba.lang.core.types.ZTypes;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Maps routes and filters of the Model to Spark
+ * By default every route and filter gets registered with Spark, which matches them linearly per request
+ * The segment trie router compiles all routes and filters into a trie per HTTP verb, registered as one Spark route per verb
+ * A request then gets dispatched in O(depth of the path), the filters matching a route are precomputed on its leaf
+ */
+public interface Router {
+
+    /**
+     * Logger for the Cowj Router
+     */
+    Logger logger = LoggerFactory.getLogger(Router.class);
+
+    /**
+     * Key for enabling the segment trie router
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Before filters
+     */
+    String BEFORE = "before";
+
+    /**
+     * After filters
+     */
+    String AFTER = "after";
+
+    /**
+     * Finally filters, run even when the route fails
+     */
+    String FINALLY = "finally";
+
+    /**
+     * Body Spark sends back when no route matches
+     */
+    String NOT_FOUND = "<html><body><h2>404 Not found</h2></body></html>";
+
+    /**
+     * Spark route registration per HTTP verb
+     */
+    Map<String, BiConsumer<String, Route>> SPARK_ROUTES = Map.of(
+            "get", Spark::get,
+            "put", Spark::put,
+            "post", Spark::post,
+            "delete", Spark::delete,
+            "head", Spark::head,
+            "connect", Spark::connect,
+            "options", Spark::options,
+            "trace", Spark::trace,
+            "patch", Spark::patch);
+
+    /**
+     * Spark filter registration per filter type
+     */
+    Map<String, BiConsumer<String, Filter>> SPARK_FILTERS = Map.of(
+            BEFORE, Spark::before,
+            AFTER, Spark::after,
+            FINALLY, Spark::afterAfter);
+
+    /**
+     * Adds a route
+     * @param verb HTTP verb in lower case
+     * @param path the route path
+     * @param route the spark.Route
+     */
+    void route(String verb, String path, Route route);
+
+    /**
+     * Adds a filter
+     * @param type before, after or finally
+     * @param path the filter path
+     * @param filter the spark.Filter
+     */
+    void filter(String type, String path, Filter filter);
+
+    /**
+     * Registers with Spark whatever was not registered while adding
+     */
+    default void attach() {
+    }
+
+    /**
+     * Router which registers every route and filter with Spark, as they get added
+     */
+    Router SPARK = new Router() {
+        @Override
+        public void route(String verb, String path, Route route) {
+            SPARK_ROUTES.get(verb).accept(path, route);
+        }
+
+        @Override
+        public void filter(String type, String path, Filter filter) {
+            SPARK_FILTERS.get(type).accept(path, filter);
+        }
+    };
+
+    /**
+     * A compiled route or filter path
+     * Segments are separated by /, a trailing / is an empty last segment
+     * :name matches one non empty segment, * matches one segment, a trailing * matches one or more
+     */
+    final class PathPattern {
+
+        /**
+         * Result of matching a path
+         * @param params path parameters, keys are :name in lower case
+         * @param splat what the * segments matched
+         */
+        public record Match(Map<String, String> params, List<String> splat) {}
+
+        private final String path;
+        private final String[] segments;
+        private final boolean tail;
+
+        /**
+         * Compiles a path
+         * @param path route or filter path, e.g. /users/:id/*
+         */
+        public PathPattern(String path) {
+            this.path = path;
+            this.segments = segments(path);
+            this.tail = "*".equals(segments[segments.length - 1]);
+        }
+
+        /**
+         * Splits a path into its segments
+         * @param path a path, with or without the leading /
+         * @return segments, / itself is one empty segment
+         */
+        public static String[] segments(String path) {
+            return (path.startsWith("/") ? path.substring(1) : path).split("/", -1);
+        }
+
+        /**
+         * Splits a request uri into its segments, each URL decoded, as Spark decodes the uri before matching
+         * Decoding per segment keeps an encoded / inside its segment, and a + stays a +, as in any path
+         * @param uri the raw request uri
+         * @return decoded segments, / itself is one empty segment
+         */
+        public static String[] decodedSegments(String uri) {
+            final String[] segments = segments(uri);
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = decode(segments[i]);
+            }
+            return segments;
+        }
+
+        /**
+         * URL decodes a path segment
+         * @param segment a raw segment
+         * @return the decoded segment, the raw one if it is not validly encoded
+         */
+        static String decode(String segment) {
+            if (segment.indexOf('%') < 0) return segment;
+            try {
+                return URLDecoder.decode(segment.replace("+", "%2B"), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return segment;
+            }
+        }
+
+        /**
+         * The path this got compiled from
+         * @return the path
+         */
+        public String path() {
+            return path;
+        }
+
+        private boolean isTail(int i) {
+            return tail && i == segments.length - 1;
+        }
+
+        private static boolean isParam(String segment) {
+            return segment.startsWith(":");
+        }
+
+        /**
+         * Matches a path
+         * @param path segments of the path
+         * @return a Match, null if it does not match
+         */
+        public Match match(String[] path) {
+            final int n = segments.length;
+            if (tail ? path.length < n : path.length != n) return null;
+            Map<String, String> params = Collections.emptyMap();
+            List<String> splat = Collections.emptyList();
+            for (int i = 0; i < n; i++) {
+                final String s = segments[i];
+                if (isTail(i)) {
+                    if (splat.isEmpty()) splat = new ArrayList<>(1);
+                    splat.add(String.join("/", Arrays.copyOfRange(path, i, path.length)));
+                } else if ("*".equals(s)) {
+                    if (splat.isEmpty()) splat = new ArrayList<>(1);
+                    splat.add(path[i]);
+                } else if (isParam(s)) {
+                    if (path[i].isEmpty()) return null;
+                    if (params.isEmpty()) params = new HashMap<>();
+                    params.put(s.toLowerCase(Locale.ROOT), path[i]);
+                } else if (!s.equals(path[i])) {
+                    return null;
+                }
+            }
+            return new Match(params, splat);
+        }
+
+        /**
+         * Does every path matching the other pattern match this one too
+         * May say false when it can not be sure, never says true when it is not
+         * @param other a PathPattern
+         * @return true if this covers the other one
+         */
+        public boolean covers(PathPattern other) {
+            for (int i = 0; i < segments.length; i++) {
+                // the other one needs a segment here, the rest is anything
+                if (isTail(i)) return other.segments.length > i;
+                if (i >= other.segments.length || other.isTail(i)) return false;
+                final String s = segments[i];
+                final String o = other.segments[i];
+                if ("*".equals(s)) continue;
+                if (isParam(s)) {
+                    if (isParam(o) || (!"*".equals(o) && !o.isEmpty())) continue;
+                    return false;
+                }
+                if (!s.equals(o)) return false;
+            }
+            return other.segments.length == segments.length;
+        }
+
+        /**
+         * Can a path match both this and the other pattern
+         * May say true when it can not be sure, never says false when it is not
+         * @param other a PathPattern
+         * @return true if they may overlap
+         */
+        public boolean overlaps(PathPattern other) {
+            final int n = Math.min(segments.length, other.segments.length);
+            for (int i = 0; i < n; i++) {
+                if (isTail(i) || other.isTail(i)) return true;
+                final String s = segments[i];
+                final String o = other.segments[i];
+                if ("*".equals(s) || "*".equals(o)) continue;
+                if (isParam(s) && isParam(o)) continue;
+                if (isParam(s)) {
+                    if (o.isEmpty()) return false;
+                    continue;
+                }
+                if (isParam(o)) {
+                    if (s.isEmpty()) return false;
+                    continue;
+                }
+                if (!s.equals(o)) return false;
+            }
+            return segments.length == other.segments.length;
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+
+    /**
+     * A spark.Request for a route or filter dispatched by the trie
+     * Path parameters and splat come from the matched pattern, everything else from the underlying request
+     */
+    final class RoutedRequest extends Request {
+
+        private final Request request;
+        private final PathPattern.Match match;
+
+        /**
+         * Creates a RoutedRequest
+         * @param request the underlying request, as Spark matched it against the catch all route
+         * @param match the Match of the path against the pattern
+         */
+        public RoutedRequest(Request request, PathPattern.Match match) {
+            this.request = request;
+            this.match = match;
+        }
+
+        @Override
+        public Map<String, String> params() {
+            return Collections.unmodifiableMap(match.params());
+        }
+
+        @Override
+        public String params(String param) {
+            if (param == null) return null;
+            final String key = param.startsWith(":") ? param : ":" + param;
+            return match.params().get(key.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public String[] splat() {
+            return match.splat().toArray(new String[0]);
+        }
+
+        @Override
+        public String requestMethod() {
+            return request.requestMethod();
+        }
+
+        @Override
+        public String scheme() {
+            return request.scheme();
+        }
+
+        @Override
+        public String host() {
+            return request.host();
+        }
+
+        @Override
+        public String userAgent() {
+            return request.userAgent();
+        }
+
+        @Override
+        public int port() {
+            return request.port();
+        }
+
+        @Override
+        public String pathInfo() {
+            return request.pathInfo();
+        }
+
+        @Override
+        public String servletPath() {
+            return request.servletPath();
+        }
+
+        @Override
+        public String contextPath() {
+            return request.contextPath();
+        }
+
+        @Override
+        public String url() {
+            return request.url();
+        }
+
+        @Override
+        public String uri() {
+            return request.uri();
+        }
+
+        @Override
+        public String protocol() {
+            return request.protocol();
+        }
+
+        @Override
+        public String contentType() {
+            return request.contentType();
+        }
+
+        @Override
+        public String ip() {
+            return request.ip();
+        }
+
+        @Override
+        public String body() {
+            return request.body();
+        }
+
+        @Override
+        public byte[] bodyAsBytes() {
+            return request.bodyAsBytes();
+        }
+
+        @Override
+        public int contentLength() {
+            return request.contentLength();
+        }
+
+        @Override
+        public String queryParams(String queryParam) {
+            return request.queryParams(queryParam);
+        }
+
+        @Override
+        public String queryParamOrDefault(String queryParam, String defaultValue) {
+            return request.queryParamOrDefault(queryParam, defaultValue);
+        }
+
+        @Override
+        public String[] queryParamsValues(String queryParam) {
+            return request.queryParamsValues(queryParam);
+        }
+
+        @Override
+        public Set<String> queryParams() {
+            return request.queryParams();
+        }
+
+        @Override
+        public String queryString() {
+            return request.queryString();
+        }
+
+        @Override
+        public QueryParamsMap queryMap() {
+            return request.queryMap();
+        }
+
+        @Override
+        public QueryParamsMap queryMap(String key) {
+            return request.queryMap(key);
+        }
+
+        @Override
+        public String headers(String header) {
+            return request.headers(header);
+        }
+
+        @Override
+        public Set<String> headers() {
+            return request.headers();
+        }
+
+        @Override
+        public void attribute(String attribute, Object value) {
+            request.attribute(attribute, value);
+        }
+
+        @Override
+        public <T> T attribute(String attribute) {
+            return request.attribute(attribute);
+        }
+
+        @Override
+        public Set<String> attributes() {
+            return request.attributes();
+        }
+
+        @Override
+        public HttpServletRequest raw() {
+            return request.raw();
+        }
+
+        @Override
+        public Session session() {
+            return request.session();
+        }
+
+        @Override
+        public Session session(boolean create) {
+            return request.session(create);
+        }
+
+        @Override
+        public Map<String, String> cookies() {
+            return request.cookies();
+        }
+
+        @Override
+        public String cookie(String name) {
+            return request.cookie(name);
+        }
+    }
+
+    /**
+     * A filter with its compiled path
+     * @param pattern the compiled path of the filter
+     * @param filter the spark.Filter
+     */
+    record PatternFilter(PathPattern pattern, Filter filter) {}
+
+    /**
+     * A filter precomputed for a route
+     * @param pattern the compiled path of the filter
+     * @param filter the spark.Filter
+     * @param conditional true if the filter matches only some paths of the route, and needs to be checked per request
+     */
+    record ChainedFilter(PathPattern pattern, Filter filter, boolean conditional) {
+
+        void handle(Request request, Response response, String[] path) throws Exception {
+            final PathPattern.Match m = pattern.match(path);
+            if (m == null) return; // only possible when conditional
+            filter.handle(new RoutedRequest(request, m), response);
+        }
+    }
+
+    /**
+     * A route in the trie, along with the filters matching it
+     */
+    final class Leaf {
+
+        private final PathPattern pattern;
+        private final Route route;
+        private final Map<String, List<ChainedFilter>> chains = new HashMap<>();
+
+        Leaf(PathPattern pattern, Route route) {
+            this.pattern = pattern;
+            this.route = route;
+        }
+
+        /**
+         * The compiled path of the route
+         * @return the PathPattern
+         */
+        public PathPattern pattern() {
+            return pattern;
+        }
+
+        /**
+         * Filters of a type for this route, in the order they were added
+         * @param type before, after or finally
+         * @return list of ChainedFilter
+         */
+        public List<ChainedFilter> chain(String type) {
+            return chains.getOrDefault(type, Collections.emptyList());
+        }
+
+        void compile(Map<String, List<PatternFilter>> filters) {
+            chains.clear();
+            filters.forEach((type, list) -> {
+                final List<ChainedFilter> chain = new ArrayList<>();
+                for (PatternFilter pf : list) {
+                    if (pf.pattern().covers(pattern)) {
+                        chain.add(new ChainedFilter(pf.pattern(), pf.filter(), false));
+                    } else if (pf.pattern().overlaps(pattern)) {
+                        chain.add(new ChainedFilter(pf.pattern(), pf.filter(), true));
+                    }
+                }
+                if (!chain.isEmpty()) chains.put(type, List.copyOf(chain));
+            });
+        }
+
+        /**
+         * Runs the filters and the route, the way Spark would have
+         * before filters, route, after filters, and finally filters in any case
+         * @param request the request
+         * @param response the response
+         * @param path segments of the path
+         * @return result of the route, or the body as the after filters left it
+         * @throws Exception whatever the route or filters raise
+         */
+        Object handle(Request request, Response response, String[] path) throws Exception {
+            final List<ChainedFilter> after = chain(AFTER);
+            final List<ChainedFilter> last = chain(FINALLY);
+            try {
+                for (ChainedFilter f : chain(BEFORE)) f.handle(request, response, path);
+                Object result = route.handle(new RoutedRequest(request, pattern.match(path)), response);
+                // Spark lets the after filters see and replace the body
+                if (result instanceof String s && !(after.isEmpty() && last.isEmpty())) response.body(s);
+                if (!after.isEmpty()) {
+                    for (ChainedFilter f : after) f.handle(request, response, path);
+                    final String body = response.body();
+                    if (body != null) result = body;
+                }
+                return result;
+            } finally {
+                for (ChainedFilter f : last) f.handle(request, response, path);
+            }
+        }
+    }
+
+    /**
+     * A node of the trie, one level per path segment
+     */
+    final class Node {
+        final Map<String, Node> statics = new HashMap<>();
+        Node param;
+        Node star;
+        Leaf leaf;
+        Leaf tail;
+    }
+
+    /**
+     * Router compiling routes and filters into a segment trie per HTTP verb
+     * Where more than one route matches, static segments win over :params, which win over *
+     */
+    final class SegmentTrie implements Router {
+
+        private final Map<String, Node> roots = new LinkedHashMap<>();
+        private final List<Leaf> leaves = new ArrayList<>();
+        private final Map<String, List<PatternFilter>> filters = new LinkedHashMap<>();
+
+        @Override
+        public void route(String verb, String path, Route route) {
+            final Leaf leaf = new Leaf(new PathPattern(path), route);
+            final String[] segments = leaf.pattern().segments;
+            Node node = roots.computeIfAbsent(verb, v -> new Node());
+            for (int i = 0; i < segments.length; i++) {
+                final String s = segments[i];
+                if (leaf.pattern().isTail(i)) {
+                    if (node.tail == null) {
+                        node.tail = leaf;
+                        leaves.add(leaf);
+                    } else {
+                        logger.warn("Route {} {} is shadowed by {}, as it would be in Spark", verb, path, node.tail.pattern());
+                    }
+                    return;
+                }
+                if ("*".equals(s)) {
+                    if (node.star == null) node.star = new Node();
+                    node = node.star;
+                } else if (PathPattern.isParam(s)) {
+                    if (node.param == null) node.param = new Node();
+                    node = node.param;
+                } else {
+                    node = node.statics.computeIfAbsent(s, k -> new Node());
+                }
+            }
+            if (node.leaf == null) {
+                node.leaf = leaf;
+                leaves.add(leaf);
+            } else {
+                logger.warn("Route {} {} is shadowed by {}, as it would be in Spark", verb, path, node.leaf.pattern());
+            }
+        }
+
+        @Override
+        public void filter(String type, String path, Filter filter) {
+            if (!SPARK_FILTERS.containsKey(type)) throw new IllegalArgumentException("unknown filter type : " + type);
+            filters.computeIfAbsent(type, t -> new ArrayList<>()).add(new PatternFilter(new PathPattern(path), filter));
+        }
+
+        private static Leaf find(Node node, String[] path, int i) {
+            if (i == path.length) return node.leaf;
+            final String s = path[i];
+            final Node child = node.statics.get(s);
+            if (child != null) {
+                final Leaf leaf = find(child, path, i + 1);
+                if (leaf != null) return leaf;
+            }
+            if (node.param != null && !s.isEmpty()) {
+                final Leaf leaf = find(node.param, path, i + 1);
+                if (leaf != null) return leaf;
+            }
+            if (node.star != null) {
+                final Leaf leaf = find(node.star, path, i + 1);
+                if (leaf != null) return leaf;
+            }
+            return node.tail;
+        }
+
+        /**
+         * Finds the route for a request
+         * @param verb HTTP verb in lower case
+         * @param path segments of the request path
+         * @return the Leaf of the route, null if none matches
+         */
+        public Leaf find(String verb, String[] path) {
+            final Node root = roots.get(verb);
+            return root == null ? null : find(root, path, 0);
+        }
+
+        /**
+         * Precomputes the filters of every route
+         */
+        public void compile() {
+            leaves.forEach(leaf -> leaf.compile(filters));
+        }
+
+        /**
+         * Creates the spark.Route dispatching all requests of a verb
+         * @param verb HTTP verb in lower case
+         * @return a spark.Route
+         */
+        public Route dispatcher(String verb) {
+            return (request, response) -> {
+                final String[] path = PathPattern.decodedSegments(request.uri());
+                final Leaf leaf = find(verb, path);
+                if (leaf == null) throw Spark.halt(404, NOT_FOUND);
+                return leaf.handle(request, response, path);
+            };
+        }
+
+        @Override
+        public void attach() {
+            compile();
+            roots.keySet().forEach(verb -> {
+                SPARK_ROUTES.get(verb).accept("*", dispatcher(verb));
+                logger.info("segment trie router : {} -> *", verb);
+            });
+            // filters of paths where no route exists still have to run, as they would in Spark
+            filters.forEach((type, list) -> list.forEach(pf -> {
+                final boolean chained = leaves.stream().anyMatch(l -> pf.pattern().overlaps(l.pattern()));
+                if (!chained) {
+                    logger.info("segment trie router : {} filter {} matches no route, registered with Spark", type, pf.pattern());
+                    SPARK_FILTERS.get(type).accept(pf.pattern().path(), pf.filter());
+                }
+            }));
+            logger.info("segment trie router : {} routes compiled", leaves.size());
+        }
+    }
+
+    /**
+     * Creates a Router from configuration
+     * enabled : true to use the segment trie, default false
+     * @param config the configuration map
+     * @return a Router
+     */
+    static Router fromConfig(Map<String, Object> config) {
+        if (!ZTypes.bool(config.getOrDefault(ENABLED, false), false)) return SPARK;
+        logger.info("Using segment trie router");
+        return new SegmentTrie();
+    }
+}
@@ -0,0 +1,416 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.types.ZNumber;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A shared, concurrent cache for loaded resources - scripts, schemas, loggers
+ * Reads are lock-free, loads are atomic per key, and the cache can optionally be bounded
+ * Every cache gets registered by name, so that it can be configured and its counters can be observed
+ * @param <V> type of the cached resource
+ */
+public interface ScriptCache<V> {
+
+    /**
+     * Logger for the Cowj ScriptCache
+     */
+    Logger logger = LoggerFactory.getLogger(ScriptCache.class);
+
+    /**
+     * Loads a resource against a key
+     * @param <V> type of the resource
+     */
+    @FunctionalInterface
+    interface Loader<V> {
+        /**
+         * Loads the resource
+         * @param key the key, typically location of the resource
+         * @return the resource
+         * @throws Exception in case loading fails
+         */
+        V load(String key) throws Exception;
+    }
+
+    /**
+     * Gets told about every resource which leaves the cache
+     * Evicted, replaced by a reload, removed or cleared, so that resources holding native state can be closed
+     * @param <V> type of the resource
+     */
+    @FunctionalInterface
+    interface Removal<V> {
+        /**
+         * A resource left the cache
+         * @param key the key it was cached against
+         * @param value the resource
+         */
+        void removed(String key, V value);
+    }
+
+    /**
+     * Eviction policy for bounded caches
+     */
+    enum Eviction {
+        /**
+         * Least Recently Used gets evicted
+         */
+        LRU,
+        /**
+         * Least Frequently Used gets evicted
+         */
+        LFU
+    }
+
+    /**
+     * Name of the cache
+     * @return name of the cache
+     */
+    String name();
+
+    /**
+     * Gets the resource, lock free
+     * @param key the key
+     * @return the resource or null if not cached
+     */
+    V get(String key);
+
+    /**
+     * Gets the resource, loading it atomically if not present
+     * Concurrent callers for the same key will see only a single load
+     * @param key the key
+     * @param loader to load the resource in case of a miss
+     * @return the resource
+     * @throws RuntimeException wrapping the load error, if any
+     */
+    V load(String key, Loader<V> loader);
+
+    /**
+     * Atomically replaces the resource by loading it again
+     * Readers see either the old or the new resource, never an absent one
+     * @param key the key
+     * @param loader to load the resource
+     * @return the newly loaded resource
+     * @throws RuntimeException wrapping the load error, if any, the old resource is kept in that case
+     */
+    V reload(String key, Loader<V> loader);
+
+    /**
+     * Checks if a resource is cached against the key
+     * @param key the key
+     * @return true if cached, false otherwise
+     */
+    boolean containsKey(String key);
+
+    /**
+     * Removes the resource against the key
+     * @param key the key
+     * @return the removed resource or null
+     */
+    V remove(String key);
+
+    /**
+     * No of resources cached
+     * @return size of the cache
+     */
+    int size();
+
+    /**
+     * Removes all resources
+     */
+    void clear();
+
+    /**
+     * Sets a bound on the cache
+     * @param maxSize max no of resources, non-positive means unbounded
+     * @param eviction policy to choose what gets evicted when the bound gets crossed
+     */
+    void bound(int maxSize, Eviction eviction);
+
+    /**
+     * Counters of the cache
+     * hits, misses, loads, errors, loadTimeNanos, evictions, size, max
+     * @return a map of counter name to value
+     */
+    Map<String, Long> stats();
+
+    /**
+     * Registry of all caches, keyed by name
+     */
+    Map<String, ScriptCache<?>> CACHES = new ConcurrentHashMap<>();
+
+    /**
+     * Key for the max size of a cache
+     */
+    String MAX_SIZE = "max";
+
+    /**
+     * Key for the eviction policy of a cache
+     */
+    String EVICTION = "eviction";
+
+    /**
+     * Key for the caches configuration inside the scripting section of the Model
+     */
+    String CACHES_CONFIG = "caches";
+
+    /**
+     * Configuration of the caches, keyed by name
+     * Kept around so that caches which get created later are also configured
+     */
+    Map<String, Map<String, Object>> CACHES_CONFIGURATION = new ConcurrentHashMap<>();
+
+    /**
+     * Applies the configuration to a cache
+     * @param cache the ScriptCache
+     * @param conf configuration map, [ max : size, eviction : lru|lfu ]
+     */
+    static void configure(ScriptCache<?> cache, Map<String, Object> conf) {
+        final int max = ZNumber.integer(conf.getOrDefault(MAX_SIZE, 0), 0).intValue();
+        final Eviction eviction = Eviction.valueOf(
+                conf.getOrDefault(EVICTION, Eviction.LRU.name()).toString().toUpperCase(Locale.ROOT));
+        cache.bound(max, eviction);
+        logger.info("Cache '{}' bound to {} using {}", cache.name(), max, eviction);
+    }
+
+    /**
+     * Configures caches, existing ones as well as the ones to be created later
+     * cache_name : [ max : size, eviction : lru|lfu ]
+     * @param config the configuration
+     */
+    static void configure(Map<String, Object> config) {
+        config.forEach((name, c) -> {
+            final Map<String, Object> conf = (Map) c;
+            CACHES_CONFIGURATION.put(name, conf);
+            final ScriptCache<?> cache = CACHES.get(name);
+            if (cache != null) {
+                configure(cache, conf);
+            }
+        });
+    }
+
+    /**
+     * Creates and registers a cache
+     * In case a cache with the same name exists, returns that
+     * @param name name of the cache
+     * @return a ScriptCache
+     * @param <V> type of the resource
+     */
+    static <V> ScriptCache<V> create(String name) {
+        return create(name, null);
+    }
+
+    /**
+     * Creates and registers a cache, which tells about the resources leaving it
+     * In case a cache with the same name exists, returns that
+     * @param name name of the cache
+     * @param removal gets told about every resource leaving the cache, null for none
+     * @return a ScriptCache
+     * @param <V> type of the resource
+     */
+    static <V> ScriptCache<V> create(String name, Removal<V> removal) {
+        return (ScriptCache<V>) CACHES.computeIfAbsent(name, n -> {
+            final ScriptCache<V> cache = unregistered(n, removal);
+            final Map<String, Object> conf = CACHES_CONFIGURATION.get(n);
+            if (conf != null) {
+                configure(cache, conf);
+            }
+            return cache;
+        });
+    }
+
+    /**
+     * A cached resource along with its access information
+     * Access information is updated racy, this is fine for choosing eviction candidates
+     * @param <V> type of the resource
+     */
+    final class Cached<V> {
+        final V value;
+        volatile long lastAccess;
+        volatile long frequency;
+
+        Cached(V value, long tick) {
+            this.value = value;
+            this.lastAccess = tick;
+        }
+
+        V touch(long tick) {
+            lastAccess = tick;
+            frequency++;
+            return value;
+        }
+    }
+
+    /**
+     * Creates a cache without registering it
+     * @param name name of the cache
+     * @return a ScriptCache
+     * @param <V> type of the resource
+     */
+    static <V> ScriptCache<V> unregistered(String name) {
+        return unregistered(name, null);
+    }
+
+    /**
+     * Creates a cache without registering it, which tells about the resources leaving it
+     * @param name name of the cache
+     * @param removal gets told about every resource leaving the cache, null for none
+     * @return a ScriptCache
+     * @param <V> type of the resource
+     */
+    static <V> ScriptCache<V> unregistered(String name, Removal<V> removal) {
+        return new ScriptCache<V>() {
+
+            final Map<String, Cached<V>> map = new ConcurrentHashMap<>();
+
+            // logical clock for recency, cheaper and more precise than wall clock
+            final AtomicLong clock = new AtomicLong();
+
+            final LongAdder hits = new LongAdder();
+            final LongAdder misses = new LongAdder();
+            final LongAdder loads = new LongAdder();
+            final LongAdder errors = new LongAdder();
+            final LongAdder loadTime = new LongAdder();
+            final LongAdder evictions = new LongAdder();
+
+            volatile int maxSize = 0;
+            volatile Eviction eviction = Eviction.LRU;
+
+            @Override
+            public String name() {
+                return name;
+            }
+
+            void removed(String key, Cached<V> e) {
+                if (removal == null || e == null) return;
+                try {
+                    removal.removed(key, e.value);
+                } catch (Throwable t) {
+                    logger.warn("Cache '{}' error on removal of '{}' : {}", name, key, t.toString());
+                }
+            }
+
+            @Override
+            public V get(String key) {
+                final Cached<V> e = map.get(key);
+                if (e == null) return null;
+                return e.touch(clock.incrementAndGet());
+            }
+
+            Cached<V> timedLoad(String key, Loader<V> loader) {
+                final long start = System.nanoTime();
+                try {
+                    final V v = loader.load(key);
+                    loads.increment();
+                    return new Cached<>(v, clock.incrementAndGet());
+                } catch (Exception ex) {
+                    errors.increment();
+                    throw CheckedFunctional.Error.error(ex);
+                } finally {
+                    loadTime.add(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public V load(String key, Loader<V> loader) {
+                final Cached<V> e = map.get(key);
+                if (e != null) {
+                    hits.increment();
+                    return e.touch(clock.incrementAndGet());
+                }
+                misses.increment();
+                final Cached<V> loaded = map.computeIfAbsent(key, k -> timedLoad(k, loader));
+                evictIfRequired(key);
+                return loaded.value;
+            }
+
+            @Override
+            public V reload(String key, Loader<V> loader) {
+                final List<Cached<V>> replaced = new ArrayList<>(1);
+                final Cached<V> loaded = map.compute(key, (k, old) -> {
+                    final Cached<V> e = timedLoad(k, loader);
+                    if (old != null) replaced.add(old);
+                    return e;
+                });
+                // outside of compute, removal can take its time
+                replaced.forEach(old -> { if (old.value != loaded.value) removed(key, old); });
+                evictIfRequired(key);
+                return loaded.value;
+            }
+
+            void evictIfRequired(String justLoaded) {
+                final int max = maxSize;
+                if (max <= 0) return;
+                while (map.size() > max) {
+                    final Comparator<Map.Entry<String, Cached<V>>> comparator = eviction == Eviction.LFU ?
+                            Comparator.comparingLong(me -> me.getValue().frequency) :
+                            Comparator.comparingLong(me -> me.getValue().lastAccess);
+                    final Optional<Map.Entry<String, Cached<V>>> victim = map.entrySet().stream()
+                            .filter(me -> !me.getKey().equals(justLoaded))
+                            .min(comparator);
+                    if (victim.isEmpty()) return;
+                    if (map.remove(victim.get().getKey(), victim.get().getValue())) {
+                        evictions.increment();
+                        removed(victim.get().getKey(), victim.get().getValue());
+                    }
+                }
+            }
+
+            @Override
+            public boolean containsKey(String key) {
+                return map.containsKey(key);
+            }
+
+            @Override
+            public V remove(String key) {
+                final Cached<V> e = map.remove(key);
+                removed(key, e);
+                return e == null ? null : e.value;
+            }
+
+            @Override
+            public int size() {
+                return map.size();
+            }
+
+            @Override
+            public void clear() {
+                if (removal == null) {
+                    map.clear();
+                    return;
+                }
+                map.keySet().forEach(this::remove);
+            }
+
+            @Override
+            public void bound(int maxSize, Eviction eviction) {
+                this.eviction = eviction;
+                this.maxSize = maxSize;
+                evictIfRequired("");
+            }
+
+            @Override
+            public Map<String, Long> stats() {
+                final Map<String, Long> stats = new LinkedHashMap<>();
+                stats.put("hits", hits.sum());
+                stats.put("misses", misses.sum());
+                stats.put("loads", loads.sum());
+                stats.put("errors", errors.sum());
+                stats.put("loadTimeNanos", loadTime.sum());
+                stats.put("evictions", evictions.sum());
+                stats.put("size", (long) map.size());
+                stats.put("max", (long) maxSize);
+                return stats;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("ScriptCache<%s>%s", name, stats());
+            }
+        };
+    }
+}
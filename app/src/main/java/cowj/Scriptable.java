@@ -2,6 +2,7 @@ package cowj;
 
 import kotlin.script.experimental.jsr223.KotlinJsr223DefaultScriptEngineFactory;
 import org.codehaus.groovy.jsr223.GroovyScriptEngineFactory;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
 import org.python.core.Options;
 import org.python.jsr223.PyScriptEngineFactory;
 import org.slf4j.Logger;
@@ -20,7 +21,11 @@ import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import static cowj.AsyncHandler.ASYNC_ROUTE_PREFIX;
 
@@ -45,7 +50,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      */
     default <T> CheckedFunctional.Consumer<T, Exception> checkedConsumer(String payloadVar) {
         return (m) -> {
-            final Bindings bindings = new SimpleBindings(Map.of(payloadVar, m));
+            final Bindings bindings = new SimpleBindings(new HashMap<>(Map.of(payloadVar, m)));
             exec(bindings);
         };
     }
@@ -83,6 +88,8 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
         SimpleBindings sb = new SimpleBindings();
         sb.put(REQUEST, request);
         sb.put(RESPONSE, response);
+        final Upload upload = new Upload(request);
+        sb.put(UPLOAD, upload);
         try {
             final Object ret = exec(sb);
             if (ret == null) {
@@ -97,6 +104,15 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
                 logger.warn("checked error : " + he.getMessage());
                 return Spark.halt(he.code, he.getMessage());
             }
+            if (Upload.tooLarge(t)) {
+                logger.warn("{} @ {} upload too large : {}", request.requestMethod(), request.uri(), t.toString());
+                return Spark.halt(Upload.TOO_LARGE_STATUS, "Payload Too Large");
+            }
+            final int overrun = Budget.overrun(t);
+            if (overrun > 0) {
+                logger.warn("{} @ {} budget overrun : {}", request.requestMethod(), request.uri(), t.toString());
+                return Spark.halt(overrun, Budget.message(overrun));
+            }
             logger.error("unchecked error : " + t);
             final String message;
             if (App.isProdMode()) {
@@ -108,6 +124,9 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
             }
             // now try respond...
             return Spark.halt(500, message);
+        } finally {
+            // a spilled upload does not outlive the call
+            upload.close();
         }
     }
 
@@ -138,9 +157,9 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
             Scriptable scriptable = create(path, handler);
             if (isAsync) {
                 logger.info("Async Route : {} ==> {}", path, handler);
-                return AsyncHandler.instance().route(scriptable);
+                return Metrics.route(path, "async", Tracing.route(path, AsyncHandler.instance().route(Metrics.task(path, scriptable))));
             }
-            return scriptable::exec;
+            return Metrics.route(path, "route", Tracing.route(path, Bulkhead.route(path, Streaming.route(Budget.route(path, handler, scriptable)))));
         }
 
         /**
@@ -297,12 +316,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
          * @return a Map of string to object to store data
          */
         default Map<String, Object> shared(String namespace) {
-            synchronized (SHARED_MEMORY) {
-                if (SHARED_MEMORY.containsKey(namespace)) return (Map<String, Object>) SHARED_MEMORY.get(namespace);
-                Map<String, Object> syncMap = new ConcurrentHashMap<>();
-                SHARED_MEMORY.put(namespace, syncMap);
-                return syncMap;
-            }
+            return SharedMemory.namespace(namespace);
         }
     }
 
@@ -321,6 +335,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
     /**
      * Shared Memory
      * Inside a Scriptable script this is accessible via _shared
+     * @see SharedMemory for namespaces
      */
     Map<String, Object> SHARED_MEMORY = new ConcurrentHashMap<>();
 
@@ -356,6 +371,12 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      */
     String SHARED = "_shared";
 
+    /**
+     * Key name for the streaming intake of the request body
+     * @see Upload
+     */
+    String UPLOAD = "_upload";
+
     /**
      * Key name for the error in the script
      */
@@ -384,24 +405,143 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
     }
 
     /**
-     * Default JSR-223 Engine Manager
+     * Global scope Bindings for every JSR-223 engine, as a ScriptEngineManager would have set
+     */
+    Bindings GLOBAL_BINDINGS = new SimpleBindings();
+
+    /**
+     * Holder of the default JSR-223 Engine Manager
+     * Creating a ScriptEngineManager instantiates every ScriptEngineFactory on the class path,
+     * so it gets created only when an engine not in ENGINE_FACTORIES is asked for
+     */
+    final class EngineManager {
+        static final ScriptEngineManager MANAGER = new ScriptEngineManager();
+
+        static {
+            MANAGER.setBindings(GLOBAL_BINDINGS);
+        }
+
+        private EngineManager() {
+        }
+    }
+
+    /**
+     * Factories of the JSR-223 engines shipped with Cowj
+     * Key - name of the engine
+     * Value - creates the factory, the engine classes get loaded only when this gets called
+     */
+    Map<String, Supplier<ScriptEngineFactory>> ENGINE_FACTORIES = Map.of(
+            "groovy", () -> new GroovyScriptEngineFactory(),
+            "python", () -> {
+                // https://stackoverflow.com/questions/52825426/jython-listed-by-getenginefactories-but-getenginebynamejython-is-null
+                Options.importSite = false;
+                return new PyScriptEngineFactory();
+            },
+            "kotlin", () -> new KotlinJsr223DefaultScriptEngineFactory());
+
+    /**
+     * JSR-223 engine factories, loaded or being loaded
+     * Key - name of the engine
+     * Value - the factory, once loaded
+     */
+    Map<String, CompletableFuture<ScriptEngineFactory>> LOADED_ENGINES = new ConcurrentHashMap<>();
+
+    /**
+     * Threads loading the JSR-223 engines, kept off the common pool which the rest of the process shares
+     */
+    ExecutorService ENGINE_LOADERS = Executors.newCachedThreadPool(
+            Thread.ofPlatform().name("cowj-engine-loader-", 0).daemon(true).factory());
+
+    /**
+     * Loads a JSR-223 engine in the background, only once
+     * The first engine instance gets created right away, so that the engine classes are loaded by the time it is used
+     * A failed load is forgotten, so that the next call tries again
+     *
+     * @param engineName name of the engine, one of the ENGINE_FACTORIES
+     * @return a CompletableFuture of the factory of the engine
+     */
+    static CompletableFuture<ScriptEngineFactory> loadEngine(String engineName) {
+        final CompletableFuture<ScriptEngineFactory> loading = LOADED_ENGINES.computeIfAbsent(engineName,
+                name -> CompletableFuture.supplyAsync(() -> {
+                    final long start = System.currentTimeMillis();
+                    final ScriptEngineFactory factory = ENGINE_FACTORIES.get(name).get();
+                    factory.getScriptEngine();
+                    logger.info("JSR-223 engine '{}' loaded in {} ms", name, System.currentTimeMillis() - start);
+                    return factory;
+                }, ENGINE_LOADERS));
+        // outside computeIfAbsent, a load failing right away must not remove its own entry while being computed
+        loading.whenComplete((factory, error) -> {
+            if (error != null) LOADED_ENGINES.remove(engineName, loading);
+        });
+        return loading;
+    }
+
+    /**
+     * Loads, in parallel, the JSR-223 engines needed by the scripts
+     * Engines no script needs are never loaded
+     *
+     * @param scripts paths of the scripts
+     * @return names of the engines being loaded
+     */
+    static Set<String> loadEngines(Collection<String> scripts) {
+        final Set<String> engineNames = new TreeSet<>();
+        for (String script : scripts) {
+            final String engineName = ENGINES.get(extension(script));
+            if (engineName != null && ENGINE_FACTORIES.containsKey(engineName)) engineNames.add(engineName);
+        }
+        engineNames.forEach(Scriptable::loadEngine);
+        logger.info("JSR-223 engines loading : {}", engineNames);
+        return engineNames;
+    }
+
+    /**
+     * Key for the JSR-223 configuration inside the scripting section of the Model
      */
-    ScriptEngineManager MANAGER = new ScriptEngineManager();
+    String JSR_SCRIPTING = "jsr";
 
     /**
-     * Cached map of all CompiledScript
-     * A very detailed discussion points to the direction that we MUST have thread local compiled scripts
+     * Key for the CompiledScript pool configuration
+     * @see ResourcePool#fromConfig(Map, java.util.concurrent.Callable, java.util.function.Consumer)
+     */
+    String JSR_POOL = "pool";
+
+    /**
+     * Configuration for the JSR-223 scripts
+     * Gets populated from the "jsr" section of the "scripting" section of the Model
+     */
+    Map<String, Object> JSR_CONFIG = new ConcurrentHashMap<>();
+
+    /**
+     * Sets up the configuration for all JSR-223 scripts loaded after this call
+     * @param config the configuration map
+     */
+    static void configureJsr(Map<String, Object> config) {
+        configureJsr(config, () -> ".");
+    }
+
+    /**
+     * Sets up the configuration for all JSR-223 scripts loaded after this call
+     * @param config the configuration map
+     * @param model the Model, used to interpret paths in the configuration
+     */
+    static void configureJsr(Map<String, Object> config, Model model) {
+        JSR_CONFIG.clear();
+        JSR_CONFIG.putAll(config);
+        logger.info("JSR-223 configuration : {}", JSR_CONFIG);
+        BytecodeCache.configure((Map) JSR_CONFIG.getOrDefault(BytecodeCache.CACHE, Collections.emptyMap()), model);
+    }
+
+    /**
+     * Cached pools of CompiledScript
+     * A very detailed discussion points to the direction that we MUST NOT share a CompiledScript between threads
      * See the entire discussion here - <a href="https://github.com/jython/jython/issues/401">...</a>
-     * This is why we must migrate to thread local
+     * Thread locals do not work for virtual threads, every request is a new thread, hence a pool per script
+     * A CompiledScript is borrowed by exactly one call at a time, and returned after
      * @see <a href="https://docs.oracle.com/javase/9/docs/api/javax/script/CompiledScript.html">CompiledScript</a>
      * Key - location of the scripts
-     * Value - CompiledScript
+     * Value - Pool of CompiledScript
      */
-    ThreadLocal<Map<String, CompiledScript>> scriptsThreadLocal = ThreadLocal.withInitial( () -> {
-        final Map<String, CompiledScript> scripts = new HashMap<>();
-        FileWatcher.ofCacheAndRegister(scripts, (path) -> loadScript("reload", path));
-        return scripts ;
-    } );
+    ScriptCache<ResourcePool<CompiledScript>> jsrPools = ScriptCache.create("jsr");
 
     /**
      * Cached map of all ZScript
@@ -410,20 +550,21 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * Key - location of the scripts
      * Value - ZScript
      */
-    Map<String, ZScript> zScripts = new HashMap<>(); // TODO ? Should be LRU? What?
+    ScriptCache<ZScript> zScripts = ScriptCache.create("zmb");
 
     /**
-     * Basal hack to load Jython and other Engines
+     * Registers the script caches to get reloaded when the scripts change
      */
-    Serializable JythonLoad = new Serializable() { // simplest hack to load Jython ...
-        // https://stackoverflow.com/questions/52825426/jython-listed-by-getenginefactories-but-getenginebynamejython-is-null
+    Serializable ReloadWatch = new Serializable() {
         static {
-            Options.importSite = false;
-            // force load engines for fat-jar issues...
-            MANAGER.registerEngineName("groovy", new GroovyScriptEngineFactory());
-            MANAGER.registerEngineName("python", new PyScriptEngineFactory());
-            MANAGER.registerEngineName("kotlin", new KotlinJsr223DefaultScriptEngineFactory());
-            FileWatcher.ofCacheAndRegister(zScripts, (path) -> loadZScript("reload", path));
+            FileWatcher.ofCacheAndRegister(zScripts, (path) -> createZScript("reload", path));
+            FileWatcher.ofCacheAndRegister(jsrPools, (path) -> {
+                final ResourcePool<CompiledScript> fresh = createScriptPool("reload", path);
+                // the older one would not be reachable anymore, scripts borrowed from it just get collected
+                final ResourcePool<CompiledScript> stale = jsrPools.get(path);
+                if (stale != null) stale.close();
+                return fresh;
+            });
         }
     };
 
@@ -438,34 +579,80 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
         String extension = extension(path);
         if (!ENGINES.containsKey(extension)) throw new IllegalArgumentException("script type not registered : " + path);
         String engineName = ENGINES.get(extension);
-        final ScriptEngine engine = MANAGER.getEngineByName(engineName);
+        final ScriptEngine engine;
+        if (ENGINE_FACTORIES.containsKey(engineName)) {
+            engine = loadEngine(engineName).join().getScriptEngine();
+            engine.setBindings(GLOBAL_BINDINGS, ScriptContext.GLOBAL_SCOPE);
+        } else {
+            engine = EngineManager.MANAGER.getEngineByName(engineName);
+        }
         ModuleManager.UNIVERSAL.enable(engine);
         return engine;
     }
 
     /**
-     * Loads a script for JSR-223 Engine
-     * Every thread gets its own CompiledScript
+     * Loads the pool of CompiledScript for JSR-223 Engine
+     * Every call borrows its own CompiledScript from the pool, independent of the thread it runs on
      * @param directive ignored unless it is INLINE, then use the path as executable string
      * @param path      file location from which script needs to be created, if INLINE then comment the extension in the end
      *                  example: "2+2; //.js" will load js engine
-     * @return a CompiledScript
+     * @return a ResourcePool of CompiledScript
      * @throws IOException in case file not found
      * @see <a href="https://docs.oracle.com/javase/9/docs/api/javax/script/CompiledScript.html">CompiledScript</a>
      */
-    static CompiledScript loadScript(String directive, String path) throws IOException {
-        final Map<String, CompiledScript> scripts = scriptsThreadLocal.get();
-        CompiledScript compiled = scripts.get(path);
-        if ( compiled != null ) return compiled ;
+    static ResourcePool<CompiledScript> loadScript(String directive, String path) throws IOException {
+        try {
+            return jsrPools.load(path, p -> createScriptPool(directive, p));
+        } catch (RuntimeException re) {
+            if (CheckedFunctional.Error.cause(re) instanceof IOException io) throw io;
+            throw re;
+        }
+    }
+
+    /**
+     * Creates a pool of CompiledScript for JSR-223 Engine, without caching it
+     * One script gets compiled right away, so that errors surface at load time
+     * @param directive ignored unless it is INLINE, then use the path as executable string
+     * @param path      file location from which script needs to be created
+     * @return a ResourcePool of CompiledScript
+     * @throws Exception in case file not found or script does not compile
+     */
+    static ResourcePool<CompiledScript> createScriptPool(String directive, String path) throws Exception {
+        final Map<String, Object> poolConfig = (Map) JSR_CONFIG.getOrDefault(JSR_POOL, Collections.emptyMap());
+        final ResourcePool<CompiledScript> pool = ResourcePool.fromConfig(poolConfig,
+                () -> compileScript(directive, path), cs -> {});
+        pool.release(pool.borrow());
+        return pool;
+    }
+
+    /**
+     * Compiles a script for JSR-223 Engine
+     * Every call creates a new ScriptEngine, so that compiled scripts never share engine state
+     * @param directive ignored unless it is INLINE, then use the path as executable string
+     * @param path      file location from which script needs to be created
+     * @return a CompiledScript
+     * @throws IOException in case file not found
+     */
+    static CompiledScript compileScript(String directive, String path) throws IOException {
         // this now becomes a hack ... expression will be used with "2 + 2 //.js"
         // and this will load the engine
+        final FlightRecorder.ScriptCompile event = FlightRecorder.ScriptCompile.start();
         String content = INLINE.equals(directive) ? path : new String(Files.readAllBytes(Paths.get(path)));
         final ScriptEngine engine = getEngine(path);
         try {
-            compiled = ((Compilable) engine).compile(content);
-            scripts.put(path, compiled);
-            return compiled;
+            final CompiledScript cs;
+            // checking the extension first keeps Groovy classes from getting loaded for other engines
+            if (BytecodeCache.enabled() && "groovy".equals(extension(path)) && engine instanceof GroovyScriptEngineImpl groovy) {
+                cs = BytecodeCache.groovy(groovy, content);
+            } else if (BytecodeCache.enabled() && "kotlin".equals(ENGINES.get(extension(path)))) {
+                cs = BytecodeCache.kotlin(engine, content);
+            } else {
+                cs = ((Compilable) engine).compile(content);
+            }
+            event.record(extension(path), path, true);
+            return cs;
         } catch (ScriptException sc) {
+            event.record(extension(path), path, false);
             logger.error("Script Load Error: {} ==> {}", sc.getMessage(), path);
             throw new RuntimeException("Script Loading Failed!");
         }
@@ -481,12 +668,24 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * @see <a href="https://gitlab.com/non.est.sacra/zoomba/-/blob/master/src/main/java/zoomba/lang/core/interpreter/ZScript.java">ZScript</a>
      */
     static ZScript loadZScript(String directive, String path) {
-        if (zScripts.containsKey(path)) return zScripts.get(path);
+        return zScripts.load(path, p -> createZScript(directive, p));
+    }
+
+    /**
+     * Creates a script for ZoomBA Engine, without caching it
+     *
+     * @param directive ignored unless it is INLINE, then use the path as executable string
+     * @param path      file location from which script needs to be created
+     * @return a ZScript
+     */
+    static ZScript createZScript(String directive, String path) {
+        final FlightRecorder.ScriptCompile event = FlightRecorder.ScriptCompile.start();
         try {
-            final ZScript zScript = INLINE.equals(directive) ? new ZScript(path) : new ZScript(path, null); // no parent
-            zScripts.put(path, zScript);
-            return zScript;
+            final ZScript zs = INLINE.equals(directive) ? new ZScript(path) : new ZScript(path, null); // no parent
+            event.record(extension(path), path, true);
+            return zs;
         } catch (RuntimeException rt) {
+            event.record(extension(path), path, false);
             // zmb has support for detecting script path
             logger.error("Script Load Error: {}", rt.getMessage());
             throw new RuntimeException("Script Loading Failed!");
@@ -503,7 +702,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * Key - location of the scripts, e.g. prefix
      * Value - A Proxy Prefixed Logger
      */
-    Map<String, Logger> prefixedLoggers = new HashMap<>();
+    ScriptCache<Logger> prefixedLoggers = ScriptCache.create("loggers");
 
     /**
      * Creates a prefixed Logger from underlying Logger
@@ -514,10 +713,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * @see <a href="https://www.baeldung.com/java-dynamic-proxies"></a>
      */
     static Logger prefixedLogger(Logger underlying, String prefix) {
-        Logger _logger = prefixedLoggers.get(prefix);
-        if (_logger != null ) return _logger ;
-        // otherwise
-        _logger = (Logger) Proxy.newProxyInstance(
+        return prefixedLoggers.load(prefix, p -> (Logger) Proxy.newProxyInstance(
                 Logger.class.getClassLoader(),
                 new Class[]{Logger.class},
                 (proxy, method, methodArgs) -> {
@@ -531,9 +727,129 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
                         }
                     }
                     return method.invoke(underlying, methodArgs);
-                });
-        prefixedLoggers.put(prefix, _logger);
-        return _logger;
+                }));
+    }
+
+    /**
+     * Two level Bindings
+     * The base level is constant and shared read only between all calls of a script
+     * The local level holds per call values, all writes go into the local level
+     */
+    final class LayeredBindings extends AbstractMap<String, Object> implements Bindings {
+
+        private final Map<String, Object> base;
+
+        private final Bindings local;
+
+        /**
+         * Creates a LayeredBindings
+         *
+         * @param base  read only constant level, shared across calls
+         * @param local per call level, which receives all the writes
+         */
+        public LayeredBindings(Map<String, Object> base, Bindings local) {
+            this.base = base;
+            this.local = local;
+        }
+
+        /**
+         * Gets the per call level of the Bindings
+         *
+         * @return the local Bindings
+         */
+        public Bindings local() {
+            return local;
+        }
+
+        @Override
+        public Object put(String name, Object value) {
+            return local.put(name, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ?> toMerge) {
+            local.putAll(toMerge);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return local.containsKey(key) || base.containsKey(key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            final Object v = local.get(key);
+            if (v != null || local.containsKey(key)) return v;
+            return base.get(key);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return local.remove(key);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    final Iterator<Entry<String, Object>> shadowed = base.entrySet().stream()
+                            .filter(e -> !local.containsKey(e.getKey())).iterator();
+                    final Iterator<Entry<String, Object>> mine = local.entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return mine.hasNext() || shadowed.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            return mine.hasNext() ? mine.next() : shadowed.next();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return local.size() + (int) base.keySet().stream().filter(k -> !local.containsKey(k)).count();
+                }
+            };
+        }
+    }
+
+    /**
+     * Cached constant Bindings level for each script
+     * Key - location of the scripts
+     * Value - read only map of the process wide constants for the script
+     */
+    ScriptCache<Map<String, Object>> scriptBaseBindings = ScriptCache.create("bindings");
+
+    /**
+     * Gets the constant, process wide part of the Bindings for a script
+     * These are built once per script and are shared read only
+     *
+     * @param scriptPath full path of the script
+     * @return a read only map of _ds, _env, _shared, _log
+     */
+    static Map<String, Object> baseBindings(String scriptPath) {
+        return scriptBaseBindings.load(scriptPath, sp -> Map.of(
+                DATA_SOURCE, DataSource.DATA_SOURCES,
+                ENVIRON, System.getenv(),
+                SHARED, SHARED_MEMORY,
+                LOGGER, prefixedLogger(logger, "[" + sp + "] ")));
+    }
+
+    /**
+     * Creates the Bindings to run a script with
+     * The per call Bindings gets the TestAsserter, constants are layered below it
+     *
+     * @param bindings   per call bindings
+     * @param scriptPath full path of the script
+     * @return a LayeredBindings
+     */
+    static Bindings layeredBindings(Bindings bindings, String scriptPath) {
+        bindings.put(TestAsserter.ASSERTER, (TestAsserter) () -> bindings);
+        return new LayeredBindings(baseBindings(scriptPath), bindings);
     }
 
     /**
@@ -543,35 +859,37 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * @param scriptPath full path of the script
      */
     static void prepareBinding(Bindings bindings, String scriptPath) {
-        bindings.put(DATA_SOURCE, DataSource.DATA_SOURCES);
+        bindings.putAll(baseBindings(scriptPath));
         bindings.put(TestAsserter.ASSERTER, (TestAsserter) () -> bindings);
-        bindings.put(ENVIRON, System.getenv());
-        bindings.put(SHARED, SHARED_MEMORY);
-        Logger _logger = prefixedLogger(logger, "[" + scriptPath + "] ");
-        bindings.put(LOGGER, _logger);
     }
 
     /**
      * JSR-223 Scriptable creator
      */
-    Creator JSR = (path, handler) -> (bindings) -> {
-        CompiledScript cs = loadScript(path, handler);
-        prepareBinding(bindings, handler);
-        ModuleManager.UNIVERSAL.updateModuleBindings(cs, bindings);
-        Object r = cs.eval(bindings);
-        // Jython issue...
-        if (bindings.containsKey(RESULT)) {
-            return bindings.get(RESULT);
+    Creator JSR = (path, handler) -> (callBindings) -> {
+        final ResourcePool<CompiledScript> pool = loadScript(path, handler);
+        final Bindings bindings = layeredBindings(callBindings, handler);
+        final CompiledScript cs = pool.borrow();
+        try {
+            ModuleManager.UNIVERSAL.updateModuleBindings(cs, bindings);
+            Object r = cs.eval(bindings);
+            // Jython issue...
+            if (bindings.containsKey(RESULT)) {
+                return bindings.get(RESULT);
+            }
+            return r;
+        } finally {
+            // script errors do not corrupt a CompiledScript, it goes back anyway
+            pool.release(cs);
         }
-        return r;
     };
 
     /**
      * ZoomBA Scriptable creator
      */
-    Creator ZMB = (path, handler) -> (bindings) -> {
+    Creator ZMB = (path, handler) -> (callBindings) -> {
         ZScript zs = loadZScript(path, handler);
-        prepareBinding(bindings, handler);
+        final Bindings bindings = layeredBindings(callBindings, handler);
         // This ensures things are pure function
         Function.MonadicContainer mc = zs.eval(bindings);
         // when there is an error ...
@@ -600,7 +918,7 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
     /**
      * Underlying Cache for Binary Scriptable
      */
-    Map<String, Scriptable> binaryInstances = new HashMap<>(); // TODO ? Should be LRU? What?
+    ScriptCache<Scriptable> binaryInstances = ScriptCache.create("binary");
 
     /**
      * Loading a class as scriptable
@@ -609,16 +927,19 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * @return an instance of the class casted as Scriptable
      */
     static Scriptable loadClass(String path) {
-        if (binaryInstances.containsKey(path)) return binaryInstances.get(path);
         try {
-            int inx = path.lastIndexOf(".class");
-            String className = path.substring(0, inx);
-            Class<?> clazz = Class.forName(className);
-            Object instance = clazz.getDeclaredConstructor().newInstance();
-            if (!(instance instanceof Scriptable))
-                throw new RuntimeException("Not A Scriptable Implementation! " + clazz);
-            binaryInstances.put(path, (Scriptable) instance);
-            return (Scriptable) instance;
+            return binaryInstances.load(path, p -> {
+                final FlightRecorder.ScriptCompile event = FlightRecorder.ScriptCompile.start();
+                int inx = p.lastIndexOf(".class");
+                String className = p.substring(0, inx);
+                Class<?> clazz = Class.forName(className);
+                Object instance = clazz.getDeclaredConstructor().newInstance();
+                final boolean scriptable = instance instanceof Scriptable;
+                event.record("class", p, scriptable);
+                if (!scriptable)
+                    throw new RuntimeException("Not A Scriptable Implementation! " + clazz);
+                return (Scriptable) instance;
+            });
         } catch (Throwable t) {
             logger.error("Error registering type for Scriptable... : " + t);
         }
@@ -629,16 +950,16 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      * Binary - class based creator
      */
     Creator BINARY = (path, handler) -> (bindings) -> {
-        prepareBinding(bindings, handler);
         Scriptable scriptable = loadClass(handler);
-        return scriptable.exec(bindings);
+        return scriptable.exec(layeredBindings(bindings, handler));
     };
 
     /**
      * Graal Polyglot - Graal Engine Powered  creator
      */
     Creator GRAAL = (path, handler) -> (bindings) -> {
-        prepareBinding(bindings, handler);
+        // constants are injected once per Context, only per call values go in here
+        bindings.put(TestAsserter.ASSERTER, (TestAsserter) () -> bindings);
         Scriptable scriptable = GraalPolyglot.loadPolyglot(path, handler);
         return scriptable.exec(bindings);
     };
@@ -652,31 +973,49 @@ public interface Scriptable extends java.util.function.Function<Bindings, Object
      */
     Creator UNIVERSAL = (path, handler) -> {
         String extension = extension(handler);
-        synchronized (JythonLoad) {
-            Creator r = switch (extension) {
-                case "zmb", "zm" -> {
-                    loadZScript(path, handler);
-                    yield ZMB;
-                }
-                case "js" , "py3" -> {
-                    EitherMonad.runUnsafe(() -> GraalPolyglot.loadPolyglot(path, handler));
-                    yield GRAAL;
-                }
+        // every loader below is backed by a concurrent cache, no global lock needed
+        Creator r = switch (extension) {
+            case "zmb", "zm" -> {
+                loadZScript(path, handler);
+                yield ZMB;
+            }
+            case "js" , "py3" -> {
+                EitherMonad.runUnsafe(() -> GraalPolyglot.loadPolyglot(path, handler));
+                yield GRAAL;
+            }
 
-                case "groovy", "py", "kt", "kts" -> {
-                    EitherMonad.runUnsafe(() -> loadScript(path, handler));
-                    yield JSR;
-                }
-                case "class" -> {
-                    loadClass(handler);
-                    yield BINARY;
-                }
-                default -> {
-                    logger.error("No pattern matched for path '{}' -> For handler '{}' Using NOP!", path, handler);
-                    yield NOP;
-                }
-            };
-            return r.create(path, handler);
-        }
+            case "groovy", "py", "kt", "kts" -> {
+                EitherMonad.runUnsafe(() -> loadScript(path, handler));
+                yield JSR;
+            }
+            case "class" -> {
+                loadClass(handler);
+                yield BINARY;
+            }
+            default -> {
+                logger.error("No pattern matched for path '{}' -> For handler '{}' Using NOP!", path, handler);
+                yield NOP;
+            }
+        };
+        final Scriptable scriptable = r.create(path, handler);
+        if (r == NOP) return scriptable;
+        final Accounting.Probe probe = Accounting.probe(path, extension);
+        return bindings -> {
+            final FlightRecorder.ScriptExec event = FlightRecorder.ScriptExec.start();
+            final boolean accounting = probe.active();
+            final long allocated = accounting ? Accounting.allocated() : 0;
+            final long cpu = accounting ? Accounting.cpu() : 0;
+            final Profiler.Tag tag = Profiler.enter(path, handler);
+            boolean success = false;
+            try {
+                final Object result = scriptable.exec(bindings);
+                success = true;
+                return result;
+            } finally {
+                Profiler.exit(tag);
+                if (accounting) probe.end(allocated, cpu);
+                event.record(path, extension, handler, success);
+            }
+        };
     };
 }
@@ -0,0 +1,668 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zoomba.lang.core.types.ZNumber;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Namespaces of the Shared Memory, the _shared binding of the scripts
+ * A namespace by default is an on heap ConcurrentHashMap, created lock free on first use
+ * A namespace can be configured to live off heap, in a direct buffer or in a memory mapped file
+ * Off heap namespaces have a fixed byte budget, when full the least recently written entry gets evicted
+ * Memory mapped namespaces are shared by all cowj processes on the host mapping the same file, and survive restarts
+ */
+public interface SharedMemory {
+
+    /**
+     * Logger for the Cowj SharedMemory
+     */
+    Logger logger = LoggerFactory.getLogger(SharedMemory.class);
+
+    /**
+     * Key for the namespaces configuration
+     */
+    String NAMESPACES = "namespaces";
+
+    /**
+     * Key for the mode of a namespace
+     */
+    String MODE = "mode";
+
+    /**
+     * Mode for an on heap namespace, the default
+     */
+    String HEAP = "heap";
+
+    /**
+     * Mode for an off heap namespace in a direct buffer, private to the process
+     */
+    String DIRECT = "direct";
+
+    /**
+     * Mode for an off heap namespace in a memory mapped file
+     */
+    String MAPPED = "mapped";
+
+    /**
+     * Key for the byte budget of an off heap namespace
+     */
+    String SIZE = "size";
+
+    /**
+     * Key for the size of a slot, the max bytes an entry, key and value together, can take
+     */
+    String SLOT = "slot";
+
+    /**
+     * Key for the file of a memory mapped namespace
+     */
+    String FILE = "file";
+
+    /**
+     * Default byte budget of an off heap namespace
+     */
+    int DEFAULT_SIZE = 1 << 20;
+
+    /**
+     * Default slot size of an off heap namespace
+     */
+    int DEFAULT_SLOT = 128;
+
+    /**
+     * Off heap namespaces
+     * Key - name of the namespace
+     */
+    Map<String, OffHeapMap> OFF_HEAP = new ConcurrentHashMap<>();
+
+    /**
+     * Gets a namespace of the Shared Memory, creating an on heap one if it does not exist
+     *
+     * @param name name of the namespace
+     * @return a Map of string to object to store data
+     */
+    static Map<String, Object> namespace(String name) {
+        return (Map) Scriptable.SHARED_MEMORY.computeIfAbsent(name, k -> new ConcurrentHashMap<String, Object>());
+    }
+
+    /**
+     * A Map of fixed size slots living in a ByteBuffer outside the GC heap
+     * Keys are strings, values are integral numbers, stored as long, floating numbers, stored as double,
+     * booleans, strings and byte arrays
+     * An entry gets placed within a small window of slots from the hash of its key,
+     * when the window is full the least recently written entry of the window gets evicted
+     * Reads are lock free, writes are serialized, across processes as well for a memory mapped file
+     * Counters can be incremented lock free, see increment()
+     */
+    final class OffHeapMap extends AbstractMap<String, Object> {
+
+        static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+        static final int MAGIC = 0x434f574a;
+
+        // header : magic, slot size, no of slots, write tick
+        static final int HEADER = 64;
+        static final int TICK = 16;
+
+        // slot : version, numeric value, write stamp, key hash, state, type, key length, value length, key and value bytes
+        static final int VERSION = 0;
+        static final int VALUE = 8;
+        static final int STAMP = 16;
+        static final int HASH = 24;
+        static final int STATE = 28;
+        static final int TYPE = 29;
+        static final int KEY_LENGTH = 30;
+        static final int VALUE_LENGTH = 32;
+        static final int DATA = 36;
+
+        static final byte EMPTY = 0;
+        static final byte USED = 1;
+
+        static final byte LONG = 1;
+        static final byte DOUBLE = 2;
+        static final byte BOOLEAN = 3;
+        static final byte STRING = 4;
+        static final byte BYTES = 5;
+
+        static final int WINDOW = 16;
+
+        static final Object MISSING = new Object();
+
+        private final String name;
+        private final String mode;
+        private final ByteBuffer buffer;
+        private final FileChannel channel;
+        private final int slotSize;
+        private final int slots;
+        private final int window;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LongAdder evictions = new LongAdder();
+
+        private OffHeapMap(String name, String mode, ByteBuffer buffer, FileChannel channel, int slotSize) {
+            if (slotSize < DATA + 8 || slotSize > Short.MAX_VALUE || slotSize % 8 != 0) {
+                throw new IllegalArgumentException("slot size must be a multiple of 8, between " + (DATA + 8) + " and " + Short.MAX_VALUE + " : " + slotSize);
+            }
+            this.name = name;
+            this.mode = mode;
+            this.buffer = buffer.order(ByteOrder.nativeOrder());
+            this.channel = channel;
+            this.slotSize = slotSize;
+            this.slots = (buffer.capacity() - HEADER) / slotSize;
+            if (slots < 1) throw new IllegalArgumentException("size is too small for even one slot : " + buffer.capacity());
+            this.window = Math.min(WINDOW, slots);
+            write(() -> {
+                final int magic = buffer.getInt(0);
+                if (magic == MAGIC && buffer.getInt(4) == slotSize && buffer.getInt(8) == slots) return null;
+                // the data of other processes, or of earlier runs, never gets wiped for a config change
+                if (magic == MAGIC) {
+                    throw new IllegalStateException(String.format("%s is laid out with %d slots of %d bytes, not %d slots of %d bytes, remove the file to change the layout",
+                            name, buffer.getInt(8), buffer.getInt(4), slots, slotSize));
+                }
+                // fresh, or never got initialised, start over
+                for (int i = 0; i < HEADER + slots * slotSize; i += 8) buffer.putLong(i, 0L);
+                buffer.putInt(4, slotSize);
+                buffer.putInt(8, slots);
+                buffer.putInt(0, MAGIC);
+                return null;
+            });
+        }
+
+        /**
+         * Creates an OffHeapMap in a direct buffer
+         *
+         * @param name     name of the namespace
+         * @param size     byte budget
+         * @param slotSize size of a slot
+         * @return an OffHeapMap
+         */
+        public static OffHeapMap direct(String name, int size, int slotSize) {
+            return new OffHeapMap(name, DIRECT, ByteBuffer.allocateDirect(size), null, slotSize);
+        }
+
+        /**
+         * Creates an OffHeapMap in a memory mapped file
+         * The entries already in the file get reused if the file was laid out with the same size and slot size
+         * A file laid out differently, or not a namespace at all, is never wiped, IllegalStateException gets raised
+         *
+         * @param name     name of the namespace
+         * @param file     the file to be mapped
+         * @param size     byte budget, size of the file
+         * @param slotSize size of a slot
+         * @return an OffHeapMap
+         * @throws IOException if the file can not be mapped
+         */
+        public static OffHeapMap mapped(String name, Path file, int size, int slotSize) throws IOException {
+            final Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                // mapping grows the file, a file which is not a namespace must be left as it is
+                final ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+                channel.read(magic, 0);
+                if (magic.getInt(0) != MAGIC && magic.getInt(0) != 0) {
+                    throw new IllegalStateException(name + " can not be mapped on " + file + ", it is not a shared memory namespace");
+                }
+                final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                return new OffHeapMap(name, MAPPED, buffer, channel, slotSize);
+            } catch (Throwable t) {
+                channel.close();
+                throw t;
+            }
+        }
+
+        /**
+         * Name of the namespace
+         *
+         * @return name
+         */
+        public String name() {
+            return name;
+        }
+
+        private <T> T write(Supplier<T> action) {
+            lock.lock();
+            try {
+                if (channel == null) return action.get();
+                // serializes writers of other processes mapping the same file
+                try (FileLock ignored = channel.lock(0, HEADER, false)) {
+                    return action.get();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static byte[] bytes(Object key) {
+            return String.valueOf(key).getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static int hash(byte[] kb) {
+            final int h = Arrays.hashCode(kb);
+            return h ^ (h >>> 16);
+        }
+
+        private int offset(int home, int i) {
+            return HEADER + ((home + i) % slots) * slotSize;
+        }
+
+        private int home(int hash) {
+            return Math.floorMod(hash, slots);
+        }
+
+        private long version(int off) {
+            return (long) LONGS.getAcquire(buffer, off + VERSION);
+        }
+
+        private boolean matches(int off, int hash, byte[] kb) {
+            if (buffer.get(off + STATE) != USED || buffer.getInt(off + HASH) != hash) return false;
+            if (buffer.getShort(off + KEY_LENGTH) != kb.length) return false;
+            for (int i = 0; i < kb.length; i++) {
+                if (buffer.get(off + DATA + i) != kb[i]) return false;
+            }
+            return true;
+        }
+
+        private byte[] data(int off, int from, int length) {
+            if (from < 0 || length < 0 || DATA + from + length > slotSize) throw new IllegalStateException("torn slot");
+            final byte[] b = new byte[length];
+            buffer.get(off + DATA + from, b);
+            return b;
+        }
+
+        private Object decode(int off) {
+            final byte type = buffer.get(off + TYPE);
+            final long bits = (long) LONGS.getVolatile(buffer, off + VALUE);
+            final int kl = buffer.getShort(off + KEY_LENGTH);
+            return switch (type) {
+                case LONG -> bits;
+                case DOUBLE -> Double.longBitsToDouble(bits);
+                case BOOLEAN -> bits != 0;
+                case STRING -> new String(data(off, kl, buffer.getInt(off + VALUE_LENGTH)), StandardCharsets.UTF_8);
+                case BYTES -> data(off, kl, buffer.getInt(off + VALUE_LENGTH));
+                default -> throw new IllegalStateException("torn slot");
+            };
+        }
+
+        private String key(int off) {
+            return new String(data(off, 0, buffer.getShort(off + KEY_LENGTH)), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a slot consistently against concurrent writers
+         * @param off offset of the slot
+         * @param reader what to read from the slot, MISSING if nothing
+         * @return what got read
+         */
+        private Object read(int off, Supplier<Object> reader) {
+            while (true) {
+                final long v = version(off);
+                if ((v & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                Object value;
+                try {
+                    value = reader.get();
+                } catch (RuntimeException e) {
+                    // a writer changed the slot underneath, the version check tells
+                    if (version(off) == v) throw e;
+                    continue;
+                }
+                VarHandle.acquireFence();
+                if (version(off) == v) return value;
+            }
+        }
+
+        private Object lookup(byte[] kb, int hash) {
+            final int home = home(hash);
+            for (int i = 0; i < window; i++) {
+                final int off = offset(home, i);
+                final Object value = read(off, () -> matches(off, hash, kb) ? decode(off) : MISSING);
+                if (value != MISSING) return value;
+            }
+            return MISSING;
+        }
+
+        /**
+         * Takes the version word of a slot from even to odd, every writer of a slot goes through this,
+         * the write lock holder as well as a lock free increment, so they exclude each other
+         * @param off offset of the slot
+         */
+        private void claim(int off) {
+            while (true) {
+                final long v = version(off);
+                if ((v & 1) == 0 && LONGS.compareAndSet(buffer, off + VERSION, v, v + 1)) return;
+                Thread.onSpinWait();
+            }
+        }
+
+        /**
+         * Takes the version word of a slot back to even, publishing the write
+         * @param off offset of the slot
+         */
+        private void publish(int off) {
+            LONGS.getAndAdd(buffer, off + VERSION, 1L);
+        }
+
+        // must be called holding the write lock
+        private int find(byte[] kb, int hash) {
+            final int home = home(hash);
+            for (int i = 0; i < window; i++) {
+                final int off = offset(home, i);
+                if (matches(off, hash, kb)) return off;
+            }
+            return -1;
+        }
+
+        // must be called holding the write lock
+        private Object store(byte[] kb, int hash, Object value) {
+            Objects.requireNonNull(value, "null values are not supported");
+            final byte type;
+            final long bits;
+            byte[] payload = new byte[0];
+            if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                type = DOUBLE;
+                bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+            } else if (value instanceof Number n) {
+                type = LONG;
+                bits = n.longValue();
+            } else if (value instanceof Boolean b) {
+                type = BOOLEAN;
+                bits = b ? 1 : 0;
+            } else if (value instanceof CharSequence cs) {
+                type = STRING;
+                bits = 0;
+                payload = cs.toString().getBytes(StandardCharsets.UTF_8);
+            } else if (value instanceof byte[] b) {
+                type = BYTES;
+                bits = 0;
+                payload = b;
+            } else {
+                throw new IllegalArgumentException("unsupported value type for off heap namespace '" + name + "' : " + value.getClass());
+            }
+            if (DATA + kb.length + payload.length > slotSize) {
+                throw new IllegalArgumentException(String.format("entry of %d bytes does not fit slot of %d bytes in namespace '%s'",
+                        kb.length + payload.length, slotSize - DATA, name));
+            }
+            final int home = home(hash);
+            int target = -1;
+            int empty = -1;
+            int oldest = -1;
+            for (int i = 0; i < window && target < 0; i++) {
+                final int off = offset(home, i);
+                if (buffer.get(off + STATE) != USED) {
+                    if (empty < 0) empty = off;
+                } else if (matches(off, hash, kb)) {
+                    target = off;
+                } else if (oldest < 0 || buffer.getLong(off + STAMP) < buffer.getLong(oldest + STAMP)) {
+                    oldest = off;
+                }
+            }
+            Object previous = null;
+            if (target >= 0) {
+                previous = decode(target);
+            } else if (empty >= 0) {
+                target = empty;
+            } else {
+                target = oldest;
+                evictions.increment();
+                logger.debug("Shared namespace '{}' evicted '{}'", name, key(oldest));
+            }
+            claim(target);
+            buffer.putInt(target + HASH, hash);
+            buffer.put(target + TYPE, type);
+            buffer.putShort(target + KEY_LENGTH, (short) kb.length);
+            buffer.putInt(target + VALUE_LENGTH, payload.length);
+            buffer.put(target + DATA, kb);
+            buffer.put(target + DATA + kb.length, payload);
+            LONGS.setVolatile(buffer, target + VALUE, bits);
+            buffer.putLong(target + STAMP, (long) LONGS.getAndAdd(buffer, TICK, 1L));
+            buffer.put(target + STATE, USED);
+            publish(target);
+            return previous;
+        }
+
+        // must be called holding the write lock
+        private Object erase(int off) {
+            final Object previous = decode(off);
+            claim(off);
+            buffer.put(off + STATE, EMPTY);
+            publish(off);
+            return previous;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (key == null) return null;
+            final byte[] kb = bytes(key);
+            final Object value = lookup(kb, hash(kb));
+            return value == MISSING ? null : value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            final byte[] kb = bytes(key);
+            final int hash = hash(kb);
+            return write(() -> store(kb, hash, value));
+        }
+
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            final byte[] kb = bytes(key);
+            final int hash = hash(kb);
+            return write(() -> {
+                final int off = find(kb, hash);
+                if (off >= 0) return decode(off);
+                return store(kb, hash, value);
+            });
+        }
+
+        @Override
+        public Object remove(Object key) {
+            if (key == null) return null;
+            final byte[] kb = bytes(key);
+            final int hash = hash(kb);
+            return write(() -> {
+                final int off = find(kb, hash);
+                return off < 0 ? null : erase(off);
+            });
+        }
+
+        /**
+         * Atomically adds to a counter, across processes as well for a memory mapped file
+         * An existing counter gets incremented lock free, an absent one gets created with the delta
+         * The lock free add claims the version word of the slot first, as writers do,
+         * so an eviction can not hand the slot to another key between the key check and the add
+         *
+         * @param key   name of the counter
+         * @param delta to be added
+         * @return the value after adding
+         */
+        public long increment(String key, long delta) {
+            final byte[] kb = bytes(key);
+            final int hash = hash(kb);
+            final int home = home(hash);
+            for (int i = 0; i < window; i++) {
+                final int off = offset(home, i);
+                final long v = version(off);
+                if ((v & 1) != 0) break;
+                if (!matches(off, hash, kb) || buffer.get(off + TYPE) != LONG) continue;
+                // any write since v was read bumped the version, then the slot may not be ours anymore
+                if (!LONGS.compareAndSet(buffer, off + VERSION, v, v + 1)) break;
+                try {
+                    return (long) LONGS.getAndAdd(buffer, off + VALUE, delta) + delta;
+                } finally {
+                    publish(off);
+                }
+            }
+            return write(() -> {
+                final int off = find(kb, hash);
+                final Object current = off < 0 ? 0L : decode(off);
+                if (!(current instanceof Long l)) {
+                    throw new IllegalArgumentException("not a counter in namespace '" + name + "' : " + key);
+                }
+                store(kb, hash, l + delta);
+                return l + delta;
+            });
+        }
+
+        @Override
+        public void clear() {
+            write(() -> {
+                for (int i = 0; i < slots; i++) {
+                    final int off = HEADER + i * slotSize;
+                    if (buffer.get(off + STATE) == USED) erase(off);
+                }
+                return null;
+            });
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (int i = 0; i < slots; i++) {
+                if (buffer.get(HEADER + i * slotSize + STATE) == USED) size++;
+            }
+            return size;
+        }
+
+        /**
+         * A snapshot of the entries, changes to the map after the call are not reflected
+         *
+         * @return an unmodifiable Set of entries
+         */
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            final Map<String, Object> snapshot = new LinkedHashMap<>();
+            for (int i = 0; i < slots; i++) {
+                final int off = HEADER + i * slotSize;
+                final Object entry = read(off, () -> buffer.get(off + STATE) == USED ?
+                        new AbstractMap.SimpleImmutableEntry<>(key(off), decode(off)) : MISSING);
+                if (entry instanceof Map.Entry<?, ?> e) snapshot.put((String) e.getKey(), e.getValue());
+            }
+            return Collections.unmodifiableSet(snapshot.entrySet());
+        }
+
+        /**
+         * Writes the content to the file, for a memory mapped namespace
+         */
+        public void flush() {
+            if (buffer instanceof MappedByteBuffer mbb) mbb.force();
+        }
+
+        /**
+         * Flushes and releases the file, the map must not be written to afterwards
+         */
+        public void close() {
+            flush();
+            if (channel == null) return;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Shared namespace '{}' failed to close : {}", name, e.toString());
+            }
+        }
+
+        /**
+         * Statistics of the namespace
+         *
+         * @return a map of mode, slots, used slots and evictions
+         */
+        public Map<String, Object> stats() {
+            final Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put(MODE, mode);
+            stats.put("slots", slots);
+            stats.put("used", size());
+            stats.put("evictions", evictions.sum());
+            return stats;
+        }
+    }
+
+    /**
+     * Sets up the namespaces of the Shared Memory
+     * namespaces : name : [ mode : heap|direct|mapped, size : bytes, slot : bytes, file : path of the mapped file ]
+     * A namespace which can not be set up falls back to the heap,
+     * but a mapped file which is laid out differently fails, as other processes may still be sharing it
+     *
+     * @param config the configuration map
+     * @param model  the Model, used to interpret paths in the configuration
+     */
+    static void configure(Map<String, Object> config, Model model) {
+        final Map<String, Object> namespaces = (Map) config.getOrDefault(NAMESPACES, Collections.emptyMap());
+        namespaces.forEach((name, c) -> {
+            final Map<String, Object> nc = (Map) c;
+            final String mode = nc.getOrDefault(MODE, HEAP).toString().toLowerCase(Locale.ROOT);
+            final int size = ZNumber.integer(nc.getOrDefault(SIZE, DEFAULT_SIZE), DEFAULT_SIZE).intValue();
+            final int slot = ZNumber.integer(nc.getOrDefault(SLOT, DEFAULT_SLOT), DEFAULT_SLOT).intValue();
+            try {
+                final OffHeapMap map = switch (mode) {
+                    case HEAP -> null;
+                    case DIRECT -> OffHeapMap.direct(name, size, slot);
+                    case MAPPED -> OffHeapMap.mapped(name,
+                            Paths.get(model.interpretPath(nc.getOrDefault(FILE, "_/" + name + ".shm").toString())), size, slot);
+                    default -> throw new IllegalArgumentException("unknown mode : " + mode);
+                };
+                if (map == null) {
+                    namespace(name);
+                    logger.info("Shared namespace '{}' : heap", name);
+                    return;
+                }
+                final OffHeapMap old = OFF_HEAP.put(name, map);
+                if (old != null) old.close();
+                Scriptable.SHARED_MEMORY.put(name, map);
+                logger.info("Shared namespace '{}' : {}", name, map.stats());
+            } catch (IllegalStateException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Shared namespace '{}' falls back to heap : {}", name, e.toString());
+                namespace(name);
+            }
+        });
+    }
+
+    /**
+     * Writes all memory mapped namespaces to their files
+     */
+    static void flush() {
+        OFF_HEAP.values().forEach(OffHeapMap::flush);
+    }
+
+    /**
+     * Statistics of the off heap namespaces
+     *
+     * @return map of namespace name to its statistics
+     */
+    static Map<String, Map<String, Object>> stats() {
+        final Map<String, Map<String, Object>> stats = new TreeMap<>();
+        OFF_HEAP.forEach((k, v) -> stats.put(k, v.stats()));
+        return stats;
+    }
+}
@@ -0,0 +1,399 @@
+package cowj;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.staticfiles.MimeType;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Cache of the static folder, indexed at boot
+ * Small files are held in memory, on heap or off heap, large ones are memory mapped
+ * Responses carry strong ETags and Last-Modified, conditional requests get a 304
+ * The contents get written from the buffers as is, through the Jetty response, without a servlet stream in between
+ */
+public final class StaticCache {
+
+    /**
+     * Logger for the Cowj StaticCache
+     */
+    static final Logger logger = LoggerFactory.getLogger(StaticCache.class);
+
+    /**
+     * Key for enabling the cache
+     */
+    public static final String ENABLED = "enabled";
+
+    /**
+     * Key for the max bytes of small files held in memory
+     */
+    public static final String MEMORY = "memory";
+
+    /**
+     * Key for the max size of a file held in memory, larger ones are memory mapped
+     */
+    public static final String MAX_FILE = "max_file";
+
+    /**
+     * Key for where the small files are held, heap or direct
+     */
+    public static final String MODE = "mode";
+
+    /**
+     * Key for the max-age of the Cache-Control header in seconds, no Cache-Control if not set
+     */
+    public static final String MAX_AGE = "max_age";
+
+    /**
+     * Off heap mode
+     */
+    public static final String DIRECT = "direct";
+
+    /**
+     * Format of the HTTP date headers
+     */
+    static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    /**
+     * A cached static file
+     * @param file the static file
+     * @param content the contents, a heap, direct or mapped buffer
+     * @param contentType content type of the file
+     * @param tag the content hash, without quotes
+     * @param lastModified last modified time of the file, in ms
+     * @param mapped true if the contents are memory mapped
+     */
+    public record Entry(Path file, ByteBuffer content, String contentType, String tag, long lastModified, boolean mapped) {
+
+        /**
+         * The strong ETag of a representation of the file
+         * @param gzip true for the gzip encoded representation
+         * @return ETag header value
+         */
+        public String etag(boolean gzip) {
+            return gzip ? "\"" + tag + "-gz\"" : "\"" + tag + "\"";
+        }
+
+        /**
+         * Is a conditional request satisfied by the cached representation
+         * If-None-Match wins over If-Modified-Since, as it should
+         * @param headers the request headers
+         * @param etag ETag of the selected representation
+         * @return true if a 304 should go out
+         */
+        public boolean notModified(HttpFields headers, String etag) {
+            final String ifNoneMatch = headers.get(HttpHeader.IF_NONE_MATCH);
+            if (ifNoneMatch != null) {
+                for (String candidate : ifNoneMatch.split(",")) {
+                    final String t = candidate.trim();
+                    // GET uses the weak comparison
+                    if ("*".equals(t) || etag.equals(t.startsWith("W/") ? t.substring(2) : t)) return true;
+                }
+                return false;
+            }
+            final long since;
+            try {
+                since = headers.getDateField(HttpHeader.IF_MODIFIED_SINCE.asString());
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            // HTTP dates have a resolution of seconds
+            return since >= 0 && lastModified / 1000 <= since / 1000;
+        }
+    }
+
+    private final Path root;
+
+    private final boolean direct;
+
+    private final long memory;
+
+    private final long maxFile;
+
+    private final String cacheControl;
+
+    private final Compression.Precompressed precompressed;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong inMemory = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong notModified = new AtomicLong();
+
+    private StaticCache(Path root, boolean direct, long memory, long maxFile, long maxAge,
+                        Compression.Precompressed precompressed) {
+        this.root = root;
+        this.direct = direct;
+        this.memory = memory;
+        this.maxFile = maxFile;
+        this.cacheControl = maxAge >= 0 ? "public, max-age=" + maxAge : null;
+        this.precompressed = precompressed;
+    }
+
+    /**
+     * Hex of the SHA-256 of a buffer, truncated to 128 bits
+     * @param content the buffer, position is not changed
+     * @return hex string
+     */
+    static String hash(ByteBuffer content) {
+        try {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(content.duplicate());
+            final byte[] digest = md.digest();
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads a static file into the cache
+     * Small files go to memory as long as there is budget left, the rest gets memory mapped, in any mode
+     * A mapped file truncated underneath fails the requests reading it, till the FileWatcher maps it again
+     * @param file the static file
+     * @return Entry
+     * @throws IOException in case of error reading the file
+     */
+    Entry load(Path file) throws IOException {
+        return load(file, 0);
+    }
+
+    /**
+     * Loads a static file into the cache, in place of an entry which frees memory once replaced
+     * @param file the static file
+     * @param freed bytes of memory the replaced entry holds
+     * @return Entry
+     * @throws IOException in case of error reading the file
+     */
+    Entry load(Path file, long freed) throws IOException {
+        final long size = Files.size(file);
+        final long lastModified = Files.getLastModifiedTime(file).toMillis();
+        final String key = root.relativize(file).toString().replace(File.separatorChar, '/');
+        final String type = MimeType.fromPathInfo("/" + key);
+        final boolean fits = size <= maxFile && inMemory.get() - freed + size <= memory;
+        final ByteBuffer content;
+        final boolean mapped;
+        if (fits) {
+            final byte[] bytes = Files.readAllBytes(file);
+            content = direct ? ByteBuffer.allocateDirect(bytes.length).put(bytes).flip() : ByteBuffer.wrap(bytes);
+            inMemory.addAndGet(bytes.length);
+            mapped = false;
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            mapped = true;
+        }
+        return new Entry(file, content.asReadOnlyBuffer(), type, hash(content), lastModified, mapped);
+    }
+
+    /**
+     * Bytes of memory an entry holds
+     * @param entry the entry, null for none
+     * @return size of the contents, 0 if mapped
+     */
+    static long memory(Entry entry) {
+        return entry == null || entry.mapped() ? 0 : entry.content().capacity();
+    }
+
+    /**
+     * Reloads a changed static file, the memory of the entry it replaces goes back to the budget
+     * If the file can not be read anymore, the entry is dropped and Spark serves the path
+     * @param file path of the static file
+     */
+    void reload(String file) {
+        final long freed = memory(entries.get(file));
+        try {
+            final Entry entry = load(Path.of(file), freed);
+            inMemory.addAndGet(-memory(entries.put(file, entry)));
+            logger.info("StaticCache : reloaded {}", file);
+        } catch (IOException e) {
+            inMemory.addAndGet(-memory(entries.remove(file)));
+            logger.warn("StaticCache : failed reloading {} : {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Indexes the static folder, and keeps the entries fresh through the FileWatcher, in dev mode
+     * @return this
+     */
+    StaticCache index() {
+        if (!Files.isDirectory(root)) return this;
+        try (Stream<Path> files = Files.walk(root)) {
+            final Iterator<Path> it = files.filter(Files::isRegularFile).iterator();
+            while (it.hasNext()) {
+                final Path p = it.next();
+                try {
+                    entries.put(p.toString(), load(p));
+                } catch (IOException e) {
+                    logger.warn("StaticCache : failed caching {} : {}", p, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            logger.error("StaticCache : failed indexing static folder {}", root, e);
+        }
+        FileWatcher.FILE_WATCHERS.add(new FileWatcher() {
+            @Override
+            public boolean test(String s) {
+                return entries.containsKey(s);
+            }
+
+            @Override
+            public void accept(String s) {
+                reload(s);
+            }
+        });
+        logger.info("StaticCache : {} files, {} bytes in {} memory, {} mapped", entries.size(), inMemory.get(),
+                direct ? "off heap" : "heap", entries.values().stream().filter(Entry::mapped).count());
+        return this;
+    }
+
+    /**
+     * Gets the cached entry for a request path
+     * @param path request path
+     * @return Entry or null if the path is not a cached file
+     */
+    public Entry entry(String path) {
+        if (path == null || !path.startsWith("/")) return null;
+        final String rel = path.endsWith("/") ? path.substring(1) + "index.html" : path.substring(1);
+        final Path file = root.resolve(rel).normalize();
+        if (!file.startsWith(root)) return null;
+        return entries.get(file.toString());
+    }
+
+    /**
+     * Serves a static file from the cache
+     * The gzip variant, if the Compression precompressed one, gets picked when the client accepts gzip
+     * Jetty writes the buffer as is, a mapped one goes straight from the page cache to the socket
+     * @param request the Jetty request
+     * @param response the Jetty response
+     * @param callback completed once the file got written
+     * @return true if served, false if Spark should handle the request
+     */
+    public boolean serve(Request request, Response response, Callback callback) {
+        final String method = request.getMethod();
+        if (!HttpMethod.GET.is(method) && !HttpMethod.HEAD.is(method)) return false;
+        final String path = Router.PathPattern.decode(request.getHttpURI().getCanonicalPath());
+        final Entry entry = entry(path);
+        if (entry == null) return false;
+        final Compression.Variant variant = precompressed == null ? null : precompressed.variant(path);
+        final boolean gzip = variant != null && Compression.acceptsGzip(request.getHeaders().get(HttpHeader.ACCEPT_ENCODING));
+        final String etag = entry.etag(gzip);
+        final HttpFields.Mutable headers = response.getHeaders();
+        if (variant != null) Compression.vary(headers);
+        headers.put(HttpHeader.ETAG, etag);
+        headers.put(HttpHeader.LAST_MODIFIED, HTTP_DATE.format(Instant.ofEpochMilli(entry.lastModified())));
+        if (cacheControl != null) headers.put(HttpHeader.CACHE_CONTROL, cacheControl);
+        hits.incrementAndGet();
+        if (entry.notModified(request.getHeaders(), etag)) {
+            notModified.incrementAndGet();
+            response.setStatus(HttpStatus.NOT_MODIFIED_304);
+            callback.succeeded();
+            return true;
+        }
+        final ByteBuffer content = gzip ? ByteBuffer.wrap(variant.gzip()) : entry.content().duplicate();
+        response.setStatus(HttpStatus.OK_200);
+        headers.put(HttpHeader.CONTENT_TYPE, entry.contentType());
+        if (gzip) headers.put(HttpHeader.CONTENT_ENCODING, Compression.GZIP);
+        headers.put(HttpHeader.CONTENT_LENGTH, content.remaining());
+        if (HttpMethod.GET.is(method)) {
+            response.write(true, content, callback);
+        } else {
+            callback.succeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Wraps a Jetty Handler, so that cached files get served before it
+     * @param handler the Jetty Handler Spark created
+     * @return wrapped handler
+     */
+    public Handler wrap(Handler handler) {
+        return new Handler.Wrapper(handler) {
+            @Override
+            public boolean handle(Request request, Response response, Callback callback) throws Exception {
+                return serve(request, response, callback) || super.handle(request, response, callback);
+            }
+        };
+    }
+
+    /**
+     * Stats of the cache
+     * @return map of files, memory bytes, mapped files, hits and not modified responses
+     */
+    public Map<String, Long> stats() {
+        return Map.of("files", (long) entries.size(), "memory", inMemory.get(),
+                "mapped", entries.values().stream().filter(Entry::mapped).count(),
+                "hits", hits.get(), "not_modified", notModified.get());
+    }
+
+    /**
+     * Decorator for the Jetty Handler Spark creates
+     * The precompressed variants are served from here, so this replaces the Compression decorator
+     * @param cache the StaticCache, null if not enabled
+     * @param otherwise decorator to use when there is no cache
+     * @return a handler decorator
+     */
+    public static UnaryOperator<Handler> handler(StaticCache cache, UnaryOperator<Handler> otherwise) {
+        return cache == null ? otherwise : cache::wrap;
+    }
+
+    /**
+     * Creates a StaticCache from configuration, and indexes the static folder
+     * enabled : true to cache, default true when the section is present
+     * memory : max bytes of small files held in memory, default 64 MB
+     * max_file : max size of a file held in memory, default 256 KB, larger ones get memory mapped
+     * mode : heap or direct, where the small files are held, default heap
+     * max_age : max-age of the Cache-Control header in seconds, default none
+     * @param config the configuration map
+     * @param model the Model, to locate the static folder
+     * @param precompressed precompressed variants from Compression, null for none
+     * @return StaticCache, or null if not enabled
+     */
+    public static StaticCache fromConfig(Map<String, Object> config, Model model, Compression.Precompressed precompressed) {
+        if (config.isEmpty() || !ZTypes.bool(config.getOrDefault(ENABLED, true), true)) return null;
+        final Path root;
+        try {
+            root = new File(model.staticPath()).getCanonicalFile().toPath();
+        } catch (IOException e) {
+            logger.error("StaticCache : static folder can not be resolved, not caching", e);
+            return null;
+        }
+        final boolean direct = DIRECT.equals(config.getOrDefault(MODE, "heap"));
+        final long memory = ZNumber.integer(config.getOrDefault(MEMORY, 64 * 1024 * 1024), 64 * 1024 * 1024).longValue();
+        final long maxFile = ZNumber.integer(config.getOrDefault(MAX_FILE, 256 * 1024), 256 * 1024).longValue();
+        final long maxAge = ZNumber.integer(config.getOrDefault(MAX_AGE, -1), -1).longValue();
+        return new StaticCache(root, direct, memory, maxFile, maxAge, precompressed).index();
+    }
+}
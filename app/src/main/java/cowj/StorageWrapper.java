@@ -4,6 +4,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import zoomba.lang.core.types.ZTypes;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
@@ -188,6 +191,25 @@ public interface  StorageWrapper <B,R,I> {
      */
     R dumpb(String bucketName, String fileName, byte[] data) ;
 
+    /**
+     * Dump a stream of bytes, e.g. an upload, into the storage
+     * Storages which can write as the bytes arrive override this, all the shipped ones do, but the memory backed one
+     * The default takes the bytes in first
+     *
+     * @param bucketName the bucket
+     * @param fileName   the file
+     * @param data       stream to be dumped, gets closed
+     * @return an  object
+     * @see Upload
+     */
+    default R dumpStream(String bucketName, String fileName, InputStream data) {
+        try (data) {
+            return dumpb(bucketName, fileName, data.readAllBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Load data from Google Storage as bytes
      *
@@ -196,7 +218,10 @@ public interface  StorageWrapper <B,R,I> {
      * @return byte[] - content of the file
      */
     default byte[] loadb(String bucketName, String fileName){
-        return bytes(data(bucketName, fileName));
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final byte[] b = bytes(data(bucketName, fileName));
+        event.record("read", this, bucketName, fileName, b == null ? -1 : b.length);
+        return b;
     }
 
     /**
@@ -207,7 +232,10 @@ public interface  StorageWrapper <B,R,I> {
      * @return data string - content of the file
      */
     default String loads(String bucketName, String fileName) {
-        return utf8( data(bucketName, fileName));
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final String s = utf8( data(bucketName, fileName));
+        event.record("read", this, bucketName, fileName, s == null ? -1 : s.length());
+        return s;
     }
 
     /**
@@ -243,7 +271,7 @@ public interface  StorageWrapper <B,R,I> {
      * @return a Stream of String after reading each Blob as String use UTF-8 encoding
      */
     default Stream<String> allContent(String bucketName, String directoryPrefix) {
-        return stream(bucketName,directoryPrefix).map( this::utf8 );
+        return FlightRecorder.StorageList.of(this, bucketName, directoryPrefix, stream(bucketName,directoryPrefix)).map( this::utf8 );
     }
 
     /**
@@ -255,7 +283,7 @@ public interface  StorageWrapper <B,R,I> {
      * @return a Stream of Key,Value pairs of Strings after reading each Blob as String use UTF-8 encoding
      */
     default Stream<Map.Entry<String,String>> entries(String bucketName, String directoryPrefix) {
-        return stream(bucketName,directoryPrefix).map( this::entry );
+        return FlightRecorder.StorageList.of(this, bucketName, directoryPrefix, stream(bucketName,directoryPrefix)).map( this::entry );
     }
 
     /**
@@ -267,7 +295,7 @@ public interface  StorageWrapper <B,R,I> {
      * @return a Stream of Object or String
      */
     default Stream<Object> allData(String bucketName, String directoryPrefix) {
-        return stream(bucketName, directoryPrefix).map( this::json );
+        return FlightRecorder.StorageList.of(this, bucketName, directoryPrefix, stream(bucketName, directoryPrefix)).map( this::json );
     }
 
     /**
@@ -279,7 +307,19 @@ public interface  StorageWrapper <B,R,I> {
      * @return a Stream of key, value pairs of String, Object after reading
      */
     default Stream<Map.Entry<String,Object>> entriesData(String bucketName, String directoryPrefix) {
-        return stream(bucketName,directoryPrefix).map(this::entryObject);
+        return FlightRecorder.StorageList.of(this, bucketName, directoryPrefix, stream(bucketName,directoryPrefix)).map(this::entryObject);
+    }
+
+    /**
+     * Gets a Stream of NDJSON lines from a bucket, one {"key": key, "value": value} object per blob
+     * Returned from a route it gets streamed, so exporting a prefix takes constant memory
+     * @param bucketName name of the bucket
+     * @param directoryPrefix prefix we use to get files in the directory
+     * @return a lazy Stream of JSON lines
+     * @see Streaming
+     */
+    default Stream<String> ndjson(String bucketName, String directoryPrefix) {
+        return Streaming.ndjson( entriesData(bucketName, directoryPrefix) );
     }
 
     /**
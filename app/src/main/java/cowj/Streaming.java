@@ -0,0 +1,215 @@
+package cowj;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.ee10.servlet.ServletContextRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Streaming of route results straight to the response
+ * A route can return an InputStream, a java.util.stream.Stream, an Iterator, a byte[] or a ByteBuffer
+ * Those get written as they are produced, through the bounded response buffer, chunked when they do not fit
+ * Elements of a Stream or an Iterator are written one per line, strings as is, byte arrays raw, anything else as JSON
+ * That makes a Stream of objects NDJSON
+ */
+public interface Streaming {
+
+    /**
+     * Logger for the Cowj Streaming
+     */
+    Logger logger = LoggerFactory.getLogger(Streaming.class);
+
+    /**
+     * Size of the chunks an InputStream gets copied in
+     */
+    int CHUNK = 8192;
+
+    /**
+     * Content type of a Stream or an Iterator
+     */
+    String NDJSON = "application/x-ndjson";
+
+    /**
+     * Content type of bytes
+     */
+    String OCTET_STREAM = "application/octet-stream";
+
+    /**
+     * Writes JSON lines, neither closing nor flushing the response after every element
+     */
+    ObjectWriter LINE_WRITER = TypeSystem.OBJECT_MAPPER.writer()
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    /**
+     * Can a result be streamed
+     * @param result result of a route
+     * @return true if it is an InputStream, a Stream, an Iterator, a byte[] or a ByteBuffer
+     */
+    static boolean streamable(Object result) {
+        return result instanceof InputStream || result instanceof Stream<?> || result instanceof Iterator<?>
+                || result instanceof byte[] || result instanceof ByteBuffer;
+    }
+
+    /**
+     * Writes an element of a Stream or an Iterator as a line
+     * @param item the element
+     * @param out where to write
+     * @throws IOException in case writing fails
+     */
+    static void writeLine(Object item, OutputStream out) throws IOException {
+        if (item instanceof byte[] bytes) {
+            out.write(bytes);
+            return;
+        }
+        if (item instanceof CharSequence cs) {
+            out.write(cs.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            LINE_WRITER.writeValue(out, item);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes a streamable result to the response, never compressed, a failure after the commit can not abort
+     * @param result result of a route
+     * @param response the spark.Response
+     * @return true if the result was written, false if it has to be returned as usual
+     * @throws IOException in case writing fails before the response got committed
+     * @see #write(Object, Request, Response)
+     */
+    static boolean write(Object result, Response response) throws IOException {
+        return write(result, null, response);
+    }
+
+    /**
+     * Writes a streamable result to the response, gzip encoded if the Compression attached says so
+     * An error before anything went out propagates, so that the client gets a proper error
+     * An error after the response got committed aborts the connection, so the client can not mistake a
+     * truncated body for a complete one
+     * @param result result of a route
+     * @param request the spark.Request, null if not known
+     * @param response the spark.Response
+     * @return true if the result was written, false if it has to be returned as usual
+     * @throws IOException in case writing fails before the response got committed
+     */
+    static boolean write(Object result, Request request, Response response) throws IOException {
+        if (!streamable(result)) return false;
+        final HttpServletResponse raw = response.raw();
+        if (raw == null || raw.isCommitted()) return false;
+        if (raw.getContentType() == null) {
+            raw.setContentType(result instanceof Stream<?> || result instanceof Iterator<?> ? NDJSON : OCTET_STREAM);
+        }
+        try {
+            final long length = result instanceof byte[] bytes ? bytes.length :
+                    result instanceof ByteBuffer buffer ? buffer.remaining() : -1;
+            final OutputStream out = Compression.outputStream(request == null ? null : request.raw(), raw, length);
+            if (result instanceof byte[] bytes) {
+                out.write(bytes);
+            } else if (result instanceof ByteBuffer buffer) {
+                final ByteBuffer content = buffer.duplicate();
+                final WritableByteChannel channel = Channels.newChannel(out);
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            } else if (result instanceof InputStream in) {
+                try (in) {
+                    in.transferTo(out);
+                }
+            } else if (result instanceof Stream<?> stream) {
+                try (stream) {
+                    final Iterator<?> it = stream.iterator();
+                    while (it.hasNext()) {
+                        writeLine(it.next(), out);
+                    }
+                }
+            } else {
+                final Iterator<?> it = (Iterator<?>) result;
+                try {
+                    while (it.hasNext()) {
+                        writeLine(it.next(), out);
+                    }
+                } finally {
+                    if (it instanceof AutoCloseable ac) ac.close();
+                }
+            }
+            Compression.finish(out);
+        } catch (Throwable t) {
+            if (!raw.isCommitted()) {
+                // whatever is still buffered must not go out as a broken body, nor the error as gzip
+                raw.resetBuffer();
+                raw.setHeader(Compression.CONTENT_ENCODING, null);
+                throw t instanceof IOException io ? io : new IOException(t);
+            }
+            logger.error("Streaming failed after the response was committed, aborting : {}", t.toString());
+            abort(request == null ? null : request.raw(), t);
+        }
+        return true;
+    }
+
+    /**
+     * Aborts the connection of a committed response
+     * Jetty fails the callback of the exchange, the connection gets closed without completing the body
+     * @param request the servlet request, null if not known, then the body just ends where it failed
+     * @param t the cause
+     */
+    static void abort(HttpServletRequest request, Throwable t) {
+        final ServletContextRequest jetty = request == null ? null : ServletContextRequest.getServletContextRequest(request);
+        if (jetty == null) {
+            logger.warn("Streaming can not abort the connection, the request is not known");
+            return;
+        }
+        jetty.getServletChannel().abort(t);
+    }
+
+    /**
+     * Wraps a spark.Route so that streamable results get streamed
+     * The route, with its execution budget, produces the result, the streaming happens after
+     * @param route the underlying spark.Route
+     * @return a spark.Route
+     */
+    static Route route(Route route) {
+        return (request, response) -> {
+            final Object result = route.handle(request, response);
+            return write(result, request, response) ? "" : result;
+        };
+    }
+
+    /**
+     * Maps key value pairs into NDJSON lines of the form {"key": key, "value": value}
+     * The Stream stays lazy, only one entry is in memory at a time when it gets streamed
+     * @param entries a Stream of Map.Entry, e.g. from StorageWrapper entries
+     * @return a Stream of JSON lines, without the line separator
+     */
+    static Stream<String> ndjson(Stream<? extends Map.Entry<String, ?>> entries) {
+        return entries.map(e -> {
+            final Map<String, Object> line = new LinkedHashMap<>(2);
+            line.put("key", e.getKey());
+            line.put("value", e.getValue());
+            try {
+                return LINE_WRITER.writeValueAsString(line);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+}
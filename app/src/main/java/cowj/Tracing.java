@@ -0,0 +1,716 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Filter;
+import spark.HaltException;
+import spark.Route;
+import spark.Spark;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracing of requests, a span per stage : the request, auth, schema validation, filters, the route, data source calls
+ * Trace context comes in and goes out as a W3C traceparent header, and follows async tasks into their threads
+ * The sampling decision is made once per trace, at its root, an inbound traceparent decides for itself
+ * Spans of sampled traces are queued, and exported in batches by a background thread,
+ * to a rolling local file of JSON lines, or to any Exporter
+ * The queue is bounded, spans get dropped rather than the request waiting on the exporter
+ */
+public interface Tracing {
+
+    /**
+     * Logger for the Cowj Tracing
+     */
+    Logger logger = LoggerFactory.getLogger(Tracing.class);
+
+    /**
+     * Key for enabling tracing
+     */
+    String ENABLED = "enabled";
+
+    /**
+     * Key for the fraction of traces sampled
+     */
+    String SAMPLE = "sample";
+
+    /**
+     * Key for the file spans get written to
+     */
+    String FILE = "file";
+
+    /**
+     * Key for the max bytes of a file before it rolls over
+     */
+    String MAX_BYTES = "max_bytes";
+
+    /**
+     * Key for the no of rolled over files kept
+     */
+    String MAX_FILES = "max_files";
+
+    /**
+     * Key for the max spans exported at once
+     */
+    String BATCH = "batch";
+
+    /**
+     * Key for the max time in ms a span waits to get exported
+     */
+    String FLUSH = "flush";
+
+    /**
+     * Key for the max spans waiting to get exported
+     */
+    String QUEUE = "queue";
+
+    /**
+     * Key for a custom exporter, as package.Class::FIELD holding an Exporter
+     */
+    String EXPORTER = "exporter";
+
+    /**
+     * W3C trace context header
+     */
+    String TRACEPARENT = "traceparent";
+
+    /**
+     * Request attribute holding the request span
+     */
+    String SPAN_ATTRIBUTE = "_span";
+
+    /**
+     * Span of the current thread
+     */
+    ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Exports spans, gets called from a single background thread
+     */
+    interface Exporter extends AutoCloseable {
+
+        /**
+         * Exports a batch of spans
+         * @param spans the spans, all finished
+         * @throws Exception in case of error, the batch gets dropped
+         */
+        void export(List<Span> spans) throws Exception;
+
+        @Override
+        default void close() throws Exception {
+        }
+    }
+
+    /**
+     * A unit of work in a trace
+     */
+    final class Span implements AutoCloseable {
+
+        /**
+         * The Span when tracing is disabled, it records nothing, and propagates nothing
+         */
+        public static final Span NOOP = new Span(null, "", "", "", "", false);
+
+        private final Span previous;
+        private final String name;
+        private final String traceId;
+        private final String spanId;
+        private final String parentId;
+        private final boolean sampled;
+        private final long startMicros;
+        private final long startNanos;
+
+        private Map<String, Object> attributes;
+        private String error;
+        private long durationNanos = -1;
+
+        Span(Span previous, String name, String traceId, String spanId, String parentId, boolean sampled) {
+            this.previous = previous;
+            this.name = name;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentId = parentId;
+            this.sampled = sampled;
+            this.startMicros = sampled ? TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis()) : 0;
+            this.startNanos = sampled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Name of the span
+         * @return name
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * Id of the trace, 32 hex digits
+         * @return trace id
+         */
+        public String traceId() {
+            return traceId;
+        }
+
+        /**
+         * Id of the span, 16 hex digits
+         * @return span id
+         */
+        public String spanId() {
+            return spanId;
+        }
+
+        /**
+         * Id of the parent span, empty for a root
+         * @return parent span id
+         */
+        public String parentId() {
+            return parentId;
+        }
+
+        /**
+         * Is the trace of the span sampled
+         * @return true if it gets exported
+         */
+        public boolean sampled() {
+            return sampled;
+        }
+
+        /**
+         * Error of the span
+         * @return error, null if none
+         */
+        public String error() {
+            return error;
+        }
+
+        /**
+         * Duration of the span
+         * @return nanos, -1 while not finished
+         */
+        public long durationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Attributes of the span
+         * @return attributes
+         */
+        public Map<String, Object> attributes() {
+            return attributes == null ? Collections.emptyMap() : attributes;
+        }
+
+        /**
+         * Adds an attribute, only sampled spans keep them
+         * @param key name of the attribute
+         * @param value value of the attribute
+         * @return this
+         */
+        public Span attribute(String key, Object value) {
+            if (!sampled) return this;
+            if (attributes == null) attributes = new LinkedHashMap<>();
+            attributes.put(key, value);
+            return this;
+        }
+
+        /**
+         * Marks the span as failed
+         * @param error what went wrong
+         * @return this
+         */
+        public Span error(Object error) {
+            if (sampled) this.error = String.valueOf(error);
+            return this;
+        }
+
+        /**
+         * The span as a W3C traceparent header value
+         * @return header value, null for the NOOP span
+         */
+        public String traceparent() {
+            if (this == NOOP) return null;
+            return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+        }
+
+        /**
+         * Puts the traceparent header of the span into outbound headers
+         * @param headers the outbound headers
+         */
+        public void inject(Map<String, String> headers) {
+            final String tp = traceparent();
+            if (tp != null) headers.put(TRACEPARENT, tp);
+        }
+
+        /**
+         * The span as a map, for exporters
+         * @return map of the span
+         */
+        public Map<String, Object> toMap() {
+            final Map<String, Object> m = new LinkedHashMap<>();
+            m.put("trace_id", traceId);
+            m.put("span_id", spanId);
+            m.put("parent_id", parentId);
+            m.put("name", name);
+            m.put("start_us", startMicros);
+            m.put("duration_us", TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            if (attributes != null) m.put("attributes", attributes);
+            if (error != null) m.put("error", error);
+            return m;
+        }
+
+        /**
+         * Finishes the span, it stops being the current one of the thread
+         */
+        @Override
+        public void close() {
+            if (this == NOOP || durationNanos >= 0) return;
+            durationNanos = sampled ? System.nanoTime() - startNanos : 0;
+            if (CURRENT.get() == this) {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+            if (sampled) TRACER.get().submit(this);
+        }
+    }
+
+    /**
+     * Writes spans as JSON lines into a file, rolling it over at a max size
+     * The file rolls over to file.1, file.1 to file.2, and so on, the oldest gets deleted
+     */
+    final class FileExporter implements Exporter {
+
+        private final Path file;
+        private final long maxBytes;
+        private final int maxFiles;
+
+        private BufferedWriter writer;
+        private long size;
+
+        /**
+         * Creates a FileExporter
+         * @param file the file to write into
+         * @param maxBytes max bytes of the file before it rolls over
+         * @param maxFiles no of rolled over files kept
+         */
+        public FileExporter(Path file, long maxBytes, int maxFiles) {
+            this.file = file;
+            this.maxBytes = maxBytes;
+            this.maxFiles = maxFiles;
+        }
+
+        private void open() throws IOException {
+            final Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            size = Files.size(file);
+        }
+
+        private void roll() throws IOException {
+            writer.close();
+            writer = null;
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                final Path from = Path.of(file + "." + i);
+                if (Files.exists(from)) Files.move(from, Path.of(file + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+            if (maxFiles > 0) {
+                Files.move(file, Path.of(file + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public void export(List<Span> spans) throws IOException {
+            if (writer == null) open();
+            for (Span s : spans) {
+                final String line = TypeSystem.OBJECT_MAPPER.writeValueAsString(s.toMap()) + "\n";
+                writer.write(line);
+                size += line.length();
+            }
+            writer.flush();
+            if (size >= maxBytes) roll();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (writer != null) writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Samples traces, queues finished spans, and exports them in batches from a background thread
+     */
+    final class Tracer implements Runnable {
+
+        private final double sample;
+        private final Exporter exporter;
+        private final BlockingQueue<Span> queue;
+        private final int batch;
+        private final long flushMs;
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder exported = new LongAdder();
+        private final Thread thread;
+
+        Tracer(double sample, Exporter exporter, int queue, int batch, long flushMs) {
+            this.sample = sample;
+            this.exporter = exporter;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queue));
+            this.batch = Math.max(1, batch);
+            this.flushMs = Math.max(1, flushMs);
+            if (exporter == null) {
+                thread = null;
+                return;
+            }
+            thread = new Thread(this, "cowj-trace-export");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Is tracing on
+         * @return true if spans get created
+         */
+        public boolean enabled() {
+            return exporter != null;
+        }
+
+        boolean sampleRoot() {
+            return sample >= 1.0 || (sample > 0 && ThreadLocalRandom.current().nextDouble() < sample);
+        }
+
+        void submit(Span span) {
+            if (!queue.offer(span)) dropped.increment();
+        }
+
+        /**
+         * Spans dropped so far, because the queue was full
+         * @return dropped spans
+         */
+        public long dropped() {
+            return dropped.sum();
+        }
+
+        /**
+         * Spans exported so far
+         * @return exported spans
+         */
+        public long exported() {
+            return exported.sum();
+        }
+
+        private void drain(List<Span> spans) {
+            if (spans.isEmpty()) return;
+            try {
+                exporter.export(spans);
+                exported.add(spans.size());
+            } catch (Throwable t) {
+                dropped.add(spans.size());
+                logger.error("Trace export failed, dropped {} spans : {}", spans.size(), t.toString());
+            }
+            spans.clear();
+        }
+
+        @Override
+        public void run() {
+            final List<Span> spans = new ArrayList<>(batch);
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final Span first = queue.poll(flushMs, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        spans.add(first);
+                        queue.drainTo(spans, batch - 1);
+                    }
+                    drain(spans);
+                }
+            } catch (InterruptedException ignore) {
+                // stopping
+            }
+            queue.drainTo(spans);
+            drain(spans);
+            try {
+                exporter.close();
+            } catch (Throwable t) {
+                logger.error("Trace exporter failed closing : {}", t.toString());
+            }
+        }
+
+        /**
+         * Stops the background thread, after exporting what is queued
+         */
+        void stop() {
+            if (thread == null) return;
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Tracer which does nothing
+     */
+    Tracer NONE = new Tracer(0, null, 1, 1, 1);
+
+    /**
+     * The Tracer in effect
+     */
+    AtomicReference<Tracer> TRACER = new AtomicReference<>(NONE);
+
+    /**
+     * Is tracing on
+     * @return true if spans get created
+     */
+    static boolean enabled() {
+        return TRACER.get().enabled();
+    }
+
+    /**
+     * Span of the current thread
+     * @return the Span, null if none
+     */
+    static Span current() {
+        return CURRENT.get();
+    }
+
+    private static String hex(long v) {
+        final String s = Long.toHexString(v);
+        return "0".repeat(16 - s.length()) + s;
+    }
+
+    private static String newId() {
+        long v;
+        do {
+            v = ThreadLocalRandom.current().nextLong();
+        } while (v == 0);
+        return hex(v);
+    }
+
+    private static Span begin(String name, String traceId, String parentId, boolean sampled) {
+        final Span span = new Span(CURRENT.get(), name, traceId, newId(), parentId, sampled);
+        CURRENT.set(span);
+        return span;
+    }
+
+    /**
+     * Starts a span as a child of a given one, on the current thread, e.g. a task a request handed off
+     * @param parent the parent Span, null starts a new trace
+     * @param name name of the span
+     * @return the Span, Span.NOOP if tracing is off
+     */
+    static Span start(Span parent, String name) {
+        final Tracer tracer = TRACER.get();
+        if (!tracer.enabled()) return Span.NOOP;
+        if (parent == null || parent == Span.NOOP) {
+            return begin(name, newId() + newId(), "", tracer.sampleRoot());
+        }
+        return begin(name, parent.traceId(), parent.spanId(), parent.sampled());
+    }
+
+    /**
+     * Starts a span as a child of the current one of the thread, a new trace if there is none
+     * @param name name of the span
+     * @return the Span, Span.NOOP if tracing is off
+     */
+    static Span start(String name) {
+        if (!enabled()) return Span.NOOP;
+        return start(CURRENT.get(), name);
+    }
+
+    /**
+     * Starts the root span of a request, continuing the trace of an inbound traceparent, if any
+     * Whatever was left on the thread by an earlier request gets dropped
+     * @param name name of the span
+     * @param traceparent inbound header value, can be null
+     * @return the Span, Span.NOOP if tracing is off
+     */
+    static Span root(String name, String traceparent) {
+        final Tracer tracer = TRACER.get();
+        if (!tracer.enabled()) return Span.NOOP;
+        CURRENT.remove();
+        if (traceparent != null) {
+            final String[] parts = traceparent.trim().split("-");
+            if (parts.length == 4 && parts[1].length() == 32 && parts[2].length() == 16 && parts[3].length() == 2
+                    && isHex(parts[1]) && isHex(parts[2]) && isHex(parts[3])) {
+                final boolean sampled = (Integer.parseInt(parts[3], 16) & 1) == 1;
+                return begin(name, parts[1], parts[2], sampled);
+            }
+        }
+        return begin(name, newId() + newId(), "", tracer.sampleRoot());
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Puts the traceparent of the current span into outbound headers
+     * @param headers the outbound headers
+     */
+    static void inject(Map<String, String> headers) {
+        final Span span = CURRENT.get();
+        if (span != null) span.inject(headers);
+    }
+
+    /**
+     * Creates a spark.Route in a span of its own
+     * @param path the route path, as in the model
+     * @param route the underlying spark.Route
+     * @return a spark.Route, the same one if tracing is off
+     */
+    static Route route(String path, Route route) {
+        if (!enabled()) return route;
+        final String name = "route " + path;
+        return (request, response) -> {
+            final Span span = start(name);
+            try {
+                return route.handle(request, response);
+            } catch (HaltException he) {
+                if (he.statusCode() >= 500) span.error("halt " + he.statusCode());
+                throw he;
+            } catch (Throwable t) {
+                span.error(t);
+                throw t;
+            } finally {
+                span.close();
+            }
+        };
+    }
+
+    /**
+     * Creates a spark.Filter in a span of its own
+     * @param type before, after or finally
+     * @param path the filter path, as in the model
+     * @param filter the underlying spark.Filter
+     * @return a spark.Filter, the same one if tracing is off
+     */
+    static Filter filter(String type, String path, Filter filter) {
+        if (!enabled()) return filter;
+        final String name = "filter " + type + " " + path;
+        return (request, response) -> {
+            try (Span ignored = start(name)) {
+                filter.handle(request, response);
+            }
+        };
+    }
+
+    /**
+     * Starts the request span before any other filter, continuing an inbound trace
+     */
+    static void attachStart() {
+        if (!enabled()) return;
+        Spark.before("*", (request, response) -> {
+            final Span span = root("http " + request.requestMethod(), request.headers(TRACEPARENT));
+            span.attribute("http.method", request.requestMethod()).attribute("http.path", request.uri());
+            request.attribute(SPAN_ATTRIBUTE, span);
+        });
+    }
+
+    /**
+     * Finishes the request span after all other filters
+     */
+    static void attachEnd() {
+        if (!enabled()) return;
+        Spark.afterAfter("*", (request, response) -> {
+            final Object o = request.attribute(SPAN_ATTRIBUTE);
+            if (o instanceof Span span) {
+                final int status = response.status();
+                span.attribute("http.status", status);
+                if (status >= 500) span.error("status " + status);
+                span.close();
+            }
+            CURRENT.remove();
+        });
+    }
+
+    /**
+     * Loads a custom Exporter
+     * @param path as package.Class::FIELD, the static field holding the Exporter
+     * @return the Exporter
+     */
+    static Exporter exporter(String path) {
+        final String[] paths = path.split("::");
+        try {
+            final Field f = Class.forName(paths[0]).getDeclaredField(paths[1]);
+            final Object o = f.get(null);
+            if (o instanceof Exporter e) return e;
+            throw new IllegalArgumentException("Not a Tracing.Exporter : " + path);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Can not load Tracing.Exporter : " + path, e);
+        }
+    }
+
+    /**
+     * Sets up tracing, must be done before anything traced gets created
+     * enabled : true to enable, default false
+     * sample : fraction of traces sampled, default 0.01
+     * file : file spans get written to, default logs/traces.ndjson
+     * max_bytes : bytes before the file rolls over, default 10 MB
+     * max_files : rolled over files kept, default 5
+     * batch : max spans exported at once, default 512
+     * flush : max ms a span waits to get exported, default 1000
+     * queue : max spans waiting to get exported, default 8192
+     * exporter : package.Class::FIELD holding a custom Exporter, used instead of the file
+     * @param config the configuration map
+     * @param model the Model, to interpret the file path
+     */
+    static void configure(Map<String, Object> config, Model model) {
+        TRACER.getAndSet(NONE).stop();
+        if (!ZTypes.bool(config.getOrDefault(ENABLED, false), false)) return;
+        final Number sampleNum = ZNumber.number(String.valueOf(config.getOrDefault(SAMPLE, 0.01)));
+        final double sample = sampleNum == null ? 0.01 : sampleNum.doubleValue();
+        final Exporter exporter;
+        if (config.containsKey(EXPORTER)) {
+            exporter = exporter(config.get(EXPORTER).toString());
+        } else {
+            final Path file = Path.of(model.interpretPath(config.getOrDefault(FILE, "logs/traces.ndjson").toString()));
+            final long maxBytes = ZNumber.integer(config.getOrDefault(MAX_BYTES, 10 * 1024 * 1024), 10 * 1024 * 1024).longValue();
+            final int maxFiles = ZNumber.integer(config.getOrDefault(MAX_FILES, 5), 5).intValue();
+            exporter = new FileExporter(file, maxBytes, maxFiles);
+        }
+        final int queue = ZNumber.integer(config.getOrDefault(QUEUE, 8192), 8192).intValue();
+        final int batch = ZNumber.integer(config.getOrDefault(BATCH, 512), 512).intValue();
+        final long flush = ZNumber.integer(config.getOrDefault(FLUSH, 1000), 1000).longValue();
+        TRACER.set(new Tracer(sample, exporter, queue, batch, flush));
+        logger.info("Tracing enabled, sampling {} of traces", sample);
+    }
+
+    /**
+     * Stops tracing, exporting what is queued
+     */
+    static void stop() {
+        TRACER.getAndSet(NONE).stop();
+    }
+
+    /**
+     * Stats of tracing
+     * @return map of exported and dropped spans
+     */
+    static Map<String, Long> stats() {
+        final Tracer tracer = TRACER.get();
+        return Map.of("exported", tracer.exported(), "dropped", tracer.dropped());
+    }
+}
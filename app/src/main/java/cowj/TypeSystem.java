@@ -308,7 +308,7 @@ public interface TypeSystem {
      * Key - file name
      * Value - SchemaValidator
      */
-    Map<String,SchemaValidator> VALIDATORS = new HashMap<>();
+    ScriptCache<SchemaValidator> VALIDATORS = ScriptCache.create("schemas");
 
     /**
      * Stale Static call to register auto reload for type system schemas
@@ -327,7 +327,7 @@ public interface TypeSystem {
      * @return a SchemaValidator
      */
     static SchemaValidator reloadForFileWatcher( String jsonSchemaPath){
-        return DataSource.dataSourceOrElse( DS_TYPE, NULL).loadSchema( jsonSchemaPath );
+        return DataSource.dataSourceOrElse( DS_TYPE, NULL).createSchema( jsonSchemaPath );
     }
 
     /**
@@ -336,8 +336,15 @@ public interface TypeSystem {
      * @return a SchemaValidator
      */
     default SchemaValidator loadSchema(String jsonSchemaPath) {
-        SchemaValidator validator = VALIDATORS.get(jsonSchemaPath);
-        if ( validator != null ) return validator;
+        return VALIDATORS.load(jsonSchemaPath, this::createSchema);
+    }
+
+    /**
+     * Creates a SchemaValidator from a Json schema file, without caching it
+     * @param jsonSchemaPath absolute path of the JSON schema file
+     * @return a SchemaValidator
+     */
+    default SchemaValidator createSchema(String jsonSchemaPath) {
         Path p = Paths.get(jsonSchemaPath);
         List<SchemaSource> repo = schemas().stream()
                 .filter( ss -> !Objects.equals(ss.getInput().getName(), jsonSchemaPath))
@@ -345,9 +352,7 @@ public interface TypeSystem {
         JsonSchemaVersion jsonSchemaVersion = JsonSchemaVersion.DRAFT07;
         SchemaSource source = new PathSchemaSource(p,jsonSchemaVersion);
         repo.add(0, source);
-        validator = API.loadSchemas(repo);
-        VALIDATORS.put(jsonSchemaPath,validator);
-        return validator;
+        return API.loadSchemas(repo);
     }
 
     /**
@@ -380,6 +385,8 @@ public interface TypeSystem {
      * @return an EitherMonad consist of potential parsed json object
      */
     default EitherMonad<Object> json(String schemaPath, String potentialJsonBody) {
+        final FlightRecorder.SchemaValidation event = FlightRecorder.SchemaValidation.start();
+        final long size = potentialJsonBody == null ? -1 : potentialJsonBody.length();
         try {
             final String jsonSchemaPath = definitionsDir() + File.separator +  schemaPath;
             SchemaValidator validator = loadSchema(jsonSchemaPath);
@@ -387,8 +394,10 @@ public interface TypeSystem {
                     OBJECT_MAPPER.getFactory().createParser(potentialJsonBody);
             JsonParser validatedParser = API.decorateJsonParser(validator, unvalidatedParser);
             Object parsedBody = OBJECT_MAPPER.readValue(validatedParser, Object.class);
+            event.record(schemaPath, size, true);
             return EitherMonad.value(parsedBody);
         } catch (Throwable ex){
+            event.record(schemaPath, size, false);
             logger.debug("Schema verification error : {}", ex.toString());
             return EitherMonad.error(ex);
         }
@@ -480,19 +489,30 @@ public interface TypeSystem {
      */
     default Filter inputSchemaVerificationFilter(String path){
         // support only request body as of now...
+        final Metrics.Timer paramsTimer = Metrics.histogram(Metrics.SCHEMA_SECONDS, "Latency of schema validation", "route", path, "stage", "params");
+        final Metrics.Timer inputTimer = Metrics.histogram(Metrics.SCHEMA_SECONDS, "Latency of schema validation", "route", path, "stage", "input");
         return  (request, response) -> {
             final long startTime = System.currentTimeMillis();
             final String verb = request.requestMethod().toLowerCase(Locale.ROOT);
             Signature signature = routes().get(path).get(verb);
             if ( signature == null ){ return; }
             // handle params
-            handleParameters( request, signature.parameterSchema(),startTime);
+            if ( !signature.parameterSchema().isEmpty() ){
+                final long paramsStart = System.nanoTime();
+                try {
+                    handleParameters( request, signature.parameterSchema(),startTime);
+                } finally {
+                    paramsTimer.record( System.nanoTime() - paramsStart );
+                }
+            }
             // now the rest...
             if ( verb.equals("get") ){ return; }
 
             final String schemaPath = signature.inputSchema();
             if ( schemaPath.isEmpty() ) { return; }
 
+            final long inputStart = System.nanoTime();
+            final Tracing.Span span = Tracing.start("schema.input").attribute("schema", schemaPath);
             final String potentialJsonBody = request.body() ;
             EitherMonad<Object> typedParsing = json( schemaPath, potentialJsonBody);
             final boolean success = typedParsing.isSuccessful();
@@ -507,6 +527,8 @@ public interface TypeSystem {
                     Spark.halt(409, message);
                 }
             } finally { // this is necessary because of schema failures...
+                inputTimer.record( System.nanoTime() - inputStart );
+                span.attribute("success", success).close();
                 final long endTime = System.currentTimeMillis();
                 logger.info("?? Input Verification [success: {}] took {} ms", success, endTime - startTime);
             }
@@ -525,6 +547,7 @@ public interface TypeSystem {
      */
     default Filter outputSchemaVerificationFilter(String path){
         // support only response body as of now...
+        final Metrics.Timer outputTimer = Metrics.histogram(Metrics.SCHEMA_SECONDS, "Latency of schema validation", "route", path, "stage", "output");
         return  (request, response) -> {
             final long startTime = System.currentTimeMillis();
             if ( Boolean.TRUE.equals( request.attribute(INPUT_SCHEMA_VALIDATION_FAILED))){
@@ -550,7 +573,14 @@ public interface TypeSystem {
             if ( optLabel.isEmpty() ) return;
             final String schemaPath = signature.schema(optLabel.get());
             if ( schemaPath.isEmpty() ) return;
-            EitherMonad<Object> typedParsing = json( schemaPath, potentialJsonBody);
+            final long outputStart = System.nanoTime();
+            final EitherMonad<Object> typedParsing;
+            try ( Tracing.Span span = Tracing.start("schema.output") ){
+                span.attribute("schema", schemaPath);
+                typedParsing = json( schemaPath, potentialJsonBody);
+                span.attribute("success", typedParsing.isSuccessful());
+            }
+            outputTimer.record( System.nanoTime() - outputStart );
             final boolean success = typedParsing.isSuccessful();
             if ( success){
                 // automatically set JSON type in response
@@ -0,0 +1,309 @@
+package cowj;
+
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletRequestWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import zoomba.lang.core.types.ZNumber;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming intake of a request body, available as _upload in route scripts
+ * stream() hands out the body as it arrives, without ever holding it, to be piped e.g. into StorageWrapper.dumps()
+ * spill() takes it in once, in memory up to a threshold, beyond that into a temp file, so it can be read many times
+ * request.body() reads the whole body into a String, large uploads should not go through it
+ */
+public final class Upload implements AutoCloseable {
+
+    /**
+     * Logger for the Cowj Upload
+     */
+    static final Logger logger = LoggerFactory.getLogger(Upload.class);
+
+    /**
+     * Key for the max bytes of a spilled body held in memory
+     */
+    public static final String MEMORY = "memory";
+
+    /**
+     * Key for the folder spilled bodies get written to
+     */
+    public static final String DIR = "dir";
+
+    /**
+     * Key for the max bytes of a body, 0 means no limit
+     */
+    public static final String MAX = "max";
+
+    /**
+     * Status for a body larger than allowed
+     */
+    public static final int TOO_LARGE_STATUS = 413;
+
+    /**
+     * Limits for the uploads
+     * @param memory max bytes of a spilled body held in memory
+     * @param dir folder spilled bodies get written to
+     * @param max max bytes of a body, 0 means no limit
+     */
+    public record Limits(long memory, Path dir, long max) {}
+
+    /**
+     * Default limits, 1 MB in memory, spill into the temp folder, no max
+     */
+    public static final Limits DEFAULT = new Limits(1024 * 1024, Path.of(System.getProperty("java.io.tmpdir")), 0);
+
+    /**
+     * Limits in effect
+     */
+    static final AtomicReference<Limits> LIMITS = new AtomicReference<>(DEFAULT);
+
+    /**
+     * Raised when a body goes past the max bytes, scripts answer it with a 413
+     */
+    public static final class TooLarge extends IOException {
+        TooLarge(long max) {
+            super("Upload exceeds the max of " + max + " bytes");
+        }
+    }
+
+    /**
+     * An InputStream that raises TooLarge once more than max bytes got read
+     */
+    static final class Bounded extends FilterInputStream {
+
+        private final long max;
+
+        private long count;
+
+        Bounded(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        private int counted(int n) throws TooLarge {
+            if (n > 0) {
+                count += n;
+                if (max > 0 && count > max) throw new TooLarge(max);
+            }
+            return n;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) counted(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return counted(super.read(b, off, len));
+        }
+    }
+
+    private final Request request;
+
+    private final Limits limits;
+
+    private boolean consumed;
+
+    private byte[] memory;
+
+    private Path file;
+
+    private long size = -1;
+
+    /**
+     * Creates an Upload for a request, nothing is read till asked for
+     * @param request the spark.Request
+     */
+    public Upload(Request request) {
+        this.request = request;
+        this.limits = LIMITS.get();
+    }
+
+    /**
+     * The body as it comes from the client
+     * Spark wraps the servlet request in one which caches the whole body on first read, that gets skipped
+     * If Spark already read the body, e.g. a filter called request.body(), the cached bytes are used
+     * @return InputStream of the body
+     * @throws IOException in case of error
+     */
+    InputStream source() throws IOException {
+        final long length = request.raw().getContentLengthLong();
+        if (limits.max() > 0 && length > limits.max()) throw new TooLarge(limits.max());
+        ServletRequest r = request.raw();
+        while (r instanceof ServletRequestWrapper w) {
+            r = w.getRequest();
+        }
+        final ServletInputStream in = r.getInputStream();
+        if (in.isFinished() && length != 0) {
+            return new Bounded(new ByteArrayInputStream(request.bodyAsBytes()), limits.max());
+        }
+        return new Bounded(in, limits.max());
+    }
+
+    /**
+     * The body as a stream
+     * Before spill() this is the body as it arrives, it can be read only once
+     * After spill() it reads what got spilled, as many times as needed
+     * @return InputStream of the body
+     * @throws IOException in case of error, TooLarge if the body goes past the max
+     */
+    public InputStream stream() throws IOException {
+        if (memory != null) return new ByteArrayInputStream(memory);
+        if (file != null) return new BufferedInputStream(Files.newInputStream(file));
+        if (consumed) throw new IllegalStateException("Upload was already read as a stream");
+        consumed = true;
+        return source();
+    }
+
+    /**
+     * Pipes the body into an OutputStream, without holding it
+     * @param out where the body goes
+     * @return no of bytes piped
+     * @throws IOException in case of error, TooLarge if the body goes past the max
+     */
+    public long pipe(OutputStream out) throws IOException {
+        try (InputStream in = stream()) {
+            return in.transferTo(out);
+        }
+    }
+
+    /**
+     * Reads the body in, up to the memory threshold in memory, the rest into a temp file
+     * @return this
+     * @throws IOException in case of error, TooLarge if the body goes past the max
+     */
+    public Upload spill() throws IOException {
+        if (memory != null || file != null) return this;
+        try (InputStream in = stream()) {
+            final ByteArrayOutputStream head = new ByteArrayOutputStream((int) Math.min(limits.memory(), 64 * 1024));
+            final byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                if (head.size() + n > limits.memory()) {
+                    file = Files.createTempFile(Files.createDirectories(limits.dir()), "cowj-upload-", ".bin");
+                    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                        head.writeTo(out);
+                        out.write(chunk, 0, n);
+                        size = head.size() + n + in.transferTo(out);
+                    } catch (IOException e) {
+                        close();
+                        throw e;
+                    }
+                    logger.debug("Upload spilled {} bytes to {}", size, file);
+                    return this;
+                }
+                head.write(chunk, 0, n);
+            }
+            memory = head.toByteArray();
+            size = memory.length;
+        }
+        return this;
+    }
+
+    /**
+     * Size of the spilled body
+     * @return bytes, -1 before spill()
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Is the spilled body held in memory
+     * @return true if in memory, false if in a file or not spilled yet
+     */
+    public boolean inMemory() {
+        return memory != null;
+    }
+
+    /**
+     * The file the body got spilled into, it gets deleted once the route is done
+     * @return the Path, null if held in memory or not spilled yet
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * The body as bytes, spills first if needed
+     * @return bytes of the body, read from the file if it went there
+     * @throws IOException in case of error
+     */
+    public byte[] bytes() throws IOException {
+        spill();
+        return memory != null ? memory : Files.readAllBytes(file);
+    }
+
+    /**
+     * Reads the whole body of a request as text, for consumers which need all of it, e.g. to hand it off
+     * Unlike request.body() it honours the max of the uploads, and a spilled body gets deleted right after
+     * @param request the spark.Request
+     * @return the body, decoded with the charset of the request, UTF-8 if it has none
+     * @throws IOException in case of error, TooLarge if the body goes past the max
+     */
+    public static String text(Request request) throws IOException {
+        try (Upload upload = new Upload(request)) {
+            final String encoding = request.raw().getCharacterEncoding();
+            return new String(upload.bytes(), encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Deletes the spilled file, if any
+     */
+    @Override
+    public void close() {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Upload failed deleting {} : {}", file, e.toString());
+        }
+        file = null;
+    }
+
+    /**
+     * Is an error due to a body larger than allowed
+     * @param t error raised by a script
+     * @return true if TooLarge is in the cause chain
+     */
+    public static boolean tooLarge(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            if (c instanceof TooLarge) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets up the upload limits
+     * memory : max bytes held in memory on spill, default 1 MB
+     * dir : folder to spill into, default the temp folder
+     * max : max bytes of a body, default 0, no limit
+     * @param config the configuration map
+     * @param model the Model, to interpret the folder path
+     */
+    static void configure(Map<String, Object> config, Model model) {
+        if (config.isEmpty()) {
+            LIMITS.set(DEFAULT);
+            return;
+        }
+        final long memory = ZNumber.integer(config.getOrDefault(MEMORY, DEFAULT.memory()), DEFAULT.memory()).longValue();
+        final Path dir = config.containsKey(DIR) ? Path.of(model.interpretPath(config.get(DIR).toString())) : DEFAULT.dir();
+        final long max = ZNumber.integer(config.getOrDefault(MAX, 0), 0).longValue();
+        LIMITS.set(new Limits(memory, dir, max));
+        logger.info("Uploads : {} bytes in memory, spill into {}, max {}", memory, dir, max > 0 ? max : "none");
+    }
+}
@@ -0,0 +1,545 @@
+package cowj;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import zoomba.lang.core.types.ZNumber;
+import zoomba.lang.core.types.ZTypes;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Warm up phase for Cowj, runs before the server accepts any request
+ * Compiles all route, filter, cron and socket scripts in parallel
+ * Then executes route scripts a number of times, either with synthetic requests or with recorded sample requests
+ * So that the first real requests after a rollout do not pay for compilation and cold JIT
+ */
+public interface Warmup {
+
+    /**
+     * Logger for the Cowj Warmup
+     */
+    Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+    /**
+     * Key for the no of threads to be used for warm up
+     */
+    String THREADS = "threads";
+
+    /**
+     * Key for the no of times every route script gets executed
+     */
+    String ITERATIONS = "iterations";
+
+    /**
+     * Key for the directory containing recorded sample requests
+     */
+    String SAMPLES = "samples";
+
+    /**
+     * Key for the HTTP verbs whose routes are executed with synthetic requests
+     */
+    String VERBS = "verbs";
+
+    /**
+     * Key for the max time in ms the whole warm up can take
+     */
+    String TIMEOUT = "timeout";
+
+    /**
+     * Default no of times every route script gets executed, when there are recorded sample requests
+     * Without samples the default is 0, synthetic requests run only when iterations are asked for
+     */
+    int DEFAULT_ITERATIONS = 10;
+
+    /**
+     * Default max time in ms the whole warm up can take
+     */
+    long DEFAULT_TIMEOUT = 60000L;
+
+    /**
+     * No of threads to be used for warm up
+     * @return no of threads
+     */
+    int threads();
+
+    /**
+     * No of times every route script gets executed
+     * @return no of iterations, 0 means compile only
+     */
+    int iterations();
+
+    /**
+     * HTTP verbs whose routes are executed with synthetic requests
+     * Routes with other verbs are only compiled, unless there are samples for them
+     * @return set of lower case HTTP verbs
+     */
+    Set<String> verbs();
+
+    /**
+     * Directory containing recorded sample requests, one yaml or json file per request
+     * @return absolute path of the directory, empty if none
+     */
+    String samplesDirectory();
+
+    /**
+     * Max time in ms the whole warm up can take, after which it gets abandoned
+     * @return timeout in ms
+     */
+    long timeout();
+
+    /**
+     * Outcome of the warm up
+     * @param compiled no of scripts compiled
+     * @param compileErrors no of scripts failed to compile
+     * @param executions no of script executions
+     * @param executionErrors no of script executions which raised error
+     * @param timeMs time taken in ms
+     */
+    record Report(long compiled, long compileErrors, long executions, long executionErrors, long timeMs) {}
+
+    /**
+     * A recorded sample request
+     * @param verb HTTP verb in lower case
+     * @param route the route key as in the model, e.g. /hello/:name
+     * @param uri the actual uri, e.g. /hello/world
+     * @param headers request headers
+     * @param query query parameters
+     * @param body request body
+     */
+    record Sample(String verb, String route, String uri, Map<String, String> headers,
+                  Map<String, String> query, String body) {
+
+        /**
+         * Creates a sample from a map, as loaded from a sample file
+         * verb, route, uri, headers, query, body
+         * @param map the sample map
+         * @return a Sample
+         */
+        static Sample fromMap(Map<String, Object> map) {
+            final String route = map.getOrDefault("route", "/").toString();
+            return new Sample(map.getOrDefault("verb", "get").toString().toLowerCase(Locale.ROOT),
+                    route, map.getOrDefault("uri", route).toString(),
+                    stringMap(map.get("headers")), stringMap(map.get("query")),
+                    map.getOrDefault("body", "").toString());
+        }
+
+        /**
+         * Creates a synthetic sample for a route, path parameters get their own names as values
+         * @param verb HTTP verb in lower case
+         * @param route the route key as in the model
+         * @return a Sample
+         */
+        static Sample synthetic(String verb, String route) {
+            final String uri = route.replaceAll(":([^/]+)", "$1").replace("*", "");
+            return new Sample(verb, route, uri, Collections.emptyMap(), Collections.emptyMap(), "");
+        }
+
+        private static Map<String, String> stringMap(Object o) {
+            if (!(o instanceof Map<?, ?> m)) return Collections.emptyMap();
+            final Map<String, String> r = new LinkedHashMap<>();
+            m.forEach((k, v) -> r.put(String.valueOf(k), String.valueOf(v)));
+            return r;
+        }
+
+        /**
+         * Path parameters, extracted by matching the uri against the route
+         * @return map of :name to value
+         */
+        Map<String, String> params() {
+            final String[] routeParts = route.split("/");
+            final String[] uriParts = uri.split("/");
+            final Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < Math.min(routeParts.length, uriParts.length); i++) {
+                if (routeParts[i].startsWith(":")) {
+                    params.put(routeParts[i].toLowerCase(Locale.ROOT), uriParts[i]);
+                }
+            }
+            return params;
+        }
+    }
+
+    /**
+     * A spark.Request built from a Sample, without any underlying servlet request
+     * Only the commonly used accessors are supported, anything else fails, which gets counted as execution error
+     */
+    final class SyntheticRequest extends Request {
+
+        private final Sample sample;
+        private final Map<String, String> params;
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        SyntheticRequest(Sample sample) {
+            this.sample = sample;
+            this.params = sample.params();
+        }
+
+        @Override
+        public String requestMethod() {
+            return sample.verb().toUpperCase(Locale.ROOT);
+        }
+
+        @Override
+        public String uri() {
+            return sample.uri();
+        }
+
+        @Override
+        public String pathInfo() {
+            return sample.uri();
+        }
+
+        @Override
+        public String url() {
+            return "http://localhost" + sample.uri();
+        }
+
+        @Override
+        public String contentType() {
+            return sample.headers().get("Content-Type");
+        }
+
+        @Override
+        public String body() {
+            return sample.body();
+        }
+
+        @Override
+        public byte[] bodyAsBytes() {
+            return sample.body().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int contentLength() {
+            return bodyAsBytes().length;
+        }
+
+        @Override
+        public String headers(String header) {
+            return sample.headers().get(header);
+        }
+
+        @Override
+        public Set<String> headers() {
+            return sample.headers().keySet();
+        }
+
+        @Override
+        public Map<String, String> params() {
+            return Collections.unmodifiableMap(params);
+        }
+
+        @Override
+        public String params(String param) {
+            if (param == null) return null;
+            final String key = param.startsWith(":") ? param : ":" + param;
+            return params.get(key.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public String queryParams(String queryParam) {
+            return sample.query().get(queryParam);
+        }
+
+        @Override
+        public Set<String> queryParams() {
+            return sample.query().keySet();
+        }
+
+        @Override
+        public String queryParamOrDefault(String queryParam, String defaultValue) {
+            return sample.query().getOrDefault(queryParam, defaultValue);
+        }
+
+        @Override
+        public void attribute(String attribute, Object value) {
+            attributes.put(attribute, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T attribute(String attribute) {
+            return (T) attributes.get(attribute);
+        }
+
+        @Override
+        public Set<String> attributes() {
+            return attributes.keySet();
+        }
+
+        @Override
+        public String ip() {
+            return "127.0.0.1";
+        }
+
+        @Override
+        public String host() {
+            return "localhost";
+        }
+
+        @Override
+        public String userAgent() {
+            return "cowj-warmup";
+        }
+    }
+
+    /**
+     * A spark.Response which discards everything, without any underlying servlet response
+     */
+    final class SyntheticResponse extends Response {
+
+        private volatile int status = 200;
+        private volatile String type = "";
+        private volatile String body = "";
+
+        @Override
+        public void status(int statusCode) {
+            status = statusCode;
+        }
+
+        @Override
+        public int status() {
+            return status;
+        }
+
+        @Override
+        public void type(String contentType) {
+            type = contentType;
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+
+        @Override
+        public void body(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public String body() {
+            return body;
+        }
+
+        @Override
+        public void header(String header, String value) {}
+
+        @Override
+        public void redirect(String location) {}
+
+        @Override
+        public void redirect(String location, int httpStatusCode) {}
+    }
+
+    /**
+     * Loads the recorded sample requests
+     * @return list of samples
+     */
+    default List<Sample> samples() {
+        final String dir = samplesDirectory();
+        if (dir.isEmpty()) return Collections.emptyList();
+        final File[] files = new File(dir).listFiles();
+        if (files == null) {
+            logger.warn("Warm up samples directory does not exist : {}", dir);
+            return Collections.emptyList();
+        }
+        final List<Sample> samples = new ArrayList<>();
+        Arrays.stream(files).sorted().forEach(f -> {
+            final String lc = f.getName().toLowerCase(Locale.ROOT);
+            final EitherMonad<Object> loaded;
+            if (lc.endsWith(".yaml") || lc.endsWith(".yml")) {
+                loaded = EitherMonad.call(() -> ZTypes.yaml(f.getAbsolutePath(), true));
+            } else if (lc.endsWith(".json")) {
+                loaded = EitherMonad.call(() -> ZTypes.json(f.getAbsolutePath(), true));
+            } else {
+                return;
+            }
+            if (loaded.isSuccessful() && loaded.value() instanceof Map<?, ?> m) {
+                samples.add(Sample.fromMap((Map) m));
+            } else {
+                logger.warn("Warm up sample could not be loaded : {}", f);
+            }
+        });
+        return samples;
+    }
+
+    /**
+     * Runs the warm up
+     * @param model the Model whose scripts are to be warmed up
+     * @param creator the Scriptable.Creator used to create the scripts
+     * @return a Report of the warm up
+     */
+    default Report run(Model model, Scriptable.Creator creator) {
+        final long start = System.currentTimeMillis();
+        final long deadline = start + timeout();
+        // key - verb::route, for anything that is not a route, a unique prefix takes place of the verb
+        final Map<String, String> scripts = model.scripts();
+
+        // daemon, an abandoned warm up must not keep the process alive
+        final ExecutorService executor = Executors.newFixedThreadPool(threads(),
+                Thread.ofPlatform().name("cowj-warmup-", 0).daemon(true).factory());
+        final AtomicLong compileErrors = new AtomicLong();
+        final AtomicLong executions = new AtomicLong();
+        final AtomicLong executionErrors = new AtomicLong();
+        final Map<String, Scriptable> compiled = new ConcurrentHashMap<>();
+        try {
+            // compile everything in parallel
+            final List<Callable<Object>> compileTasks = new ArrayList<>();
+            scripts.forEach((key, script) -> compileTasks.add(() -> {
+                try {
+                    compiled.put(key, creator.create(key.substring(key.indexOf("::") + 2), script));
+                } catch (Throwable t) {
+                    compileErrors.incrementAndGet();
+                    logger.warn("Warm up could not compile {} -> {} : {}", key, script, t.toString());
+                }
+                return null;
+            }));
+            executor.invokeAll(compileTasks, Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            logger.info("Warm up compiled {} scripts, {} errors", compiled.size(), compileErrors.get());
+
+            // then execute route scripts
+            final List<Sample> samples = new ArrayList<>(samples());
+            if (samples.isEmpty() && iterations() > 0) {
+                model.routes().forEach((verb, routes) -> {
+                    if (!verbs().contains(verb)) return;
+                    routes.keySet().forEach(path -> samples.add(Sample.synthetic(verb, path)));
+                });
+            }
+            final List<Callable<Object>> execTasks = new ArrayList<>();
+            for (Sample sample : samples) {
+                final String key = sample.verb() + "::" + sample.route();
+                final Scriptable scriptable = compiled.get(key);
+                if (scriptable == null) {
+                    logger.warn("Warm up sample does not match any route : {} {}", sample.verb(), sample.route());
+                    continue;
+                }
+                // under the same time budget as real requests, a runaway script does not eat up the warm up
+                final Route route = Budget.route(sample.route(), scripts.get(key), scriptable);
+                for (int i = 0; i < iterations(); i++) {
+                    execTasks.add(() -> {
+                        executions.incrementAndGet();
+                        try {
+                            route.handle(new SyntheticRequest(sample), new SyntheticResponse());
+                        } catch (Throwable t) {
+                            // expected for synthetic requests, all that matters is the code paths got exercised
+                            executionErrors.incrementAndGet();
+                            logger.debug("Warm up execution error {} {} : {}", sample.verb(), sample.route(), t.toString());
+                        }
+                        return null;
+                    });
+                }
+            }
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                executor.invokeAll(execTasks, remaining, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        if (System.currentTimeMillis() > deadline) {
+            logger.warn("Warm up did not finish within {} ms, proceeding anyway", timeout());
+        }
+        final Report report = new Report(compiled.size(), compileErrors.get(), executions.get(),
+                executionErrors.get(), System.currentTimeMillis() - start);
+        logger.info("Warm up finished : {}", report);
+        return report;
+    }
+
+    /**
+     * A Warmup which does nothing, scripts get compiled lazily as they are hit
+     */
+    Warmup NOP = new Warmup() {
+        @Override
+        public int threads() {
+            return 1;
+        }
+
+        @Override
+        public int iterations() {
+            return 0;
+        }
+
+        @Override
+        public Set<String> verbs() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public String samplesDirectory() {
+            return "";
+        }
+
+        @Override
+        public long timeout() {
+            return 0;
+        }
+
+        @Override
+        public Report run(Model model, Scriptable.Creator creator) {
+            return new Report(0, 0, 0, 0, 0);
+        }
+    };
+
+    /**
+     * Creates a Warmup from configuration
+     * threads : no of threads, default no of cores
+     * iterations : no of executions per route script, default 10 with samples, else 0, compile only
+     * verbs : verbs whose routes are executed with synthetic requests, default [ get ]
+     * samples : directory of recorded sample requests, used instead of synthetic ones
+     * timeout : max time in ms for the whole warm up, default 60000
+     * @param config the configuration map, empty means no warm up
+     * @param model the Model, used to interpret paths
+     * @return a Warmup
+     */
+    static Warmup fromConfig(Map<String, Object> config, Model model) {
+        if (config.isEmpty()) return NOP;
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final int threads = Math.max(1, ZNumber.integer(config.getOrDefault(THREADS, cores), cores).intValue());
+        final int defaultIterations = config.containsKey(SAMPLES) ? DEFAULT_ITERATIONS : 0;
+        final int iterations = Math.max(0, ZNumber.integer(config.getOrDefault(ITERATIONS, defaultIterations), defaultIterations).intValue());
+        final long timeout = ZNumber.integer(config.getOrDefault(TIMEOUT, DEFAULT_TIMEOUT), DEFAULT_TIMEOUT).longValue();
+        final Object verbsConfig = config.getOrDefault(VERBS, List.of("get"));
+        final Set<String> verbs = new HashSet<>();
+        if (verbsConfig instanceof Collection<?> c) {
+            c.forEach(v -> verbs.add(v.toString().toLowerCase(Locale.ROOT)));
+        } else {
+            verbs.add(verbsConfig.toString().toLowerCase(Locale.ROOT));
+        }
+        final String samples = config.containsKey(SAMPLES) ? model.interpretPath(config.get(SAMPLES).toString()) : "";
+        return new Warmup() {
+            @Override
+            public int threads() {
+                return threads;
+            }
+
+            @Override
+            public int iterations() {
+                return iterations;
+            }
+
+            @Override
+            public Set<String> verbs() {
+                return verbs;
+            }
+
+            @Override
+            public String samplesDirectory() {
+                return samples;
+            }
+
+            @Override
+            public long timeout() {
+                return timeout;
+            }
+        };
+    }
+}
@@ -12,11 +12,16 @@ import com.azure.storage.blob.models.BlobListDetails;
 import com.azure.storage.blob.models.ListBlobsOptions;
 import cowj.DataSource;
 import cowj.EitherMonad;
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
+import cowj.Upload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import zoomba.lang.core.types.ZNumber;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Duration;
 import java.util.Comparator;
 import java.util.Map;
@@ -48,11 +53,15 @@ public interface ABSStorageWrapper extends StorageWrapper.KeyValueStorage<Boolea
      * @return true if successful, false if any error happened
      */
     default boolean upload( String containerName, String fileName, BinaryData binaryData){
-        return safeBoolean( () -> {
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final boolean uploaded = safeBoolean( () -> {
             BlobContainerClient blobContainerClient = client().getBlobContainerClient(containerName);
             BlobClient blobClient = blobContainerClient.getBlobClient(fileName);
             blobClient.upload(binaryData);
         });
+        final Long length = binaryData.getLength();
+        event.record("write", this, containerName, fileName, uploaded && length != null ? length : -1);
+        return uploaded;
     }
 
     @Override
@@ -82,6 +91,45 @@ public interface ABSStorageWrapper extends StorageWrapper.KeyValueStorage<Boolea
         return upload( containerName, fileName, BinaryData.fromBytes(data));
     }
 
+    /**
+     * Streams into the blob, uploaded block by block as the stream gets read, the blob gets committed once it is fully read
+     * An upload over the limit gets rethrown, so that the route responds with 413
+     * @see Upload
+     */
+    @Override
+    default Boolean dumpStream(String containerName, String fileName, InputStream data) {
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final long[] size = { 0 };
+        final InputStream counting = new FilterInputStream(data) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if ( b >= 0 ) size[0]++;
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int n = super.read(b, off, len);
+                if ( n > 0 ) size[0] += n;
+                return n;
+            }
+        };
+        final EitherMonad<EitherMonad.Nothing> em = EitherMonad.run( () -> {
+            try ( counting ) {
+                BlobContainerClient blobContainerClient = client().getBlobContainerClient(containerName);
+                BlobClient blobClient = blobContainerClient.getBlobClient(fileName);
+                blobClient.upload(counting);
+            }
+        });
+        event.record("write", this, containerName, fileName, em.isSuccessful() ? size[0] : -1);
+        if ( em.inError() ){
+            if ( Upload.tooLarge(em.error()) ) throw new RuntimeException(em.error());
+            logger.warn("Will return false - Error happened " + em.error());
+        }
+        return em.isSuccessful();
+    }
+
     @Override
     default Stream<Map.Entry<String, BinaryData>> stream(String containerName, String directoryPrefix) {
         BlobContainerClient blobContainerClient = client().getBlobContainerClient(containerName);
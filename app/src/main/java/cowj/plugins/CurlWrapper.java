@@ -4,6 +4,8 @@ import cowj.AsyncHandler;
 import cowj.DataSource;
 import cowj.EitherMonad;
 import cowj.Scriptable;
+import cowj.Tracing;
+import cowj.Upload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
@@ -15,10 +17,11 @@ import zoomba.lang.core.types.ZNumber;
 
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 
@@ -131,8 +134,6 @@ public interface CurlWrapper {
      */
     default String proxy(boolean async, String verb, String destPath, Request request, Response response) {
         final long startTime = System.nanoTime();
-        Objects.requireNonNull(request.body()); // this, according to code, can never be bull
-        String body = request.body();
         Object proxyPayload = request.attribute(PROXY_ATTRIBUTE);
         // now here...
         final Map<String, Object> resp;
@@ -144,7 +145,14 @@ public interface CurlWrapper {
         Map<String, Map<String, String>> originalPayload = payload(request);
         final Map<String, String> queryMap = (Map) resp.getOrDefault(QUERY, originalPayload.getOrDefault(QUERY, Collections.emptyMap()));
         final Map<String, String> headerMap = (Map) resp.getOrDefault(HEADER, originalPayload.getOrDefault(HEADER, Collections.emptyMap()));
-        final String bodyString = resp.getOrDefault(BODY, body).toString();
+        final String bodyString;
+        try {
+            // the body is read only if the payload does not replace it, through Upload, honouring the max
+            bodyString = resp.containsKey(BODY) ? resp.get(BODY).toString() : Upload.text(request);
+        } catch (IOException e) {
+            if (Upload.tooLarge(e)) Spark.halt(Upload.TOO_LARGE_STATUS, "Payload Too Large");
+            throw new UncheckedIOException(e);
+        }
         if (async) {
             final String uri = request.uri();
             final String uid = System.nanoTime() + "." + System.nanoTime() + "." + System.nanoTime() + "p" + uri ;
@@ -200,20 +208,30 @@ public interface CurlWrapper {
         logger.info("{} : connection timeout [{}]", name, timeout );
 
         final CurlWrapper curlWrapper = (verb, path, headers, params, body) -> {
+            final Tracing.Span span = Tracing.start("curl " + name).attribute("http.method", verb).attribute("http.path", path);
             try {
                 ZWeb zWeb = new ZWeb(baseUrl); // every call gets its own con
                 zWeb.conTO = timeout; // connection timeout
                 zWeb.readTO = timeout; // read timeout
                 zWeb.headers.putAll(headers);
+                // the remote side continues our trace, whatever came in from the caller gets replaced
+                final Map<String, String> traceHeaders = new HashMap<>();
+                span.inject(traceHeaders);
+                zWeb.headers.putAll(traceHeaders);
                 final ZWeb.ZWebCom com = zWeb.send(verb, path, params, body);
+                span.attribute("http.status", com.status);
                 if ( com.status >= 400 ){
                     logger.warn("{} : Non OK Response : [{}]  body : [{}]", name, com.status,
                             com.emptyBody() ? "(body returned was empty)" : com.body());
+                    if ( com.status >= 500 ) span.error("status " + com.status);
                 }
                 return EitherMonad.value(com);
             } catch (Throwable t) {
                 logger.error("{} : Error while Sending Request : {}", name,  t.toString() );
+                span.error(t);
                 return EitherMonad.error(t);
+            } finally {
+                span.close();
             }
         };
         return DataSource.dataSource(name, curlWrapper);
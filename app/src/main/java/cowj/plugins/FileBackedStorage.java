@@ -2,15 +2,20 @@ package cowj.plugins;
 
 import cowj.DataSource;
 import cowj.EitherMonad;
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
+import cowj.Upload;
 import zoomba.lang.core.operations.Function;
 
 import java.io.File;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -106,6 +111,7 @@ public class FileBackedStorage implements StorageWrapper.SimpleKeyValueStorage {
     public Boolean dumpb(String bucketName, String fileName, byte[] data) {
         File f = new File(absMountPoint + "/" + bucketName );
         if( !f.exists() ) return false;
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
         final String path = absMountPoint + "/" + bucketName + "/" + fileName ;
         EitherMonad<EitherMonad.Nothing> em = EitherMonad.run( () -> {
             if (fileName.contains("/")) {
@@ -115,6 +121,49 @@ public class FileBackedStorage implements StorageWrapper.SimpleKeyValueStorage {
             }
             Files.write(Paths.get(path), data);
         });
+        event.record("write", this, bucketName, fileName, em.isSuccessful() ? data.length : -1);
+        return em.isSuccessful() ;
+    }
+
+    /**
+     * Writes a stream into a temp file next to the target, moved into place only once the stream is fully read
+     * So a failed or rejected upload never leaves a truncated file behind, nor replaces the old one
+     * An upload over the limit gets rethrown, so that the route responds with 413
+     * @see Upload
+     */
+    @Override
+    public Boolean dumpStream(String bucketName, String fileName, InputStream data) {
+        File f = new File(absMountPoint + "/" + bucketName );
+        if( !f.exists() ) return false;
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final String path = absMountPoint + "/" + bucketName + "/" + fileName ;
+        final Path target = Paths.get(path);
+        final long[] size = { -1 };
+        EitherMonad<EitherMonad.Nothing> em = EitherMonad.run( () -> {
+            try ( data ) {
+                if (fileName.contains("/")) {
+                    int li = path.lastIndexOf('/');
+                    String folderPath = path.substring(0, li);
+                    Files.createDirectories( Paths.get(folderPath));
+                }
+                final Path temp = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".part");
+                try {
+                    final long copied = Files.copy(data, temp, StandardCopyOption.REPLACE_EXISTING);
+                    try {
+                        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException e) {
+                        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    size[0] = copied;
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+        });
+        event.record("write", this, bucketName, fileName, size[0]);
+        if ( em.inError() && Upload.tooLarge(em.error()) ){
+            throw new RuntimeException(em.error());
+        }
         return em.isSuccessful() ;
     }
 
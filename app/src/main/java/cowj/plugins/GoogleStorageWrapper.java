@@ -4,10 +4,14 @@ import com.google.api.gax.paging.Page;
 import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.*;
 import cowj.DataSource;
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.stream.Stream;
@@ -83,12 +87,15 @@ public interface GoogleStorageWrapper extends StorageWrapper<Bucket, Blob, Blob>
      */
     @Override
     default Blob dumpb(String bucketName, String fileName, byte[] data) {
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
         Storage storage = storage();
         BlobId blobId = BlobId.of(bucketName, fileName);
         Blob blob = storage.get(blobId);
         if (blob == null) {
             BlobInfo blobInfo = BlobInfo.newBuilder(blobId).setContentType("text/plain").build();
-            return storage.create(blobInfo, data);
+            blob = storage.create(blobInfo, data);
+            event.record("write", this, bucketName, fileName, data.length);
+            return blob;
         }
         try {
             WriteChannel channel = blob.writer();
@@ -97,9 +104,24 @@ public interface GoogleStorageWrapper extends StorageWrapper<Bucket, Blob, Blob>
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
+        event.record("write", this, bucketName, fileName, data.length);
         return blob;
     }
 
+    @Override
+    default Blob dumpStream(String bucketName, String fileName, InputStream data) {
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, fileName)).setContentType("text/plain").build();
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        // resumable upload, written as the stream gets read
+        try ( data ) {
+            final Blob blob = storage().createFrom(blobInfo, data);
+            event.record("write", this, bucketName, fileName, blob.getSize() == null ? -1 : blob.getSize());
+            return blob;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Dump String to Google Cloud Storage
      *
@@ -2,6 +2,7 @@ package cowj.plugins;
 
 import cowj.DataSource;
 import cowj.EitherMonad;
+import cowj.FlightRecorder;
 import cowj.Model;
 import cowj.Scriptable;
 import net.jodah.expiringmap.ExpirationListener;
@@ -164,6 +165,7 @@ public interface JDBCWrapper {
      * @return an EitherMonad of type List of Map - rather list of json objects
      */
     static EitherMonad<List<Map<String,Object>>> selectWithConnection( Connection con, String query, Object args) {
+        final FlightRecorder.JdbcQuery event = FlightRecorder.JdbcQuery.start();
         try (Statement stmt = con.createStatement() ) {
             List<Map<String,Object>> result = new ArrayList<>();
             String q =  format(query,args);
@@ -182,8 +184,10 @@ public interface JDBCWrapper {
                 }
                 result.add(m);
             }
+            event.record("select", query, result.size(), true);
             return EitherMonad.value(result);
         } catch (Throwable e) {
+            event.record("select", query, -1, false);
             logger.error("Error in query : " + e );
             return EitherMonad.error(e);
         }
@@ -198,12 +202,15 @@ public interface JDBCWrapper {
      * @return an EitherMonad of type Integer returned from the connection
      */
     static EitherMonad<Integer> updateWithConnection( Connection con, String query, Object args) {
+        final FlightRecorder.JdbcQuery event = FlightRecorder.JdbcQuery.start();
         try (Statement stmt = con.createStatement() ) {
             String q = format(query,args);
             logger.info("[CUID] query : [{}]", q);
             Integer result = stmt.executeUpdate(q);
+            event.record("update", query, result, true);
             return EitherMonad.value(result);
         } catch (Throwable e) {
+            event.record("update", query, -1, false);
             logger.error("Error in query : " + e );
             return EitherMonad.error(e);
         }
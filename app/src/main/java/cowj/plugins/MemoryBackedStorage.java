@@ -1,6 +1,7 @@
 package cowj.plugins;
 
 import cowj.DataSource;
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
 import zoomba.lang.core.types.ZTypes;
 
@@ -40,9 +41,12 @@ public interface MemoryBackedStorage extends StorageWrapper.SimpleKeyValueStorag
 
    @Override
     default Boolean dumps(String bucketName, String fileName, String data) {
-        return safeBoolean( () ->{
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final boolean written = safeBoolean( () ->{
             dataMemory().getOrDefault( bucketName, Collections.emptyMap()).put(fileName,data);
         });
+        event.record("write", this, bucketName, fileName, written ? data.length() : -1);
+        return written;
     }
 
     @Override
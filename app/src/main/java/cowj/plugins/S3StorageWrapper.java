@@ -1,5 +1,6 @@
 package cowj.plugins;
 
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
 import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.sync.RequestBody;
@@ -15,6 +16,11 @@ import software.amazon.awssdk.services.s3.paginators.ListObjectVersionsIterable;
 import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 import zoomba.lang.core.types.ZNumber;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.stream.Stream;
 import java.util.Map.Entry;
 
@@ -39,8 +45,64 @@ public interface S3StorageWrapper extends
 
     @Override
     default PutObjectResponse dumpb(String bucketName, String fileName, byte[] data) {
-        return s3client().putObject(PutObjectRequest.builder().bucket(bucketName).key(fileName).build(),
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final PutObjectResponse response = s3client().putObject(PutObjectRequest.builder().bucket(bucketName).key(fileName).build(),
                 RequestBody.fromBytes(data));
+        event.record("write", this, bucketName, fileName, data.length);
+        return response;
+    }
+
+    /**
+     * Size of a part of a multipart upload, S3 wants at least 5 MB for all parts but the last
+     */
+    int PART_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Streams into S3 holding at most one part in memory
+     * A stream which fits in a part goes in with a single put, a larger one as a multipart upload,
+     * which gets aborted in case of error, so that no partial object is left behind
+     * @see cowj.Upload
+     */
+    @Override
+    default PutObjectResponse dumpStream(String bucketName, String fileName, InputStream data) {
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        try ( data ) {
+            byte[] part = data.readNBytes(PART_SIZE);
+            if ( part.length < PART_SIZE ){
+                final PutObjectResponse response = s3client().putObject(PutObjectRequest.builder().bucket(bucketName).key(fileName).build(),
+                        RequestBody.fromBytes(part));
+                event.record("write", this, bucketName, fileName, part.length);
+                return response;
+            }
+            final String uploadId = s3client().createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(bucketName).key(fileName).build()).uploadId();
+            final List<CompletedPart> parts = new ArrayList<>();
+            long size = 0;
+            try {
+                while ( part.length > 0 ){
+                    final int partNumber = parts.size() + 1;
+                    final UploadPartResponse uploaded = s3client().uploadPart(UploadPartRequest.builder()
+                            .bucket(bucketName).key(fileName).uploadId(uploadId).partNumber(partNumber).build(),
+                            RequestBody.fromBytes(part));
+                    parts.add(CompletedPart.builder().partNumber(partNumber).eTag(uploaded.eTag()).build());
+                    size += part.length;
+                    part = data.readNBytes(PART_SIZE);
+                }
+                final CompleteMultipartUploadResponse completed = s3client().completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(fileName).uploadId(uploadId)
+                        .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()).build());
+                event.record("write", this, bucketName, fileName, size);
+                return PutObjectResponse.builder().eTag(completed.eTag()).versionId(completed.versionId()).build();
+            } catch (Throwable t) {
+                if ( !safeBoolean( () -> s3client().abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                        .bucket(bucketName).key(fileName).uploadId(uploadId).build()) ) ){
+                    logger.warn("Multipart upload {} of {}/{} could not be aborted", uploadId, bucketName, fileName);
+                }
+                throw t;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
@@ -53,8 +115,11 @@ public interface S3StorageWrapper extends
      */
     @Override
     default PutObjectResponse dumps(String bucketName, String fileName, String data) {
-        return s3client().putObject(PutObjectRequest.builder().bucket(bucketName).key(fileName).build(),
-                RequestBody.fromString(data));
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
+        final RequestBody body = RequestBody.fromString(data);
+        final PutObjectResponse response = s3client().putObject(PutObjectRequest.builder().bucket(bucketName).key(fileName).build(), body);
+        event.record("write", this, bucketName, fileName, body.optionalContentLength().orElse(-1L));
+        return response;
     }
 
     @Override
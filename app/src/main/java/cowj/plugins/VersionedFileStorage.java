@@ -1,16 +1,23 @@
 package cowj.plugins;
 
+import cowj.CheckedFunctional;
 import cowj.DataSource;
 import cowj.EitherMonad;
+import cowj.FlightRecorder;
 import cowj.StorageWrapper;
+import cowj.Upload;
 import zoomba.lang.core.types.ZDate;
 import zoomba.lang.core.types.ZNumber;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
@@ -60,15 +67,46 @@ public class VersionedFileStorage extends FileBackedStorage
         return StorageWrapper.entry(fileName, readString( p ) );
     }
 
+    /**
+     * Versioning works on a stream too, it gets written into a temp file next to the versions,
+     * which becomes the latest version only once the stream is fully read
+     * An upload over the limit gets rethrown, so that the route responds with 413
+     * @see Upload
+     */
+    @Override
+    public Boolean dumpStream(String bucketName, String fileName, InputStream data) {
+        try ( data ) {
+            return version(bucketName, fileName, target -> Files.copy(data, target, StandardCopyOption.REPLACE_EXISTING));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     @Override
     public Boolean dumpb(String bucketName, String fileName, byte[] data) {
+        return version(bucketName, fileName, target -> {
+            Files.write(target, data);
+            return (long) data.length;
+        });
+    }
+
+    /**
+     * Writes a new version of a file, and points latest to it
+     * @param bucketName the bucket
+     * @param fileName the file
+     * @param writer writes the content into the given Path, returns the no of bytes written
+     * @return true if the version got written, false otherwise
+     */
+    private Boolean version(String bucketName, String fileName, CheckedFunctional.Function<Path, Long, IOException> writer) {
         File f = new File(absMountPoint + "/" + bucketName );
         if( !f.exists() ) return false;
+        final FlightRecorder.StorageIO event = FlightRecorder.StorageIO.start();
         final String key = absMountPoint + "/" + bucketName + "/" + fileName + "/" ;
         final String path = key  + LATEST ;
         final String verDir = key + VERSION_DIR ;
         final File keyFile = new File(key);
         final Path latestPath = Paths.get( path );
+        final long[] size = { -1 };
 
         EitherMonad<?> em = EitherMonad.run( () -> {
             if ( !keyFile.exists() ) {
@@ -79,16 +117,28 @@ public class VersionedFileStorage extends FileBackedStorage
                 }
                 Files.createDirectories(Paths.get(verDir));
             }
-            synchronized (this) {
-                // ensure one can only get handle to this, and thus latest means latest
-                final String versionId = ZNumber.radix(new BigInteger(new ZDate().toNano().toString()), 62);
-                final String actualFile = verDir + "/" + versionId;
-                Path target = Paths.get(actualFile);
-                Files.write(target, data);
-                Files.deleteIfExists( latestPath);
-                Files.createSymbolicLink(latestPath, target);
+            // written outside the lock, not in the version folder, so it is not a version till it is complete
+            final Path temp = Files.createTempFile(keyFile.toPath(), ".", ".part");
+            try {
+                final long written = writer.applyThrows(temp);
+                synchronized (this) {
+                    // ensure one can only get handle to this, and thus latest means latest
+                    final String versionId = ZNumber.radix(new BigInteger(new ZDate().toNano().toString()), 62);
+                    final String actualFile = verDir + "/" + versionId;
+                    Path target = Paths.get(actualFile);
+                    Files.move(temp, target);
+                    Files.deleteIfExists( latestPath);
+                    Files.createSymbolicLink(latestPath, target);
+                }
+                size[0] = written;
+            } finally {
+                Files.deleteIfExists(temp);
             }
         });
+        event.record("write", this, bucketName, fileName, size[0]);
+        if ( em.inError() && Upload.tooLarge(em.error()) ){
+            throw new RuntimeException(em.error());
+        }
         return em.isSuccessful() ;
     }
 
@@ -0,0 +1,62 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.script.SimpleBindings;
+import java.util.Map;
+
+public class AccountingTest {
+
+    @Before
+    public void before() {
+        Metrics.configure(Map.of("enabled", true));
+        Accounting.configure(Map.of("enabled", true, "accounting", true));
+    }
+
+    @After
+    public void after() {
+        Accounting.configure(Map.of());
+        Metrics.configure(Map.of());
+    }
+
+    @Test
+    public void disabledTest() {
+        Accounting.configure(Map.of());
+        Assert.assertSame(Accounting.Probe.NONE, Accounting.probe("/x", "zmb"));
+        Accounting.configure(Map.of("accounting", true));
+        Metrics.configure(Map.of());
+        Assert.assertSame(Accounting.Probe.NONE, Accounting.probe("/x", "zmb"));
+    }
+
+    @Test
+    public void probeTest() {
+        Assert.assertNotNull(Accounting.THREADS);
+        Accounting.Probe probe = Accounting.probe("/x", "zmb");
+        Assert.assertTrue(probe.active());
+        final long allocated = Accounting.allocated();
+        final long cpu = Accounting.cpu();
+        byte[] garbage = new byte[1 << 20];
+        Assert.assertEquals(1 << 20, garbage.length);
+        probe.end(allocated, cpu);
+        final String text = Metrics.scrape();
+        final String prefix = "cowj_script_allocated_bytes_total{route=\"/x\",engine=\"zmb\"} ";
+        final int inx = text.indexOf(prefix);
+        Assert.assertTrue(inx >= 0);
+        final long bytes = Long.parseLong(text.substring(inx + prefix.length(), text.indexOf('\n', inx)));
+        Assert.assertTrue(bytes >= 1 << 20);
+        Assert.assertTrue(text.contains("cowj_script_cpu_seconds_count{route=\"/x\",engine=\"zmb\"} 1"));
+        // not measurable
+        probe.end(-1, cpu);
+        Assert.assertTrue(Metrics.scrape().contains("cowj_script_unmeasured_total{route=\"/x\",engine=\"zmb\"} 1"));
+    }
+
+    @Test
+    public void scriptTest() throws Exception {
+        Scriptable sc = Scriptable.UNIVERSAL.create("/acc", cowj.plugins.SampleJVMScriptable.class.getName() + ".class");
+        sc.exec(new SimpleBindings());
+        Assert.assertTrue(Metrics.scrape().contains("cowj_script_cpu_seconds_count{route=\"/acc\",engine=\"class\"} 1"));
+    }
+}
@@ -0,0 +1,126 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BudgetTest {
+
+    @After
+    public void after() {
+        Budget.configure(Budget.NONE);
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    Request request() {
+        Request request = mock(Request.class);
+        when(request.uri()).thenReturn("/spin");
+        when(request.requestMethod()).thenReturn("GET");
+        return request;
+    }
+
+    @Test
+    public void configTest() {
+        Assert.assertSame(Budget.NONE, Budget.fromConfig(Map.of()));
+        Budget b = Budget.fromConfig(Map.of("timeout", 100, "statements", 42,
+                "routes", Map.of("/slow", Map.of("timeout", 1000))));
+        Assert.assertEquals(100, b.timeout("/fast"));
+        Assert.assertEquals(1000, b.timeout("/slow"));
+        Assert.assertEquals(42, b.statements());
+        Budget.configure(b);
+        Assert.assertNotNull(Budget.GRAAL_LIMITS.get());
+        Budget.configure(Budget.NONE);
+        Assert.assertNull(Budget.GRAAL_LIMITS.get());
+    }
+
+    @Test
+    public void noBudgetTest() throws Exception {
+        Route r = Budget.route("/x", bindings -> "ok");
+        Assert.assertEquals("ok", r.handle(request(), mock(Response.class)));
+        try (Budget.Cancellation c = Budget.onCancel(() -> Assert.fail("must not be called"))) {
+            Assert.assertNotNull(c);
+        }
+    }
+
+    @Test
+    public void graalTimeoutTest() {
+        Budget.configure(Budget.fromConfig(Map.of("timeout", 300)));
+        Scriptable sc = Scriptable.GRAAL.create(Scriptable.INLINE, "while(true){} //.js");
+        Route r = Budget.route("/spin/js", sc);
+        HaltException he = assertThrows(HaltException.class, () -> r.handle(request(), mock(Response.class)));
+        Assert.assertEquals(Budget.TIMEOUT_STATUS, he.statusCode());
+        Assert.assertTrue(Budget.stats().get("timeouts").get("/spin/js") > 0);
+    }
+
+    @Test
+    public void ignoredInterruptTest() {
+        Budget.configure(Budget.fromConfig(Map.of("timeout", 100)));
+        Route r = Budget.route("/spin/busy", bindings -> {
+            final long end = System.currentTimeMillis() + 300;
+            while (System.currentTimeMillis() < end) {
+                Thread.onSpinWait();
+            }
+            return "done";
+        });
+        HaltException he = assertThrows(HaltException.class, () -> r.handle(request(), mock(Response.class)));
+        Assert.assertEquals(Budget.TIMEOUT_STATUS, he.statusCode());
+    }
+
+    @Test
+    public void workerTimeoutTest() {
+        Budget.configure(Budget.fromConfig(Map.of("timeout", 100)));
+        Route r = Budget.route("/spin/worker", "spin.zm", bindings -> {
+            final long end = System.currentTimeMillis() + 5000;
+            while (System.currentTimeMillis() < end) {
+                Thread.onSpinWait();
+            }
+            return "done";
+        });
+        final long start = System.currentTimeMillis();
+        HaltException he = assertThrows(HaltException.class, () -> r.handle(request(), mock(Response.class)));
+        Assert.assertEquals(Budget.TIMEOUT_STATUS, he.statusCode());
+        // the caller does not wait for the script
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertTrue(Budget.stats().get("timeouts").get("/spin/worker") > 0);
+    }
+
+    @Test
+    public void workerHaltTest() {
+        Budget.configure(Budget.fromConfig(Map.of("timeout", 5000)));
+        Route r = Budget.route("/halt/worker", "halt.groovy", bindings -> {
+            throw new IllegalStateException("boom");
+        });
+        // the halt raised on the worker comes back as it is
+        HaltException he = assertThrows(HaltException.class, () -> r.handle(request(), mock(Response.class)));
+        Assert.assertEquals(500, he.statusCode());
+        Assert.assertEquals("ok", EitherMonad.runUnsafe(() ->
+                Budget.route("/ok/worker", "ok.groovy", bindings -> "ok").handle(request(), mock(Response.class))));
+    }
+
+    @Test
+    public void withinBudgetTest() throws Exception {
+        Budget.configure(Budget.fromConfig(Map.of("timeout", 5000)));
+        Route r = Budget.route("/quick", bindings -> "quick");
+        Assert.assertEquals("quick", r.handle(request(), mock(Response.class)));
+        Assert.assertNull(Budget.stats().get("timeouts").get("/quick"));
+    }
+
+    @Test
+    public void graalStatementLimitTest() {
+        Budget.configure(Budget.fromConfig(Map.of("statements", 1000)));
+        Scriptable sc = Scriptable.GRAAL.create(Scriptable.INLINE, "let i = 0; while(true){ i++; } //.js");
+        HaltException he = assertThrows(HaltException.class, () -> sc.exec(request(), mock(Response.class)));
+        Assert.assertEquals(Budget.LIMIT_STATUS, he.statusCode());
+        Assert.assertTrue(Budget.stats().get("limits").get("*") > 0);
+    }
+}
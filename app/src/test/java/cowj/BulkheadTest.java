@@ -0,0 +1,117 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class BulkheadTest {
+
+    @After
+    public void after() {
+        Bulkhead.configure(Bulkhead.NONE);
+    }
+
+    @Test
+    public void configTest() {
+        Assert.assertSame(Bulkhead.NONE, Bulkhead.fromConfig(Map.of()));
+        Bulkhead b = Bulkhead.fromConfig(Map.of("db", Map.of("routes", List.of("/users/:id", "/orders"), "limit", 4)));
+        Assert.assertNotNull(b.limiter("/users/:id"));
+        Assert.assertSame(b.limiter("/users/:id"), b.limiter("/orders"));
+        Assert.assertNull(b.limiter("/other"));
+        Assert.assertEquals(4, b.limiter("/orders").limit());
+        Bulkhead.configure(b);
+        Assert.assertEquals(4, Bulkhead.stats().get("db").get("limit"));
+        Route r = (request, response) -> "x";
+        Assert.assertSame(r, Bulkhead.route("/other", r));
+    }
+
+    @Test
+    public void rejectTest() throws Exception {
+        Bulkhead.configure(Bulkhead.fromConfig(Map.of("slow", Map.of("routes", List.of("/slow"), "limit", 2))));
+        final CountDownLatch running = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(1);
+        Route r = Bulkhead.route("/slow", (request, response) -> {
+            running.countDown();
+            done.await();
+            return "ok";
+        });
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> f1 = es.submit(() -> r.handle(mock(Request.class), mock(Response.class)));
+            Future<?> f2 = es.submit(() -> r.handle(mock(Request.class), mock(Response.class)));
+            Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+            Response response = mock(Response.class);
+            HaltException he = assertThrows(HaltException.class, () -> r.handle(mock(Request.class), response));
+            Assert.assertEquals(Bulkhead.REJECT_STATUS, he.statusCode());
+            verify(response).header("Retry-After", "1");
+            Map<String, Object> stats = Bulkhead.stats().get("slow");
+            Assert.assertEquals(2, stats.get("in_flight"));
+            Assert.assertEquals(1L, stats.get("rejected"));
+            done.countDown();
+            Assert.assertEquals("ok", f1.get());
+            Assert.assertEquals("ok", f2.get());
+            Assert.assertEquals(0, Bulkhead.stats().get("slow").get("in_flight"));
+        } finally {
+            es.shutdownNow();
+        }
+    }
+
+    @Test
+    public void queueTest() throws Exception {
+        Bulkhead.Limiter l = new Bulkhead.Limiter("q", 1, 1, 2000, false, 1, 1);
+        Assert.assertTrue(l.acquire());
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiter = es.submit(l::acquire);
+            while (l.waiting() == 0) {
+                Thread.sleep(5);
+            }
+            // queue is full now
+            Assert.assertFalse(l.acquire());
+            l.release(1000);
+            Assert.assertTrue(waiter.get(5, TimeUnit.SECONDS));
+            Assert.assertEquals(1, l.inFlight());
+            l.release(1000);
+        } finally {
+            es.shutdownNow();
+        }
+        // waiting times out
+        Bulkhead.Limiter t = new Bulkhead.Limiter("t", 1, 1, 50, false, 1, 1);
+        Assert.assertTrue(t.acquire());
+        Assert.assertFalse(t.acquire());
+        Assert.assertEquals(1, t.rejected());
+    }
+
+    @Test
+    public void adaptiveTest() {
+        Bulkhead.Limiter l = new Bulkhead.Limiter("a", 10, 0, 0, true, 2, 100);
+        // busy, steady latency, the limit grows
+        for (int i = 0; i < 50; i++) {
+            l.sample(1_000_000, l.limit());
+        }
+        final int grown = l.limit();
+        Assert.assertTrue(grown > 10);
+        // latency goes up ten fold, the limit shrinks
+        for (int i = 0; i < 50; i++) {
+            l.sample(10_000_000, l.limit());
+        }
+        Assert.assertTrue(l.limit() < grown);
+        Assert.assertTrue(l.limit() >= 2);
+        // idle, nothing moves
+        final int idle = l.limit();
+        l.sample(1_000, 0);
+        Assert.assertEquals(idle, l.limit());
+    }
+}
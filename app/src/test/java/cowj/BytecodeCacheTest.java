@@ -0,0 +1,156 @@
+package cowj;
+
+import org.codehaus.groovy.jsr223.GroovyCompiledScript;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.script.CompiledScript;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BytecodeCacheTest {
+
+    @After
+    public void after() {
+        BytecodeCache.CACHE_DIRECTORY.set("");
+    }
+
+    @Test
+    public void keyTest() {
+        Assert.assertEquals(BytecodeCache.key("2+2", "4.0"), BytecodeCache.key("2+2", "4.0"));
+        Assert.assertNotEquals(BytecodeCache.key("2+2", "4.0"), BytecodeCache.key("2+2", "4.1"));
+        Assert.assertNotEquals(BytecodeCache.key("2+2", "4.0"), BytecodeCache.key("2+3", "4.0"));
+        Assert.assertEquals(64, BytecodeCache.key("", "").length());
+    }
+
+    @Test
+    public void readWriteTest() throws Exception {
+        Path dir = Files.createTempDirectory("gcc");
+        Path file = dir.resolve("x" + BytecodeCache.EXTENSION);
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        classes.put("Main", new byte[]{1, 2, 3});
+        classes.put("Main$_closure1", new byte[]{4});
+        BytecodeCache.write(file, classes);
+        Map<String, byte[]> read = BytecodeCache.read(file);
+        Assert.assertEquals("Main", read.keySet().iterator().next());
+        Assert.assertArrayEquals(new byte[]{4}, read.get("Main$_closure1"));
+        // no temp files left behind
+        Assert.assertEquals(1, dir.toFile().list().length);
+    }
+
+    @Test
+    public void disabledTest() {
+        BytecodeCache.configure(Map.of(), () -> ".");
+        Assert.assertFalse(BytecodeCache.enabled());
+        BytecodeCache.configure(Map.of("enabled", false), () -> ".");
+        Assert.assertFalse(BytecodeCache.enabled());
+    }
+
+    @Test
+    public void groovyCacheTest() throws Exception {
+        final File dir = Files.createTempDirectory("gcc").toFile();
+        BytecodeCache.configure(Map.of("dir", dir.getAbsolutePath()), () -> ".");
+        Assert.assertTrue(BytecodeCache.enabled());
+        final String script = "[1,2,3].collect { it * x }.sum() //.groovy";
+        CompiledScript cs = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertTrue(cs instanceof GroovyCompiledScript);
+        Object r = cs.eval(new SimpleBindings(new HashMap<>(Map.of("x", 2))));
+        Assert.assertEquals(12, ((Number) r).intValue());
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        Assert.assertTrue(files[0].getName().endsWith(BytecodeCache.EXTENSION));
+        // reading back from disk, in a fresh process this is what happens
+        BytecodeCache.groovyClasses.clear();
+        CompiledScript fromDisk = Scriptable.compileScript(Scriptable.INLINE, script);
+        r = fromDisk.eval(new SimpleBindings(new HashMap<>(Map.of("x", 3))));
+        Assert.assertEquals(18, ((Number) r).intValue());
+        // now from the process
+        CompiledScript fromMemory = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertNotSame(fromDisk, fromMemory);
+        Assert.assertEquals(1, BytecodeCache.groovyClasses.size());
+    }
+
+    @Test
+    public void corruptReadTest() throws Exception {
+        Path dir = Files.createTempDirectory("gcc");
+        Path file = dir.resolve("x" + BytecodeCache.EXTENSION);
+        // claims more classes than allowed
+        Files.write(file, new byte[]{ 0x7f, 0, 0, 0 });
+        Assert.assertThrows(IOException.class, () -> BytecodeCache.read(file));
+        // claims a class longer than the file
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(1);
+        out.writeUTF("Main");
+        out.writeInt(Integer.MAX_VALUE);
+        out.write(new byte[]{1, 2, 3});
+        Files.write(file, bos.toByteArray());
+        Assert.assertThrows(IOException.class, () -> BytecodeCache.read(file));
+        // truncated
+        Files.write(file, new byte[]{ 0, 0 });
+        Assert.assertThrows(IOException.class, () -> BytecodeCache.read(file));
+        // trailing bytes
+        BytecodeCache.write(file, new LinkedHashMap<>(Map.of("Main", new byte[]{1})));
+        Files.write(file, new byte[]{9}, StandardOpenOption.APPEND);
+        Assert.assertThrows(IOException.class, () -> BytecodeCache.read(file));
+        // valid layout, but not bytecode, is a miss
+        BytecodeCache.write(file, new LinkedHashMap<>(Map.of("Main", new byte[]{1})));
+        Assert.assertNull(BytecodeCache.fromDisk(file, getClass().getClassLoader()));
+        Assert.assertNull(BytecodeCache.fromDisk(dir.resolve("missing"), getClass().getClassLoader()));
+    }
+
+    @Test
+    public void groovyCorruptFileTest() throws Exception {
+        final File dir = Files.createTempDirectory("gcc").toFile();
+        BytecodeCache.configure(Map.of("dir", dir.getAbsolutePath()), () -> ".");
+        final String script = "x * 7 //.groovy";
+        Scriptable.compileScript(Scriptable.INLINE, script);
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        Files.write(files[0].toPath(), new byte[]{ 0x7f, 0x7f, 0x7f, 0x7f });
+        BytecodeCache.groovyClasses.clear();
+        CompiledScript cs = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertEquals(42, ((Number) cs.eval(new SimpleBindings(new HashMap<>(Map.of("x", 6))))).intValue());
+        // got rewritten
+        Assert.assertNotNull(BytecodeCache.read(files[0].toPath()));
+    }
+
+    @Test
+    public void kotlinCacheTest() throws Exception {
+        final File dir = Files.createTempDirectory("kcc").toFile();
+        BytecodeCache.configure(Map.of("dir", dir.getAbsolutePath()), () -> ".");
+        final String script = "class Twice(val x: Int) { fun value() = x * 2 }\nTwice(bindings[\"x\"] as Int).value() //.kts";
+        CompiledScript cs = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertTrue(cs instanceof BytecodeCache.KotlinCompiledScript);
+        Assert.assertEquals(42, cs.eval(new SimpleBindings(new HashMap<>(Map.of("x", 21)))));
+        File[] files = dir.listFiles();
+        Assert.assertNotNull(files);
+        Assert.assertEquals(1, files.length);
+        Assert.assertTrue(files[0].getName().endsWith(BytecodeCache.KOTLIN_EXTENSION));
+        // reading back from disk, in a fresh process this is what happens
+        BytecodeCache.kotlinClasses.clear();
+        cs = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertEquals(10, cs.eval(new SimpleBindings(new HashMap<>(Map.of("x", 5)))));
+        // a corrupt jar is a miss
+        Files.write(files[0].toPath(), new byte[]{1, 2, 3});
+        BytecodeCache.kotlinClasses.clear();
+        cs = Scriptable.compileScript(Scriptable.INLINE, script);
+        Assert.assertEquals(4, cs.eval(new SimpleBindings(new HashMap<>(Map.of("x", 2)))));
+        Assert.assertTrue(files[0].length() > 3);
+        // errors in the script surface as ScriptException, same as the engine
+        CompiledScript boom = Scriptable.compileScript(Scriptable.INLINE, "throw IllegalStateException(\"boom\") //.kts");
+        Assert.assertThrows(ScriptException.class, () -> boom.eval(new SimpleBindings()));
+    }
+}
@@ -0,0 +1,205 @@
+package cowj;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.util.Callback;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.Mockito.*;
+
+public class CompressionTest {
+
+    @Test
+    public void configTest() {
+        Model model = () -> "/tmp/cowj";
+        Assert.assertSame(Compression.NONE, Compression.fromConfig(Map.of(), model));
+        Assert.assertSame(Compression.NONE, Compression.fromConfig(Map.of("enabled", false), model));
+        Compression c = Compression.fromConfig(Map.of("static", false, "min_size", 10, "mime", List.of("application/json")), model);
+        Assert.assertTrue(c.enabled());
+        Assert.assertEquals(10, c.minSize());
+        Assert.assertNull(c.handler());
+        Assert.assertTrue(c.compressible("application/json; charset=utf-8"));
+        Assert.assertFalse(c.compressible("text/html"));
+        c = Compression.fromConfig(Map.of("static", false), model);
+        Assert.assertTrue(c.compressible("text/css"));
+        Assert.assertFalse(c.compressible("image/png"));
+        Assert.assertFalse(c.compressible(null));
+    }
+
+    @Test
+    public void acceptsGzipTest() {
+        Assert.assertTrue(Compression.acceptsGzip("gzip, deflate, br"));
+        Assert.assertTrue(Compression.acceptsGzip("br;q=1.0, gzip;q=0.8"));
+        Assert.assertTrue(Compression.acceptsGzip("*"));
+        Assert.assertFalse(Compression.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(Compression.acceptsGzip("deflate"));
+        Assert.assertFalse(Compression.acceptsGzip(null));
+    }
+
+    void filter(String acceptEncoding, String type, String body, boolean compressed) throws Exception {
+        Compression c = Compression.fromConfig(Map.of("static", false, "min_size", 16), () -> "/tmp/cowj");
+        Filter f = c.filter();
+        Request request = mock(Request.class);
+        when(request.headers("Accept-Encoding")).thenReturn(acceptEncoding);
+        Response response = mock(Response.class);
+        HttpServletResponse raw = mock(HttpServletResponse.class);
+        when(raw.getStatus()).thenReturn(200);
+        when(response.raw()).thenReturn(raw);
+        when(response.body()).thenReturn(body);
+        when(response.type()).thenReturn(type);
+        f.handle(request, response);
+        verify(response, compressed ? times(1) : never()).header("Content-Encoding", "gzip");
+    }
+
+    @Test
+    public void filterTest() throws Exception {
+        final String large = "{ \"x\" : \"" + "a".repeat(100) + "\" }";
+        filter("gzip", "application/json", large, true);
+        filter("gzip", null, large, true);
+        filter("gzip", "application/json", "{}", false);
+        filter("deflate", "application/json", large, false);
+        filter("gzip", "image/png", large, false);
+        filter("gzip", "application/json", null, false);
+    }
+
+    static byte[] gunzip(byte[] data) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    static org.eclipse.jetty.server.Response jettyResponse(ByteArrayOutputStream bos) {
+        org.eclipse.jetty.server.Response response = mock(org.eclipse.jetty.server.Response.class);
+        when(response.getHeaders()).thenReturn(HttpFields.build());
+        doAnswer(i -> {
+            ByteBuffer buffer = i.getArgument(1);
+            if (buffer != null) {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                bos.write(bytes);
+            }
+            ((Callback) i.getArgument(2)).succeeded();
+            return null;
+        }).when(response).write(anyBoolean(), any(), any());
+        return response;
+    }
+
+    @Test
+    public void precompressedTest() throws Exception {
+        Path root = Files.createTempDirectory("cowj-static");
+        Path staticDir = Files.createDirectories(root.resolve("static"));
+        final String html = "<html><body>" + "hello world ".repeat(200) + "</body></html>";
+        Files.writeString(staticDir.resolve("index.html"), html);
+        Files.writeString(staticDir.resolve("tiny.css"), "a{}");
+        Files.write(staticDir.resolve("logo.png"), new byte[4096]);
+        Model model = () -> root.toString();
+
+        Compression c = Compression.fromConfig(Map.of("min_size", 64), model);
+        Compression.Precompressed p = c.precompressed();
+        Assert.assertNotNull(c.handler());
+        Assert.assertEquals(1, p.count());
+        Assert.assertNotNull(p.variant("/"));
+        Assert.assertNull(p.variant("/tiny.css"));
+        Assert.assertNull(p.variant("/logo.png"));
+        Assert.assertArrayEquals(html.getBytes(StandardCharsets.UTF_8), gunzip(p.variant("/index.html").gzip()));
+
+        org.eclipse.jetty.server.Request request = mock(org.eclipse.jetty.server.Request.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHttpURI()).thenReturn(HttpURI.from("/index.html"));
+        when(request.getHeaders()).thenReturn(HttpFields.build().add("Accept-Encoding", "gzip"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        org.eclipse.jetty.server.Response response = jettyResponse(bos);
+        Assert.assertTrue(p.serve(request, response, Callback.NOOP));
+        Assert.assertEquals("gzip", response.getHeaders().get("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", response.getHeaders().get("Vary"));
+        Assert.assertArrayEquals(html.getBytes(StandardCharsets.UTF_8), gunzip(bos.toByteArray()));
+        Assert.assertEquals(1, p.hits());
+
+        when(request.getHeaders()).thenReturn(HttpFields.build().add("Accept-Encoding", "identity"));
+        response = jettyResponse(bos);
+        Assert.assertFalse(p.serve(request, response, Callback.NOOP));
+        // Spark serves the plain file, caches still have to know it varies
+        Assert.assertEquals("Accept-Encoding", response.getHeaders().get("Vary"));
+
+        // changed file goes back to Spark
+        Assert.assertTrue(staticDir.resolve("index.html").toFile().setLastModified(System.currentTimeMillis() + 10000));
+        when(request.getHeaders()).thenReturn(HttpFields.build().add("Accept-Encoding", "gzip"));
+        Assert.assertFalse(p.serve(request, jettyResponse(bos), Callback.NOOP));
+        Assert.assertEquals(0, p.count());
+    }
+
+    @Test
+    public void varyTest() {
+        HttpServletResponse response = mock(HttpServletResponse.class);
+        Compression.vary(response);
+        verify(response).addHeader("Vary", "Accept-Encoding");
+        response = mock(HttpServletResponse.class);
+        when(response.getHeaders("Vary")).thenReturn(List.of("Origin, accept-encoding"));
+        Compression.vary(response);
+        verify(response, never()).addHeader(anyString(), anyString());
+    }
+
+    @Test
+    public void streamedTest() throws Exception {
+        final String line = "{ \"x\" : \"" + "a".repeat(100) + "\" }";
+        Request request = mock(Request.class);
+        HttpServletRequest rawRequest = mock(HttpServletRequest.class);
+        when(rawRequest.getHeader("Accept-Encoding")).thenReturn("gzip");
+        when(request.raw()).thenReturn(rawRequest);
+        HttpServletResponse raw = mock(HttpServletResponse.class);
+        when(raw.getContentType()).thenReturn("application/x-ndjson");
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        when(raw.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                bos.write(b);
+            }
+        });
+        Response response = mock(Response.class);
+        when(response.raw()).thenReturn(raw);
+        Compression.ATTACHED.set(Compression.fromConfig(Map.of("static", false, "min_size", 16,
+                "mime", List.of("application/x-ndjson", "application/octet-stream")), () -> "/tmp/cowj"));
+        try {
+            Assert.assertTrue(Streaming.write(Stream.of(line, line), request, response));
+            verify(raw).setHeader("Content-Encoding", "gzip");
+            verify(raw).addHeader("Vary", "Accept-Encoding");
+            Assert.assertEquals(line + "\n" + line + "\n", new String(gunzip(bos.toByteArray()), StandardCharsets.UTF_8));
+            // known to be too small
+            bos.reset();
+            when(raw.getContentType()).thenReturn("application/octet-stream");
+            Assert.assertTrue(Streaming.write("tiny".getBytes(StandardCharsets.UTF_8), request, response));
+            Assert.assertEquals("tiny", bos.toString(StandardCharsets.UTF_8));
+            verify(raw, times(1)).setHeader("Content-Encoding", "gzip");
+        } finally {
+            Compression.ATTACHED.set(Compression.NONE);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package cowj;
+
+import cowj.plugins.MemoryBackedStorage;
+import jdk.jfr.Configuration;
+import jdk.jfr.EventType;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+public class FlightRecorderTest {
+
+    final Map<String, Map<String, String>> dataMemory = new ConcurrentHashMap<>(Map.of("b", new ConcurrentHashMap<>()));
+
+    final MemoryBackedStorage storage = () -> dataMemory;
+
+    List<RecordedEvent> record(Runnable runnable, String... events) throws Exception {
+        try (Recording recording = new Recording()) {
+            for (String e : events) {
+                recording.enable(e).withoutThreshold();
+            }
+            recording.start();
+            runnable.run();
+            recording.stop();
+            Path file = Files.createTempFile("cowj", ".jfr");
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        }
+    }
+
+    @Test
+    public void disabledByDefaultTest() {
+        FlightRecorder.StorageIO.start().record("read", storage, "b", "x", 0);
+        Assert.assertFalse(EventType.getEventType(FlightRecorder.StorageIO.class).isEnabled());
+    }
+
+    @Test
+    public void profileTest() throws Exception {
+        Configuration c = Configuration.create(Path.of("../manual/cowj.jfc"));
+        Assert.assertEquals("Cowj", c.getLabel());
+        Assert.assertEquals("true", c.getSettings().get("cowj.ScriptExec#enabled"));
+        Assert.assertEquals("true", c.getSettings().get("cowj.StorageIO#enabled"));
+    }
+
+    @Test
+    public void storageTest() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            storage.dumps("b", "x", "hello");
+            Assert.assertEquals("hello", storage.loads("b", "x"));
+            try (Stream<String> s = storage.allContent("b", "")) {
+                Assert.assertEquals(1, s.count());
+            }
+            // recorded once consumed, without being closed
+            Assert.assertEquals(1, storage.allData("b", "").toList().size());
+        }, "cowj.StorageIO", "cowj.StorageList");
+        Assert.assertEquals(4, events.size());
+        RecordedEvent write = events.stream().filter(e -> "write".equals(e.getString("operation"))).findFirst().orElseThrow();
+        Assert.assertEquals("b", write.getString("bucket"));
+        Assert.assertEquals("x", write.getString("path"));
+        Assert.assertEquals(5, write.getLong("size"));
+        RecordedEvent read = events.stream().filter(e -> "read".equals(e.getString("operation"))).findFirst().orElseThrow();
+        Assert.assertEquals(5, read.getLong("size"));
+        List<RecordedEvent> lists = events.stream().filter(e -> e.getEventType().getName().equals("cowj.StorageList")).toList();
+        Assert.assertEquals(2, lists.size());
+        lists.forEach(list -> Assert.assertEquals(1, list.getLong("entries")));
+    }
+
+    @Test
+    public void scriptExecTest() throws Exception {
+        List<RecordedEvent> events = record(() -> {
+            Scriptable sc = Scriptable.UNIVERSAL.create("/jfr", "samples/test_scripts/null_return.js");
+            sc.apply(new javax.script.SimpleBindings());
+        }, "cowj.ScriptExec");
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("/jfr", events.get(0).getString("route"));
+        Assert.assertEquals("js", events.get(0).getString("engine"));
+        Assert.assertTrue(events.get(0).getBoolean("success"));
+    }
+}
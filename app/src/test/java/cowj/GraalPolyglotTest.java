@@ -1,15 +1,27 @@
 package cowj;
 
 
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
 import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
 import org.junit.Test;
+import spark.Response;
 
+import javax.script.SimpleBindings;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class GraalPolyglotTest {
 
@@ -26,6 +38,179 @@ public class GraalPolyglotTest {
         assertEquals( 42, o );
     }
 
+    @Test
+    public void pooledContextTest() throws Exception {
+        GraalPolyglot.configure(Map.of("pool", Map.of("enabled", true)));
+        try {
+            GraalPolyglot polyglot = GraalPolyglot.js("x + 1", "pooled_context_test.js");
+            ResourcePool<Context> pool = polyglot.contextPool();
+            Object o = polyglot.exec(new SimpleBindings(Map.of("x", 41)));
+            assertEquals(42, o);
+            assertEquals(0, pool.active());
+            assertEquals(1, pool.idle());
+            // bindings must be reset for the next borrower
+            assertThrows(PolyglotException.class, () -> polyglot.exec(new SimpleBindings()));
+            // no new context would be created, still one
+            o = polyglot.exec(new SimpleBindings(Map.of("x", 1)));
+            assertEquals(2, o);
+            assertEquals(1, pool.idle());
+        } finally {
+            GraalPolyglot.configure(Map.of());
+        }
+    }
+
+    @Test
+    public void removedFromCacheClosesPoolTest() throws Exception {
+        GraalPolyglot.configure(Map.of("pool", Map.of("enabled", true)));
+        try {
+            GraalPolyglot polyglot = GraalPolyglot.js("x + 1", "removed_pool_test.js");
+            GraalPolyglot.polyglotsMap.load("removed_pool_test.js", p -> polyglot);
+            assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 41))));
+            assertEquals(1, polyglot.contextPool().idle());
+            GraalPolyglot.polyglotsMap.remove("removed_pool_test.js");
+            assertEquals(0, polyglot.contextPool().idle());
+        } finally {
+            GraalPolyglot.configure(Map.of());
+        }
+    }
+
+    @Test
+    public void noPoolByDefaultTest() throws Exception {
+        GraalPolyglot polyglot = GraalPolyglot.js("x + 1", "no_pool_test.js");
+        assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 41))));
+        assertEquals(0, polyglot.contextPool().idle());
+    }
+
+    @Test
+    public void freshScopeTest() throws Exception {
+        final String script = "let y = x + 1; const k = 1; class C {}; var v = (typeof v === 'undefined') ? 0 : 1; y + k + v";
+        for (Map<String, Object> pool : List.<Map<String, Object>>of(Map.of(), Map.of("enabled", true, "max", 1))) {
+            GraalPolyglot.configure(Map.of("pool", pool));
+            try {
+                GraalPolyglot polyglot = GraalPolyglot.js(script, "fresh_scope_test.js");
+                // second run in the same Context must neither fail on redeclaration nor see the first run's var
+                assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 40))));
+                assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 40))));
+            } finally {
+                GraalPolyglot.configure(Map.of());
+            }
+        }
+    }
+
+    @Test
+    public void pooledGlobalsResetTest() throws Exception {
+        GraalPolyglot.configure(Map.of("pool", Map.of("enabled", true, "max", 1)));
+        try {
+            GraalPolyglot polyglot = GraalPolyglot.js("const seen = typeof g + typeof globalThis.f; g = 1; function f(){}; seen", "globals_reset_test.js");
+            assertEquals("undefinedundefined", polyglot.exec(new SimpleBindings()));
+            assertEquals("undefinedundefined", polyglot.exec(new SimpleBindings()));
+            assertEquals(1, polyglot.contextPool().idle());
+        } finally {
+            GraalPolyglot.configure(Map.of());
+        }
+    }
+
+    @Test
+    public void detachedDatesAndFunctionsTest() throws Exception {
+        GraalPolyglot polyglot = GraalPolyglot.js("({ 'd' : new Date(0), 'f' : function(){ return 1; } })", "detached_date_test.js");
+        Map<?, ?> m = (Map<?, ?>) polyglot.exec(new SimpleBindings());
+        assertEquals(java.time.Instant.EPOCH, m.get("d"));
+        // functions are skipped in objects, as JSON.stringify does
+        assertFalse(m.containsKey("f"));
+        assertNull(GraalPolyglot.js("(function(){})", "detached_function_test.js").exec(new SimpleBindings()));
+    }
+
+    @Test
+    public void detachedResultTest() throws Exception {
+        GraalPolyglot polyglot = GraalPolyglot.js("({ 'a' : [1, 2.5, 'x'], 'b' : null, 'c' : true })", "detached_result_test.js");
+        Map<?, ?> m = (Map<?, ?>) polyglot.exec(new SimpleBindings());
+        assertEquals(List.of(1, 2.5, "x"), m.get("a"));
+        assertTrue(m.containsKey("b"));
+        assertNull(m.get("b"));
+        assertEquals(true, m.get("c"));
+    }
+
+    @Test
+    public void sharedEngineTest() throws Exception {
+        Path cacheDir = Files.createTempDirectory( "graal_cache_");
+        GraalPolyglot.configure(Map.of("engine", Map.of("shared", true, "cache", cacheDir.toString())));
+        try {
+            Engine engine = GraalPolyglot.engine();
+            assertSame(GraalPolyglot.sharedEngine.get(), engine);
+            final Engine[] other = new Engine[1];
+            Thread t = new Thread(() -> other[0] = GraalPolyglot.engine());
+            t.start();
+            t.join();
+            assertSame(engine, other[0]);
+            // re-configuration keeps the same engine alive
+            GraalPolyglot.configure(Map.of("engine", Map.of("shared", true)));
+            assertSame(engine, GraalPolyglot.engine());
+            GraalPolyglot polyglot = GraalPolyglot.js("x * 2", "shared_engine_test.js");
+            assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 21))));
+        } finally {
+            GraalPolyglot.configure(Map.of());
+        }
+        // turning sharing off drops the shared engine, nothing leaks into later tests
+        assertNull(GraalPolyglot.sharedEngine.get());
+        assertSame(GraalPolyglot.threadedEngine.get(), GraalPolyglot.engine());
+        GraalPolyglot polyglot = GraalPolyglot.js("x * 2", "shared_engine_off_test.js");
+        assertEquals(42, polyglot.exec(new SimpleBindings(Map.of("x", 21))));
+    }
+
+    Response response(ByteArrayOutputStream bos) throws Exception {
+        HttpServletResponse raw = mock(HttpServletResponse.class);
+        when(raw.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                bos.write(b);
+            }
+        });
+        Response response = mock(Response.class);
+        when(response.raw()).thenReturn(raw);
+        return response;
+    }
+
+    @Test
+    public void streamedResultTest() throws Exception {
+        GraalPolyglot polyglot = GraalPolyglot.js("x", "streamed_result_test.js");
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        final Response response = response(bos);
+        // not enabled, result comes back as usual
+        Object o = polyglot.exec(new SimpleBindings(Map.of("x", "hello", Scriptable.RESPONSE, response)));
+        assertEquals("hello", o);
+        assertEquals(0, bos.size());
+        GraalPolyglot.configure(Map.of("stream", true));
+        try {
+            polyglot = GraalPolyglot.js("({ 'a' : [1, 2.5, 'x'], 'b' : null, 'f' : function(){} })", "streamed_json_test.js");
+            o = polyglot.exec(new SimpleBindings(Map.of(Scriptable.RESPONSE, response)));
+            assertEquals("", o);
+            assertEquals("{\"a\":[1,2.5,\"x\"],\"b\":null}", bos.toString(StandardCharsets.UTF_8));
+            bos.reset();
+            polyglot = GraalPolyglot.js("new Uint8Array([104, 105]).buffer", "streamed_buffer_test.js");
+            assertEquals("", polyglot.exec(new SimpleBindings(Map.of(Scriptable.RESPONSE, response))));
+            assertEquals("hi", bos.toString(StandardCharsets.UTF_8));
+            bos.reset();
+            // numbers are not streamed
+            polyglot = GraalPolyglot.js("42", "streamed_number_test.js");
+            assertEquals(42, polyglot.exec(new SimpleBindings(Map.of(Scriptable.RESPONSE, response))));
+            assertEquals(0, bos.size());
+            // not a route, nothing to stream to
+            polyglot = GraalPolyglot.js("[1]", "streamed_no_route_test.js");
+            assertEquals(List.of(1), polyglot.exec(new SimpleBindings()));
+        } finally {
+            GraalPolyglot.configure(Map.of());
+        }
+    }
+
     @Test
     public void loadEngineTest() {
          assertThrows( UnsupportedOperationException.class , () -> GraalPolyglot.loadPolyglot("",  someFile) ) ;
@@ -0,0 +1,121 @@
+package cowj;
+
+import cowj.plugins.CurlWrapper;
+import cowj.plugins.JDBCWrapper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class InstrumentationTest {
+
+    public interface Echo {
+        String echo(String s);
+
+        EitherMonad<String> maybe(boolean ok);
+    }
+
+    public static class Wider implements Echo {
+        @Override
+        public String echo(String s) {
+            return s;
+        }
+
+        @Override
+        public EitherMonad<String> maybe(boolean ok) {
+            return EitherMonad.value("x");
+        }
+
+        public String hidden() {
+            return "hidden";
+        }
+    }
+
+    final Echo echo = new Echo() {
+        @Override
+        public String echo(String s) {
+            if (s == null) throw new IllegalArgumentException("null");
+            return s;
+        }
+
+        @Override
+        public EitherMonad<String> maybe(boolean ok) {
+            return ok ? EitherMonad.value("ok") : EitherMonad.error(new RuntimeException("nope"));
+        }
+    };
+
+    @Before
+    public void before() {
+        Metrics.configure(Map.of("enabled", true));
+    }
+
+    @After
+    public void after() {
+        Metrics.configure(Map.of());
+        Instrumentation.configure(Map.of());
+    }
+
+    @Test
+    public void notAskedTest() {
+        Assert.assertSame(echo, Instrumentation.wrap("e", Collections.emptyMap(), echo));
+        Instrumentation.configure(Map.of("enabled", true));
+        Assert.assertSame(echo, Instrumentation.wrap("e", Map.of("instrument", false), echo));
+        Assert.assertNotSame(echo, Instrumentation.wrap("e", Collections.emptyMap(), echo));
+    }
+
+    @Test
+    public void proxyTest() {
+        Echo e = (Echo) Instrumentation.wrap("e", Map.of("instrument", true), echo);
+        Assert.assertNotSame(echo, e);
+        Assert.assertEquals("hi", e.echo("hi"));
+        Assert.assertEquals("hi", e.echo("hi"));
+        assertThrows(IllegalArgumentException.class, () -> e.echo(null));
+        Assert.assertTrue(e.maybe(true).isSuccessful());
+        Assert.assertTrue(e.maybe(false).inError());
+        Assert.assertEquals(e, e);
+        Assert.assertTrue(e.toString().startsWith("instrumented:e:"));
+        final String text = Metrics.scrape();
+        Assert.assertTrue(text.contains("cowj_ds_calls_total{ds=\"e\",method=\"echo\"} 3"));
+        Assert.assertTrue(text.contains("cowj_ds_errors_total{ds=\"e\",method=\"echo\"} 1"));
+        Assert.assertTrue(text.contains("cowj_ds_calls_total{ds=\"e\",method=\"maybe\"} 2"));
+        Assert.assertTrue(text.contains("cowj_ds_errors_total{ds=\"e\",method=\"maybe\"} 1"));
+        Assert.assertTrue(text.contains("cowj_ds_in_flight{ds=\"e\",method=\"echo\"} 0"));
+        Assert.assertTrue(text.contains("cowj_ds_seconds_count{ds=\"e\",method=\"echo\"} 3"));
+    }
+
+    @Test
+    public void hiddenMethodsTest() {
+        Wider w = new Wider();
+        Assert.assertSame(w, Instrumentation.wrap("w", Map.of("instrument", true), w));
+        Object o = new Object();
+        Assert.assertSame(o, Instrumentation.wrap("o", Map.of("instrument", true), o));
+    }
+
+    @Test
+    public void curlDelegateTest() {
+        CurlWrapper raw = (verb, path, headers, params, body) -> EitherMonad.error(new RuntimeException("down"));
+        Object o = Instrumentation.wrap("remote", Map.of("instrument", true), raw);
+        Assert.assertTrue(o instanceof Instrumentation.Curl);
+        Assert.assertTrue(((CurlWrapper) o).send("get", "/x", Map.of(), Map.of(), "").inError());
+        Assert.assertTrue(Metrics.scrape().contains("cowj_ds_errors_total{ds=\"remote\",method=\"send\"} 1"));
+    }
+
+    @Test
+    public void jdbcDelegateTest() {
+        JDBCWrapper raw = mock(JDBCWrapper.class);
+        when(raw.select("select 1", null)).thenReturn(EitherMonad.value(Collections.emptyList()));
+        when(raw.timeout()).thenReturn(42L);
+        JDBCWrapper j = (JDBCWrapper) Instrumentation.wrap("db", Map.of("instrument", true), raw);
+        Assert.assertTrue(j instanceof Instrumentation.Jdbc);
+        Assert.assertTrue(j.select("select 1", null).isSuccessful());
+        Assert.assertEquals(42L, j.timeout());
+        verify(raw).select("select 1", null);
+        Assert.assertTrue(Metrics.scrape().contains("cowj_ds_calls_total{ds=\"db\",method=\"select\"} 1"));
+    }
+}
@@ -0,0 +1,70 @@
+package cowj;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+
+public class ListenersTest {
+
+    final Model model = () -> "/tmp/cowj";
+
+    @Test
+    public void noListenersTest() {
+        Assert.assertSame(Listeners.SPARK, Listeners.fromConfig(Map.of(), model));
+        Assert.assertSame(Listeners.SPARK, Listeners.fromConfig(Map.of("h2c", false, "http2", Map.of("streams", 10)), model));
+    }
+
+    @Test
+    public void h2cTest() {
+        Listeners l = Listeners.fromConfig(Map.of("h2c", true, "host", "127.0.0.1",
+                "http2", Map.of("streams", 42, "stream_window", 65536, "session_window", 131072)), model);
+        Server server = new Server();
+        List<ServerConnector> connectors = l.connectors(server, 5042);
+        Assert.assertEquals(1, connectors.size());
+        ServerConnector c = connectors.get(0);
+        Assert.assertEquals(5042, c.getPort());
+        Assert.assertEquals("127.0.0.1", c.getHost());
+        Assert.assertEquals(List.of("http/1.1", "h2c"), c.getProtocols());
+        HTTP2CServerConnectionFactory h2c = c.getConnectionFactory(HTTP2CServerConnectionFactory.class);
+        Assert.assertEquals(42, h2c.getMaxConcurrentStreams());
+        Assert.assertEquals(65536, h2c.getInitialStreamRecvWindow());
+        Assert.assertEquals(131072, h2c.getInitialSessionRecvWindow());
+    }
+
+    @Test
+    public void tlsTest() {
+        Listeners l = Listeners.fromConfig(Map.of("tls", Map.of("port", 5443, "keystore", "_/server.p12")), model);
+        List<ServerConnector> connectors = l.connectors(new Server(), 5042);
+        Assert.assertEquals(2, connectors.size());
+        Assert.assertEquals(List.of("http/1.1"), connectors.get(0).getProtocols());
+        ServerConnector secure = connectors.get(1);
+        Assert.assertEquals(5443, secure.getPort());
+        Assert.assertEquals(List.of("ssl", "alpn", "h2", "http/1.1"), secure.getProtocols());
+
+        l = Listeners.fromConfig(Map.of("tls", Map.of("keystore", "_/server.p12", "h2", false)), model);
+        secure = l.connectors(new Server(), 5042).get(1);
+        Assert.assertEquals(8443, secure.getPort());
+        Assert.assertEquals(List.of("ssl", "http/1.1"), secure.getProtocols());
+    }
+
+    @Test
+    public void tlsWithoutKeyStoreTest() {
+        Listeners l = Listeners.fromConfig(Map.of("tls", Map.of("port", 5443)), model);
+        assertThrows(IllegalArgumentException.class, () -> l.connectors(new Server(), 5042));
+    }
+
+    @Test
+    public void serverFactoryTest() {
+        Listeners l = Listeners.fromConfig(Map.of("h2c", true), model);
+        Server server = l.serverFactory(5042, false, null).create(8, 2, 1000);
+        Assert.assertEquals(1, server.getConnectors().length);
+        Assert.assertEquals(5042, ((ServerConnector) server.getConnectors()[0]).getPort());
+    }
+}
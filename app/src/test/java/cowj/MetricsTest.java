@@ -0,0 +1,107 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+import spark.Spark;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class MetricsTest {
+
+    @Before
+    public void before() {
+        Metrics.configure(Map.of("enabled", true));
+    }
+
+    @After
+    public void after() {
+        Metrics.configure(Map.of());
+    }
+
+    @Test
+    public void disabledTest() {
+        Metrics.configure(Map.of());
+        Assert.assertFalse(Metrics.enabled());
+        Assert.assertSame(Metrics.Timer.NONE, Metrics.histogram("x_seconds", "x"));
+        Assert.assertSame(Metrics.Counter.DISCARD, Metrics.counter("x_total", "x"));
+        Route r = (request, response) -> "x";
+        Assert.assertSame(r, Metrics.route("/x", "route", r));
+        Assert.assertEquals("", Metrics.scrape());
+    }
+
+    @Test
+    public void bucketTest() {
+        Assert.assertEquals(0, Metrics.Histogram.index(0));
+        Assert.assertEquals(0, Metrics.Histogram.index(1023));
+        Assert.assertEquals(1, Metrics.Histogram.index(1024));
+        Assert.assertEquals(Metrics.Histogram.SIZE - 1, Metrics.Histogram.index(Long.MAX_VALUE));
+        for (long v : new long[]{1, 1024, 1500, 4096, 999_999, 123_456_789L, 1L << 40}) {
+            final int i = Metrics.Histogram.index(v);
+            Assert.assertTrue(v < Metrics.Histogram.upper(i));
+            Assert.assertTrue(i == 0 || v >= Metrics.Histogram.upper(i - 1));
+        }
+    }
+
+    @Test
+    public void quantileTest() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        for (int i = 0; i < 99; i++) {
+            h.record(1_000_000); // 1 ms
+        }
+        h.record(1_000_000_000); // 1 s
+        Assert.assertEquals(100, h.count());
+        final long p50 = h.quantile(0.5);
+        Assert.assertTrue(p50 >= 1_000_000 && p50 <= 1_250_000);
+        final long p100 = h.quantile(1.0);
+        Assert.assertTrue(p100 >= 1_000_000_000 && p100 <= 1_250_000_000);
+        Assert.assertEquals(0, new Metrics.Histogram().quantile(0.99));
+    }
+
+    @Test
+    public void routeTest() throws Exception {
+        Route ok = Metrics.route("/ok", "route", (request, response) -> "ok");
+        Assert.assertEquals("ok", ok.handle(mock(Request.class), mock(Response.class)));
+        Route failing = Metrics.route("/fail", "route", (request, response) -> Spark.halt(500, "boom"));
+        assertThrows(HaltException.class, () -> failing.handle(mock(Request.class), mock(Response.class)));
+        Route denied = Metrics.route("/denied", "route", (request, response) -> Spark.halt(401, "no"));
+        assertThrows(HaltException.class, () -> denied.handle(mock(Request.class), mock(Response.class)));
+        final String text = Metrics.scrape();
+        Assert.assertTrue(text.contains("# TYPE cowj_route_seconds histogram"));
+        Assert.assertTrue(text.contains("cowj_route_seconds_count{route=\"/ok\",kind=\"route\"} 1"));
+        Assert.assertTrue(text.contains("cowj_route_seconds_bucket{route=\"/ok\",kind=\"route\",le=\"+Inf\"} 1"));
+        Assert.assertTrue(text.contains("# TYPE cowj_route_errors_total counter"));
+        Assert.assertTrue(text.contains("cowj_route_errors_total{route=\"/fail\",kind=\"route\"} 1"));
+        Assert.assertTrue(text.contains("cowj_route_errors_total{route=\"/denied\",kind=\"route\"} 0"));
+    }
+
+    @Test
+    public void exportTest() {
+        Metrics.Timer t = Metrics.histogram("t_seconds", "test", "a", "q\"x");
+        t.record(3_000); // below 2^12
+        t.record(5_000_000); // 5 ms, below 2^23
+        final String text = Metrics.scrape();
+        Assert.assertTrue(text.contains("t_seconds_bucket{a=\"q\\\"x\",le=\"4.096E-6\"} 1"));
+        Assert.assertTrue(text.contains("t_seconds_bucket{a=\"q\\\"x\",le=\"0.004194304\"} 1"));
+        Assert.assertTrue(text.contains("t_seconds_bucket{a=\"q\\\"x\",le=\"0.008388608\"} 2"));
+        Assert.assertTrue(text.contains("t_seconds_sum{a=\"q\\\"x\"} 0.005003"));
+        assertThrows(IllegalArgumentException.class, () -> Metrics.counter("t_seconds", "test"));
+    }
+
+    @Test
+    public void taskTest() {
+        Scriptable s = Metrics.task("/_async_/x", bindings -> {
+            throw new IllegalStateException("boom");
+        });
+        assertThrows(IllegalStateException.class, () -> s.exec(new javax.script.SimpleBindings()));
+        Assert.assertTrue(Metrics.scrape().contains("cowj_async_task_errors_total{route=\"/_async_/x\"} 1"));
+    }
+}
@@ -33,6 +33,15 @@ public class ModelTest {
         Assert.assertFalse( m.cron().isEmpty() );
     }
 
+    @Test
+    public void scriptsTest(){
+        Model m = Model.from(p);
+        Map<String,String> scripts = m.scripts();
+        Assert.assertTrue( scripts.get("get::/hello/g").endsWith("hello.groovy"));
+        Assert.assertTrue( scripts.get("filter:before::*").endsWith("before.zm"));
+        Assert.assertTrue( scripts.get("cron::r").endsWith("cron.zm"));
+    }
+
     @Test
     public void templateTests(){
         Model m = Model.from(p);
@@ -0,0 +1,86 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ProfilerTest {
+
+    @After
+    public void after() {
+        Profiler.ACTIVE.set(false);
+        Profiler.TAGS.clear();
+    }
+
+    @Test
+    public void inactiveTest() {
+        Assert.assertNull(Profiler.enter("/x", "x.zm"));
+        Profiler.exit(null);
+        Assert.assertTrue(Profiler.TAGS.isEmpty());
+    }
+
+    @Test
+    public void tagTest() {
+        Profiler.ACTIVE.set(true);
+        Profiler.Tag outer = Profiler.enter("/x", "x.zm");
+        Profiler.Tag inner = Profiler.enter("/y", "y;z.js");
+        Assert.assertEquals("[route /y];[script y,z.js]", Profiler.TAGS.get(Thread.currentThread()));
+        Profiler.exit(inner);
+        Assert.assertEquals("[route /x];[script x.zm]", Profiler.TAGS.get(Thread.currentThread()));
+        Profiler.exit(outer);
+        Assert.assertTrue(Profiler.TAGS.isEmpty());
+    }
+
+    @Test
+    public void foldTest() {
+        StackTraceElement[] stack = {
+                new StackTraceElement("a.B", "top", "B.java", 1),
+                new StackTraceElement("a.C", "root", "C.java", 2)
+        };
+        Assert.assertEquals("a.C.root;a.B.top", Profiler.fold(null, stack));
+        Assert.assertEquals("[route /x];[script x.zm];a.C.root;a.B.top", Profiler.fold("[route /x];[script x.zm]", stack));
+        Assert.assertEquals("a;b 2\nc 1\n", Profiler.collapsed(Map.of("c", 1L, "a;b", 2L)));
+    }
+
+    @Test
+    public void profileTest() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread t = new Thread(() -> {
+            while (running.get()) {
+                // as Scriptable.UNIVERSAL does around an execution
+                Profiler.Tag tag = Profiler.enter("/busy", "busy.zm");
+                started.countDown();
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ignore) {
+                } finally {
+                    Profiler.exit(tag);
+                }
+            }
+        }, "profiled");
+        t.start();
+        try {
+            started.await();
+            Path jfr = Files.createTempDirectory("cowj-profile").resolve("p.jfr");
+            Map<String, Long> folded = Profiler.profile(500, 200, false, jfr);
+            Assert.assertNotNull(folded);
+            Assert.assertFalse(folded.isEmpty());
+            Assert.assertTrue(folded.keySet().stream().anyMatch(s -> s.startsWith("[route /busy];[script busy.zm];")));
+            Assert.assertTrue(Files.size(jfr) > 0);
+            Assert.assertFalse(Profiler.ACTIVE.get());
+            // one at a time
+            Profiler.ACTIVE.set(true);
+            Assert.assertNull(Profiler.profile(10, 100, true, null));
+        } finally {
+            running.set(false);
+            t.join();
+        }
+    }
+}
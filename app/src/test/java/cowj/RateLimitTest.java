@@ -0,0 +1,120 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class RateLimitTest {
+
+    @After
+    public void after() {
+        RateLimit.configure(RateLimit.NONE);
+    }
+
+    @Test
+    public void configTest() {
+        Assert.assertSame(RateLimit.NONE, RateLimit.fromConfig(Map.of()));
+        RateLimit rl = RateLimit.fromConfig(Map.of("/users/*", Map.of("key", "user", "rate", 10)));
+        Assert.assertEquals(1, rl.rules().size());
+        RateLimit.configure(rl);
+        Assert.assertEquals("user", RateLimit.stats().get("/users/*").get("key"));
+        assertThrows(IllegalArgumentException.class, () -> RateLimit.fromConfig(Map.of("/x", Map.of("key", "cookie", "rate", 1))));
+        assertThrows(IllegalArgumentException.class, () -> RateLimit.fromConfig(Map.of("/x", Map.of("rate", 0))));
+    }
+
+    @Test
+    public void bucketTest() {
+        // 10 per second, burst of 5
+        RateLimit.Rule r = new RateLimit.Rule("/x", "route", 10, 1000, 5, 100);
+        final long now = 1_000_000_000L;
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, r.acquire("/x", now));
+        }
+        // bucket is empty, next token in 100 ms
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), r.acquire("/x", now));
+        // 100 ms later one token is back, only one
+        final long later = now + TimeUnit.MILLISECONDS.toNanos(100);
+        Assert.assertEquals(0, r.acquire("/x", later));
+        Assert.assertTrue(r.acquire("/x", later) > 0);
+        // idle for long, the bucket is full again but not beyond the burst
+        final long idle = now + TimeUnit.SECONDS.toNanos(60);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(0, r.acquire("/x", idle));
+        }
+        Assert.assertTrue(r.acquire("/x", idle) > 0);
+        Assert.assertEquals(11, r.allowed());
+        Assert.assertEquals(3, r.rejected());
+    }
+
+    @Test
+    public void keyTest() {
+        Request request = mock(Request.class);
+        when(request.ip()).thenReturn("10.0.0.1");
+        when(request.<Object>attribute(Authenticator.USER_ID)).thenReturn("alice");
+        when(request.headers("X-API-KEY")).thenReturn("k1");
+        Assert.assertEquals("/x", new RateLimit.Rule("/x", "route", 1, 1000, 1, 10).key(request));
+        Assert.assertEquals("alice", new RateLimit.Rule("/x", "user", 1, 1000, 1, 10).key(request));
+        Assert.assertEquals("k1", new RateLimit.Rule("/x", "header:X-API-KEY", 1, 1000, 1, 10).key(request));
+        Assert.assertEquals("10.0.0.1", new RateLimit.Rule("/x", "ip", 1, 1000, 1, 10).key(request));
+        // no header, falls back to the ip
+        Assert.assertEquals("10.0.0.1", new RateLimit.Rule("/x", "header:X-OTHER", 1, 1000, 1, 10).key(request));
+    }
+
+    @Test
+    public void sweepTest() {
+        RateLimit.Rule r = new RateLimit.Rule("/x", "ip", 1, 1000, 1, 2);
+        final long now = 1_000_000_000L;
+        Assert.assertEquals(0, r.acquire("a", now));
+        Assert.assertEquals(0, r.acquire("b", now));
+        Assert.assertEquals(2, r.keys());
+        // a and b are full again by now, they get dropped to make room
+        Assert.assertEquals(0, r.acquire("c", now + TimeUnit.SECONDS.toNanos(2)));
+        Assert.assertEquals(1, r.keys());
+    }
+
+    @Test
+    public void keysCapTest() {
+        RateLimit.Rule r = new RateLimit.Rule("/x", "ip", 1, 1000, 1, 2);
+        final long now = 1_000_000_000L;
+        Assert.assertEquals(0, r.acquire("a", now));
+        Assert.assertEquals(0, r.acquire("b", now));
+        // nothing is full again, the most idle one gets evicted to make room
+        Assert.assertEquals(0, r.acquire("c", now));
+        Assert.assertEquals(2, r.keys());
+        Assert.assertEquals(1, r.evicted());
+        // no sweep due yet, a new key gets rejected, the cap holds
+        Assert.assertTrue(r.acquire("d", now + TimeUnit.MILLISECONDS.toNanos(1)) > 0);
+        Assert.assertEquals(2, r.keys());
+        Assert.assertEquals(1, r.rejected());
+        // sweep due again, everything is full by now
+        Assert.assertEquals(0, r.acquire("e", now + TimeUnit.MILLISECONDS.toNanos(1500)));
+        Assert.assertEquals(1, r.keys());
+    }
+
+    @Test
+    public void filterTest() throws Exception {
+        RateLimit rl = RateLimit.fromConfig(Map.of("/api/*", Map.of("key", "header:X-API-KEY", "rate", 1, "per", 60000)));
+        RateLimit.Rule rule = List.copyOf(rl.rules()).get(0);
+        Request request = mock(Request.class);
+        when(request.headers("X-API-KEY")).thenReturn("k1");
+        rule.filter().handle(request, mock(Response.class));
+        Response response = mock(Response.class);
+        HaltException he = assertThrows(HaltException.class, () -> rule.filter().handle(request, response));
+        Assert.assertEquals(RateLimit.REJECT_STATUS, he.statusCode());
+        verify(response).header(eq("Retry-After"), anyString());
+        // another key has its own bucket
+        Request other = mock(Request.class);
+        when(other.headers("X-API-KEY")).thenReturn("k2");
+        rule.filter().handle(other, mock(Response.class));
+    }
+}
@@ -0,0 +1,126 @@
+package cowj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertThrows;
+
+public class ResourcePoolTest {
+
+    final AtomicInteger created = new AtomicInteger();
+    final AtomicInteger destroyed = new AtomicInteger();
+
+    ResourcePool<Integer> pool(Map<String, Object> config) {
+        return ResourcePool.fromConfig(config, created::incrementAndGet, i -> destroyed.incrementAndGet());
+    }
+
+    @Test
+    public void reuseTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("max", 2));
+        Integer r1 = pool.borrow();
+        Assert.assertEquals(1, pool.active());
+        pool.release(r1);
+        Assert.assertEquals(0, pool.active());
+        Assert.assertEquals(1, pool.idle());
+        Integer r2 = pool.borrow();
+        Assert.assertSame(r1, r2);
+        Assert.assertEquals(1, created.get());
+        pool.invalidate(r2);
+        Assert.assertEquals(1, destroyed.get());
+        Assert.assertEquals(0, pool.idle());
+    }
+
+    @Test
+    public void borrowTimeoutTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("max", 1, "timeout", 10));
+        pool.borrow();
+        assertThrows(TimeoutException.class, pool::borrow);
+    }
+
+    @Test
+    public void idleEvictionTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("max", 2, "idle", 10));
+        Integer r = pool.borrow();
+        pool.release(r);
+        Thread.sleep(50);
+        Integer n = pool.borrow();
+        Assert.assertNotEquals(r, n);
+        Assert.assertEquals(1, destroyed.get());
+    }
+
+    @Test
+    public void releaseAfterCloseTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("max", 2));
+        Integer r = pool.borrow();
+        pool.close();
+        pool.release(r);
+        Assert.assertEquals(0, pool.idle());
+        Assert.assertEquals(0, pool.active());
+        Assert.assertEquals(1, destroyed.get());
+    }
+
+    @Test
+    public void prefillAndCloseTest() {
+        ResourcePool<Integer> pool = pool(Map.of("max", 4, "min", 3));
+        Assert.assertEquals(3, created.get());
+        Assert.assertEquals(3, pool.idle());
+        pool.close();
+        Assert.assertEquals(0, pool.idle());
+        Assert.assertEquals(3, destroyed.get());
+    }
+
+    @Test
+    public void ephemeralTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("enabled", false));
+        int r = pool.apply(i -> i * 2);
+        Assert.assertEquals(2, r);
+        Assert.assertEquals(1, destroyed.get());
+        Assert.assertEquals(0, pool.idle());
+    }
+
+    @Test
+    public void applyErrorInvalidatesTest() throws Exception {
+        ResourcePool<Integer> pool = pool(Map.of("max", 1));
+        assertThrows(IllegalStateException.class, () -> pool.apply(i -> {
+            throw new IllegalStateException("boom!");
+        }));
+        Assert.assertEquals(1, destroyed.get());
+        // permit must have come back
+        Assert.assertNotNull(pool.borrow());
+    }
+
+    @Test
+    public void invalidConfigTest() {
+        assertThrows(IllegalArgumentException.class, () -> pool(Map.of("max", 0)));
+    }
+
+    @Test
+    public void perThreadTest() throws Exception {
+        ResourcePool<Integer> pool = ResourcePool.perThread(created::incrementAndGet, i -> destroyed.incrementAndGet());
+        Integer r = pool.borrow();
+        // nested borrow gets one of its own, gone on release
+        Integer nested = pool.borrow();
+        Assert.assertNotEquals(r, nested);
+        pool.release(nested);
+        Assert.assertEquals(1, destroyed.get());
+        pool.release(r);
+        Assert.assertSame(r, pool.borrow());
+        pool.release(r);
+        final Integer[] other = new Integer[1];
+        Thread t = new Thread(() -> {
+            other[0] = EitherMonad.runUnsafe(pool::borrow);
+            pool.release(other[0]);
+        });
+        t.start();
+        t.join();
+        Assert.assertNotEquals(r, other[0]);
+        Assert.assertEquals(2, pool.idle());
+        pool.close();
+        Assert.assertEquals(0, pool.idle());
+        Assert.assertEquals(3, destroyed.get());
+    }
+}
@@ -0,0 +1,139 @@
+package cowj;
+
+import org.junit.Assert;
+import org.junit.Test;
+import spark.HaltException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RouterTest {
+
+    static Router.PathPattern p(String path) {
+        return new Router.PathPattern(path);
+    }
+
+    static String[] s(String path) {
+        return Router.PathPattern.segments(path);
+    }
+
+    @Test
+    public void matchTest() {
+        Router.PathPattern.Match m = p("/users/:Id/books/:book").match(s("/users/42/books/hhgg"));
+        Assert.assertNotNull(m);
+        Assert.assertEquals(Map.of(":id", "42", ":book", "hhgg"), m.params());
+        Assert.assertNull(p("/users/:id").match(s("/users/")));
+        Assert.assertNull(p("/users/:id").match(s("/users/42/")));
+        Assert.assertNull(p("/users").match(s("/users/")));
+        m = p("/files/*").match(s("/files/a/b.txt"));
+        Assert.assertEquals(List.of("a/b.txt"), m.splat());
+        Assert.assertNull(p("/files/*").match(s("/files")));
+        Assert.assertNotNull(p("*").match(s("/")));
+        Assert.assertNotNull(p("/").match(s("/")));
+        Assert.assertNull(p("/").match(s("/x")));
+    }
+
+    @Test
+    public void coverAndOverlapTest() {
+        Assert.assertTrue(p("*").covers(p("/a/:b")));
+        Assert.assertTrue(p("/a/*").covers(p("/a/b/c")));
+        Assert.assertFalse(p("/a/*").covers(p("/a")));
+        Assert.assertTrue(p("/a/:x").covers(p("/a/b")));
+        Assert.assertFalse(p("/a/b").covers(p("/a/:x")));
+        Assert.assertTrue(p("/a/b").overlaps(p("/a/:x")));
+        Assert.assertFalse(p("/a/b").overlaps(p("/c/:x")));
+        Assert.assertFalse(p("/a/b").overlaps(p("/a/b/c")));
+        Assert.assertTrue(p("/a/*").overlaps(p("/a/b/c")));
+    }
+
+    @Test
+    public void findTest() {
+        Router.SegmentTrie trie = new Router.SegmentTrie();
+        Route r = (req, resp) -> "";
+        trie.route("get", "/users/:id", r);
+        trie.route("get", "/users/me", r);
+        trie.route("get", "/users/:id/books/*", r);
+        trie.route("get", "/static/*", r);
+        trie.route("get", "/", r);
+        trie.route("post", "/users", r);
+        Assert.assertEquals("/users/me", trie.find("get", s("/users/me")).pattern().path());
+        Assert.assertEquals("/users/:id", trie.find("get", s("/users/you")).pattern().path());
+        Assert.assertEquals("/users/:id/books/*", trie.find("get", s("/users/you/books/1/2")).pattern().path());
+        // static me wins first, but has no deeper routes, so it backtracks to :id
+        Assert.assertEquals("/users/:id/books/*", trie.find("get", s("/users/me/books/1")).pattern().path());
+        Assert.assertEquals("/static/*", trie.find("get", s("/static/x/y")).pattern().path());
+        Assert.assertEquals("/", trie.find("get", s("/")).pattern().path());
+        Assert.assertNull(trie.find("get", s("/users")));
+        Assert.assertNull(trie.find("put", s("/users")));
+        Assert.assertNotNull(trie.find("post", s("/users")));
+    }
+
+    Request request(String uri) {
+        Request request = mock(Request.class);
+        when(request.uri()).thenReturn(uri);
+        return request;
+    }
+
+    @Test
+    public void dispatchTest() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        Router.SegmentTrie trie = new Router.SegmentTrie();
+        trie.route("get", "/users/:id", (req, resp) -> {
+            calls.add("route:" + req.params("id"));
+            return "user";
+        });
+        trie.filter("before", "*", (req, resp) -> calls.add("before:*"));
+        trie.filter("before", "/users/42", (req, resp) -> calls.add("before:42"));
+        trie.filter("before", "/books/*", (req, resp) -> calls.add("before:books"));
+        trie.filter("after", "/users/:uid", (req, resp) -> calls.add("after:" + req.params(":UID")));
+        trie.filter("finally", "*", (req, resp) -> calls.add("finally"));
+        trie.compile();
+        Router.Leaf leaf = trie.find("get", s("/users/1"));
+        Assert.assertEquals(2, leaf.chain("before").size());
+        Assert.assertFalse(leaf.chain("before").get(0).conditional());
+        Assert.assertTrue(leaf.chain("before").get(1).conditional());
+
+        Response response = mock(Response.class);
+        Route dispatcher = trie.dispatcher("get");
+        Assert.assertEquals("user", dispatcher.handle(request("/users/1"), response));
+        Assert.assertEquals(List.of("before:*", "route:1", "after:1", "finally"), calls);
+        calls.clear();
+        dispatcher.handle(request("/users/42"), response);
+        Assert.assertEquals(List.of("before:*", "before:42", "route:42", "after:42", "finally"), calls);
+        HaltException he = assertThrows(HaltException.class, () -> dispatcher.handle(request("/nope"), response));
+        Assert.assertEquals(404, he.statusCode());
+    }
+
+    @Test
+    public void decodeTest() throws Exception {
+        Assert.assertArrayEquals(new String[]{"users", "a b", "x/y", "c+d"},
+                Router.PathPattern.decodedSegments("/users/a%20b/x%2Fy/c+d"));
+        // not validly encoded, stays raw
+        Assert.assertEquals("100%", Router.PathPattern.decode("100%"));
+
+        final List<String> calls = new ArrayList<>();
+        Router.SegmentTrie trie = new Router.SegmentTrie();
+        trie.route("get", "/users/:id", (req, resp) -> calls.add(req.params("id")));
+        trie.route("get", "/caf\u00e9/*", (req, resp) -> calls.add(req.splat()[0]));
+        trie.compile();
+        Route dispatcher = trie.dispatcher("get");
+        Response response = mock(Response.class);
+        dispatcher.handle(request("/users/j%C3%B6rg%20k"), response);
+        dispatcher.handle(request("/caf%C3%A9/a%20b/c"), response);
+        Assert.assertEquals(List.of("j\u00f6rg k", "a b/c"), calls);
+    }
+
+    @Test
+    public void configTest() {
+        Assert.assertSame(Router.SPARK, Router.fromConfig(Map.of()));
+        Assert.assertTrue(Router.fromConfig(Map.of("enabled", true)) instanceof Router.SegmentTrie);
+    }
+}
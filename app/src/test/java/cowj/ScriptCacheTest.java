@@ -0,0 +1,151 @@
+package cowj;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertThrows;
+
+public class ScriptCacheTest {
+
+    final AtomicInteger loads = new AtomicInteger();
+
+    String loader(String key) {
+        loads.incrementAndGet();
+        return key.toUpperCase();
+    }
+
+    @Test
+    public void hitMissTest() {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("A", cache.load("a", this::loader));
+        Assert.assertEquals("A", cache.load("a", this::loader));
+        Assert.assertEquals(1, loads.get());
+        Map<String, Long> stats = cache.stats();
+        Assert.assertEquals(1L, (long) stats.get("hits"));
+        Assert.assertEquals(1L, (long) stats.get("misses"));
+        Assert.assertEquals(1L, (long) stats.get("loads"));
+        Assert.assertEquals(1L, (long) stats.get("size"));
+        Assert.assertTrue(stats.get("loadTimeNanos") > 0);
+    }
+
+    @Test
+    public void concurrentSingleLoadTest() throws Exception {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < 64; i++) {
+            es.submit(() -> {
+                latch.await();
+                return cache.load("x", this::loader);
+            });
+        }
+        latch.countDown();
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void lruEvictionTest() {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        cache.bound(2, ScriptCache.Eviction.LRU);
+        cache.load("a", this::loader);
+        cache.load("b", this::loader);
+        cache.get("a");
+        cache.load("c", this::loader);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.containsKey("a"));
+        Assert.assertFalse(cache.containsKey("b"));
+        Assert.assertEquals(1L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void lfuEvictionTest() {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        cache.bound(2, ScriptCache.Eviction.LFU);
+        cache.load("a", this::loader);
+        cache.load("b", this::loader);
+        cache.get("b");
+        cache.get("b");
+        cache.get("a");
+        cache.load("c", this::loader);
+        Assert.assertTrue(cache.containsKey("b"));
+        Assert.assertFalse(cache.containsKey("a"));
+        Assert.assertTrue(cache.containsKey("c"));
+    }
+
+    @Test
+    public void reloadTest() {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        cache.load("a", this::loader);
+        Assert.assertEquals("a!", cache.reload("a", k -> k + "!"));
+        Assert.assertEquals("a!", cache.get("a"));
+        // failed reload keeps the old one
+        assertThrows(RuntimeException.class, () -> cache.reload("a", k -> {
+            throw new IOException("boom!");
+        }));
+        Assert.assertEquals("a!", cache.get("a"));
+        Assert.assertEquals(1L, (long) cache.stats().get("errors"));
+    }
+
+    @Test
+    public void loadErrorTest() {
+        ScriptCache<String> cache = ScriptCache.unregistered("test");
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> cache.load("a", k -> {
+            throw new IOException("boom!");
+        }));
+        Assert.assertTrue(CheckedFunctional.Error.cause(ex) instanceof IOException);
+        Assert.assertFalse(cache.containsKey("a"));
+    }
+
+    @Test
+    public void configureTest() {
+        ScriptCache<String> existing = ScriptCache.create("__test_existing");
+        ScriptCache.configure(Map.of("__test_existing", Map.of("max", 3, "eviction", "lfu"),
+                "__test_later", Map.of("max", 5)));
+        Assert.assertEquals(3L, (long) existing.stats().get("max"));
+        ScriptCache<String> later = ScriptCache.create("__test_later");
+        Assert.assertEquals(5L, (long) later.stats().get("max"));
+        Assert.assertSame(later, ScriptCache.create("__test_later"));
+        Assert.assertSame(later, ScriptCache.CACHES.get("__test_later"));
+    }
+
+    @Test
+    public void removalTest() {
+        final List<String> removed = new ArrayList<>();
+        ScriptCache<String> cache = ScriptCache.unregistered("test", (k, v) -> {
+            removed.add(k + "=" + v);
+            if (k.equals("d")) throw new IllegalStateException("boom!");
+        });
+        cache.bound(1, ScriptCache.Eviction.LRU);
+        cache.load("a", this::loader);
+        cache.load("b", this::loader);
+        Assert.assertEquals(List.of("a=A"), removed);
+        cache.reload("b", k -> "b!");
+        Assert.assertEquals(List.of("a=A", "b=B"), removed);
+        cache.remove("b");
+        Assert.assertEquals(List.of("a=A", "b=B", "b=b!"), removed);
+        // a failing listener does not fail the cache
+        cache.load("d", this::loader);
+        cache.clear();
+        Assert.assertEquals(List.of("a=A", "b=B", "b=b!", "d=D"), removed);
+        Assert.assertEquals(0, cache.size());
+        // failed reload removes nothing
+        cache.load("e", this::loader);
+        assertThrows(RuntimeException.class, () -> cache.reload("e", k -> {
+            throw new IOException("boom!");
+        }));
+        Assert.assertEquals(4, removed.size());
+    }
+}
@@ -10,6 +10,16 @@ import org.slf4j.MarkerFactory;
 import javax.script.Bindings;
 import javax.script.SimpleBindings;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertThrows;
@@ -25,6 +35,27 @@ public class ScriptableTest {
         Assert.assertTrue(r.toString().isEmpty());
     }
 
+    @Test
+    public void lazyEngineLoadingTest() throws Exception {
+        Set<String> engines = Scriptable.loadEngines(List.of("a/b.zm", "a/c.js", "a/d.groovy", "a/e.groovy", "a/f.txt"));
+        Assert.assertEquals(Set.of("groovy"), engines);
+        Assert.assertSame(Scriptable.loadEngine("groovy"), Scriptable.loadEngine("groovy"));
+        Assert.assertNotNull(Scriptable.loadEngine("groovy").get(30, TimeUnit.SECONDS));
+        Assert.assertNotNull(Scriptable.getEngine("a/d.groovy"));
+    }
+
+    @Test
+    public void failedEngineLoadingTest() throws Exception {
+        CompletableFuture<?> failed = Scriptable.loadEngine("no-such-engine");
+        assertThrows(ExecutionException.class, () -> failed.get(30, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Scriptable.LOADED_ENGINES.containsKey("no-such-engine") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertFalse(Scriptable.LOADED_ENGINES.containsKey("no-such-engine"));
+        Assert.assertNotSame(failed, Scriptable.loadEngine("no-such-engine"));
+    }
+
     @Test
     public void nopScriptableTest() throws Exception {
        Scriptable sc = Scriptable.UNIVERSAL.create("foo", "bar");
@@ -113,6 +144,27 @@ public class ScriptableTest {
 
     }
 
+    @Test
+    public void jsrPoolAcrossThreadsTest() throws Exception {
+        final String expr = "x * 2 //.groovy";
+        Scriptable sc = Scriptable.JSR.create(Scriptable.INLINE, expr);
+        final ResourcePool<javax.script.CompiledScript> pool = Scriptable.loadScript(Scriptable.INLINE, expr);
+        Assert.assertSame(pool, Scriptable.loadScript(Scriptable.INLINE, expr));
+        List<Future<Object>> results = new ArrayList<>();
+        try (ExecutorService es = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 100; i++) {
+                final int x = i;
+                results.add(es.submit(() -> sc.exec(new SimpleBindings(new HashMap<>(Map.of("x", x))))));
+            }
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(2 * i, ((Number) results.get(i).get()).intValue());
+        }
+        // 100 virtual threads must not have compiled 100 scripts
+        Assert.assertEquals(0, pool.active());
+        Assert.assertTrue(pool.idle() <= pool.maxSize());
+    }
+
     @Test
     public void expressionGraalTest() throws Exception {
         // JS
@@ -154,6 +206,37 @@ public class ScriptableTest {
         Assert.assertEquals(o2,o3);
     }
 
+    @Test
+    public void layeredBindingsTest(){
+        final Map<String,Object> base = Scriptable.baseBindings("layered_test.zm");
+        Assert.assertSame( base, Scriptable.baseBindings("layered_test.zm"));
+        Assert.assertSame( Scriptable.SHARED_MEMORY, base.get(Scriptable.SHARED));
+        final Bindings local = new SimpleBindings();
+        local.put("x", 42);
+        Bindings b = Scriptable.layeredBindings(local, "layered_test.zm");
+        Assert.assertTrue( local.containsKey( Scriptable.TestAsserter.ASSERTER ));
+        Assert.assertFalse( local.containsKey( Scriptable.DATA_SOURCE ));
+        Assert.assertSame( DataSource.DATA_SOURCES, b.get(Scriptable.DATA_SOURCE));
+        Assert.assertEquals( 42, b.get("x"));
+        Assert.assertEquals( local.size() + base.size(), b.size());
+        Assert.assertEquals( b.size(), b.entrySet().stream().count());
+        // writes go to the local layer, shadowing the base
+        b.put(Scriptable.SHARED, "mine");
+        Assert.assertEquals("mine", b.get(Scriptable.SHARED));
+        Assert.assertEquals("mine", local.get(Scriptable.SHARED));
+        Assert.assertSame( Scriptable.SHARED_MEMORY, base.get(Scriptable.SHARED));
+        Assert.assertEquals( local.size() + base.size() - 1, b.size());
+        b.remove(Scriptable.SHARED);
+        Assert.assertSame( Scriptable.SHARED_MEMORY, b.get(Scriptable.SHARED));
+    }
+
+    @Test
+    public void graalBaseBindingsTest() throws Exception {
+        Scriptable sc = Scriptable.GRAAL.create(Scriptable.INLINE, "_shared === null ? 0 : 42 //.js" );
+        Object o = sc.exec( new SimpleBindings( ) );
+        Assert.assertEquals( 42, o );
+    }
+
     @Test
     public void prefixLoggerTest(){
         final int times = 100000 ;
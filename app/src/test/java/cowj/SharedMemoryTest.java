@@ -0,0 +1,156 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThrows;
+
+public class SharedMemoryTest {
+
+    @After
+    public void after() {
+        SharedMemory.OFF_HEAP.forEach((name, map) -> {
+            map.close();
+            Scriptable.SHARED_MEMORY.remove(name);
+        });
+        SharedMemory.OFF_HEAP.clear();
+    }
+
+    @Test
+    public void heapNamespaceTest() {
+        Map<String, Object> ns = SharedMemory.namespace("heap-ns");
+        Assert.assertSame(ns, SharedMemory.namespace("heap-ns"));
+        Assert.assertSame(ns, Scriptable.SHARED_MEMORY.get("heap-ns"));
+        Scriptable.TestAsserter asserter = () -> null;
+        Assert.assertSame(ns, asserter.shared("heap-ns"));
+    }
+
+    @Test
+    public void directTest() {
+        SharedMemory.OffHeapMap m = SharedMemory.OffHeapMap.direct("d", 4096, 64);
+        Assert.assertNull(m.put("l", 42));
+        m.put("d", 4.2);
+        m.put("b", true);
+        m.put("s", "hello");
+        m.put("y", new byte[]{1, 2, 3});
+        Assert.assertEquals(42L, m.get("l"));
+        Assert.assertEquals(4.2, m.get("d"));
+        Assert.assertEquals(true, m.get("b"));
+        Assert.assertEquals("hello", m.get("s"));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) m.get("y"));
+        Assert.assertEquals(5, m.size());
+        Assert.assertEquals("hello", m.put("s", "world"));
+        Assert.assertEquals("world", m.putIfAbsent("s", "again"));
+        Assert.assertEquals("world", m.remove("s"));
+        Assert.assertFalse(m.containsKey("s"));
+        Assert.assertEquals(4, m.entrySet().size());
+        assertThrows(IllegalArgumentException.class, () -> m.put("o", new Object()));
+        assertThrows(IllegalArgumentException.class, () -> m.put("big", "x".repeat(64)));
+        m.clear();
+        Assert.assertTrue(m.isEmpty());
+    }
+
+    @Test
+    public void evictionTest() {
+        // 4 slots only
+        SharedMemory.OffHeapMap m = SharedMemory.OffHeapMap.direct("e", 64 + 4 * 64, 64);
+        for (int i = 0; i < 10; i++) {
+            m.put("k" + i, i);
+        }
+        Assert.assertEquals(4, m.size());
+        Assert.assertEquals(6L, m.stats().get("evictions"));
+        // the last written ones survive
+        Assert.assertEquals(9L, m.get("k9"));
+        Assert.assertNull(m.get("k0"));
+    }
+
+    @Test
+    public void counterTest() throws Exception {
+        SharedMemory.OffHeapMap m = SharedMemory.OffHeapMap.direct("c", 4096, 64);
+        Assert.assertEquals(1, m.increment("cnt", 1));
+        ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            es.submit(() -> {
+                for (int j = 0; j < 1000; j++) m.increment("cnt", 1);
+            });
+        }
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(8001L, m.get("cnt"));
+        m.put("s", "x");
+        assertThrows(IllegalArgumentException.class, () -> m.increment("s", 1));
+    }
+
+    @Test
+    public void counterEvictionRaceTest() throws Exception {
+        // one slot, so every put of "b" evicts the counter "a" and the other way round
+        SharedMemory.OffHeapMap m = SharedMemory.OffHeapMap.direct("r", 64 + 64, 64);
+        ExecutorService es = Executors.newFixedThreadPool(2);
+        final long[] torn = {0};
+        es.submit(() -> {
+            for (int j = 0; j < 100_000; j++) m.increment("a", 1);
+        });
+        es.submit(() -> {
+            for (int j = 0; j < 100_000; j++) {
+                m.put("b", 0L);
+                final Object b = m.get("b");
+                // an add meant for "a" must never land on "b"
+                if (b != null && !Long.valueOf(0L).equals(b)) torn[0]++;
+            }
+        });
+        es.shutdown();
+        Assert.assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, torn[0]);
+    }
+
+    @Test
+    public void mappedSurvivesReopenTest() throws Exception {
+        Path file = Files.createTempDirectory("cowj-shm").resolve("ns.shm");
+        SharedMemory.OffHeapMap m = SharedMemory.OffHeapMap.mapped("m", file, 8192, 128);
+        m.put("hello", "world");
+        m.increment("cnt", 41);
+        m.close();
+        m = SharedMemory.OffHeapMap.mapped("m", file, 8192, 128);
+        Assert.assertEquals("world", m.get("hello"));
+        Assert.assertEquals(42, m.increment("cnt", 1));
+        m.close();
+        // a different layout never wipes the file
+        assertThrows(IllegalStateException.class, () -> SharedMemory.OffHeapMap.mapped("m", file, 8192, 64));
+        assertThrows(IllegalStateException.class, () -> SharedMemory.OffHeapMap.mapped("m", file, 16384, 128));
+        m = SharedMemory.OffHeapMap.mapped("m", file, 8192, 128);
+        Assert.assertEquals("world", m.get("hello"));
+        m.close();
+        // nor a file which is not a namespace
+        Path other = Files.createTempFile("cowj-shm", ".txt");
+        Files.writeString(other, "precious");
+        assertThrows(IllegalStateException.class, () -> SharedMemory.OffHeapMap.mapped("m", other, 8192, 128));
+        Assert.assertEquals("precious", Files.readString(other));
+    }
+
+    @Test
+    public void configTest() throws Exception {
+        final Path dir = Files.createTempDirectory("cowj-shm");
+        Model model = () -> dir.toString();
+        SharedMemory.configure(Map.of("namespaces", Map.of(
+                "d", Map.of("mode", "direct", "size", 4096),
+                "m", Map.of("mode", "mapped", "file", "_/x/m.shm"),
+                "h", Map.of("mode", "heap"),
+                "bad", Map.of("mode", "direct", "slot", 7))), model);
+        Assert.assertTrue(Scriptable.SHARED_MEMORY.get("d") instanceof SharedMemory.OffHeapMap);
+        Assert.assertTrue(Scriptable.SHARED_MEMORY.get("m") instanceof SharedMemory.OffHeapMap);
+        Assert.assertTrue(Files.exists(dir.resolve("x/m.shm")));
+        Assert.assertFalse(Scriptable.SHARED_MEMORY.get("h") instanceof SharedMemory.OffHeapMap);
+        Assert.assertFalse(Scriptable.SHARED_MEMORY.get("bad") instanceof SharedMemory.OffHeapMap);
+        Assert.assertEquals(2, SharedMemory.stats().size());
+        Scriptable.SHARED_MEMORY.remove("h");
+        Scriptable.SHARED_MEMORY.remove("bad");
+    }
+}
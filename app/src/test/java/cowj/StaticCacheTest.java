@@ -0,0 +1,161 @@
+package cowj;
+
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpURI;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+
+public class StaticCacheTest {
+
+    static Path root;
+
+    static final String CSS = "body { margin : 0 ; }\n".repeat(100);
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        root = Files.createTempDirectory("cowj-static-cache");
+        Path staticDir = Files.createDirectories(root.resolve("static"));
+        Files.writeString(staticDir.resolve("index.html"), "<html></html>");
+        Files.writeString(Files.createDirectories(staticDir.resolve("css")).resolve("app.css"), CSS);
+        Files.writeString(root.resolve("secret.txt"), "secret");
+    }
+
+    Request request(String path) {
+        return request(path, HttpFields.build());
+    }
+
+    Request request(String path, HttpFields headers) {
+        Request request = mock(Request.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getHttpURI()).thenReturn(HttpURI.from(path));
+        when(request.getHeaders()).thenReturn(headers);
+        return request;
+    }
+
+    Response response(ByteArrayOutputStream bos) {
+        Response response = mock(Response.class);
+        when(response.getHeaders()).thenReturn(HttpFields.build());
+        doAnswer(i -> {
+            ByteBuffer buffer = i.getArgument(1);
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            bos.write(bytes);
+            ((Callback) i.getArgument(2)).succeeded();
+            return null;
+        }).when(response).write(anyBoolean(), any(), any());
+        return response;
+    }
+
+    @Test
+    public void configTest() {
+        Model model = () -> root.toString();
+        Assert.assertNull(StaticCache.fromConfig(Map.of(), model, null));
+        Assert.assertNull(StaticCache.fromConfig(Map.of("enabled", false), model, null));
+        Assert.assertNull(StaticCache.handler(null, null));
+        StaticCache cache = StaticCache.fromConfig(Map.of("mode", "direct"), model, null);
+        Assert.assertNotNull(cache);
+        Assert.assertNotNull(StaticCache.handler(cache, null));
+        Assert.assertEquals(2L, (long) cache.stats().get("files"));
+        Assert.assertTrue(cache.entry("/css/app.css").content().isDirect());
+        Assert.assertNotNull(cache.entry("/"));
+        Assert.assertNull(cache.entry("/../secret.txt"));
+        Assert.assertNull(cache.entry("/missing.js"));
+
+        // the memory budget holds outside prod mode too
+        cache = StaticCache.fromConfig(Map.of("max_file", 100), model, null);
+        Assert.assertTrue(cache.entry("/css/app.css").mapped());
+        Assert.assertFalse(cache.entry("/").mapped());
+        Assert.assertEquals(13L, (long) cache.stats().get("memory"));
+    }
+
+    @Test
+    public void serveTest() throws Exception {
+        StaticCache cache = StaticCache.fromConfig(Map.of("max_age", 60), () -> root.toString(), null);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Response response = response(bos);
+        Assert.assertTrue(cache.serve(request("/css/app.css"), response, Callback.NOOP));
+        Assert.assertEquals(CSS, bos.toString(StandardCharsets.UTF_8));
+        final String etag = cache.entry("/css/app.css").etag(false);
+        Assert.assertEquals(etag, response.getHeaders().get("ETag"));
+        Assert.assertEquals("public, max-age=60", response.getHeaders().get("Cache-Control"));
+        verify(response).setStatus(200);
+
+        Request conditional = request("/css/app.css", HttpFields.build().add("If-None-Match", "\"other\", W/" + etag));
+        response = response(bos);
+        Assert.assertTrue(cache.serve(conditional, response, Callback.NOOP));
+        verify(response).setStatus(304);
+        verify(response, never()).write(anyBoolean(), any(), any());
+
+        conditional = request("/css/app.css", HttpFields.build().addDateField("If-Modified-Since", System.currentTimeMillis() + 60000));
+        response = response(bos);
+        Assert.assertTrue(cache.serve(conditional, response, Callback.NOOP));
+        verify(response).setStatus(304);
+
+        conditional = request("/css/app.css", HttpFields.build().add("If-None-Match", "\"other\""));
+        response = response(bos);
+        Assert.assertTrue(cache.serve(conditional, response, Callback.NOOP));
+        verify(response).setStatus(200);
+
+        Request post = request("/css/app.css");
+        when(post.getMethod()).thenReturn("POST");
+        Assert.assertFalse(cache.serve(post, response(bos), Callback.NOOP));
+        Assert.assertFalse(cache.serve(request("/api/users"), response(bos), Callback.NOOP));
+        Assert.assertEquals(2L, (long) cache.stats().get("not_modified"));
+    }
+
+    @Test
+    public void gzipVariantTest() throws Exception {
+        Model model = () -> root.toString();
+        Compression compression = Compression.fromConfig(Map.of("min_size", 64), model);
+        StaticCache cache = StaticCache.fromConfig(Map.of("enabled", true), model, compression.precompressed());
+        Request request = request("/css/app.css", HttpFields.build().add("Accept-Encoding", "gzip"));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Response response = response(bos);
+        Assert.assertTrue(cache.serve(request, response, Callback.NOOP));
+        final StaticCache.Entry entry = cache.entry("/css/app.css");
+        Assert.assertEquals(entry.etag(true), response.getHeaders().get("ETag"));
+        Assert.assertEquals("gzip", response.getHeaders().get("Content-Encoding"));
+        Assert.assertEquals("Accept-Encoding", response.getHeaders().get("Vary"));
+        Assert.assertEquals(CSS, new String(CompressionTest.gunzip(bos.toByteArray()), StandardCharsets.UTF_8));
+        Assert.assertNotEquals(entry.etag(true), entry.etag(false));
+    }
+
+    @Test
+    public void reloadTest() throws Exception {
+        Path dir = Files.createTempDirectory("cowj-static-reload");
+        Path file = Files.createDirectories(dir.resolve("static")).resolve("my file.css");
+        Files.writeString(file, "a".repeat(100));
+        StaticCache cache = StaticCache.fromConfig(Map.of("enabled", true), () -> dir.toString(), null);
+        Assert.assertEquals(100L, (long) cache.stats().get("memory"));
+
+        // request paths come encoded
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Assert.assertTrue(cache.serve(request("/my%20file.css"), response(bos), Callback.NOOP));
+        Assert.assertEquals("a".repeat(100), bos.toString(StandardCharsets.UTF_8));
+
+        // the replaced entry does not count anymore
+        final String key = cache.entry("/my file.css").file().toString();
+        Files.writeString(file, "b".repeat(50));
+        cache.reload(key);
+        Assert.assertEquals(50L, (long) cache.stats().get("memory"));
+        Assert.assertEquals(50, cache.entry("/my file.css").content().remaining());
+
+        Files.delete(file);
+        cache.reload(key);
+        Assert.assertEquals(0L, (long) cache.stats().get("memory"));
+        Assert.assertNull(cache.entry("/my file.css"));
+    }
+}
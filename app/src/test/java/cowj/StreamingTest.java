@@ -0,0 +1,108 @@
+package cowj;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class StreamingTest {
+
+    final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    Response response() throws Exception {
+        HttpServletResponse raw = mock(HttpServletResponse.class);
+        when(raw.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+
+            @Override
+            public void write(int b) {
+                bos.write(b);
+            }
+        });
+        Response response = mock(Response.class);
+        when(response.raw()).thenReturn(raw);
+        return response;
+    }
+
+    String written() {
+        return bos.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void notStreamableTest() throws Exception {
+        Assert.assertFalse(Streaming.write("hello", response()));
+        Assert.assertFalse(Streaming.write(Map.of("a", 1), response()));
+        Assert.assertFalse(Streaming.write(null, response()));
+        Assert.assertEquals(0, bos.size());
+        Route r = Streaming.route((request, response) -> "hello");
+        Assert.assertEquals("hello", r.handle(mock(Request.class), response()));
+    }
+
+    @Test
+    public void bytesTest() throws Exception {
+        Response response = response();
+        Assert.assertTrue(Streaming.write("abc".getBytes(StandardCharsets.UTF_8), response));
+        verify(response.raw()).setContentType(Streaming.OCTET_STREAM);
+        Assert.assertTrue(Streaming.write(ByteBuffer.wrap("def".getBytes(StandardCharsets.UTF_8)), response()));
+        Assert.assertTrue(Streaming.write(new ByteArrayInputStream("ghi".getBytes(StandardCharsets.UTF_8)), response()));
+        Assert.assertEquals("abcdefghi", written());
+    }
+
+    @Test
+    public void linesTest() throws Exception {
+        Response response = response();
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        Stream<Object> s = Stream.<Object>of("x", Map.of("a", 1), List.of(1, 2)).onClose(() -> closed.set(true));
+        Route r = Streaming.route((request, resp) -> s);
+        Assert.assertEquals("", r.handle(mock(Request.class), response));
+        verify(response.raw()).setContentType(Streaming.NDJSON);
+        Assert.assertTrue(closed.get());
+        Assert.assertTrue(Streaming.write(List.of("y", 42).iterator(), response()));
+        Assert.assertEquals("x\n{\"a\":1}\n[1,2]\ny\n42\n", written());
+    }
+
+    @Test
+    public void ndjsonTest() throws Exception {
+        Stream<Map.Entry<String, Object>> entries = Stream.of(
+                new AbstractMap.SimpleEntry<>("k1", Map.of("v", 1)),
+                new AbstractMap.SimpleEntry<>("k2", "text"));
+        Assert.assertTrue(Streaming.write(Streaming.ndjson(entries), response()));
+        Assert.assertEquals("{\"key\":\"k1\",\"value\":{\"v\":1}}\n{\"key\":\"k2\",\"value\":\"text\"}\n", written());
+    }
+
+    @Test
+    public void errorBeforeCommitTest() throws Exception {
+        Response response = response();
+        Stream<String> failing = Stream.of("a", "b").map(x -> {
+            if (x.equals("b")) throw new IllegalStateException("boom");
+            return x;
+        });
+        assertThrows(IOException.class, () -> Streaming.write(failing, response));
+        verify(response.raw()).resetBuffer();
+    }
+}
@@ -0,0 +1,160 @@
+package cowj;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+
+public class TracingTest {
+
+    public static final List<Tracing.Span> SPANS = new CopyOnWriteArrayList<>();
+
+    public static final Tracing.Exporter EXPORTER = SPANS::addAll;
+
+    final Model model = () -> "/tmp/cowj";
+
+    void enable(double sample) {
+        SPANS.clear();
+        Tracing.configure(Map.of("enabled", true, "sample", sample, "exporter", "cowj.TracingTest::EXPORTER", "flush", 10), model);
+    }
+
+    @After
+    public void after() {
+        Tracing.stop();
+        Tracing.CURRENT.remove();
+    }
+
+    @Test
+    public void disabledTest() {
+        Assert.assertFalse(Tracing.enabled());
+        Assert.assertSame(Tracing.Span.NOOP, Tracing.start("x"));
+        Assert.assertNull(Tracing.current());
+        Route r = (request, response) -> "x";
+        Assert.assertSame(r, Tracing.route("/x", r));
+        Map<String, String> headers = new HashMap<>();
+        Tracing.Span.NOOP.inject(headers);
+        Assert.assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void parentChildTest() {
+        enable(1.0);
+        final String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+        Tracing.Span root = Tracing.root("http GET", "00-" + traceId + "-00f067aa0ba902b7-01");
+        Assert.assertTrue(root.sampled());
+        Assert.assertEquals(traceId, root.traceId());
+        Assert.assertEquals("00f067aa0ba902b7", root.parentId());
+        try (Tracing.Span child = Tracing.start("auth")) {
+            Assert.assertSame(child, Tracing.current());
+            Assert.assertEquals(traceId, child.traceId());
+            Assert.assertEquals(root.spanId(), child.parentId());
+            Map<String, String> headers = new HashMap<>();
+            Tracing.inject(headers);
+            Assert.assertEquals("00-" + traceId + "-" + child.spanId() + "-01", headers.get(Tracing.TRACEPARENT));
+        }
+        Assert.assertSame(root, Tracing.current());
+        root.close();
+        Assert.assertNull(Tracing.current());
+        // garbage traceparent starts a new trace
+        Tracing.Span other = Tracing.root("http GET", "00-xyz-01");
+        Assert.assertNotEquals(traceId, other.traceId());
+        Assert.assertEquals(32, other.traceId().length());
+        Assert.assertEquals("", other.parentId());
+        other.close();
+    }
+
+    @Test
+    public void unsampledTest() {
+        enable(0.0);
+        Tracing.Span root = Tracing.root("http GET", null);
+        Assert.assertFalse(root.sampled());
+        Tracing.Span child = Tracing.start("auth").attribute("user", "x");
+        Assert.assertFalse(child.sampled());
+        Assert.assertTrue(child.attributes().isEmpty());
+        Assert.assertTrue(child.traceparent().endsWith("-00"));
+        child.close();
+        root.close();
+        Tracing.stop();
+        Assert.assertTrue(SPANS.isEmpty());
+    }
+
+    @Test
+    public void exportTest() throws Exception {
+        enable(1.0);
+        Route failing = Tracing.route("/fail", (request, response) -> {
+            throw new IllegalStateException("boom");
+        });
+        Tracing.Span root = Tracing.root("http GET", null);
+        assertThrows(IllegalStateException.class, () -> failing.handle(mock(Request.class), mock(Response.class)));
+        Assert.assertSame(root, Tracing.current());
+        root.close();
+        Tracing.stop();
+        Assert.assertEquals(2, SPANS.size());
+        Tracing.Span route = SPANS.get(0);
+        Assert.assertEquals("route /fail", route.name());
+        Assert.assertEquals(root.spanId(), route.parentId());
+        Assert.assertTrue(route.error().contains("boom"));
+        Assert.assertTrue(route.durationNanos() >= 0);
+    }
+
+    @Test
+    public void crossThreadTest() throws Exception {
+        enable(1.0);
+        Tracing.Span root = Tracing.root("http POST", null);
+        final Tracing.Span parent = Tracing.current();
+        ExecutorService es = Executors.newSingleThreadExecutor();
+        try {
+            Tracing.Span task = es.submit(() -> {
+                try (Tracing.Span s = Tracing.start(parent, "async /x")) {
+                    return s;
+                }
+            }).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(root.traceId(), task.traceId());
+            Assert.assertEquals(root.spanId(), task.parentId());
+            // nothing left behind on the worker thread
+            Assert.assertNull(es.submit(Tracing::current).get(5, TimeUnit.SECONDS));
+        } finally {
+            es.shutdownNow();
+            root.close();
+        }
+    }
+
+    @Test
+    public void fileExporterTest() throws Exception {
+        Path dir = Files.createTempDirectory("cowj-traces");
+        Path file = dir.resolve("traces.ndjson");
+        Tracing.FileExporter exporter = new Tracing.FileExporter(file, 100, 2);
+        enable(1.0);
+        List<Tracing.Span> spans = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Tracing.Span s = Tracing.start("span" + i).attribute("i", i);
+            s.close();
+            spans.add(s);
+        }
+        for (Tracing.Span s : spans) {
+            exporter.export(List.of(s));
+        }
+        exporter.close();
+        // every span line is over 100 bytes, so every export rolled over, only 2 old files are kept
+        Assert.assertTrue(Files.exists(Path.of(file + ".1")));
+        Assert.assertTrue(Files.exists(Path.of(file + ".2")));
+        Assert.assertFalse(Files.exists(Path.of(file + ".3")));
+        final String last = Files.readString(Path.of(file + ".1"));
+        Assert.assertTrue(last.contains("\"name\":\"span2\""));
+        Assert.assertTrue(last.contains("\"attributes\":{\"i\":2}"));
+        Assert.assertTrue(last.endsWith("\n"));
+    }
+}
@@ -0,0 +1,164 @@
+package cowj;
+
+import cowj.plugins.FileBackedStorage;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import spark.Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UploadTest {
+
+    final Model model = () -> "/tmp/cowj";
+
+    @After
+    public void after() {
+        Upload.configure(Map.of(), model);
+    }
+
+    static byte[] payload(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i % 251);
+        }
+        return data;
+    }
+
+    public static Request request(byte[] body, boolean finished) throws Exception {
+        final ByteArrayInputStream in = new ByteArrayInputStream(body);
+        ServletInputStream sis = new ServletInputStream() {
+            @Override
+            public boolean isFinished() {
+                return finished || in.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+            }
+
+            @Override
+            public int read() {
+                return in.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return in.read(b, off, len);
+            }
+        };
+        HttpServletRequest raw = mock(HttpServletRequest.class);
+        when(raw.getInputStream()).thenReturn(sis);
+        when(raw.getContentLengthLong()).thenReturn((long) body.length);
+        Request request = mock(Request.class);
+        when(request.raw()).thenReturn(raw);
+        when(request.bodyAsBytes()).thenReturn(body);
+        return request;
+    }
+
+    @Test
+    public void streamTest() throws Exception {
+        byte[] body = payload(100_000);
+        Upload upload = new Upload(request(body, false));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        Assert.assertEquals(body.length, upload.pipe(bos));
+        Assert.assertArrayEquals(body, bos.toByteArray());
+        assertThrows(IllegalStateException.class, upload::stream);
+    }
+
+    @Test
+    public void spillInMemoryTest() throws Exception {
+        byte[] body = payload(1000);
+        try (Upload upload = new Upload(request(body, false)).spill()) {
+            Assert.assertTrue(upload.inMemory());
+            Assert.assertNull(upload.file());
+            Assert.assertEquals(1000, upload.size());
+            Assert.assertArrayEquals(body, upload.bytes());
+            // can be read many times
+            Assert.assertArrayEquals(body, upload.stream().readAllBytes());
+            Assert.assertArrayEquals(body, upload.stream().readAllBytes());
+        }
+    }
+
+    @Test
+    public void spillToDiskTest() throws Exception {
+        Path dir = Files.createTempDirectory("cowj-uploads");
+        Upload.configure(Map.of("memory", 4096, "dir", dir.toString()), model);
+        byte[] body = payload(50_000);
+        Upload upload = new Upload(request(body, false)).spill();
+        Assert.assertFalse(upload.inMemory());
+        Path file = upload.file();
+        Assert.assertNotNull(file);
+        Assert.assertTrue(file.startsWith(dir));
+        Assert.assertEquals(body.length, upload.size());
+        Assert.assertArrayEquals(body, Files.readAllBytes(file));
+        try (var in = upload.stream()) {
+            Assert.assertArrayEquals(body, in.readAllBytes());
+        }
+        upload.close();
+        Assert.assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void alreadyReadTest() throws Exception {
+        byte[] body = payload(300);
+        Upload upload = new Upload(request(body, true));
+        Assert.assertArrayEquals(body, upload.stream().readAllBytes());
+    }
+
+    @Test
+    public void tooLargeTest() throws Exception {
+        Upload.configure(Map.of("max", 1000), model);
+        Upload upload = new Upload(request(payload(2000), false));
+        IOException ex = assertThrows(IOException.class, upload::spill);
+        Assert.assertTrue(Upload.tooLarge(new RuntimeException(ex)));
+        Assert.assertFalse(Upload.tooLarge(new RuntimeException("boom")));
+    }
+
+    @Test
+    public void dumpStreamTest() throws Exception {
+        Path mount = Files.createTempDirectory("cowj-storage");
+        Files.createDirectories(mount.resolve("bucket"));
+        FileBackedStorage storage = new FileBackedStorage(mount.toString());
+        byte[] body = payload(10_000);
+        Assert.assertTrue(storage.dumpStream("bucket", "a/b.bin", new Upload(request(body, false)).stream()));
+        Assert.assertTrue(Arrays.equals(body, Files.readAllBytes(mount.resolve("bucket/a/b.bin"))));
+        Assert.assertFalse(storage.dumpStream("missing", "x.bin", new ByteArrayInputStream(body)));
+    }
+
+    @Test
+    public void dumpStreamTooLargeTest() throws Exception {
+        Path mount = Files.createTempDirectory("cowj-storage");
+        Path bucket = Files.createDirectories(mount.resolve("bucket"));
+        Files.writeString(bucket.resolve("x.bin"), "old");
+        FileBackedStorage storage = new FileBackedStorage(mount.toString());
+        // goes past the max while being copied, not upfront
+        InputStream data = new Upload.Bounded(new ByteArrayInputStream(payload(20_000)), 1000);
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> storage.dumpStream("bucket", "x.bin", data));
+        Assert.assertTrue(Upload.tooLarge(ex));
+        // old file untouched, no partial file left behind
+        Assert.assertEquals("old", Files.readString(bucket.resolve("x.bin")));
+        try (var files = Files.list(bucket)) {
+            Assert.assertEquals(1, files.count());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package cowj;
+
+import org.junit.Assert;
+import org.junit.Test;
+import spark.Request;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WarmupTest {
+
+    final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+    final Map<String, AtomicInteger> executed = new ConcurrentHashMap<>();
+    final Set<String> seenUris = ConcurrentHashMap.newKeySet();
+
+    final Scriptable.Creator creator = (path, handler) -> {
+        created.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+        if (handler.endsWith("bad.zm")) throw new RuntimeException("Script Loading Failed!");
+        return bindings -> {
+            executed.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+            Request req = (Request) bindings.get(Scriptable.REQUEST);
+            seenUris.add(req.uri() + "?" + req.params("id"));
+            return "ok";
+        };
+    };
+
+    Model model(Map<String, Object> warmup) {
+        return Model.from(Map.of(
+                "routes", Map.of(
+                        "get", Map.of("/items/:id", "_/items.zm", "/bad", "_/bad.zm"),
+                        "post", Map.of("/items", "_/create.zm")),
+                "filters", Map.of("before", Map.of("*", "_/before.zm")),
+                "warmup", warmup), ".");
+    }
+
+    @Test
+    public void noWarmupTest() {
+        Model m = model(Map.of());
+        Warmup.Report r = Warmup.fromConfig(m.warmup(), m).run(m, creator);
+        Assert.assertEquals(0, r.compiled());
+        Assert.assertTrue(created.isEmpty());
+    }
+
+    @Test
+    public void syntheticWarmupTest() {
+        Model m = model(Map.of("iterations", 5, "threads", 4));
+        Warmup.Report r = Warmup.fromConfig(m.warmup(), m).run(m, creator);
+        // routes, filter, failed one
+        Assert.assertEquals(3, r.compiled());
+        Assert.assertEquals(1, r.compileErrors());
+        Assert.assertEquals(1, created.get("/items").get());
+        Assert.assertEquals(1, created.get("*").get());
+        // only get routes are executed
+        Assert.assertEquals(5, executed.get("/items/:id").get());
+        Assert.assertNull(executed.get("/items"));
+        Assert.assertNull(executed.get("*"));
+        Assert.assertEquals(5, r.executions());
+        Assert.assertEquals(0, r.executionErrors());
+        Assert.assertTrue(seenUris.contains("/items/id?id"));
+    }
+
+    @Test
+    public void defaultIterationsTest() {
+        Model m = model(Map.of("threads", 2));
+        Warmup w = Warmup.fromConfig(m.warmup(), m);
+        // no samples, compile only
+        Assert.assertEquals(0, w.iterations());
+        Warmup.Report r = w.run(m, creator);
+        Assert.assertEquals(3, r.compiled());
+        Assert.assertEquals(0, r.executions());
+        Assert.assertTrue(executed.isEmpty());
+        m = model(Map.of("samples", "_/warmup"));
+        Assert.assertEquals(Warmup.DEFAULT_ITERATIONS, Warmup.fromConfig(m.warmup(), m).iterations());
+    }
+
+    @Test
+    public void samplesWarmupTest() throws Exception {
+        File dir = Files.createTempDirectory("warmup").toFile();
+        dir.deleteOnExit();
+        File sample = new File(dir, "create.json");
+        sample.deleteOnExit();
+        Files.writeString(sample.toPath(), "{ \"verb\" : \"post\", \"route\" : \"/items\", \"uri\" : \"/items\", \"body\" : \"{}\" }");
+        File other = new File(dir, "item.yaml");
+        other.deleteOnExit();
+        Files.writeString(other.toPath(), "route: /items/:id\nuri: /items/42\n");
+        Model m = model(Map.of("iterations", 2, "samples", dir.getAbsolutePath()));
+        Warmup w = Warmup.fromConfig(m.warmup(), m);
+        List<Warmup.Sample> samples = w.samples();
+        Assert.assertEquals(2, samples.size());
+        Warmup.Report r = w.run(m, creator);
+        Assert.assertEquals(4, r.executions());
+        Assert.assertEquals(2, executed.get("/items").get());
+        Assert.assertEquals(2, executed.get("/items/:id").get());
+        Assert.assertTrue(seenUris.contains("/items/42?42"));
+    }
+
+    @Test
+    public void syntheticRequestTest() {
+        Warmup.Sample s = new Warmup.Sample("get", "/a/:x/b/:Y", "/a/1/b/2",
+                Map.of("h", "v"), Map.of("q", "w"), "body");
+        Warmup.SyntheticRequest req = new Warmup.SyntheticRequest(s);
+        Assert.assertEquals("GET", req.requestMethod());
+        Assert.assertEquals("1", req.params("x"));
+        Assert.assertEquals("2", req.params(":y"));
+        Assert.assertEquals("v", req.headers("h"));
+        Assert.assertEquals("w", req.queryParams("q"));
+        Assert.assertEquals("body", req.body());
+        req.attribute("k", 42);
+        Assert.assertEquals(42, (int) req.attribute("k"));
+    }
+}
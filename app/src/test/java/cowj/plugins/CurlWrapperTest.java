@@ -6,6 +6,7 @@ import cowj.EitherMonad;
 import cowj.Model;
 import cowj.ModelRunner;
 import cowj.ModelRunnerTest;
+import cowj.UploadTest;
 
 import org.junit.*;
 import spark.Request;
@@ -84,9 +85,8 @@ public class CurlWrapperTest {
         DataSource dataSource = CurlWrapper.CURL.create( "dummy",
                 Map.of("url", url, "timeout", 6000 ), model);
         CurlWrapper cw = (CurlWrapper) dataSource.proxy();
-        Request request = mock(Request.class);
         final String body = ZTypes.jsonString( Map.of("x" , 42 ));
-        when(request.body()).thenReturn( body);
+        Request request = UploadTest.request( body.getBytes(), false);
         when(request.uri()).thenReturn( "/_async_/post" );
         when(request.headers()).thenReturn( Collections.emptySet() );
         when(request.queryParams()).thenReturn( Collections.emptySet() );